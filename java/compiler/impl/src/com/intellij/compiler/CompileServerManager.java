@@ -47,6 +47,7 @@ import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
 import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.ShutDownTracker;
@@ -749,9 +750,9 @@ public class CompileServerManager implements ApplicationComponent{
 
         case FILES_GENERATED:
           final CompilationStatusListener publisher = myProject.getMessageBus().syncPublisher(CompilerTopics.COMPILATION_STATUS);
-          for (JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile generatedFile : event.getGeneratedFilesList()) {
-            final String root = FileUtil.toSystemIndependentName(generatedFile.getOutputRoot());
-            final String relativePath = FileUtil.toSystemIndependentName(generatedFile.getRelativePath());
+          for (Pair<String, String> generatedFile : ProtoUtil.getGeneratedFiles(event)) {
+            final String root = FileUtil.toSystemIndependentName(generatedFile.first);
+            final String relativePath = FileUtil.toSystemIndependentName(generatedFile.second);
             publisher.fileGenerated(root, relativePath);
           }
           return false;
@@ -96,6 +96,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.api.CmdlineRemoteProto;
 import org.jetbrains.jps.api.JpsRemoteProto;
 import org.jetbrains.jps.api.JpsServerResponseHandler;
+import org.jetbrains.jps.api.ProtoUtil;
 import org.jetbrains.jps.api.RequestFuture;
 
 import java.io.*;
@@ -496,11 +497,11 @@ public class CompileDriver {
               //compileContext.getProgressIndicator().setText("Compilation started");
               break;
             case FILES_GENERATED:
-              final List<JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile> generated = event.getGeneratedFilesList();
+              final List<Pair<String, String>> generated = ProtoUtil.getGeneratedFiles(event);
               final CompilationStatusListener publisher = messageBus.syncPublisher(CompilerTopics.COMPILATION_STATUS);
-              for (JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile generatedFile : generated) {
-                final String root = FileUtil.toSystemIndependentName(generatedFile.getOutputRoot());
-                final String relativePath = FileUtil.toSystemIndependentName(generatedFile.getRelativePath());
+              for (Pair<String, String> generatedFile : generated) {
+                final String root = FileUtil.toSystemIndependentName(generatedFile.first);
+                final String relativePath = FileUtil.toSystemIndependentName(generatedFile.second);
                 publisher.fileGenerated(root, relativePath);
               }
               break;
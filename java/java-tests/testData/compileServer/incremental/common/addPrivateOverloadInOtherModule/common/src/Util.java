@@ -0,0 +1,12 @@
+/**
+ * Created with IntelliJ IDEA.
+ * User: db
+ * Date: 11.04.12
+ * Time: 11:43
+ * To change this template use File | Settings | File Templates.
+ */
+public class Util {
+    public static void foo () {
+
+    }
+}
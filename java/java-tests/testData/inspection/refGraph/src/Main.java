@@ -0,0 +1,16 @@
+public class Main {
+  public static void main(String[] args) {
+    new Helper().run();
+  }
+}
+
+class Helper {
+  private int myCount;
+
+  void run() {
+    myCount++;
+  }
+
+  void unused() {
+  }
+}
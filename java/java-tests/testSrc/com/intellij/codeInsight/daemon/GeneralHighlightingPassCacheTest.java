@@ -0,0 +1,123 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon;
+
+import com.intellij.codeInsight.daemon.impl.DaemonProgressIndicator;
+import com.intellij.codeInsight.daemon.impl.GeneralHighlightingPass;
+import com.intellij.codeInsight.daemon.impl.HighlightInfo;
+import com.intellij.lang.LanguageAnnotators;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.Annotator;
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.ProperTextRange;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiMethod;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a restarted {@link GeneralHighlightingPass} replays annotator results of the previous run over the same PSI
+ */
+public class GeneralHighlightingPassCacheTest extends LightCodeInsightFixtureTestCase {
+  private final CountingAnnotator myAnnotator = new CountingAnnotator();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    LanguageAnnotators.INSTANCE.addExplicitExtension(JavaLanguage.INSTANCE, myAnnotator);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    LanguageAnnotators.INSTANCE.removeExplicitExtension(JavaLanguage.INSTANCE, myAnnotator);
+    super.tearDown();
+  }
+
+  public void testResultsAreReplayedUntilPsiChanges() throws Exception {
+    myFixture.configureByText("a.java", "class A {\n  void foo() {\n  }\n  void bar() {<caret>\n  }\n}");
+
+    assertEquals(2, getMethodInfos(collectInformation()).size());
+    assertEquals(2, myAnnotator.myMethodCount.get());
+
+    assertEquals(2, getMethodInfos(collectInformation()).size());
+    assertEquals("the second run over the same PSI replays the results", 2, myAnnotator.myMethodCount.get());
+
+    myFixture.type(' ');
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    assertEquals(2, getMethodInfos(collectInformation()).size());
+    assertEquals(4, myAnnotator.myMethodCount.get());
+  }
+
+  public void testResultsAreDroppedOnRestart() throws Exception {
+    myFixture.configureByText("a.java", "class A {\n  void foo() {\n  }\n}");
+
+    collectInformation();
+    assertEquals(1, myAnnotator.myMethodCount.get());
+
+    DaemonCodeAnalyzer.getInstance(getProject()).restart();
+    assertEquals(1, getMethodInfos(collectInformation()).size());
+    assertEquals(2, myAnnotator.myMethodCount.get());
+  }
+
+  public void testResultsAreDroppedWhenPassIsApplied() throws Exception {
+    myFixture.configureByText("a.java", "class A {\n  void foo() {\n  }\n}");
+
+    collectInformation().applyInformationToEditor();
+    assertEquals(1, myAnnotator.myMethodCount.get());
+
+    collectInformation();
+    assertEquals(2, myAnnotator.myMethodCount.get());
+  }
+
+  @NotNull
+  private GeneralHighlightingPass collectInformation() {
+    final Document document = myFixture.getEditor().getDocument();
+    final GeneralHighlightingPass pass = new GeneralHighlightingPass(getProject(), myFixture.getFile(), document, 0, document.getTextLength(), true,
+                                                                     new ProperTextRange(0, document.getTextLength()), myFixture.getEditor());
+    pass.collectInformation(new DaemonProgressIndicator());
+    return pass;
+  }
+
+  @NotNull
+  private static List<HighlightInfo> getMethodInfos(@NotNull GeneralHighlightingPass pass) {
+    final List<HighlightInfo> result = new ArrayList<HighlightInfo>();
+    for (HighlightInfo info : pass.getInfos()) {
+      if (CountingAnnotator.MESSAGE.equals(info.description)) {
+        result.add(info);
+      }
+    }
+    return result;
+  }
+
+  private static class CountingAnnotator implements Annotator {
+    private static final String MESSAGE = "method";
+    private final AtomicInteger myMethodCount = new AtomicInteger();
+
+    @Override
+    public void annotate(@NotNull PsiElement element, @NotNull AnnotationHolder holder) {
+      if (element instanceof PsiMethod) {
+        myMethodCount.incrementAndGet();
+        holder.createWarningAnnotation(element, MESSAGE);
+      }
+    }
+  }
+}
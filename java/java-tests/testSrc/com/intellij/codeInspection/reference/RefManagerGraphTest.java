@@ -0,0 +1,144 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection.reference;
+
+import com.intellij.JavaTestUtil;
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.deadCode.UnusedDeclarationInspection;
+import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.InspectionTestCase;
+import com.intellij.testFramework.InspectionTestUtil;
+import com.intellij.testFramework.fixtures.impl.CodeInsightTestFixtureImpl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the graph of in and out references kept by RefManagerImpl as arrays of element ids
+ */
+public class RefManagerGraphTest extends InspectionTestCase {
+  @Override
+  protected String getTestDataPath() {
+    return JavaTestUtil.getJavaTestDataPath() + "/inspection";
+  }
+
+  public void testReferences() throws Exception {
+    final UnusedDeclarationInspection tool = new UnusedDeclarationInspection();
+    runTool(getTestDataPath() + "/refGraph", "java 1.4", tool);
+    final RefManagerImpl refManager = (RefManagerImpl)tool.getRefManager();
+
+    final PsiClass mainClass = findClass("Main");
+    final PsiClass helperClass = findClass("Helper");
+    final RefElement main = refManager.getReference(mainClass.findMethodsByName("main", false)[0]);
+    final RefElement helper = refManager.getReference(helperClass);
+    final RefElement run = refManager.getReference(helperClass.findMethodsByName("run", false)[0]);
+    final RefElement unused = refManager.getReference(helperClass.findMethodsByName("unused", false)[0]);
+    final RefElement count = refManager.getReference(helperClass.findFieldByName("myCount", false));
+
+    assertTrue(main.getOutReferences().contains(helper));
+    assertTrue(main.getOutReferences().contains(run));
+    assertTrue(helper.getInReferences().contains(main));
+    assertTrue(run.getInReferences().contains(main));
+    assertTrue(run.getOutReferences().contains(count));
+    assertSame(run, assertOneElement(count.getInReferences()));
+    assertTrue(count.isReferenced());
+    assertFalse(unused.isReferenced());
+    assertEmpty(unused.getInReferences());
+    assertFalse(main.getInReferences().contains(run));
+
+    assertTrue(refManager.getRegisteredElementCount() > 0);
+    refManager.cleanup();
+    assertEquals(0, refManager.getRegisteredElementCount());
+    assertNull(refManager.getElementById(0));
+  }
+
+  public void testReferenceGraphHeapPerformance() throws Exception {
+    final int classCount = 300;
+    final int methodCount = 10;
+    final int callsPerMethod = 5;
+    final File dir = createTempDirectory();
+    for (int i = 0; i < classCount; i++) {
+      final StringBuilder text = new StringBuilder("public class C" + i + " {\n");
+      for (int j = 0; j < methodCount; j++) {
+        text.append("  public static void m").append(j).append("() {\n");
+        for (int k = 1; k <= callsPerMethod; k++) {
+          text.append("    C").append((i + k) % classCount).append(".m").append(j).append("();\n");
+        }
+        text.append("  }\n");
+      }
+      FileUtil.writeToFile(new File(dir, "src/C" + i + ".java"), text.append("}\n").toString());
+    }
+
+    final VirtualFile[] sourceDir = new VirtualFile[1];
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        setupRootModel(dir.getPath(), sourceDir, "java 1.4");
+      }
+    });
+    // the graph is measured without the PSI it refers to
+    final List<PsiFile> files = new ArrayList<PsiFile>();
+    for (VirtualFile file : sourceDir[0].getChildren()) {
+      final PsiFile psiFile = getPsiManager().findFile(file);
+      assertNotNull(psiFile);
+      psiFile.getNode();
+      files.add(psiFile);
+    }
+    final long before = getUsedMemory();
+
+    final UnusedDeclarationInspection tool = new UnusedDeclarationInspection();
+    final AnalysisScope scope = createAnalysisScope(sourceDir[0].getParent());
+    final InspectionManagerEx inspectionManager = getManager();
+    final GlobalInspectionContextImpl context =
+      CodeInsightTestFixtureImpl.createGlobalContextForTool(scope, getProject(), inspectionManager, tool);
+    InspectionTestUtil.runTool(tool, scope, context, inspectionManager);
+
+    final int[] edges = {0};
+    tool.getRefManager().iterate(new RefVisitor() {
+      @Override
+      public void visitElement(RefEntity elem) {
+        if (elem instanceof RefElement) {
+          edges[0] += ((RefElement)elem).getOutReferences().size();
+        }
+      }
+    });
+    final long graphSize = getUsedMemory() - before;
+    assertEquals(classCount * methodCount * callsPerMethod, edges[0]);
+    assertTrue("The graph of " + files.size() + " files takes " + graphSize + " bytes, " + graphSize / edges[0] + " per reference edge",
+               graphSize / edges[0] < 1024);
+  }
+
+  private PsiClass findClass(String name) {
+    final PsiClass psiClass = JavaPsiFacade.getInstance(getProject()).findClass(name, GlobalSearchScope.projectScope(getProject()));
+    assertNotNull(psiClass);
+    return psiClass;
+  }
+
+  private static long getUsedMemory() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
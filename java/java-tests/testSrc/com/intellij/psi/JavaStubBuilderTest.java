@@ -18,19 +18,22 @@ package com.intellij.psi;
 import com.intellij.lang.FileASTNode;
 import com.intellij.openapi.application.ex.PathManagerEx;
 import com.intellij.openapi.roots.LanguageLevelProjectExtension;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.pom.java.LanguageLevel;
 import com.intellij.psi.impl.DebugUtil;
 import com.intellij.psi.impl.source.JavaLightStubBuilder;
-import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.*;
 import com.intellij.testFramework.LightIdeaTestCase;
 import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.util.ThrowableRunnable;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.security.SecureRandom;
+import java.util.List;
 
 
 public class JavaStubBuilderTest extends LightIdeaTestCase {
@@ -364,6 +367,32 @@ public class JavaStubBuilderTest extends LightIdeaTestCase {
     }).cpuBound().assertTiming();
   }
 
+  public void testPartialDeserialization() {
+    final PsiJavaFile file = (PsiJavaFile)createLightFile("test.java", "class A { void m() { } class B { int f; } }\n class C { }");
+    final StubElement root = NEW_BUILDER.buildStubTree(file);
+    final List<StubElement<?>> stubs = new StubTree((PsiFileStub)root, false).getPlainList();
+
+    final BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    final TIntArrayList offsets = new TIntArrayList();
+    final TIntArrayList parents = new TIntArrayList();
+    SerializationManager.getInstance().serialize(root, bytes, offsets, parents);
+    final SerializedStubTree serializedTree = new SerializedStubTree(bytes.getInternalBuffer(), bytes.size(), null, offsets, parents);
+    assertEquals(stubs.size(), serializedTree.getStubCount());
+
+    for (int i = 0; i < stubs.size(); i++) {
+      StubElement expected = stubs.get(i);
+      StubElement actual = serializedTree.getStub(i);
+      while (expected != null) {
+        assertNotNull(actual);
+        assertEquals(expected.toString(), actual.toString());
+        expected = expected.getParentStub();
+        actual = actual.getParentStub();
+      }
+      assertNull(actual);
+    }
+    assertNull(serializedTree.getStub(stubs.size()));
+  }
+
   private static void doTest(@NonNls final String source, @NonNls @Nullable final String tree) {
     final PsiJavaFile file = (PsiJavaFile)createLightFile("test.java", source);
     final FileASTNode fileNode = file.getNode();
@@ -9,6 +9,9 @@ public interface GlobalOptions {
   String USE_EXTERNAL_JAVAC_OPTION = "use.external.javac.process";
   String HOSTNAME_OPTION = "localhost.name";
   String PING_INTERVAL_MS_OPTION = "server.ping.interval";
+  String MESSAGE_FLUSH_INTERVAL_MS_OPTION = "server.message.flush.interval";
   String GENERATE_CLASSPATH_INDEX_OPTION = "generate.classpath.index";
   String MAX_SIMULTANEOUS_BUILDS_OPTION = "max.simultaneous.builds";
+  String BUILD_TRACE_OPTION = "compile.server.build.trace";
+  String OUTPUT_CACHE_OPTION = "compile.server.output.cache";
 }
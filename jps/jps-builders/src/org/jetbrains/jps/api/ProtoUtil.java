@@ -193,15 +193,34 @@ public class ProtoUtil {
       builder.setCompletionStatus(status);
     }
     if (generatedPaths != null) {
+      String previousRoot = null;
       for (Pair<String, String> pair : generatedPaths) {
         final JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile.Builder fileBuilder = JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile.newBuilder();
-        final JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile generatedFile = fileBuilder.setOutputRoot(pair.first).setRelativePath(pair.second).build();
+        // the output root is sent only when it differs from the root of the previous file, see getGeneratedFiles()
+        final String root = pair.first.equals(previousRoot) ? "" : pair.first;
+        final JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile generatedFile = fileBuilder.setOutputRoot(root).setRelativePath(pair.second).build();
         builder.addGeneratedFiles(generatedFile);
+        previousRoot = pair.first;
       }
     }
     return JpsRemoteProto.Message.Response.newBuilder().setResponseType(JpsRemoteProto.Message.Response.Type.BUILD_EVENT).setBuildEvent(builder.build()).build();
   }
 
+  /**
+   * @return (output root, relative path) pairs of the files reported by a FILES_GENERATED event
+   */
+  public static List<Pair<String, String>> getGeneratedFiles(JpsRemoteProto.Message.Response.BuildEvent event) {
+    final List<Pair<String, String>> result = new ArrayList<Pair<String, String>>(event.getGeneratedFilesCount());
+    String root = "";
+    for (JpsRemoteProto.Message.Response.BuildEvent.GeneratedFile generatedFile : event.getGeneratedFilesList()) {
+      if (generatedFile.getOutputRoot().length() > 0) {
+        root = generatedFile.getOutputRoot();
+      }
+      result.add(Pair.create(root, generatedFile.getRelativePath()));
+    }
+    return result;
+  }
+
   public static JpsRemoteProto.Message.Response createCompileProgressMessageResponse(String text, float done) {
     return createCompileMessageResponse(BuildMessage.Kind.PROGRESS, text, null, -1L, -1L, -1L, -1, -1, done);
   }
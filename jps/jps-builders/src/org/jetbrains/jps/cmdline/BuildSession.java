@@ -12,6 +12,7 @@ import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.Channels;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.Library;
 import org.jetbrains.jps.Module;
 import org.jetbrains.jps.Project;
@@ -97,6 +98,7 @@ final class BuildSession implements Runnable, CanceledStatus {
     Throwable error = null;
     final Ref<Boolean> hasErrors = new Ref<Boolean>(false);
     final Ref<Boolean> markedFilesUptodate = new Ref<Boolean>(false);
+    final Ref<String> traceSummary = new Ref<String>(null);
     try {
       runBuild(myProjectPath, myBuildType, myModules, myArtifacts, myBuilderParams, myFilePaths, new MessageHandler() {
         public void processMessage(BuildMessage buildMessage) {
@@ -105,6 +107,10 @@ final class BuildSession implements Runnable, CanceledStatus {
             final Collection<Pair<String, String>> paths = ((FileGeneratedEvent)buildMessage).getPaths();
             response = !paths.isEmpty() ? CmdlineProtoUtil.createFileGeneratedEvent(paths) : null;
           }
+          else if (buildMessage instanceof BuildTraceSummaryEvent) {
+            traceSummary.set(buildMessage.getMessageText());
+            response = null;
+          }
           else if (buildMessage instanceof UptoDateFilesSavedEvent) {
             markedFilesUptodate.set(true);
             response = null;
@@ -141,7 +147,7 @@ final class BuildSession implements Runnable, CanceledStatus {
       error = e;
     }
     finally {
-      finishBuild(error, hasErrors.get(), markedFilesUptodate.get());
+      finishBuild(error, hasErrors.get(), markedFilesUptodate.get(), traceSummary.get());
     }
   }
 
@@ -238,7 +244,7 @@ final class BuildSession implements Runnable, CanceledStatus {
     }
   }
 
-  private void finishBuild(Throwable error, boolean hadBuildErrors, boolean markedUptodateFiles) {
+  private void finishBuild(Throwable error, boolean hadBuildErrors, boolean markedUptodateFiles, @Nullable String traceSummary) {
     CmdlineRemoteProto.Message lastMessage = null;
     try {
       if (error != null) {
@@ -268,7 +274,7 @@ final class BuildSession implements Runnable, CanceledStatus {
         else if (!markedUptodateFiles){
           status = CmdlineRemoteProto.Message.BuilderMessage.BuildEvent.Status.UP_TO_DATE;
         }
-        lastMessage = CmdlineProtoUtil.toMessage(mySessionId, CmdlineProtoUtil.createBuildCompletedEvent("build completed", status));
+        lastMessage = CmdlineProtoUtil.toMessage(mySessionId, CmdlineProtoUtil.createBuildCompletedEvent(traceSummary != null ? "build completed\n" + traceSummary : "build completed", status));
       }
     }
     catch (Throwable e) {
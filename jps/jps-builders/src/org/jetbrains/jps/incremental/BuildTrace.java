@@ -0,0 +1,264 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolder;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Records how long the build spends in each builder, chunk and storage operation. Spans are kept in memory during the build and are
+ * written to a compact binary trace file afterwards; {@link #exportToChromeTrace} converts the file to the JSON format understood by
+ * chrome://tracing and flame chart viewers:
+ * <pre>
+ *   java -cp jps-builders.jar:util.jar:trove4j.jar org.jetbrains.jps.incremental.BuildTrace build.trace build.json
+ * </pre>
+ * Aggregated times which would produce too many spans (e.g. analysis of each class file) are recorded with {@link #addTime}
+ * and only appear in the {@link #getSummary() summary}.
+ */
+public class BuildTrace {
+  public static final Key<BuildTrace> KEY = Key.create("_build_trace_");
+  public static final BuildTrace DISABLED = new BuildTrace(false);
+  private static final int FORMAT_VERSION = 1;
+  private static final int SUMMARY_ROWS = 15;
+  private static final Span NULL_SPAN = DISABLED.new Span("", "");
+
+  private final boolean myEnabled;
+  private final long myStartNanos = System.nanoTime();
+  private final List<Event> myEvents = new ArrayList<Event>();
+  private final Map<String, long[]> myTotals = new HashMap<String, long[]>(); // "category: name" -> {nanos, count}
+
+  public BuildTrace() {
+    this(true);
+  }
+
+  private BuildTrace(boolean enabled) {
+    myEnabled = enabled;
+  }
+
+  @NotNull
+  public static BuildTrace get(@Nullable UserDataHolder context) {
+    final BuildTrace trace = context != null ? KEY.get(context) : null;
+    return trace != null ? trace : DISABLED;
+  }
+
+  public boolean isEnabled() {
+    return myEnabled;
+  }
+
+  /**
+   * Usage:
+   * <pre>
+   *   final BuildTrace.Span span = trace.start("builder", builder.getName());
+   *   try { ... } finally { span.finish(); }
+   * </pre>
+   */
+  @NotNull
+  public Span start(@NotNull String category, @NotNull String name) {
+    return myEnabled ? new Span(category, name) : NULL_SPAN;
+  }
+
+  public void addTime(@NotNull String category, @NotNull String name, long nanos) {
+    if (myEnabled) {
+      synchronized (myEvents) {
+        addTotal(category, name, nanos);
+      }
+    }
+  }
+
+  private void addTotal(String category, String name, long nanos) {
+    final String key = category + ": " + name;
+    long[] total = myTotals.get(key);
+    if (total == null) {
+      total = new long[2];
+      myTotals.put(key, total);
+    }
+    total[0] += nanos;
+    total[1]++;
+  }
+
+  /**
+   * @return a table of the most expensive operations, times of nested spans are included in the enclosing ones
+   */
+  @NotNull
+  public String getSummary() {
+    final List<Map.Entry<String, long[]>> rows;
+    synchronized (myEvents) {
+      rows = new ArrayList<Map.Entry<String, long[]>>(myTotals.entrySet());
+    }
+    Collections.sort(rows, new Comparator<Map.Entry<String, long[]>>() {
+      @Override
+      public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+        final long t1 = o1.getValue()[0];
+        final long t2 = o2.getValue()[0];
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    final StringBuilder buf = new StringBuilder();
+    buf.append("Build time: ").append((System.nanoTime() - myStartNanos) / 1000000).append("ms");
+    for (Map.Entry<String, long[]> row : rows.subList(0, Math.min(rows.size(), SUMMARY_ROWS))) {
+      buf.append('\n').append(String.format("%10dms %6dx  %s", row.getValue()[0] / 1000000, row.getValue()[1], row.getKey()));
+    }
+    return buf.toString();
+  }
+
+  public void save(@NotNull File traceFile) throws IOException {
+    final List<Event> events;
+    synchronized (myEvents) {
+      events = new ArrayList<Event>(myEvents);
+    }
+    final TObjectIntHashMap<String> stringIds = new TObjectIntHashMap<String>();
+    final List<String> strings = new ArrayList<String>();
+    for (Event event : events) {
+      for (String s : new String[]{event.myCategory, event.myName, event.myThread}) {
+        if (!stringIds.containsKey(s)) {
+          stringIds.put(s, strings.size());
+          strings.add(s);
+        }
+      }
+    }
+
+    FileUtil.createParentDirs(traceFile);
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(traceFile)));
+    try {
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(strings.size());
+      for (String s : strings) {
+        out.writeUTF(s);
+      }
+      out.writeInt(events.size());
+      for (Event event : events) {
+        out.writeInt(stringIds.get(event.myCategory));
+        out.writeInt(stringIds.get(event.myName));
+        out.writeInt(stringIds.get(event.myThread));
+        out.writeLong(event.myStartMicros);
+        out.writeLong(event.myDurationMicros);
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Converts a file written by {@link #save} to the Chrome trace event format
+   */
+  public static void exportToChromeTrace(@NotNull File traceFile, @NotNull File jsonFile) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(traceFile)));
+    try {
+      if (in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Unsupported trace format: " + traceFile);
+      }
+      final String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+      final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8"));
+      try {
+        out.write("{\"traceEvents\":[");
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          final String category = strings[in.readInt()];
+          final String name = strings[in.readInt()];
+          final String thread = strings[in.readInt()];
+          final long start = in.readLong();
+          final long duration = in.readLong();
+          if (i > 0) {
+            out.write(",");
+          }
+          out.write("\n{\"name\":" + quote(name) + ",\"cat\":" + quote(category) + ",\"ph\":\"X\",\"pid\":1,\"tid\":" + quote(thread) +
+                    ",\"ts\":" + start + ",\"dur\":" + duration + "}");
+        }
+        out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+      }
+      finally {
+        out.close();
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static String quote(String s) {
+    final StringBuilder buf = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      }
+      else if (c < ' ') {
+        buf.append(String.format("\\u%04x", (int)c));
+      }
+      else {
+        buf.append(c);
+      }
+    }
+    return buf.append('"').toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: BuildTrace <trace file> <output json file>");
+      System.exit(1);
+    }
+    exportToChromeTrace(new File(args[0]), new File(args[1]));
+  }
+
+  public class Span {
+    private final String myCategory;
+    private final String myName;
+    private final long myStart = System.nanoTime();
+
+    private Span(String category, String name) {
+      myCategory = category;
+      myName = name;
+    }
+
+    public void finish() {
+      if (!myEnabled) return;
+      final long end = System.nanoTime();
+      final Event event = new Event(myCategory, myName, Thread.currentThread().getName(),
+                                    (myStart - myStartNanos) / 1000, (end - myStart) / 1000);
+      synchronized (myEvents) {
+        myEvents.add(event);
+        addTotal(myCategory, myName, end - myStart);
+      }
+    }
+  }
+
+  private static class Event {
+    private final String myCategory;
+    private final String myName;
+    private final String myThread;
+    private final long myStartMicros;
+    private final long myDurationMicros;
+
+    private Event(String category, String name, String thread, long startMicros, long durationMicros) {
+      myCategory = category;
+      myName = name;
+      myThread = thread;
+      myStartMicros = startMicros;
+      myDurationMicros = durationMicros;
+    }
+  }
+}
@@ -122,10 +122,44 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
   }
 
   public void markDirtyRecursively(ModuleChunk chunk) throws IOException {
+    markDirtyRecursively(chunk, true);
+  }
+
+  /**
+   * @param withDependents false if only the chunk itself should be rebuilt non-incrementally, e.g. when its ABI hasn't changed
+   */
+  void markDirtyRecursively(ModuleChunk chunk, boolean withDependents) throws IOException {
     final Set<Module> modules = chunk.getModules();
     final Set<Module> dirtyModules = new HashSet<Module>(modules);
 
-    // now mark all modules that depend on dirty modules
+    if (withDependents) {
+      // now mark all modules that depend on dirty modules
+      for (ModuleChunk dependent : getDependentChunks(chunk)) {
+        dirtyModules.addAll(dependent.getModules());
+      }
+    }
+
+    for (Module module : dirtyModules) {
+      markDirtyFiles(module, myTimestamps, true, isCompilingTests()? DirtyMarkScope.TESTS : DirtyMarkScope.BOTH, null);
+    }
+
+    if (isMake()) {
+      // mark as non-incremental only the module that triggered non-incremental change
+      for (Module module : modules) {
+        if (!isCompilingTests()) {
+          myNonIncrementalModules.add(new Pair<Module, DirtyMarkScope>(module, DirtyMarkScope.PRODUCTION));
+        }
+        myNonIncrementalModules.add(new Pair<Module, DirtyMarkScope>(module, DirtyMarkScope.TESTS));
+      }
+    }
+  }
+
+  /**
+   * @return chunks built after the given one in the current round which depend on it
+   */
+  List<ModuleChunk> getDependentChunks(ModuleChunk chunk) {
+    final List<ModuleChunk> result = new ArrayList<ModuleChunk>();
+    final Set<Module> modules = chunk.getModules();
     final ClasspathKind classpathKind = ClasspathKind.compile(isCompilingTests());
     final ProjectChunks chunks = isCompilingTests()? myTestChunks : myProductionChunks;
     boolean found = false;
@@ -139,26 +173,30 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
         for (final Module module : moduleChunk.getModules()) {
           final Set<Module> deps = getDependentModulesRecursively(module, classpathKind);
           if (Utils.intersects(deps, modules)) {
-            dirtyModules.addAll(moduleChunk.getModules());
+            result.add(moduleChunk);
             break;
           }
         }
       }
     }
+    return result;
+  }
 
-    for (Module module : dirtyModules) {
-      markDirtyFiles(module, myTimestamps, true, isCompilingTests()? DirtyMarkScope.TESTS : DirtyMarkScope.BOTH, null);
-    }
-
-    if (isMake()) {
-      // mark as non-incremental only the module that triggered non-incremental change
-      for (Module module : modules) {
-        if (!isCompilingTests()) {
-          myNonIncrementalModules.add(new Pair<Module, DirtyMarkScope>(module, DirtyMarkScope.PRODUCTION));
+  /**
+   * @return number of chunks in the current round containing at least one of the modules
+   */
+  int countChunks(Collection<String> moduleNames) {
+    int count = 0;
+    final ProjectChunks chunks = isCompilingTests()? myTestChunks : myProductionChunks;
+    for (ModuleChunk chunk : chunks.getChunkList()) {
+      for (Module module : chunk.getModules()) {
+        if (moduleNames.contains(module.getName())) {
+          count++;
+          break;
         }
-        myNonIncrementalModules.add(new Pair<Module, DirtyMarkScope>(module, DirtyMarkScope.TESTS));
       }
     }
+    return count;
   }
 
   private static Set<Module> getDependentModulesRecursively(final Module module, final ClasspathKind kind) {
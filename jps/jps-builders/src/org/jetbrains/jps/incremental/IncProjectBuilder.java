@@ -17,6 +17,7 @@ import org.jetbrains.jps.incremental.java.ExternalJavacDescriptor;
 import org.jetbrains.jps.incremental.java.JavaBuilder;
 import org.jetbrains.jps.incremental.java.JavaBuilderLogger;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.incremental.messages.BuildTraceSummaryEvent;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.messages.ProgressMessage;
 import org.jetbrains.jps.incremental.storage.BuildDataManager;
@@ -44,6 +45,8 @@ public class IncProjectBuilder {
   public static final String COMPILE_SERVER_NAME = "COMPILE SERVER";
   private static final String CLASSPATH_INDEX_FINE_NAME = "classpath.index";
   private static final boolean GENERATE_CLASSPATH_INDEX = "true".equals(System.getProperty(GlobalOptions.GENERATE_CLASSPATH_INDEX_OPTION));
+  private static final boolean BUILD_TRACE_ENABLED = "true".equals(System.getProperty(GlobalOptions.BUILD_TRACE_OPTION));
+  private static final String BUILD_TRACE_FILE_NAME = "build.trace";
 
   private final ProjectDescriptor myProjectDescriptor;
   private final BuilderRegistry myBuilderRegistry;
@@ -96,8 +99,11 @@ public class IncProjectBuilder {
       }
     });
     CompileContext context = null;
+    final BuildTrace trace = BUILD_TRACE_ENABLED ? new BuildTrace() : BuildTrace.DISABLED;
+    final BuildTrace.Span buildSpan = trace.start("build", isProjectRebuild ? "rebuild" : isMake ? "make" : "forced compilation");
     try {
       context = createContext(scope, isMake, isProjectRebuild);
+      BuildTrace.KEY.set(context, trace);
       runBuild(context, forceCleanCaches);
       myProjectDescriptor.dataManager.saveVersion();
     }
@@ -125,7 +131,13 @@ public class IncProjectBuilder {
     }
     finally {
       memWatcher.stop();
-      flushContext(context);
+      final BuildTrace.Span flushSpan = trace.start("storage", "flush caches");
+      try {
+        flushContext(context);
+      }
+      finally {
+        flushSpan.finish();
+      }
       // wait for the async tasks
       for (Future task : myAsyncTasks) {
         try {
@@ -135,9 +147,26 @@ public class IncProjectBuilder {
           LOG.info(th);
         }
       }
+      buildSpan.finish();
+      if (trace.isEnabled()) {
+        saveTrace(trace);
+      }
     }
   }
 
+  private void saveTrace(BuildTrace trace) {
+    final File traceFile = new File(myProjectDescriptor.dataManager.getDataStorageRoot(), BUILD_TRACE_FILE_NAME);
+    try {
+      trace.save(traceFile);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot save build trace to " + traceFile.getPath(), e);
+    }
+    final String summary = trace.getSummary();
+    LOG.info(summary);
+    myMessageDispatcher.processMessage(new BuildTraceSummaryEvent(summary));
+  }
+
   private static void flushContext(CompileContext context) {
     if (context != null) {
       context.getTimestamps().force();
@@ -278,8 +307,15 @@ public class IncProjectBuilder {
   }
 
   private static void runTasks(CompileContext context, final List<BuildTask> tasks) throws ProjectBuildException {
+    final BuildTrace trace = BuildTrace.get(context);
     for (BuildTask task : tasks) {
-      task.build(context);
+      final BuildTrace.Span span = trace.start("task", task.getClass().getSimpleName());
+      try {
+        task.build(context);
+      }
+      finally {
+        span.finish();
+      }
     }
   }
 
@@ -297,9 +333,17 @@ public class IncProjectBuilder {
   }
 
   private void buildChunk(CompileContext context, final ModuleChunk chunk) throws ProjectBuildException {
+    final BuildTrace trace = BuildTrace.get(context);
+    final BuildTrace.Span chunkSpan = trace.start(context.isCompilingTests() ? "test chunk" : "chunk", chunk.getName());
     boolean doneSomething = false;
     try {
-      context.ensureFSStateInitialized(chunk);
+      final BuildTrace.Span fsSpan = trace.start("fs", "scan sources");
+      try {
+        context.ensureFSStateInitialized(chunk);
+      }
+      finally {
+        fsSpan.finish();
+      }
       if (context.isMake()) {
         processDeletedPaths(context, chunk);
         doneSomething |= context.hasRemovedSources();
@@ -324,6 +368,7 @@ public class IncProjectBuilder {
         }
       }
       finally {
+        final BuildTrace.Span storageSpan = trace.start("storage", "save chunk state");
         try {
           context.onChunkBuildComplete(chunk);
         }
@@ -331,6 +376,8 @@ public class IncProjectBuilder {
           throw new ProjectBuildException(e);
         }
         finally {
+          storageSpan.finish();
+          chunkSpan.finish();
           Utils.CHUNK_REMOVED_SOURCES_KEY.set(context, null);
           if (doneSomething && GENERATE_CLASSPATH_INDEX) {
             final boolean forTests = context.isCompilingTests();
@@ -468,7 +515,13 @@ public class IncProjectBuilder {
       context.beforeCompileRound(chunk);
 
       if (!context.isProjectRebuild()) {
-        syncOutputFiles(context, chunk);
+        final BuildTrace.Span syncSpan = BuildTrace.get(context).start("storage", "delete outdated outputs");
+        try {
+          syncOutputFiles(context, chunk);
+        }
+        finally {
+          syncSpan.finish();
+        }
       }
 
       BUILDER_CATEGORY_LOOP:
@@ -482,7 +535,14 @@ public class IncProjectBuilder {
           if (context.isMake()) {
             processDeletedPaths(context, chunk);
           }
-          final ModuleLevelBuilder.ExitCode buildResult = builder.build(context, chunk);
+          final BuildTrace.Span builderSpan = BuildTrace.get(context).start("builder", builder.getName());
+          final ModuleLevelBuilder.ExitCode buildResult;
+          try {
+            buildResult = builder.build(context, chunk);
+          }
+          finally {
+            builderSpan.finish();
+          }
 
           doneSomething |= (buildResult != ModuleLevelBuilder.ExitCode.NOTHING_DONE);
 
@@ -535,8 +595,15 @@ public class IncProjectBuilder {
   }
 
   private void runProjectLevelBuilders(CompileContext context) throws ProjectBuildException {
+    final BuildTrace trace = BuildTrace.get(context);
     for (ProjectLevelBuilder builder : myBuilderRegistry.getProjectLevelBuilders()) {
-      builder.build(context);
+      final BuildTrace.Span span = trace.start("project builder", builder.getName());
+      try {
+        builder.build(context);
+      }
+      finally {
+        span.finish();
+      }
       context.checkCanceled();
     }
   }
@@ -108,6 +108,14 @@ public abstract class ModuleLevelBuilder extends Builder {
           LOG.info(infoMessage);
           context.processMessage(new ProgressMessage(infoMessage));
 
+          if (!newlyAffectedFiles.isEmpty() && !globalMappings.isAbiChanged(delta, removedPaths)) {
+            // changes in method bodies and private members cannot affect classes outside the chunk
+            final Set<String> skippedModules = removeFilesOfOtherChunks(context, chunk, newlyAffectedFiles);
+            if (!skippedModules.isEmpty()) {
+              reportSkippedChunks(context, chunk, context.countChunks(skippedModules));
+            }
+          }
+
           if (!newlyAffectedFiles.isEmpty()) {
 
             if (LOG.isDebugEnabled()) {
@@ -128,12 +136,20 @@ public abstract class ModuleLevelBuilder extends Builder {
           }
         }
         else {
-          final String messageText = "Marking " + chunk.getName() + " and direct dependants for recompilation";
-          LOG.info("Non-incremental mode: " + messageText);
-          context.processMessage(new ProgressMessage(messageText));
-
           additionalPassRequired = context.isMake();
-          context.markDirtyRecursively(chunk);
+          if (globalMappings.isAbiChanged(delta, removedPaths)) {
+            final String messageText = "Marking " + chunk.getName() + " and direct dependants for recompilation";
+            LOG.info("Non-incremental mode: " + messageText);
+            context.processMessage(new ProgressMessage(messageText));
+            context.markDirtyRecursively(chunk);
+          }
+          else {
+            final String messageText = "Marking " + chunk.getName() + " for recompilation";
+            LOG.info("Non-incremental mode: " + messageText);
+            context.processMessage(new ProgressMessage(messageText));
+            context.markDirtyRecursively(chunk, false);
+            reportSkippedChunks(context, chunk, context.getDependentChunks(chunk).size());
+          }
         }
       }
 
@@ -169,6 +185,33 @@ public abstract class ModuleLevelBuilder extends Builder {
     return result;
   }
 
+  /**
+   * @return names of the modules the removed files belong to
+   */
+  private static Set<String> removeFilesOfOtherChunks(CompileContext context, ModuleChunk chunk, Set<File> affected) {
+    final Set<String> chunkModules = new HashSet<String>();
+    for (Module module : chunk.getModules()) {
+      chunkModules.add(module.getName());
+    }
+    final Set<String> otherModules = new HashSet<String>();
+    for (Iterator<File> it = affected.iterator(); it.hasNext(); ) {
+      final RootDescriptor moduleAndRoot = context.getModuleAndRoot(it.next());
+      if (moduleAndRoot != null && !chunkModules.contains(moduleAndRoot.module)) {
+        otherModules.add(moduleAndRoot.module);
+        it.remove();
+      }
+    }
+    return otherModules;
+  }
+
+  private static void reportSkippedChunks(CompileContext context, ModuleChunk chunk, int count) {
+    if (count > 0) {
+      final String message = "ABI of " + chunk.getName() + " is unchanged, skipped recompilation of " + count + " dependent chunk(s)";
+      LOG.info(message);
+      context.processMessage(new ProgressMessage(message));
+    }
+  }
+
   private static boolean chunkContainsAffectedFiles(CompileContext context, ModuleChunk chunk, final Set<File> affected) throws IOException {
     final Set<String> chunkModules = new HashSet<String>();
     for (Module module : chunk.getModules()) {
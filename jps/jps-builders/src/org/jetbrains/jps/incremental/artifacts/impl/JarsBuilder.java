@@ -26,14 +26,16 @@ import com.intellij.util.graph.CachingSemiGraph;
 import com.intellij.util.graph.DFSTBuilder;
 import com.intellij.util.graph.GraphGenerator;
 import com.intellij.util.io.ZipUtil;
+import com.intellij.util.io.zip.JBZipEntry;
+import com.intellij.util.io.zip.JBZipFile;
 import gnu.trove.THashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.PathUtil;
+import org.jetbrains.jps.api.SharedThreadPool;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.ProjectBuildException;
-import org.jetbrains.jps.incremental.artifacts.ArtifactBuilderLogger;
 import org.jetbrains.jps.incremental.artifacts.ArtifactOutputToSourceMapping;
 import org.jetbrains.jps.incremental.artifacts.ArtifactSourceToOutputMapping;
 import org.jetbrains.jps.incremental.artifacts.IncArtifactBuilder;
@@ -44,6 +46,9 @@ import org.jetbrains.jps.incremental.messages.ProgressMessage;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -61,11 +66,18 @@ public class JarsBuilder {
   private final ArtifactSourceToOutputMapping mySrcOutMapping;
   private final ArtifactOutputToSourceMapping myOutSrcMapping;
   private final ArtifactInstructionsBuilder myInstructions;
+  @Nullable private final Set<String> myChangedSourcePaths;
 
+  /**
+   * @param changedSourcePaths system-independent paths of source files changed since the previous build; if specified, an existing
+   * archive is patched instead of being rebuilt from scratch: only entries produced from changed files are rewritten
+   */
   public JarsBuilder(Set<JarInfo> jarsToBuild,
                      CompileContext context,
                      ArtifactSourceToOutputMapping srcOutMapping,
-                     ArtifactOutputToSourceMapping outSrcMapping, ArtifactInstructionsBuilder instructions) {
+                     ArtifactOutputToSourceMapping outSrcMapping, ArtifactInstructionsBuilder instructions,
+                     @Nullable Set<String> changedSourcePaths) {
+    myChangedSourcePaths = changedSourcePaths;
     mySrcOutMapping = srcOutMapping;
     myOutSrcMapping = outSrcMapping;
     myInstructions = instructions;
@@ -85,11 +97,10 @@ public class JarsBuilder {
       return false;
     }
 
-    myBuiltJars = new HashMap<JarInfo, File>();
+    myBuiltJars = Collections.synchronizedMap(new HashMap<JarInfo, File>());
     try {
-      for (JarInfo jar : sortedJars) {
-        myContext.checkCanceled();
-        buildJar(jar);
+      for (List<JarInfo> jars : groupByNestingLevel(sortedJars)) {
+        buildJars(jars);
       }
 
       myContext.processMessage(new ProgressMessage("Copying archives..."));
@@ -103,6 +114,66 @@ public class JarsBuilder {
     return true;
   }
 
+  /**
+   * Archives of the same level don't include each other, so they may be built concurrently
+   */
+  private static List<List<JarInfo>> groupByNestingLevel(JarInfo[] sortedJars) {
+    final Map<JarInfo, Integer> levels = new HashMap<JarInfo, Integer>();
+    final List<List<JarInfo>> result = new ArrayList<List<JarInfo>>();
+    for (JarInfo jar : sortedJars) {
+      int level = 0;
+      for (Pair<String, Object> pair : jar.getContent()) {
+        final Integer nestedLevel = pair.getSecond() instanceof JarInfo ? levels.get((JarInfo)pair.getSecond()) : null;
+        if (nestedLevel != null) {
+          level = Math.max(level, nestedLevel + 1);
+        }
+      }
+      levels.put(jar, level);
+      while (result.size() <= level) {
+        result.add(new ArrayList<JarInfo>());
+      }
+      result.get(level).add(jar);
+    }
+    return result;
+  }
+
+  private void buildJars(List<JarInfo> jars) throws IOException, ProjectBuildException {
+    if (jars.size() == 1) {
+      myContext.checkCanceled();
+      buildJar(jars.get(0));
+      return;
+    }
+
+    final List<Future<?>> futures = new ArrayList<Future<?>>(jars.size());
+    for (final JarInfo jar : jars) {
+      futures.add(SharedThreadPool.INSTANCE.submit(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          myContext.checkCanceled();
+          buildJar(jar);
+          return null;
+        }
+      }));
+    }
+    Throwable error = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        if (error == null) error = e;
+      }
+      catch (ExecutionException e) {
+        if (error == null) error = e.getCause();
+      }
+    }
+    if (error instanceof IOException) throw (IOException)error;
+    if (error instanceof ProjectBuildException) throw (ProjectBuildException)error;
+    if (error instanceof RuntimeException) throw (RuntimeException)error;
+    if (error instanceof Error) throw (Error)error;
+    if (error != null) throw new ProjectBuildException(error);
+  }
+
   private void deleteTemporaryJars() {
     for (File file : myBuiltJars.values()) {
       FileUtil.delete(file);
@@ -152,7 +223,7 @@ public class JarsBuilder {
     FileUtil.createParentDirs(jarFile);
     final String targetJarPath = jar.getDestination().getOutputFilePath();
     Manifest manifest = loadManifest(jar, targetJarPath);
-    final JarOutputStream jarOutputStream = createJarOutputStream(jarFile, manifest);
+    final JarOutput jarOutput = createJarOutput(jar, jarFile, manifest);
 
     try {
       final THashSet<String> writtenPaths = new THashSet<String>();
@@ -166,25 +237,21 @@ public class JarsBuilder {
           final ArtifactSourceRoot root = (ArtifactSourceRoot)pair.getSecond();
           final int rootIndex = myInstructions.getRootIndex(root);
           LOG.assertTrue(rootIndex != -1, root + " not found in instructions");
-          final ArtifactBuilderLogger logger = myContext.getLoggingManager().getArtifactBuilderLogger();
           if (root instanceof FileBasedArtifactSourceRoot) {
-            addFileToJar(jarOutputStream, jarFile, root.getRootFile(), root.getFilter(), relativePath, targetJarPath, writtenPaths,
+            addFileToJar(jarOutput, jarFile, root.getRootFile(), root.getFilter(), relativePath, targetJarPath, writtenPaths,
                          rootIndex);
           }
           else {
             final String filePath = FileUtil.toSystemIndependentName(root.getRootFile().getAbsolutePath());
-            logger.fileCopied(filePath);
-            mySrcOutMapping.appendData(filePath, Collections.singletonList(targetJarPath));
-            myOutSrcMapping.appendData(targetJarPath, Collections
-              .singletonList(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex)));
-            extractFileAndAddToJar(jarOutputStream, (JarBasedArtifactSourceRoot)root, relativePath, writtenPaths);
+            registerCopiedFile(filePath, targetJarPath, rootIndex, true);
+            extractFileAndAddToJar(jarOutput, (JarBasedArtifactSourceRoot)root, relativePath, writtenPaths, isChanged(root.getRootFile()));
           }
         }
         else {
           JarInfo nestedJar = (JarInfo)pair.getSecond();
           File nestedJarFile = myBuiltJars.get(nestedJar);
           if (nestedJarFile != null) {
-            addFileToJar(jarOutputStream, jarFile, nestedJarFile, SourceFileFilter.ALL, relativePath, targetJarPath, writtenPaths, -1);
+            addFileToJar(jarOutput, jarFile, nestedJarFile, SourceFileFilter.ALL, relativePath, targetJarPath, writtenPaths, -1);
           }
           else {
             LOG.debug("nested jar file " + relativePath + " for " + jar.getPresentableDestination() + " not found");
@@ -193,7 +260,36 @@ public class JarsBuilder {
       }
     }
     finally {
-      jarOutputStream.close();
+      jarOutput.close();
+    }
+  }
+
+  private JarOutput createJarOutput(JarInfo jar, File jarFile, @Nullable Manifest manifest) throws IOException {
+    if (myChangedSourcePaths != null && jar.getDestination() instanceof ExplodedDestinationInfo) {
+      final File existingJar = new File(FileUtil.toSystemDependentName(jar.getDestination().getOutputFilePath()));
+      final JarOutput output = PatchingJarOutput.open(existingJar, jarFile, manifest);
+      if (output != null) {
+        return output;
+      }
+    }
+    return new StreamJarOutput(createJarOutputStream(jarFile, manifest));
+  }
+
+  private boolean isChanged(File sourceFile) {
+    return myChangedSourcePaths == null ||
+           myChangedSourcePaths.contains(FileUtil.toSystemIndependentName(FileUtil.toCanonicalPath(sourceFile.getPath())));
+  }
+
+  /**
+   * Jars may be built concurrently, so updates of the mappings and the logger are serialized here
+   */
+  private synchronized void registerCopiedFile(String filePath, String targetJarPath, int rootIndex, boolean added) throws IOException {
+    if (rootIndex != -1) {
+      myOutSrcMapping.appendData(targetJarPath, Collections.singletonList(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex)));
+    }
+    if (added) {
+      mySrcOutMapping.appendData(filePath, Collections.singletonList(targetJarPath));
+      myContext.getLoggingManager().getArtifactBuilderLogger().fileCopied(filePath);
     }
   }
 
@@ -219,8 +315,7 @@ public class JarsBuilder {
           final File manifestFile = new File(root.getRootFile(), manifestPath);
           if (manifestFile.exists()) {
             final String fullManifestPath = FileUtil.toSystemIndependentName(manifestFile.getAbsolutePath());
-            myContext.getLoggingManager().getArtifactBuilderLogger().fileCopied(fullManifestPath);
-            mySrcOutMapping.appendData(fullManifestPath, Collections.singletonList(targetJarPath));
+            registerCopiedFile(fullManifestPath, targetJarPath, -1, true);
             //noinspection IOResourceOpenedButNotSafelyClosed
             return createManifest(new FileInputStream(manifestFile), manifestFile);
           }
@@ -262,42 +357,38 @@ public class JarsBuilder {
     }
   }
 
-  private static void extractFileAndAddToJar(final JarOutputStream jarOutputStream, final JarBasedArtifactSourceRoot root,
-                                             final String relativeOutputPath, final Set<String> writtenPaths)
+  private static void extractFileAndAddToJar(final JarOutput jarOutput, final JarBasedArtifactSourceRoot root,
+                                             final String relativeOutputPath, final Set<String> writtenPaths, final boolean changed)
     throws IOException {
     final long timestamp = root.getRootFile().lastModified();
     root.processEntries(new JarBasedArtifactSourceRoot.EntryProcessor() {
       @Override
       public void process(@Nullable InputStream inputStream, @NotNull String relativePath) throws IOException {
-        String pathInJar = addParentDirectories(jarOutputStream, writtenPaths, PathUtil.appendToPath(relativeOutputPath, relativePath));
+        String pathInJar = addParentDirectories(jarOutput, writtenPaths, PathUtil.appendToPath(relativeOutputPath, relativePath));
 
         if (inputStream == null) {
-          addDirectoryEntry(jarOutputStream, pathInJar + "/", writtenPaths);
+          addDirectoryEntry(jarOutput, pathInJar + "/", writtenPaths);
         }
         else if (writtenPaths.add(pathInJar)) {
-          ZipEntry entry = new ZipEntry(pathInJar);
-          entry.setTime(timestamp);
-          jarOutputStream.putNextEntry(entry);
-          FileUtil.copy(inputStream, jarOutputStream);
-          jarOutputStream.closeEntry();
+          jarOutput.addEntry(pathInJar, inputStream, timestamp, changed);
         }
       }
     });
 
   }
 
-  private void addFileToJar(final @NotNull JarOutputStream jarOutputStream, final @NotNull File jarFile, @NotNull File file,
+  private void addFileToJar(final @NotNull JarOutput jarOutput, final @NotNull File jarFile, @NotNull File file,
                             SourceFileFilter filter, @NotNull String relativePath, String targetJarPath,
                             final @NotNull Set<String> writtenPaths, final int rootIndex) throws IOException {
     if (!file.exists() || FileUtil.isAncestor(file, jarFile, false)) {
       return;
     }
 
-    relativePath = addParentDirectories(jarOutputStream, writtenPaths, relativePath);
-    addFileOrDirRecursively(jarOutputStream, file, filter, relativePath, targetJarPath, writtenPaths, rootIndex);
+    relativePath = addParentDirectories(jarOutput, writtenPaths, relativePath);
+    addFileOrDirRecursively(jarOutput, file, filter, relativePath, targetJarPath, writtenPaths, rootIndex);
   }
 
-  private void addFileOrDirRecursively(@NotNull ZipOutputStream jarOutputStream,
+  private void addFileOrDirRecursively(@NotNull JarOutput jarOutput,
                                        @NotNull File file,
                                        SourceFileFilter filter,
                                        @NotNull String relativePath,
@@ -310,30 +401,26 @@ public class JarsBuilder {
     if (file.isDirectory()) {
       final String directoryPath = relativePath.length() == 0 ? "" : relativePath + "/";
       if (!directoryPath.isEmpty()) {
-        addDirectoryEntry(jarOutputStream, directoryPath, writtenItemRelativePaths);
+        addDirectoryEntry(jarOutput, directoryPath, writtenItemRelativePaths);
       }
       final File[] children = file.listFiles();
       if (children != null) {
         for (File child : children) {
-          addFileOrDirRecursively(jarOutputStream, child, filter, directoryPath + child.getName(), targetJarPath, writtenItemRelativePaths,
+          addFileOrDirRecursively(jarOutput, child, filter, directoryPath + child.getName(), targetJarPath, writtenItemRelativePaths,
                                   rootIndex);
         }
       }
       return;
     }
 
-    final boolean added = ZipUtil.addFileToZip(jarOutputStream, file, relativePath, writtenItemRelativePaths, null);
+    final boolean added = jarOutput.addFile(file, relativePath, writtenItemRelativePaths, rootIndex == -1 || isChanged(file));
     if (rootIndex != -1) {
-      myOutSrcMapping.appendData(targetJarPath, Collections.singletonList(new ArtifactOutputToSourceMapping.SourcePathAndRootIndex(filePath, rootIndex)));
-      if (added) {
-        mySrcOutMapping.appendData(filePath, Collections.singletonList(targetJarPath));
-        myContext.getLoggingManager().getArtifactBuilderLogger().fileCopied(filePath);
-      }
+      registerCopiedFile(filePath, targetJarPath, rootIndex, added);
     }
   }
 
 
-  private static String addParentDirectories(JarOutputStream jarOutputStream, Set<String> writtenPaths, String relativePath) throws IOException {
+  private static String addParentDirectories(JarOutput jarOutput, Set<String> writtenPaths, String relativePath) throws IOException {
     while (StringUtil.startsWithChar(relativePath, '/')) {
       relativePath = relativePath.substring(1);
     }
@@ -341,22 +428,194 @@ public class JarsBuilder {
     while (i != -1) {
       String prefix = relativePath.substring(0, i+1);
       if (prefix.length() > 1) {
-        addDirectoryEntry(jarOutputStream, prefix, writtenPaths);
+        addDirectoryEntry(jarOutput, prefix, writtenPaths);
       }
       i = relativePath.indexOf('/', i + 1);
     }
     return relativePath;
   }
 
-  private static void addDirectoryEntry(final ZipOutputStream output, @NonNls final String relativePath, Set<String> writtenPaths) throws IOException {
+  private static void addDirectoryEntry(final JarOutput output, @NonNls final String relativePath, Set<String> writtenPaths) throws IOException {
     if (!writtenPaths.add(relativePath)) return;
 
-    ZipEntry e = new ZipEntry(relativePath);
-    e.setMethod(ZipEntry.STORED);
-    e.setSize(0);
-    e.setCrc(0);
-    output.putNextEntry(e);
-    output.closeEntry();
+    output.addDirectory(relativePath);
+  }
+
+  private abstract static class JarOutput {
+    public abstract void addDirectory(@NotNull String relativePath) throws IOException;
+
+    /**
+     * @param changed {@code false} if the file wasn't modified since the previous build, so an existing entry may be left as is
+     * @return {@code false} if an entry with the same path was already added
+     */
+    public abstract boolean addFile(@NotNull File file, @NotNull String relativePath, @NotNull Set<String> writtenPaths, boolean changed)
+      throws IOException;
+
+    public abstract void addEntry(@NotNull String relativePath, @NotNull InputStream content, long timestamp, boolean changed)
+      throws IOException;
+
+    public abstract void close() throws IOException;
+  }
+
+  private static class StreamJarOutput extends JarOutput {
+    private final ZipOutputStream myOutputStream;
+
+    private StreamJarOutput(ZipOutputStream outputStream) {
+      myOutputStream = outputStream;
+    }
+
+    @Override
+    public void addDirectory(@NotNull String relativePath) throws IOException {
+      ZipEntry e = new ZipEntry(relativePath);
+      e.setMethod(ZipEntry.STORED);
+      e.setSize(0);
+      e.setCrc(0);
+      myOutputStream.putNextEntry(e);
+      myOutputStream.closeEntry();
+    }
+
+    @Override
+    public boolean addFile(@NotNull File file, @NotNull String relativePath, @NotNull Set<String> writtenPaths, boolean changed)
+      throws IOException {
+      return ZipUtil.addFileToZip(myOutputStream, file, relativePath, writtenPaths, null);
+    }
+
+    @Override
+    public void addEntry(@NotNull String relativePath, @NotNull InputStream content, long timestamp, boolean changed) throws IOException {
+      ZipEntry entry = new ZipEntry(relativePath);
+      entry.setTime(timestamp);
+      myOutputStream.putNextEntry(entry);
+      FileUtil.copy(content, myOutputStream);
+      myOutputStream.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+      myOutputStream.close();
+    }
+  }
+
+  /**
+   * Patches a copy of the previously built archive: entries of unchanged files are kept as is (so they aren't compressed again),
+   * entries of changed files are erased and appended to the end, entries which are no longer produced are erased.
+   */
+  private static class PatchingJarOutput extends JarOutput {
+    private final JBZipFile myZipFile;
+    private final Set<String> myWrittenEntries = new THashSet<String>();
+
+    private PatchingJarOutput(JBZipFile zipFile, boolean hasManifest) {
+      myZipFile = zipFile;
+      if (hasManifest) {
+        myWrittenEntries.add(JarFile.MANIFEST_NAME);
+      }
+    }
+
+    @Nullable
+    public static PatchingJarOutput open(@NotNull File existingJar, @NotNull File jarFile, @Nullable Manifest manifest) {
+      if (!existingJar.isFile()) {
+        return null;
+      }
+      try {
+        FileUtil.copy(existingJar, jarFile);
+        final JBZipFile zipFile = new JBZipFile(jarFile);
+        boolean canPatch = false;
+        try {
+          canPatch = !isFragmented(zipFile, jarFile.length()) && isManifestUpToDate(zipFile, manifest);
+        }
+        finally {
+          if (!canPatch) {
+            zipFile.close();
+          }
+        }
+        return canPatch ? new PatchingJarOutput(zipFile, manifest != null) : null;
+      }
+      catch (IOException e) {
+        LOG.info("Cannot patch " + existingJar.getAbsolutePath() + ", it will be rebuilt: " + e.getMessage());
+        return null;
+      }
+    }
+
+    /**
+     * Erased entries still occupy space in the archive, so it's rebuilt from scratch when they take more than a half of it
+     */
+    private static boolean isFragmented(JBZipFile zipFile, long archiveLength) {
+      long dataLength = 0;
+      for (JBZipEntry entry : zipFile.getEntries()) {
+        dataLength += entry.getCompressedSize() + entry.getName().length() + 30;
+      }
+      return archiveLength > 2 * dataLength + 64 * 1024;
+    }
+
+    /**
+     * The manifest must be the first entry in a jar, so the archive cannot be patched if the manifest has changed
+     */
+    private static boolean isManifestUpToDate(JBZipFile zipFile, @Nullable Manifest manifest) throws IOException {
+      if (manifest == null) {
+        return true;
+      }
+      final JBZipEntry entry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+      if (entry == null) {
+        return false;
+      }
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      manifest.write(bytes);
+      return Arrays.equals(bytes.toByteArray(), entry.getData());
+    }
+
+    @Override
+    public void addDirectory(@NotNull String relativePath) throws IOException {
+      myWrittenEntries.add(relativePath);
+      if (myZipFile.getEntry(relativePath) == null) {
+        writeEntry(relativePath, ArrayUtil.EMPTY_BYTE_ARRAY, System.currentTimeMillis());
+      }
+    }
+
+    @Override
+    public boolean addFile(@NotNull File file, @NotNull String relativePath, @NotNull Set<String> writtenPaths, boolean changed)
+      throws IOException {
+      relativePath = StringUtil.trimStart(relativePath, "/");
+      if (!writtenPaths.add(relativePath)) {
+        return false;
+      }
+      myWrittenEntries.add(relativePath);
+      final JBZipEntry entry = myZipFile.getEntry(relativePath);
+      if (changed || entry == null || entry.getSize() != file.length()) {
+        writeEntry(relativePath, FileUtil.loadFileBytes(file), file.lastModified());
+      }
+      return true;
+    }
+
+    @Override
+    public void addEntry(@NotNull String relativePath, @NotNull InputStream content, long timestamp, boolean changed) throws IOException {
+      myWrittenEntries.add(relativePath);
+      if (changed || myZipFile.getEntry(relativePath) == null) {
+        writeEntry(relativePath, FileUtil.loadBytes(content), timestamp);
+      }
+    }
+
+    private void writeEntry(String relativePath, byte[] content, long timestamp) throws IOException {
+      final JBZipEntry oldEntry = myZipFile.getEntry(relativePath);
+      if (oldEntry != null) {
+        oldEntry.erase();
+      }
+      final JBZipEntry entry = myZipFile.getOrCreateEntry(relativePath);
+      entry.setMethod(content.length == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+      entry.setData(content, timestamp);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        for (JBZipEntry entry : new ArrayList<JBZipEntry>(myZipFile.getEntries())) {
+          if (!myWrittenEntries.contains(entry.getName())) {
+            entry.erase();
+          }
+        }
+      }
+      finally {
+        myZipFile.close();
+      }
+    }
   }
 
   private class JarsGraph implements GraphGenerator.SemiGraph<JarInfo> {
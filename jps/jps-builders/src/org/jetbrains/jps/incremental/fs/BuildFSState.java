@@ -1,6 +1,7 @@
 package org.jetbrains.jps.incremental.fs;
 
 import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.CompilerExcludes;
 import org.jetbrains.jps.Module;
@@ -8,14 +9,12 @@ import org.jetbrains.jps.ModuleChunk;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.CompileScope;
 import org.jetbrains.jps.incremental.FileProcessor;
+import org.jetbrains.jps.incremental.ModuleRootsIndex;
 import org.jetbrains.jps.incremental.storage.Timestamps;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * @author Eugene Zhuravlev
@@ -45,6 +44,72 @@ public class BuildFSState extends FSState {
     return map.add(module);
   }
 
+  /**
+   * Saves the modules whose initial scan was performed and the files still marked dirty, so that the state may be restored
+   * when the project is loaded again
+   */
+  public void saveState(FSChangeJournal journal, ModuleRootsIndex index) {
+    final List<File> dirtyFiles = new ArrayList<File>();
+    final List<String> deletedPaths = new ArrayList<String>();
+    collectDirtyPaths(dirtyFiles, deletedPaths);
+    journal.saveState(getRootsFingerprints(myInitialProductionScanPerformed, index),
+                      getRootsFingerprints(myInitialTestsScanPerformed, index), dirtyFiles, deletedPaths);
+  }
+
+  /**
+   * Restores the state saved in the journal and applies the changes recorded after that. A module is considered scanned only if
+   * its roots stayed the same, because files under new roots were never scanned.
+   */
+  public void restoreState(FSChangeJournal journal, final ModuleRootsIndex index, final Timestamps tsStorage) throws IOException {
+    journal.replay(new FSChangeJournal.Replayer() {
+      @Override
+      public void moduleScanned(@NotNull String moduleName, boolean forTests, @NotNull String rootsFingerprint) {
+        final Module module = index.getModuleByName(moduleName);
+        if (module != null && rootsFingerprint.equals(getRootsFingerprint(module, index))) {
+          markInitialScanPerformed(module, forTests);
+        }
+      }
+
+      @Override
+      public void fileChanged(@NotNull File file) throws IOException {
+        final RootDescriptor rd = index.getModuleAndRoot(file);
+        if (rd != null) {
+          markDirty(file, rd, tsStorage);
+        }
+      }
+
+      @Override
+      public void fileDeleted(@NotNull File file) throws IOException {
+        final RootDescriptor rd = index.getModuleAndRoot(file);
+        if (rd != null) {
+          registerDeleted(rd.module, file, rd.isTestRoot, tsStorage);
+        }
+      }
+    });
+  }
+
+  private static Map<String, String> getRootsFingerprints(Set<Module> modules, ModuleRootsIndex index) {
+    final Map<String, String> fingerprints = new HashMap<String, String>();
+    synchronized (modules) {
+      for (Module module : modules) {
+        fingerprints.put(module.getName(), getRootsFingerprint(module, index));
+      }
+    }
+    return fingerprints;
+  }
+
+  private static String getRootsFingerprint(Module module, ModuleRootsIndex index) {
+    final StringBuilder buf = new StringBuilder();
+    for (RootDescriptor rd : index.getModuleRoots(module)) {
+      buf.append(rd.isTestRoot ? "test " : "source ").append(rd.isGeneratedSources ? "generated " : "");
+      buf.append(rd.root.getPath()).append('\n');
+    }
+    for (String exclude : module.getExcludes()) {
+      buf.append("exclude ").append(exclude).append('\n');
+    }
+    return buf.toString();
+  }
+
   @Override
   public Map<File, Set<File>> getSourcesToRecompile(final String moduleName, boolean forTests) {
     final FilesDelta lastRoundDelta = myLastRoundDelta;
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.fs;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes of the files of a project whose descriptor was unloaded by the build server. When the descriptor is released, the modules
+ * whose initial scan was performed and the files still marked dirty are saved to the journal; FS events sent for the project are
+ * appended to it until the project is loaded again. Replaying the journal restores the dirty state, so the scanned modules are
+ * not scanned again.
+ * <p/>
+ * The server keeps journals in memory only: FS events are not received while the server is down, so a journal left by
+ * a previous server run is never replayed.
+ */
+public class FSChangeJournal {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.fs.FSChangeJournal");
+  private static final String JOURNAL_FILE_NAME = "fs-journal";
+  private static final int VERSION = 1;
+
+  private static final byte SCANNED_PRODUCTION = 0;
+  private static final byte SCANNED_TESTS = 1;
+  private static final byte DIRTY = 2;
+  private static final byte DELETED = 3;
+  private static final byte CHANGED_EVENT = 4;
+  private static final byte DELETED_EVENT = 5;
+
+  private final File myFile;
+  private boolean myValid;
+
+  public FSChangeJournal(@NotNull File file) {
+    myFile = file;
+    try {
+      FileUtil.createParentDirs(file);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        out.writeInt(VERSION);
+      }
+      finally {
+        out.close();
+      }
+      myValid = true;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot create FS change journal " + file.getPath(), e);
+      FileUtil.delete(file);
+    }
+  }
+
+  public static File getJournalFile(File dataStorageRoot) {
+    return new File(dataStorageRoot, JOURNAL_FILE_NAME);
+  }
+
+  /**
+   * @param scannedProduction names of the modules whose production sources were scanned, mapped to the fingerprints of their roots
+   * @param scannedTests names of the modules whose tests were scanned, mapped to the fingerprints of their roots
+   */
+  public synchronized void saveState(Map<String, String> scannedProduction, Map<String, String> scannedTests,
+                                     Collection<File> dirtyFiles, Collection<String> deletedPaths) {
+    if (!myValid) {
+      return;
+    }
+    final List<Record> records = new ArrayList<Record>();
+    for (Map.Entry<String, String> entry : scannedProduction.entrySet()) {
+      records.add(new Record(SCANNED_PRODUCTION, entry.getKey(), entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : scannedTests.entrySet()) {
+      records.add(new Record(SCANNED_TESTS, entry.getKey(), entry.getValue()));
+    }
+    for (File file : dirtyFiles) {
+      records.add(new Record(DIRTY, file.getPath(), null));
+    }
+    for (String path : deletedPaths) {
+      records.add(new Record(DELETED, path, null));
+    }
+    append(records);
+  }
+
+  public synchronized void appendEvents(Collection<String> changedPaths, Collection<String> deletedPaths) {
+    if (!myValid) {
+      return;
+    }
+    final List<Record> records = new ArrayList<Record>();
+    for (String path : changedPaths) {
+      records.add(new Record(CHANGED_EVENT, path, null));
+    }
+    for (String path : deletedPaths) {
+      records.add(new Record(DELETED_EVENT, path, null));
+    }
+    append(records);
+  }
+
+  /**
+   * Passes the saved state and then the recorded events to the replayer and deletes the journal; the journal ignores
+   * all calls after that. Nothing is replayed if the journal cannot be read.
+   */
+  public synchronized void replay(Replayer replayer) throws IOException {
+    if (!myValid) {
+      FileUtil.delete(myFile);
+      return;
+    }
+    myValid = false;
+    final List<Record> records = new ArrayList<Record>();
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+      try {
+        if (in.readInt() != VERSION) {
+          return;
+        }
+        while (in.available() > 0) {
+          records.add(Record.read(in));
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read FS change journal " + myFile.getPath(), e);
+      return;
+    }
+    finally {
+      FileUtil.delete(myFile);
+    }
+    // the events came after the state was saved: a file may have been deleted after it was marked dirty
+    for (Record record : records) {
+      switch (record.myKind) {
+        case SCANNED_PRODUCTION:
+        case SCANNED_TESTS:
+          //noinspection ConstantConditions
+          replayer.moduleScanned(record.myPath, record.myKind == SCANNED_TESTS, record.myFingerprint);
+          break;
+        case DIRTY:
+          replayer.fileChanged(new File(record.myPath));
+          break;
+        case DELETED:
+          replayer.fileDeleted(new File(record.myPath));
+          break;
+      }
+    }
+    for (Record record : records) {
+      if (record.myKind == CHANGED_EVENT) {
+        replayer.fileChanged(new File(record.myPath));
+      }
+      else if (record.myKind == DELETED_EVENT) {
+        replayer.fileDeleted(new File(record.myPath));
+      }
+    }
+  }
+
+  private void append(List<Record> records) {
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile, true)));
+      try {
+        for (Record record : records) {
+          record.write(out);
+        }
+      }
+      finally {
+        out.close();
+      }
+    }
+    catch (IOException e) {
+      // the changes would be lost, so the project will be scanned when it is loaded
+      LOG.info("Cannot write FS change journal " + myFile.getPath(), e);
+      myValid = false;
+      FileUtil.delete(myFile);
+    }
+  }
+
+  public interface Replayer {
+    void moduleScanned(@NotNull String moduleName, boolean forTests, @NotNull String rootsFingerprint);
+
+    void fileChanged(@NotNull File file) throws IOException;
+
+    void fileDeleted(@NotNull File file) throws IOException;
+  }
+
+  private static class Record {
+    private final byte myKind;
+    private final String myPath;
+    @Nullable private final String myFingerprint;
+
+    private Record(byte kind, String path, @Nullable String fingerprint) {
+      myKind = kind;
+      myPath = path;
+      myFingerprint = fingerprint;
+    }
+
+    private void write(DataOutput out) throws IOException {
+      out.writeByte(myKind);
+      out.writeUTF(myPath);
+      if (myKind == SCANNED_PRODUCTION || myKind == SCANNED_TESTS) {
+        //noinspection ConstantConditions
+        out.writeUTF(myFingerprint);
+      }
+    }
+
+    private static Record read(DataInput in) throws IOException {
+      final byte kind = in.readByte();
+      final String path = in.readUTF();
+      final String fingerprint = kind == SCANNED_PRODUCTION || kind == SCANNED_TESTS ? in.readUTF() : null;
+      return new Record(kind, path, fingerprint);
+    }
+  }
+}
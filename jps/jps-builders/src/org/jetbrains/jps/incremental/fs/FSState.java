@@ -66,6 +66,27 @@ public class FSState {
     }
   }
 
+  /**
+   * Collects files marked for recompilation and paths of the deleted files in all modules
+   */
+  protected final void collectDirtyPaths(Collection<File> toRecompile, Collection<String> deletedPaths) {
+    final List<FilesDelta> deltas;
+    synchronized (myDeltas) {
+      deltas = new ArrayList<FilesDelta>(myDeltas.values());
+    }
+    for (FilesDelta delta : deltas) {
+      for (boolean forTests : new boolean[]{false, true}) {
+        final Map<File, Set<File>> sources = delta.getSourcesToRecompile(forTests);
+        synchronized (sources) {
+          for (Set<File> files : sources.values()) {
+            toRecompile.addAll(files);
+          }
+        }
+        deletedPaths.addAll(delta.getDeletedPaths(forTests));
+      }
+    }
+  }
+
   @NotNull
   protected final FilesDelta getDelta(final String moduleName) {
     synchronized (myDeltas) {
@@ -46,6 +46,7 @@ import java.net.URL;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Eugene Zhuravlev
@@ -58,6 +59,8 @@ public class JavaBuilder extends ModuleLevelBuilder {
   private static final String JAVA_EXTENSION = ".java";
   private static final String FORM_EXTENSION = ".form";
   public static final boolean USE_EMBEDDED_JAVAC = System.getProperty(GlobalOptions.USE_EXTERNAL_JAVAC_OPTION) == null;
+  private static final boolean USE_OUTPUT_CACHE = "true".equals(System.getProperty(GlobalOptions.OUTPUT_CACHE_OPTION));
+  private static final String OUTPUT_CACHE_DIR_NAME = "output-cache";
 
   public static final FileFilter JAVA_SOURCES_FILTER = new FileFilter() {
     public boolean accept(File file) {
@@ -71,6 +74,7 @@ public class JavaBuilder extends ModuleLevelBuilder {
   };
 
   private static final Key<Callbacks.Backend> DELTA_MAPPINGS_CALLBACK_KEY = Key.create("_dependency_data_");
+  private static final Key<AtomicLong> CLASS_ANALYSIS_TIME_KEY = Key.create("_class_analysis_time_");
   private final ExecutorService myTaskRunner;
   private int myTasksInProgress = 0;
   private final Object myCounterLock = new Object();
@@ -100,8 +104,13 @@ public class JavaBuilder extends ModuleLevelBuilder {
                 context.processMessage(new CompilerMessage(BUILDER_NAME, e));
               }
             }
+            final long start = System.nanoTime();
             final ClassReader reader = new ClassReader(content.getBuffer(), content.getOffset(), content.getLength());
             callback.associate(outputPath, sourcePath, reader);
+            final AtomicLong analysisTime = CLASS_ANALYSIS_TIME_KEY.get(context);
+            if (analysisTime != null) {
+              analysisTime.addAndGet(System.nanoTime() - start);
+            }
           }
         }
       }
@@ -288,7 +297,13 @@ public class JavaBuilder extends ModuleLevelBuilder {
             if (!forms.isEmpty()) {
               try {
                 context.processMessage(new ProgressMessage("Instrumenting forms [" + chunkName + "]"));
-                instrumentForms(context, chunk, chunkSourcePath, finder, forms, outputSink);
+                final BuildTrace.Span span = BuildTrace.get(context).start("java", "instrument forms");
+                try {
+                  instrumentForms(context, chunk, chunkSourcePath, finder, forms, outputSink);
+                }
+                finally {
+                  span.finish();
+                }
                 if (context.getProject().getUiDesignerConfiguration().isCopyFormsRuntimeToOutput() && !context.isCompilingTests()) {
                   for (Module module : chunk.getModules()) {
                     final File outputDir = paths.getModuleOutputDir(module, false);
@@ -308,7 +323,13 @@ public class JavaBuilder extends ModuleLevelBuilder {
             if (addNotNullAssertions) {
               try {
                 context.processMessage(new ProgressMessage("Adding NotNull assertions [" + chunkName + "]"));
-                instrumentNotNull(context, outputSink, finder);
+                final BuildTrace.Span span = BuildTrace.get(context).start("java", "instrument NotNull");
+                try {
+                  instrumentNotNull(context, outputSink, finder);
+                }
+                finally {
+                  span.finish();
+                }
               }
               finally {
                 context.processMessage(new ProgressMessage("Finished adding NotNull assertions [" + chunkName + "]"));
@@ -337,12 +358,19 @@ public class JavaBuilder extends ModuleLevelBuilder {
     }
     finally {
       outputSink.writePendingData();
+      JavaOutputCache.outputsChanged(context, outs.keySet());
 
       final Set<File> successfullyCompiled = outputSink.getSuccessfullyCompiled();
       DELTA_MAPPINGS_CALLBACK_KEY.set(context, null);
 
-      if (updateMappings(context, delta, chunk, files, successfullyCompiled)) {
-        exitCode = ExitCode.ADDITIONAL_PASS_REQUIRED;
+      final BuildTrace.Span span = BuildTrace.get(context).start("java", "update dependency mappings");
+      try {
+        if (updateMappings(context, delta, chunk, files, successfullyCompiled)) {
+          exitCode = ExitCode.ADDITIONAL_PASS_REQUIRED;
+        }
+      }
+      finally {
+        span.finish();
       }
     }
 
@@ -380,11 +408,40 @@ public class JavaBuilder extends ModuleLevelBuilder {
                               Collection<File> sourcePath,
                               Map<File, Set<File>> outs,
                               CompileContext context,
-                              DiagnosticOutputConsumer diagnosticSink,
-                              final OutputFileConsumer outputSink) throws Exception {
-    LOG.info("Compiling " + files.size() + " java files");
+                              DiagnosticSink diagnosticSink,
+                              final OutputFilesSink outputSink) throws Exception {
     final List<String> options = getCompilationOptions(context, chunk);
     final ClassProcessingConsumer classesConsumer = new ClassProcessingConsumer(context, outputSink);
+
+    JavaOutputCache cache = null;
+    String cacheKey = null;
+    if (USE_OUTPUT_CACHE && sourcePath.isEmpty()) {
+      cache = new JavaOutputCache(new File(context.getDataManager().getDataStorageRoot(), OUTPUT_CACHE_DIR_NAME));
+      cacheKey = cache.computeKey(context, files, options, classpath, platformCp);
+      final List<OutputFileObject> cachedOutputs = cache.load(cacheKey);
+      if (cachedOutputs != null) {
+        LOG.info("Restoring outputs of " + files.size() + " java files from the output cache");
+        final BuildTrace.Span span = BuildTrace.get(context).start("java", "restore cached outputs");
+        try {
+          for (OutputFileObject output : cachedOutputs) {
+            classesConsumer.save(output);
+          }
+        }
+        finally {
+          ensurePendingTasksCompleted();
+          span.finish();
+        }
+        return true;
+      }
+    }
+
+    LOG.info("Compiling " + files.size() + " java files");
+    final AtomicLong analysisTime = new AtomicLong();
+    CLASS_ANALYSIS_TIME_KEY.set(context, analysisTime);
+    final BuildTrace trace = BuildTrace.get(context);
+    final BuildTrace.Span javacSpan = trace.start("java", USE_EMBEDDED_JAVAC ? "javac" : "external javac");
+    final long compileStart = System.currentTimeMillis();
+    long compileEnd = -1;
     try {
       final boolean rc;
       if (USE_EMBEDDED_JAVAC) {
@@ -404,10 +461,23 @@ public class JavaBuilder extends ModuleLevelBuilder {
         }
         rc = future.getResponseHandler().isTerminatedSuccessfully();
       }
+      compileEnd = System.currentTimeMillis();
+      if (cache != null && rc && diagnosticSink.getErrorCount() == 0) {
+        ensurePendingTasksCompleted();
+        cache.save(cacheKey, outputSink.getFileObjects());
+      }
       return rc;
     }
     finally {
+      javacSpan.finish();
       ensurePendingTasksCompleted();
+      CLASS_ANALYSIS_TIME_KEY.set(context, null);
+      trace.addTime("java", "class files analysis (summed over threads)", analysisTime.get());
+      if (compileEnd > 0) {
+        LOG.info("Compiled " + files.size() + " java files: javac " + (compileEnd - compileStart) + "ms, " +
+                 "class files analysis " + analysisTime.get() / 1000000 + "ms (summed over threads), " +
+                 "waited for analysis after javac " + (System.currentTimeMillis() - compileEnd) + "ms");
+      }
     }
   }
 
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolder;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.*;
+import org.jetbrains.jps.javac.OutputFileObject;
+
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Local cache of javac outputs keyed by a hash of everything javac reads: contents of the compiled sources, compiler options and
+ * the ABI (signatures and constants, without method bodies) of the classpath. Switching between VCS branches marks the changed sources
+ * dirty by timestamps; when the same set of sources with the same contents was compiled against the same classpath before, the class
+ * files are taken from the cache and passed through the usual output processing instead of running javac. Chunks compiled with
+ * a sourcepath are not cached: javac may read any source from it.
+ * <p/>
+ * The cached bytes are the ones produced by javac, before forms and NotNull instrumentation, so instrumentation and dependency
+ * analysis are performed for restored classes exactly as for compiled ones.
+ * <p/>
+ * The ABI hashes of the class files in classpath directories are stored along with the timestamps and lengths of the files,
+ * so only the class files changed since the previous build are read again.
+ */
+class JavaOutputCache {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.java.JavaOutputCache");
+  private static final Key<Map<File, String>> CLASSPATH_HASHES_KEY = Key.create("_classpath_abi_hashes_");
+  private static final Key<FileHashes> FILE_HASHES_KEY = Key.create("_classpath_file_abi_hashes_");
+  private static final int VERSION = 3;
+  private static final int MAX_ENTRIES = 256;
+  private static final String ENTRY_EXTENSION = ".outputs";
+  private static final String FILE_HASHES_NAME = "file-hashes";
+
+  private final File myCacheDir;
+
+  JavaOutputCache(@NotNull File cacheDir) {
+    myCacheDir = cacheDir;
+  }
+
+  @NotNull
+  public String computeKey(UserDataHolder context, Collection<File> files, List<String> options, Collection<File> classpath,
+                           Collection<File> platformCp) throws IOException {
+    final MessageDigest digest = createDigest();
+    update(digest, "v" + VERSION);
+    for (String option : options) {
+      update(digest, option);
+    }
+    final List<File> sortedFiles = new ArrayList<File>(files);
+    Collections.sort(sortedFiles);
+    for (File file : sortedFiles) {
+      update(digest, file.getPath());
+      digest.update(FileUtil.loadFileBytes(file));
+    }
+    Map<File, String> hashes = CLASSPATH_HASHES_KEY.get(context);
+    if (hashes == null) {
+      hashes = new HashMap<File, String>();
+      CLASSPATH_HASHES_KEY.set(context, hashes);
+    }
+    FileHashes fileHashes = FILE_HASHES_KEY.get(context);
+    if (fileHashes == null) {
+      fileHashes = new FileHashes(new File(myCacheDir, FILE_HASHES_NAME));
+      FILE_HASHES_KEY.set(context, fileHashes);
+    }
+    for (File root : platformCp) {
+      update(digest, getClasspathRootHash(root, hashes, fileHashes));
+    }
+    for (File root : classpath) {
+      update(digest, getClasspathRootHash(root, hashes, fileHashes));
+    }
+    fileHashes.flush();
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Should be called after classes are written to the output directories: their ABI hashes computed earlier in this build become stale
+   */
+  public static void outputsChanged(UserDataHolder context, Collection<File> outputRoots) {
+    final Map<File, String> hashes = CLASSPATH_HASHES_KEY.get(context);
+    if (hashes != null) {
+      for (File root : outputRoots) {
+        hashes.remove(root);
+      }
+    }
+  }
+
+  /**
+   * @return javac outputs stored for the key or null if there are none
+   */
+  @Nullable
+  public List<OutputFileObject> load(@NotNull String key) {
+    final File file = getEntryFile(key);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file))));
+      try {
+        if (in.readInt() != VERSION) {
+          return null;
+        }
+        final int count = in.readInt();
+        final List<OutputFileObject> result = new ArrayList<OutputFileObject>(count);
+        for (int i = 0; i < count; i++) {
+          final String outputRoot = readNullableString(in);
+          final String relativePath = in.readUTF();
+          final File outputFile = new File(in.readUTF());
+          final String className = readNullableString(in);
+          final String sourceUri = readNullableString(in);
+          final byte[] content = new byte[in.readInt()];
+          in.readFully(content);
+          result.add(new OutputFileObject(
+            null, outputRoot != null ? new File(outputRoot) : null, relativePath, outputFile,
+            outputFile.getName().endsWith(".class") ? JavaFileObject.Kind.CLASS : JavaFileObject.Kind.OTHER, className,
+            sourceUri != null ? URI.create(sourceUri) : null, new OutputFileObject.Content(content, 0, content.length)
+          ));
+        }
+        return result;
+      }
+      finally {
+        in.close();
+        // keep recently used entries when pruning the cache
+        file.setLastModified(System.currentTimeMillis());
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read cached outputs from " + file.getPath(), e);
+      FileUtil.delete(file);
+      return null;
+    }
+  }
+
+  public void save(@NotNull String key, @NotNull Collection<OutputFileObject> outputs) {
+    final File file = getEntryFile(key);
+    final File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      FileUtil.createParentDirs(tempFile);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(tempFile))));
+      try {
+        out.writeInt(VERSION);
+        out.writeInt(outputs.size());
+        for (OutputFileObject output : outputs) {
+          final OutputFileObject.Content content = output.getContent();
+          if (content == null) {
+            throw new IOException("Missing content for file " + output.getFile());
+          }
+          final File outputRoot = output.getOutputRoot();
+          final URI sourceUri = output.getSourceUri();
+          writeNullableString(out, outputRoot != null ? outputRoot.getPath() : null);
+          out.writeUTF(output.getRelativePath());
+          out.writeUTF(output.getFile().getPath());
+          writeNullableString(out, output.getClassName());
+          writeNullableString(out, sourceUri != null ? sourceUri.toString() : null);
+          out.writeInt(content.getLength());
+          out.write(content.getBuffer(), content.getOffset(), content.getLength());
+        }
+      }
+      finally {
+        out.close();
+      }
+      FileUtil.rename(tempFile, file);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot save compiled outputs to " + file.getPath(), e);
+      FileUtil.delete(tempFile);
+      return;
+    }
+    prune();
+  }
+
+  private void prune() {
+    final File[] entries = myCacheDir.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.getName().endsWith(ENTRY_EXTENSION);
+      }
+    });
+    if (entries == null || entries.length <= MAX_ENTRIES) {
+      return;
+    }
+    Arrays.sort(entries, new Comparator<File>() {
+      @Override
+      public int compare(File o1, File o2) {
+        final long t1 = o1.lastModified();
+        final long t2 = o2.lastModified();
+        return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+      }
+    });
+    for (int i = 0; i < entries.length - MAX_ENTRIES; i++) {
+      FileUtil.delete(entries[i]);
+    }
+  }
+
+  private File getEntryFile(String key) {
+    return new File(myCacheDir, key + ENTRY_EXTENSION);
+  }
+
+  private static String getClasspathRootHash(File root, Map<File, String> hashes, FileHashes fileHashes) throws IOException {
+    String hash = hashes.get(root);
+    if (hash == null) {
+      if (root.isDirectory()) {
+        final MessageDigest digest = createDigest();
+        updateWithDirectoryAbi(digest, root, "", fileHashes);
+        hash = root.getPath() + ":" + toHex(digest.digest());
+      }
+      else {
+        // libraries rarely change, so their timestamps are enough
+        hash = root.getPath() + ":" + root.lastModified() + ":" + root.length();
+      }
+      hashes.put(root, hash);
+    }
+    return hash;
+  }
+
+  private static void updateWithDirectoryAbi(MessageDigest digest, File dir, String relativePath, FileHashes fileHashes)
+    throws IOException {
+    final File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      final String childPath = relativePath + "/" + child.getName();
+      if (child.isDirectory()) {
+        updateWithDirectoryAbi(digest, child, childPath, fileHashes);
+      }
+      else {
+        update(digest, childPath);
+        byte[] hash = fileHashes.get(child);
+        if (hash == null) {
+          hash = computeFileAbiHash(child);
+          fileHashes.put(child, hash);
+        }
+        digest.update(hash);
+      }
+    }
+  }
+
+  private static byte[] computeFileAbiHash(File file) throws IOException {
+    final MessageDigest digest = createDigest();
+    if (file.getName().endsWith(".class")) {
+      new ClassReader(FileUtil.loadFileBytes(file)).accept(
+        new AbiDigestVisitor(digest), ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES
+      );
+    }
+    else {
+      digest.update(FileUtil.loadFileBytes(file));
+    }
+    return digest.digest();
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, @Nullable String s) {
+    if (s != null) {
+      try {
+        digest.update(s.getBytes("UTF-8"));
+      }
+      catch (UnsupportedEncodingException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    digest.update((byte)0);
+  }
+
+  private static String toHex(byte[] bytes) {
+    final StringBuilder buf = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      buf.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return buf.toString();
+  }
+
+  @Nullable
+  private static String readNullableString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeNullableString(DataOutput out, @Nullable String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  /**
+   * ABI hashes of classpath files, valid while the timestamp and the length of a file stay the same. Hashes computed during a build
+   * are appended to the file; when a path is recorded several times, the last record wins. The file is rewritten when most of
+   * its records are outdated.
+   */
+  private static class FileHashes {
+    private static final int HASH_SIZE = 16;
+
+    private final File myFile;
+    private final Map<String, FileHash> myHashes = new HashMap<String, FileHash>();
+    private final List<FileHash> myAdded = new ArrayList<FileHash>();
+    private int myRecordCount;
+
+    private FileHashes(File file) {
+      myFile = file;
+      load();
+    }
+
+    @Nullable
+    public byte[] get(File file) {
+      final FileHash hash = myHashes.get(file.getPath());
+      return hash != null && hash.myTimestamp == file.lastModified() && hash.myLength == file.length() ? hash.myHash : null;
+    }
+
+    public void put(File file, byte[] hash) {
+      final FileHash fileHash = new FileHash(file.getPath(), file.lastModified(), file.length(), hash);
+      myHashes.put(fileHash.myPath, fileHash);
+      myAdded.add(fileHash);
+    }
+
+    public void flush() {
+      if (myAdded.isEmpty()) {
+        return;
+      }
+      final boolean rewrite = !myFile.exists() || myRecordCount + myAdded.size() > 2 * myHashes.size();
+      final Collection<FileHash> records = rewrite ? myHashes.values() : myAdded;
+      try {
+        FileUtil.createParentDirs(myFile);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile, !rewrite)));
+        try {
+          if (rewrite) {
+            out.writeInt(VERSION);
+          }
+          for (FileHash hash : records) {
+            hash.write(out);
+          }
+        }
+        finally {
+          out.close();
+        }
+        myRecordCount = rewrite ? records.size() : myRecordCount + records.size();
+      }
+      catch (IOException e) {
+        LOG.info("Cannot save classpath hashes to " + myFile.getPath(), e);
+        FileUtil.delete(myFile);
+        myRecordCount = 0;
+      }
+      myAdded.clear();
+    }
+
+    private void load() {
+      if (!myFile.exists()) {
+        return;
+      }
+      try {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)));
+        try {
+          if (in.readInt() != VERSION) {
+            FileUtil.delete(myFile);
+            return;
+          }
+          while (in.available() > 0) {
+            final FileHash hash = FileHash.read(in);
+            myHashes.put(hash.myPath, hash);
+            myRecordCount++;
+          }
+        }
+        finally {
+          in.close();
+        }
+      }
+      catch (IOException e) {
+        // the records read so far are fine; the file is rewritten on the next flush
+        LOG.info("Cannot read classpath hashes from " + myFile.getPath(), e);
+        FileUtil.delete(myFile);
+      }
+    }
+  }
+
+  private static class FileHash {
+    private final String myPath;
+    private final long myTimestamp;
+    private final long myLength;
+    private final byte[] myHash;
+
+    private FileHash(String path, long timestamp, long length, byte[] hash) {
+      myPath = path;
+      myTimestamp = timestamp;
+      myLength = length;
+      myHash = hash;
+    }
+
+    private void write(DataOutput out) throws IOException {
+      out.writeUTF(myPath);
+      out.writeLong(myTimestamp);
+      out.writeLong(myLength);
+      out.write(myHash);
+    }
+
+    private static FileHash read(DataInput in) throws IOException {
+      final String path = in.readUTF();
+      final long timestamp = in.readLong();
+      final long length = in.readLong();
+      final byte[] hash = new byte[FileHashes.HASH_SIZE];
+      in.readFully(hash);
+      return new FileHash(path, timestamp, length, hash);
+    }
+  }
+
+  /**
+   * Digests the part of a class file other classes are compiled against: non-private declarations and constant values
+   */
+  private static class AbiDigestVisitor extends ClassVisitor {
+    private final MessageDigest myDigest;
+
+    public AbiDigestVisitor(MessageDigest digest) {
+      super(Opcodes.ASM4);
+      myDigest = digest;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+      update(myDigest, access + " " + name + " " + signature + " " + superName + " " + Arrays.toString(interfaces));
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+      update(myDigest, "@" + desc + " " + visible);
+      return new AnnotationDigestVisitor(myDigest);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      update(myDigest, "inner " + access + " " + name + " " + outerName + " " + innerName);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+      if ((access & Opcodes.ACC_PRIVATE) != 0) {
+        return null;
+      }
+      update(myDigest, "field " + access + " " + name + " " + desc + " " + signature + " " + value);
+      return new FieldVisitor(Opcodes.ASM4) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          update(myDigest, "@" + desc + " " + visible);
+          return new AnnotationDigestVisitor(myDigest);
+        }
+      };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+      if ((access & Opcodes.ACC_PRIVATE) != 0) {
+        return null;
+      }
+      update(myDigest, "method " + access + " " + name + " " + desc + " " + signature + " " + Arrays.toString(exceptions));
+      return new MethodVisitor(Opcodes.ASM4) {
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+          update(myDigest, "default");
+          return new AnnotationDigestVisitor(myDigest);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+          update(myDigest, "@" + desc + " " + visible);
+          return new AnnotationDigestVisitor(myDigest);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+          update(myDigest, "@" + parameter + " " + desc + " " + visible);
+          return new AnnotationDigestVisitor(myDigest);
+        }
+      };
+    }
+  }
+
+  /**
+   * Digests annotation values, including nested annotations and arrays; the end of each of them is marked so that
+   * differently nested values give different digests
+   */
+  private static class AnnotationDigestVisitor extends AnnotationVisitor {
+    private final MessageDigest myDigest;
+
+    public AnnotationDigestVisitor(MessageDigest digest) {
+      super(Opcodes.ASM4);
+      myDigest = digest;
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+      update(myDigest, name + "=" + valueToString(value));
+    }
+
+    @Override
+    public void visitEnum(String name, String desc, String value) {
+      update(myDigest, name + "=" + desc + "." + value);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String name, String desc) {
+      update(myDigest, name + "=@" + desc);
+      return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+      update(myDigest, name + "=[");
+      return this;
+    }
+
+    @Override
+    public void visitEnd() {
+      update(myDigest, "end");
+    }
+
+    private static String valueToString(Object value) {
+      if (value == null || !value.getClass().isArray()) {
+        return String.valueOf(value);
+      }
+      // arrays of primitives are reported as a single value
+      final StringBuilder buf = new StringBuilder("[");
+      final int length = Array.getLength(value);
+      for (int i = 0; i < length; i++) {
+        if (i > 0) {
+          buf.append(",");
+        }
+        buf.append(Array.get(value, i));
+      }
+      return buf.append("]").toString();
+    }
+  }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.messages;
+
+/**
+ * Sent at the end of a traced build; the text is appended to the 'build completed' event
+ *
+ * @see org.jetbrains.jps.incremental.BuildTrace#getSummary()
+ */
+public class BuildTraceSummaryEvent extends BuildMessage {
+  public BuildTraceSummaryEvent(String summary) {
+    super(summary, Kind.INFO);
+  }
+}
@@ -1,37 +1,183 @@
 package org.jetbrains.jps.incremental.storage;
 
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.IOUtil;
 import com.intellij.util.io.KeyDescriptor;
+import gnu.trove.TObjectLongHashMap;
+import gnu.trove.TObjectLongProcedure;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 
 /**
+ * Besides the persistent map, keeps all stamps in memory. The first scan of a large project asks for the stamp of every source file,
+ * so the stamps are loaded with a single sequential read of a snapshot file, written on close, instead of a lookup per file.
+ * The snapshot is trusted only if the storage hasn't been modified after it was written: a marker file is created before the first
+ * modification and deleted when the snapshot is saved, so that a crash in between makes the stamps reload from the map.
+ *
  * @author Eugene Zhuravlev
  *         Date: 10/7/11
  */
 public class TimestampStorage extends AbstractStateStorage<File, TimestampValidityState> implements Timestamps {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.storage.TimestampStorage");
+  private static final int SNAPSHOT_VERSION = 1;
+  private final File mySnapshotFile;
+  private final File mySnapshotOutdatedMarker;
+  private TObjectLongHashMap<File> myStamps; // loaded on first access
+  private boolean mySnapshotUpToDate;
+  private boolean myMarkedOutdated;
 
   public TimestampStorage(File storePath) throws IOException {
     super(storePath, new FileKeyDescriptor(), new StateExternalizer());
+    mySnapshotFile = new File(storePath.getPath() + ".snapshot");
+    mySnapshotOutdatedMarker = new File(storePath.getPath() + ".snapshot-outdated");
   }
 
   @Override
   public long getStamp(File file) throws IOException {
-    final TimestampValidityState state = getState(file);
-    return state != null? state.getTimestamp() : -1L;
+    synchronized (myDataLock) {
+      final TObjectLongHashMap<File> stamps = getStamps();
+      return stamps.containsKey(file) ? stamps.get(file) : -1L;
+    }
   }
 
   @Override
   public void saveStamp(File file, long timestamp) throws IOException {
-    update(file, new TimestampValidityState(timestamp));
+    synchronized (myDataLock) {
+      markSnapshotOutdated();
+      update(file, new TimestampValidityState(timestamp));
+      if (myStamps != null) {
+        myStamps.put(file, timestamp);
+      }
+    }
   }
 
   public void removeStamp(File file) throws IOException {
-    remove(file);
+    synchronized (myDataLock) {
+      markSnapshotOutdated();
+      remove(file);
+      if (myStamps != null) {
+        myStamps.remove(file);
+      }
+    }
+  }
+
+  @Override
+  public boolean wipe() {
+    synchronized (myDataLock) {
+      myStamps = null;
+      mySnapshotUpToDate = false;
+      myMarkedOutdated = false;
+      return super.wipe(); // the snapshot file is deleted along with the map files
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (myDataLock) {
+      if (myStamps != null && !mySnapshotUpToDate) {
+        saveSnapshot(myStamps);
+      }
+      super.close();
+    }
+  }
+
+  @NotNull
+  private TObjectLongHashMap<File> getStamps() throws IOException {
+    if (myStamps == null) {
+      TObjectLongHashMap<File> stamps = mySnapshotOutdatedMarker.exists() ? null : loadSnapshot();
+      mySnapshotUpToDate = stamps != null;
+      if (stamps == null) {
+        stamps = new TObjectLongHashMap<File>();
+        for (File file : getKeys()) {
+          final TimestampValidityState state = getState(file);
+          if (state != null) {
+            stamps.put(file, state.getTimestamp());
+          }
+        }
+      }
+      myStamps = stamps;
+    }
+    return myStamps;
+  }
+
+  private void markSnapshotOutdated() throws IOException {
+    if (!myMarkedOutdated) {
+      if (!FileUtil.createIfDoesntExist(mySnapshotOutdatedMarker)) {
+        FileUtil.delete(mySnapshotFile);
+      }
+      myMarkedOutdated = true;
+      mySnapshotUpToDate = false;
+    }
+  }
+
+  @Nullable
+  private TObjectLongHashMap<File> loadSnapshot() {
+    if (!mySnapshotFile.exists()) {
+      return null;
+    }
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mySnapshotFile)));
+      try {
+        if (in.readInt() != SNAPSHOT_VERSION) {
+          return null;
+        }
+        final int size = in.readInt();
+        final TObjectLongHashMap<File> stamps = new TObjectLongHashMap<File>(size);
+        for (int i = 0; i < size; i++) {
+          final File file = new File(IOUtil.readString(in));
+          stamps.put(file, in.readLong());
+        }
+        return stamps;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot load timestamps snapshot " + mySnapshotFile, e);
+      return null;
+    }
+  }
+
+  private void saveSnapshot(TObjectLongHashMap<File> stamps) {
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mySnapshotFile)));
+      try {
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(stamps.size());
+        final IOException[] error = new IOException[1];
+        stamps.forEachEntry(new TObjectLongProcedure<File>() {
+          @Override
+          public boolean execute(File file, long stamp) {
+            try {
+              IOUtil.writeString(file.getPath(), out);
+              out.writeLong(stamp);
+              return true;
+            }
+            catch (IOException e) {
+              error[0] = e;
+              return false;
+            }
+          }
+        });
+        if (error[0] != null) {
+          throw error[0];
+        }
+      }
+      finally {
+        out.close();
+      }
+      FileUtil.delete(mySnapshotOutdatedMarker);
+      myMarkedOutdated = false;
+      mySnapshotUpToDate = true;
+    }
+    catch (IOException e) {
+      LOG.info("Cannot save timestamps snapshot " + mySnapshotFile, e);
+    }
   }
 
   private static class FileKeyDescriptor implements KeyDescriptor<File> {
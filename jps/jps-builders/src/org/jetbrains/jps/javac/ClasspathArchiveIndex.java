@@ -0,0 +1,150 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.javac;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Directory listings of classpath archives shared by all javac file managers created in the process. Javac looks up every referenced
+ * package in every classpath root, so without the index each compiled chunk opens all the archives from scratch; with it, a chunk opens
+ * only the archives which actually contain the requested packages.
+ * <p/>
+ * Directories on the classpath aren't indexed: they are mostly output directories of the chunks compiled earlier in the same build.
+ */
+public class ClasspathArchiveIndex {
+  private static final Map<File, ArchiveContent> ourArchives = new ConcurrentHashMap<File, ArchiveContent>();
+
+  private ClasspathArchiveIndex() {
+  }
+
+  /**
+   * Drops the contents of the archives which have been modified since they were indexed. Should be called before each compilation.
+   */
+  public static void validate(@NotNull Iterable<? extends File> roots) {
+    for (File root : roots) {
+      final ArchiveContent content = ourArchives.get(root);
+      if (content != null && !content.isUpToDate(root)) {
+        ourArchives.remove(root);
+      }
+    }
+  }
+
+  /**
+   * @param relativeDir '/'-separated path of a directory inside the archive, empty string for the archive root
+   * @return false if the archive definitely contains no files directly under the directory
+   */
+  public static boolean mayContainFilesIn(@NotNull File archive, @NotNull String relativeDir) {
+    final ArchiveContent content = getContent(archive);
+    return content == null || content.getFiles(relativeDir) != null;
+  }
+
+  /**
+   * @param relativePath '/'-separated path of a file inside the archive
+   * @return false if the archive definitely doesn't contain the file
+   */
+  public static boolean mayContainFile(@NotNull File archive, @NotNull String relativePath) {
+    final ArchiveContent content = getContent(archive);
+    if (content == null) {
+      return true;
+    }
+    final int slash = relativePath.lastIndexOf('/');
+    final String[] files = content.getFiles(slash < 0 ? "" : relativePath.substring(0, slash));
+    return files != null && Arrays.binarySearch(files, relativePath.substring(slash + 1)) >= 0;
+  }
+
+  @Nullable
+  private static ArchiveContent getContent(File archive) {
+    ArchiveContent content = ourArchives.get(archive);
+    if (content == null) {
+      content = ArchiveContent.load(archive);
+      ourArchives.put(archive, content);
+    }
+    return content.myFiles != null ? content : null;
+  }
+
+  private static class ArchiveContent {
+    private final long myTimestamp;
+    private final long myLength;
+    @Nullable private final Map<String, String[]> myFiles; // directory -> sorted names of the files in it; null if the archive cannot be read
+
+    private ArchiveContent(long timestamp, long length, @Nullable Map<String, String[]> files) {
+      myTimestamp = timestamp;
+      myLength = length;
+      myFiles = files;
+    }
+
+    public boolean isUpToDate(File archive) {
+      return archive.lastModified() == myTimestamp && archive.length() == myLength;
+    }
+
+    @Nullable
+    public String[] getFiles(String relativeDir) {
+      //noinspection ConstantConditions
+      return myFiles.get(relativeDir);
+    }
+
+    @NotNull
+    public static ArchiveContent load(File archive) {
+      final long timestamp = archive.lastModified();
+      final long length = archive.length();
+      final Map<String, List<String>> files = new HashMap<String, List<String>>();
+      try {
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+          final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+          while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory()) {
+              continue;
+            }
+            final String name = entry.getName();
+            final int slash = name.lastIndexOf('/');
+            final String dir = slash < 0 ? "" : name.substring(0, slash);
+            List<String> names = files.get(dir);
+            if (names == null) {
+              names = new ArrayList<String>();
+              files.put(dir, names);
+            }
+            names.add(name.substring(slash + 1));
+          }
+        }
+        finally {
+          zipFile.close();
+        }
+      }
+      catch (IOException e) {
+        // javac will report the problem when it opens the archive itself
+        return new ArchiveContent(timestamp, length, null);
+      }
+
+      final Map<String, String[]> result = new HashMap<String, String[]>(files.size());
+      for (Map.Entry<String, List<String>> entry : files.entrySet()) {
+        final String[] names = entry.getValue().toArray(new String[entry.getValue().size()]);
+        Arrays.sort(names);
+        result.put(entry.getKey(), names);
+      }
+      return new ArchiveContent(timestamp, length, result);
+    }
+  }
+}
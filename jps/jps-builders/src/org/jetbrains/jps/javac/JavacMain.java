@@ -36,6 +36,8 @@ public class JavacMain {
     for (File outputDir : outputDirToRoots.keySet()) {
       outputDir.mkdirs();
     }
+    ClasspathArchiveIndex.validate(classpath);
+    ClasspathArchiveIndex.validate(platformClasspath);
     final JavacFileManager fileManager = new JavacFileManager(new ContextImpl(compiler, outConsumer, outputSink, canceledStatus));
 
     fileManager.handleOption("-bootclasspath", Collections.singleton("").iterator()); // this will clear cached stuff
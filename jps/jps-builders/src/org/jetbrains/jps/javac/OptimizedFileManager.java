@@ -79,6 +79,7 @@ class OptimizedFileManager extends DefaultFileManager {
     if (path == null) return Collections.emptyList();
 
     String relativePath = packageName.replace('.', File.separatorChar);
+    String packagePath = packageName.replace('.', '/');
     ListBuffer<JavaFileObject> results = new ListBuffer<JavaFileObject>();
 
     for (File root : path) {
@@ -91,6 +92,9 @@ class OptimizedFileManager extends DefaultFileManager {
         isFile = isFile(root);
       }
       if (isFile) {
+        if (archive == null && !recurse && !ClasspathArchiveIndex.mayContainFilesIn(root, packagePath)) {
+          continue;
+        }
         collectFromArchive(root, archive, relativePath, kinds, recurse, results);
       }
       else {
@@ -214,6 +218,9 @@ class OptimizedFileManager extends DefaultFileManager {
       }
       if (isFile) {
         if (archive == null) {
+          if (!ClasspathArchiveIndex.mayContainFile(root, name)) {
+            continue;
+          }
           try {
             archive = openArchive(root);
           }
@@ -59,7 +59,8 @@ class OptimizedFileManager17 extends com.sun.tools.javac.file.JavacFileManager {
       return List.nil();
     }
 
-    RelativePath.RelativeDirectory subdirectory = new RelativePath.RelativeDirectory(packageName.replace('.', '/'));
+    final String packagePath = packageName.replace('.', '/');
+    RelativePath.RelativeDirectory subdirectory = new RelativePath.RelativeDirectory(packagePath);
     
     ListBuffer<JavaFileObject> results = new ListBuffer<JavaFileObject>();
 
@@ -75,6 +76,9 @@ class OptimizedFileManager17 extends com.sun.tools.javac.file.JavacFileManager {
       }
       
       if (isFile) {
+        if (archive == null && !recurse && !ClasspathArchiveIndex.mayContainFilesIn(file, packagePath)) {
+          continue;
+        }
         // Not a directory; either a file or non-existant, create the archive
         try {
           if (archive == null) {
@@ -100,6 +104,54 @@ class OptimizedFileManager17 extends com.sun.tools.javac.file.JavacFileManager {
     return results.toList();
   }
 
+  @Override
+  public JavaFileObject getJavaFileForInput(Location location, String className, JavaFileObject.Kind kind) throws IOException {
+    if (kind != JavaFileObject.Kind.SOURCE && kind != JavaFileObject.Kind.CLASS) {
+      throw new IllegalArgumentException("Invalid kind " + kind);
+    }
+    return getFileForInput(location, new RelativePath.RelativeFile(className.replace('.', '/') + kind.extension));
+  }
+
+  @Override
+  public FileObject getFileForInput(Location location, String packageName, String relativeName) throws IOException {
+    nullCheck(packageName);
+    if (!isRelativeUri(relativeName)) {
+      throw new IllegalArgumentException("Invalid relative name: " + relativeName);
+    }
+    final RelativePath.RelativeFile name = packageName.length() == 0
+                                           ? new RelativePath.RelativeFile(relativeName)
+                                           : new RelativePath.RelativeFile(new RelativePath.RelativeDirectory(packageName.replace('.', '/')), relativeName);
+    return getFileForInput(location, name);
+  }
+
+  private JavaFileObject getFileForInput(Location location, RelativePath.RelativeFile name) throws IOException {
+    Iterable<? extends File> path = getLocation(location);
+    if (path == null) {
+      return null;
+    }
+
+    for (File root : path) {
+      Archive archive = myArchives.get(root);
+      if (archive == null) {
+        if (!isFile(root)) {
+          final File file = new File(root, name.getPath().replace('/', File.separatorChar));
+          if (file.exists()) {
+            return new InputFileObject(this, file);
+          }
+          continue;
+        }
+        if (!ClasspathArchiveIndex.mayContainFile(root, name.getPath())) {
+          continue;
+        }
+        archive = openArchive(root);
+      }
+      if (archive.contains(name)) {
+        return archive.getFileObject(name.dirname(), name.basename());
+      }
+    }
+    return null;
+  }
+
   private static void listArchive(Archive archive, RelativePath.RelativeDirectory subdirectory, Set<JavaFileObject.Kind> fileKinds, boolean recurse, ListBuffer<JavaFileObject> resultList) {
     // Get the files directly in the subdir
     List<String> files = archive.getFiles(subdirectory);
@@ -131,7 +131,7 @@ public final class OutputFileObject extends SimpleJavaFileObject {
     private final int myOffset;
     private final int myLength;
 
-    Content(byte[] buf, int off, int len) {
+    public Content(byte[] buf, int off, int len) {
       myBuffer = buf;
       myOffset = off;
       myLength = len;
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.server;
+
+import com.intellij.openapi.util.Pair;
+import com.intellij.util.ConcurrencyUtil;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.api.JpsRemoteProto;
+import org.jetbrains.jps.api.ProtoUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects responses of a build session and sends them in batches, at most once per flush interval. While the responses wait in the
+ * queue, a progress message replaces the progress message queued right before it, and consecutive 'files generated' events are merged
+ * into one event with {@link ProtoUtil#createFileGeneratedEvent delta-encoded} output roots. Errors, warnings and other messages are
+ * never dropped and keep their order.
+ */
+class BatchingResponseSender {
+  private static final long FLUSH_INTERVAL;
+  static {
+    long interval = 100L;
+    try {
+      interval = Long.parseLong(System.getProperty(GlobalOptions.MESSAGE_FLUSH_INTERVAL_MS_OPTION, "100"));
+    }
+    catch (NumberFormatException ignored) {
+    }
+    FLUSH_INTERVAL = interval;
+  }
+  private static final int MAX_QUEUED_RESPONSES = 500;
+  private static final ScheduledExecutorService ourFlushScheduler = ConcurrencyUtil.newSingleScheduledThreadExecutor("Compile server message flusher");
+
+  private final Channel myChannel;
+  private final UUID mySessionId;
+  private final List<JpsRemoteProto.Message.Response> myQueue = new ArrayList<JpsRemoteProto.Message.Response>();
+  private boolean myFlushScheduled = false;
+  private final Runnable myFlushTask = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  BatchingResponseSender(@NotNull Channel channel, @NotNull UUID sessionId) {
+    myChannel = channel;
+    mySessionId = sessionId;
+  }
+
+  public void send(@NotNull JpsRemoteProto.Message.Response response) {
+    if (FLUSH_INTERVAL <= 0L) {
+      Channels.write(myChannel, ProtoUtil.toMessage(mySessionId, response));
+      return;
+    }
+    synchronized (myQueue) {
+      final int last = myQueue.size() - 1;
+      final JpsRemoteProto.Message.Response merged = last >= 0 ? merge(myQueue.get(last), response) : null;
+      if (merged != null) {
+        myQueue.set(last, merged);
+      }
+      else {
+        myQueue.add(response);
+      }
+      if (myQueue.size() >= MAX_QUEUED_RESPONSES) {
+        flush();
+      }
+      else if (!myFlushScheduled) {
+        myFlushScheduled = true;
+        ourFlushScheduler.schedule(myFlushTask, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Sends all queued responses. Must be called before the last message of the session is sent.
+   */
+  public void flush() {
+    synchronized (myQueue) {
+      myFlushScheduled = false;
+      for (JpsRemoteProto.Message.Response response : myQueue) {
+        Channels.write(myChannel, ProtoUtil.toMessage(mySessionId, response));
+      }
+      myQueue.clear();
+    }
+  }
+
+  /**
+   * @return a response replacing both responses or null if they cannot be merged
+   */
+  static JpsRemoteProto.Message.Response merge(JpsRemoteProto.Message.Response previous, JpsRemoteProto.Message.Response next) {
+    if (isProgress(previous) && isProgress(next)) {
+      final JpsRemoteProto.Message.Response.CompileMessage previousMessage = previous.getCompileMessage();
+      final JpsRemoteProto.Message.Response.CompileMessage nextMessage = next.getCompileMessage();
+      if (!nextMessage.hasDone() && previousMessage.hasDone()) {
+        // keep the last known fraction
+        return next.toBuilder().setCompileMessage(nextMessage.toBuilder().setDone(previousMessage.getDone())).build();
+      }
+      return next;
+    }
+    if (isFilesGenerated(previous) && isFilesGenerated(next)) {
+      final List<Pair<String, String>> files = ProtoUtil.getGeneratedFiles(previous.getBuildEvent());
+      files.addAll(ProtoUtil.getGeneratedFiles(next.getBuildEvent()));
+      return ProtoUtil.createFileGeneratedEvent(files);
+    }
+    return null;
+  }
+
+  private static boolean isProgress(JpsRemoteProto.Message.Response response) {
+    return response.getResponseType() == JpsRemoteProto.Message.Response.Type.COMPILE_MESSAGE &&
+           response.getCompileMessage().getKind() == JpsRemoteProto.Message.Response.CompileMessage.Kind.PROGRESS;
+  }
+
+  private static boolean isFilesGenerated(JpsRemoteProto.Message.Response response) {
+    return response.getResponseType() == JpsRemoteProto.Message.Response.Type.BUILD_EVENT &&
+           response.getBuildEvent().getEventType() == JpsRemoteProto.Message.Response.BuildEvent.Type.FILES_GENERATED;
+  }
+}
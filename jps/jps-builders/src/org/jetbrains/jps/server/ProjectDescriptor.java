@@ -1,12 +1,10 @@
 package org.jetbrains.jps.server;
 
-import org.jetbrains.jps.JavaSdk;
-import org.jetbrains.jps.Module;
-import org.jetbrains.jps.Project;
-import org.jetbrains.jps.Sdk;
+import org.jetbrains.jps.*;
 import org.jetbrains.jps.incremental.BuildLoggingManager;
 import org.jetbrains.jps.incremental.ModuleRootsIndex;
 import org.jetbrains.jps.incremental.fs.BuildFSState;
+import org.jetbrains.jps.incremental.fs.FSChangeJournal;
 import org.jetbrains.jps.incremental.storage.BuildDataManager;
 import org.jetbrains.jps.incremental.storage.ProjectTimestamps;
 
@@ -27,6 +25,8 @@ public final class ProjectDescriptor {
   public ModuleRootsIndex rootsIndex;
   private int myUseCounter = 1;
   private Set<JavaSdk> myProjectJavaSdks;
+  private final Set<String> myUsedGlobalLibraries = new HashSet<String>();
+  private volatile FSChangeJournal myChangeJournal;
 
   public ProjectDescriptor(Project project,
                            BuildFSState fsState,
@@ -48,6 +48,19 @@ public final class ProjectDescriptor {
           myProjectJavaSdks.add(javaSdk);
         }
       }
+      if (sdk != null && sdk == project.getSdks().get(sdk.getName())) {
+        myUsedGlobalLibraries.add(sdk.getName());
+      }
+      for (ClasspathKind kind : ClasspathKind.values()) {
+        for (ClasspathItem item : module.getClasspath(kind)) {
+          if (item instanceof Library) {
+            final String name = ((Library)item).getName();
+            if (item == project.getGlobalLibraries().get(name) || item == project.getSdks().get(name)) {
+              myUsedGlobalLibraries.add(name);
+            }
+          }
+        }
+      }
     }
   }
 
@@ -55,10 +68,24 @@ public final class ProjectDescriptor {
     return myProjectJavaSdks;
   }
 
+  /**
+   * @return names of the global libraries and SDKs the modules of the project depend on
+   */
+  public Set<String> getUsedGlobalLibraries() {
+    return myUsedGlobalLibraries;
+  }
+
   public BuildLoggingManager getLoggingManager() {
     return myLoggingManager;
   }
 
+  /**
+   * @param journal the journal to save the FS state to when the descriptor is closed
+   */
+  public void setChangeJournal(FSChangeJournal journal) {
+    myChangeJournal = journal;
+  }
+
   public synchronized void incUsageCounter() {
     myUseCounter++;
   }
@@ -70,6 +97,10 @@ public final class ProjectDescriptor {
       shouldClose = myUseCounter == 0;
     }
     if (shouldClose) {
+      final FSChangeJournal journal = myChangeJournal;
+      if (journal != null) {
+        fsState.saveState(journal, rootsIndex);
+      }
       try {
         timestamps.close();
       }
@@ -124,6 +124,9 @@ class ServerMessageHandler extends SimpleChannelHandler {
               }
             }
           }
+          else {
+            facade.journalFileEvents(projectId, fsEvent.getChangedPathsList(), fsEvent.getDeletedPathsList());
+          }
           reply = ProtoUtil.toMessage(sessionId, ProtoUtil.createCommandCompletedEvent(null));
           break;
         case PING:
@@ -254,6 +257,7 @@ class ServerMessageHandler extends SimpleChannelHandler {
     private final Map<String, String> myBuilderParams;
     private final Collection<String> myPaths;
     private final Set<String> myModules;
+    private final BatchingResponseSender myResponseSender;
     private volatile boolean myCanceled = false;
 
     public CompilationTask(UUID sessionId,
@@ -271,6 +275,7 @@ class ServerMessageHandler extends SimpleChannelHandler {
       myBuilderParams = builderParams;
       myPaths = paths;
       myModules = new HashSet<String>(modules);
+      myResponseSender = new BatchingResponseSender(channelContext.getChannel(), sessionId);
     }
 
     public UUID getSessionId() {
@@ -286,6 +291,7 @@ class ServerMessageHandler extends SimpleChannelHandler {
       Throwable error = null;
       final Ref<Boolean> hasErrors = new Ref<Boolean>(false);
       final Ref<Boolean> markedFilesUptodate = new Ref<Boolean>(false);
+      final Ref<String> traceSummary = new Ref<String>(null);
       try {
         ServerState.getInstance().startBuild(myProjectPath, myBuildType, myModules, myArtifacts, myBuilderParams, myPaths, new MessageHandler() {
           public void processMessage(BuildMessage buildMessage) {
@@ -294,6 +300,10 @@ class ServerMessageHandler extends SimpleChannelHandler {
               final Collection<Pair<String, String>> paths = ((FileGeneratedEvent)buildMessage).getPaths();
               response = !paths.isEmpty()? ProtoUtil.createFileGeneratedEvent(paths) : null;
             }
+            else if (buildMessage instanceof BuildTraceSummaryEvent) {
+              traceSummary.set(buildMessage.getMessageText());
+              response = null;
+            }
             else if (buildMessage instanceof UptoDateFilesSavedEvent) {
               markedFilesUptodate.set(true);
               response = null;
@@ -320,7 +330,7 @@ class ServerMessageHandler extends SimpleChannelHandler {
               response = ProtoUtil.createCompileProgressMessageResponse(buildMessage.getMessageText(), done);
             }
             if (response != null) {
-              Channels.write(myChannelContext.getChannel(), ProtoUtil.toMessage(mySessionId, response));
+              myResponseSender.send(response);
             }
           }
         }, this);
@@ -330,11 +340,11 @@ class ServerMessageHandler extends SimpleChannelHandler {
         error = e;
       }
       finally {
-        finishBuild(error, hasErrors.get(), markedFilesUptodate.get());
+        finishBuild(error, hasErrors.get(), markedFilesUptodate.get(), traceSummary.get());
       }
     }
 
-    private void finishBuild(@Nullable Throwable error, boolean hadBuildErrors, boolean markedUptodateFiles) {
+    private void finishBuild(@Nullable Throwable error, boolean hadBuildErrors, boolean markedUptodateFiles, @Nullable String traceSummary) {
       JpsRemoteProto.Message lastMessage = null;
       try {
         if (error != null) {
@@ -364,13 +374,14 @@ class ServerMessageHandler extends SimpleChannelHandler {
           else if (!markedUptodateFiles){
             status = JpsRemoteProto.Message.Response.BuildEvent.Status.UP_TO_DATE;
           }
-          lastMessage = ProtoUtil.toMessage(mySessionId, ProtoUtil.createBuildCompletedEvent("build completed", status));
+          lastMessage = ProtoUtil.toMessage(mySessionId, ProtoUtil.createBuildCompletedEvent(traceSummary != null ? "build completed\n" + traceSummary : "build completed", status));
         }
       }
       catch (Throwable e) {
         lastMessage = ProtoUtil.toMessage(mySessionId, ProtoUtil.createFailure(e.getMessage(), e));
       }
       finally {
+        myResponseSender.flush();
         Channels.write(myChannelContext.getChannel(), lastMessage).addListener(new ChannelFutureListener() {
           public void operationComplete(ChannelFuture future) throws Exception {
             final UUID sessionId = getSessionId();
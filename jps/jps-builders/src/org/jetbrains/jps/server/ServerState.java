@@ -1,6 +1,7 @@
 package org.jetbrains.jps.server;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import groovy.util.Node;
@@ -20,6 +21,7 @@ import org.jetbrains.jps.idea.IdeaProjectLoader;
 import org.jetbrains.jps.idea.SystemOutErrorReporter;
 import org.jetbrains.jps.incremental.*;
 import org.jetbrains.jps.incremental.fs.BuildFSState;
+import org.jetbrains.jps.incremental.fs.FSChangeJournal;
 import org.jetbrains.jps.incremental.fs.RootDescriptor;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
@@ -42,6 +44,8 @@ class ServerState {
   public static final String IDEA_PROJECT_DIRNAME = ".idea";
 
   private final Map<String, ProjectDescriptor> myProjects = new HashMap<String, ProjectDescriptor>();
+  // journals of the projects unloaded in this server session, valid until the project is loaded again
+  private final Map<String, FSChangeJournal> myChangeJournals = new HashMap<String, FSChangeJournal>();
 
   private final Object myConfigurationLock = new Object();
   private final Map<String, String> myPathVariables = new HashMap<String, String>();
@@ -49,15 +53,74 @@ class ServerState {
   private volatile String myGlobalEncoding = null;
   private volatile boolean myKeepTempCachesInMemory = false;
   private volatile String myIgnoredFilesPatterns;
+  private int myDescriptorCacheHits = 0;
+  private int myDescriptorLoads = 0;
+  private long myDescriptorLoadTime = 0L;
 
   public void setGlobals(List<GlobalLibrary> libs, Map<String, String> pathVars, String globalEncoding, String ignoredFilesPatterns) {
     synchronized (myConfigurationLock) {
-      clearCahedState();
+      final String encoding = StringUtil.isEmpty(globalEncoding)? null : globalEncoding;
+      final String patterns = StringUtil.isEmpty(ignoredFilesPatterns)? "" : ignoredFilesPatterns;
+      final Set<String> changedLibraries = getChangedLibraries(myGlobalLibraries, libs);
+      if (changedLibraries == null || !myPathVariables.equals(pathVars) ||
+          !Comparing.equal(myGlobalEncoding, encoding) || !Comparing.equal(myIgnoredFilesPatterns, patterns)) {
+        clearCahedState();
+      }
+      else if (!changedLibraries.isEmpty()) {
+        // projects not depending on the changed libraries keep their loaded model and opened storages
+        final List<String> affectedProjects = new ArrayList<String>();
+        for (Map.Entry<String, ProjectDescriptor> entry : myProjects.entrySet()) {
+          if (!Collections.disjoint(entry.getValue().getUsedGlobalLibraries(), changedLibraries)) {
+            affectedProjects.add(entry.getKey());
+          }
+        }
+        LOG.info("Global libraries changed: " + changedLibraries + "; projects to reload: " + affectedProjects);
+        clearProjectCache(affectedProjects);
+      }
+      myGlobalLibraries.clear();
       myGlobalLibraries.addAll(libs);
+      myPathVariables.clear();
       myPathVariables.putAll(pathVars);
-      myGlobalEncoding = StringUtil.isEmpty(globalEncoding)? null : globalEncoding;
-      myIgnoredFilesPatterns = StringUtil.isEmpty(ignoredFilesPatterns)? "" : ignoredFilesPatterns;
+      myGlobalEncoding = encoding;
+      myIgnoredFilesPatterns = patterns;
+    }
+  }
+
+  /**
+   * @return names of the libraries which were changed or removed, or null if a library was added: a project may refer to a library
+   * missing at the time the project was loaded, so all projects should be reloaded in this case
+   */
+  @Nullable
+  private static Set<String> getChangedLibraries(List<GlobalLibrary> oldLibs, List<GlobalLibrary> newLibs) {
+    final Map<String, GlobalLibrary> oldByName = new HashMap<String, GlobalLibrary>();
+    for (GlobalLibrary lib : oldLibs) {
+      oldByName.put(lib.getName(), lib);
+    }
+    final Set<String> changed = new HashSet<String>();
+    for (GlobalLibrary lib : newLibs) {
+      final GlobalLibrary oldLib = oldByName.remove(lib.getName());
+      if (oldLib == null) {
+        return null;
+      }
+      if (!isSameLibrary(oldLib, lib)) {
+        changed.add(lib.getName());
+      }
+    }
+    changed.addAll(oldByName.keySet());
+    return changed;
+  }
+
+  private static boolean isSameLibrary(GlobalLibrary lib1, GlobalLibrary lib2) {
+    if (!lib1.getPaths().equals(lib2.getPaths())) {
+      return false;
+    }
+    if (lib1 instanceof SdkLibrary && lib2 instanceof SdkLibrary) {
+      final SdkLibrary sdk1 = (SdkLibrary)lib1;
+      final SdkLibrary sdk2 = (SdkLibrary)lib2;
+      return Comparing.equal(sdk1.getTypeName(), sdk2.getTypeName()) && Comparing.equal(sdk1.getVersion(), sdk2.getVersion()) &&
+             Comparing.equal(sdk1.getHomePath(), sdk2.getHomePath()) && Comparing.equal(sdk1.getAdditionalDataXml(), sdk2.getAdditionalDataXml());
     }
+    return !(lib1 instanceof SdkLibrary) && !(lib2 instanceof SdkLibrary);
   }
 
   public final void clearCahedState() {
@@ -65,6 +128,7 @@ class ServerState {
       for (Map.Entry<String, ProjectDescriptor> entry : myProjects.entrySet()) {
         final String projectPath = entry.getKey();
         final ProjectDescriptor descriptor = entry.getValue();
+        startChangeJournal(projectPath, descriptor);
         descriptor.release();
       }
       myProjects.clear(); // projects should be reloaded against the latest data
@@ -105,6 +169,29 @@ class ServerState {
     }
   }
 
+  /**
+   * Records FS events for a project which is not loaded, so that they are applied when the project is loaded again
+   */
+  public void journalFileEvents(String projectPath, Collection<String> changedPaths, Collection<String> deletedPaths) {
+    synchronized (myConfigurationLock) {
+      final ProjectDescriptor pd = myProjects.get(projectPath);
+      if (pd != null) {
+        // the project has just been loaded
+        for (String path : changedPaths) {
+          notifyFileChanged(pd, new File(path));
+        }
+        for (String path : deletedPaths) {
+          notifyFileDeleted(pd, new File(path));
+        }
+        return;
+      }
+      final FSChangeJournal journal = myChangeJournals.get(projectPath);
+      if (journal != null) {
+        journal.appendEvents(changedPaths, deletedPaths);
+      }
+    }
+  }
+
   @Nullable
   public ProjectDescriptor getProjectDescriptor(String projectPath) {
     final ProjectDescriptor pd;
@@ -122,12 +209,19 @@ class ServerState {
       for (String projectPath : projectPaths) {
         final ProjectDescriptor descriptor = myProjects.remove(projectPath);
         if (descriptor != null) {
+          startChangeJournal(projectPath, descriptor);
           descriptor.release();
         }
       }
     }
   }
 
+  private void startChangeJournal(String projectPath, ProjectDescriptor descriptor) {
+    final FSChangeJournal journal = new FSChangeJournal(FSChangeJournal.getJournalFile(Utils.getDataStorageRoot(descriptor.project)));
+    descriptor.setChangeJournal(journal);
+    myChangeJournals.put(projectPath, journal);
+  }
+
   public void startBuild(String projectPath, BuildType buildType, Set<String> modules, Collection<String> artifacts,
                          Map<String, String> builderParams, Collection<String> paths, final MessageHandler msgHandler, CanceledStatus cs) throws Throwable{
 
@@ -135,7 +229,11 @@ class ServerState {
     ProjectDescriptor pd;
     synchronized (myConfigurationLock) {
       pd = myProjects.get(projectPath);
-      if (pd == null) {
+      if (pd != null) {
+        myDescriptorCacheHits++;
+      }
+      else {
+        final long start = System.currentTimeMillis();
         final Project project = loadProject(projectPath);
         final BuildFSState fsState = new BuildFSState(false);
         ProjectTimestamps timestamps = null;
@@ -167,7 +265,21 @@ class ServerState {
         }
 
         pd = new ProjectDescriptor(project, fsState, timestamps, dataManager, BuildLoggingManager.DEFAULT);
+        final FSChangeJournal journal = myChangeJournals.remove(projectPath);
+        if (journal != null) {
+          // the modules scanned before the project was unloaded are not scanned again
+          fsState.restoreState(journal, pd.rootsIndex, timestamps.getStorage());
+        }
+        else {
+          // left by a previous server run, which could not receive changes made while it was down
+          FileUtil.delete(FSChangeJournal.getJournalFile(dataStorageRoot));
+        }
         myProjects.put(projectPath, pd);
+        myDescriptorLoads++;
+        myDescriptorLoadTime += System.currentTimeMillis() - start;
+        LOG.info("Project descriptor for " + projectPath + " created in " + (System.currentTimeMillis() - start) + " ms; " +
+                 "cached descriptors reused " + myDescriptorCacheHits + " times, created " + myDescriptorLoads + " times in " +
+                 myDescriptorLoadTime + " ms total");
       }
       pd.incUsageCounter();
     }
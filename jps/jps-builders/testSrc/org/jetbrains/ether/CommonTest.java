@@ -83,4 +83,8 @@ public class CommonTest extends IncrementalTestCase {
   public void testAddClass() throws Exception {
       doTest();
   }
+
+  public void testAddPrivateOverloadInOtherModule() throws Exception {
+      doTest();
+  }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.ether.dependencyView;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.io.IntInlineKeyDescriptor;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntObjectProcedure;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+public class IntIntPersistentMultiMapletTest extends TestCase {
+  private File myDir;
+  private IntIntPersistentMultiMaplet myMaplet;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("maplet", null);
+    myMaplet = open();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myMaplet.close();
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private IntIntPersistentMultiMaplet open() throws IOException {
+    return new IntIntPersistentMultiMaplet(new File(myDir, "map"), new IntInlineKeyDescriptor());
+  }
+
+  public void testPendingValuesAreVisible() throws Exception {
+    myMaplet.put(1, 10);
+    myMaplet.put(1, 11);
+    assertTrue(myMaplet.containsKey(1));
+    assertSet(myMaplet.get(1), 10, 11);
+
+    myMaplet.put(1, 12);
+    myMaplet.removeFrom(1, 10);
+    assertSet(myMaplet.get(1), 11, 12);
+
+    myMaplet.put(2, 20);
+    myMaplet.remove(2);
+    assertFalse(myMaplet.containsKey(2));
+    assertNull(myMaplet.get(2));
+
+    myMaplet.put(3, 30);
+    myMaplet.replace(3, set(31));
+    assertSet(myMaplet.get(3), 31);
+  }
+
+  public void testPendingValuesAreWrittenOnClose() throws Exception {
+    myMaplet.put(1, 10);
+    myMaplet.put(1, set(11, 12));
+    myMaplet.close();
+
+    myMaplet = open();
+    assertSet(myMaplet.get(1), 10, 11, 12);
+  }
+
+  public void testForEachEntrySeesPendingValues() throws Exception {
+    myMaplet.put(1, 10);
+    myMaplet.put(2, 20);
+    final TIntHashSet keys = new TIntHashSet();
+    myMaplet.forEachEntry(new TIntObjectProcedure<TIntHashSet>() {
+      @Override
+      public boolean execute(int key, TIntHashSet values) {
+        keys.add(key);
+        return true;
+      }
+    });
+    assertSet(keys, 1, 2);
+  }
+
+  /**
+   * Models class-to-class dependencies of a large project: every class uses a few popular classes (think java.lang.String),
+   * and is registered as their dependent once per usage found in its class file.
+   */
+  public void testDependencyGraphPerformance() throws Throwable {
+    final int keys = 1000;
+    final int dependents = 5000;
+    final int usagesPerDependency = 10;
+    PlatformTestUtil.startPerformanceTest("dependency graph maplet failed to register dependents", 2000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        myMaplet.close();
+        FileUtil.delete(new File(myDir, "map"));
+        myMaplet = open();
+        for (int dependent = 0; dependent < dependents; dependent++) {
+          for (int key = dependent % 20; key < keys; key += 20) {
+            for (int usage = 0; usage < usagesPerDependency; usage++) {
+              myMaplet.put(key, dependent);
+            }
+          }
+        }
+        myMaplet.flush(true);
+        for (int round = 0; round < 3; round++) {
+          for (int key = 0; key < keys; key++) {
+            assertNotNull(myMaplet.get(key));
+          }
+        }
+        assertEquals(dependents / 20, myMaplet.get(0).size());
+      }
+    }).ioBound().assertTiming();
+  }
+
+  private static TIntHashSet set(int... values) {
+    return new TIntHashSet(values);
+  }
+
+  private static void assertSet(TIntHashSet actual, int... expected) {
+    assertNotNull(actual);
+    assertEquals(set(expected), actual);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+
+public class BuildTraceTest extends TestCase {
+  public void testExportToChromeTrace() throws Exception {
+    final BuildTrace trace = new BuildTrace();
+    final BuildTrace.Span chunk = trace.start("chunk", "module \"a\"");
+    trace.start("builder", "java").finish();
+    trace.start("builder", "java").finish();
+    chunk.finish();
+    trace.addTime("java", "class files analysis", 5000000L);
+
+    final File dir = FileUtil.createTempDirectory("trace", null);
+    try {
+      final File traceFile = new File(dir, "build.trace");
+      final File jsonFile = new File(dir, "build.json");
+      trace.save(traceFile);
+      BuildTrace.exportToChromeTrace(traceFile, jsonFile);
+
+      final String json = FileUtil.loadFile(jsonFile);
+      assertTrue(json, json.startsWith("{\"traceEvents\":["));
+      assertEquals(3, json.split("\"ph\":\"X\"").length - 1);
+      assertTrue(json, json.contains("\"name\":\"module \\\"a\\\"\",\"cat\":\"chunk\""));
+    }
+    finally {
+      FileUtil.delete(dir);
+    }
+
+    final String summary = trace.getSummary();
+    assertTrue(summary, summary.contains("2x  builder: java"));
+    assertTrue(summary, summary.contains("5ms      1x  java: class files analysis"));
+  }
+
+  public void testDisabledTraceRecordsNothing() throws Exception {
+    BuildTrace.DISABLED.start("builder", "java").finish();
+    BuildTrace.DISABLED.addTime("java", "class files analysis", 1000L);
+    assertFalse(BuildTrace.DISABLED.isEnabled());
+    assertFalse(BuildTrace.DISABLED.getSummary().contains("java"));
+  }
+}
@@ -71,6 +71,27 @@ public class IncrementalArtifactBuildingTest extends ArtifactBuilderTestCase {
     buildAllAndAssertUpToDate();
   }
 
+  public void testPackChangedFileIntoNestedArchive() {
+    String file1 = createFile("a/a.txt", "aaa");
+    String file2 = createFile("b/b.txt", "bbb");
+    String file3 = createFile("c/c.txt", "ccc");
+    final Artifact a = addArtifact(root()
+                                     .archive("a.war")
+                                       .fileCopy(file1)
+                                       .archive("b.jar").fileCopy(file2).end()
+                                       .archive("c.jar").fileCopy(file3));
+    buildAll();
+    buildAllAndAssertUpToDate();
+
+    change(file2, "xxx");
+    buildAll();
+    assertOutput(a, fs().archive("a.war")
+                          .file("a.txt", "aaa")
+                          .archive("b.jar").file("b.txt", "xxx").end()
+                          .archive("c.jar").file("c.txt", "ccc"));
+    buildAllAndAssertUpToDate();
+  }
+
   public void testRemoveDeletedFileFromArchive() {
     String file1 = createFile("a.txt");
     String file2 = createFile("b.txt");
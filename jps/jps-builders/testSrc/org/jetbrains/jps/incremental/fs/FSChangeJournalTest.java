@@ -0,0 +1,108 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.fs;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+public class FSChangeJournalTest extends TestCase {
+  private File myDir;
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("fs-journal", null);
+    myFile = FSChangeJournal.getJournalFile(myDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testEventsAreReplayedAfterSavedState() throws Exception {
+    final FSChangeJournal journal = new FSChangeJournal(myFile);
+    // a build may still run when the project is unloaded, so events may come before the state is saved
+    journal.appendEvents(Arrays.asList("b"), Collections.<String>emptyList());
+    journal.saveState(Collections.singletonMap("m1", "roots1"), Collections.singletonMap("m2", "roots2"),
+                      Arrays.asList(new File("a")), Arrays.asList("b"));
+    journal.appendEvents(Collections.<String>emptyList(), Arrays.asList("a"));
+
+    assertEquals(Arrays.asList("scanned m1 false roots1", "scanned m2 true roots2", "changed a", "deleted b", "changed b", "deleted a"),
+                 replay(journal));
+    assertFalse(myFile.exists());
+  }
+
+  public void testJournalIsIgnoredAfterReplay() throws Exception {
+    final FSChangeJournal journal = new FSChangeJournal(myFile);
+    journal.appendEvents(Arrays.asList("a"), Collections.<String>emptyList());
+    assertEquals(Arrays.asList("changed a"), replay(journal));
+
+    journal.saveState(Collections.singletonMap("m1", "roots1"), Collections.<String, String>emptyMap(),
+                      Collections.<File>emptyList(), Collections.<String>emptyList());
+    journal.appendEvents(Arrays.asList("b"), Collections.<String>emptyList());
+    assertFalse(myFile.exists());
+    assertEquals(Collections.<String>emptyList(), replay(journal));
+  }
+
+  public void testBrokenJournalIsNotReplayed() throws Exception {
+    final FSChangeJournal journal = new FSChangeJournal(myFile);
+    journal.saveState(Collections.singletonMap("m1", "roots1"), Collections.<String, String>emptyMap(),
+                      Collections.<File>emptyList(), Collections.<String>emptyList());
+    final RandomAccessFile file = new RandomAccessFile(myFile, "rw");
+    try {
+      file.setLength(file.length() - 1);
+    }
+    finally {
+      file.close();
+    }
+    assertEquals(Collections.<String>emptyList(), replay(journal));
+    assertFalse(myFile.exists());
+  }
+
+  private static List<String> replay(FSChangeJournal journal) throws IOException {
+    final List<String> log = new ArrayList<String>();
+    journal.replay(new FSChangeJournal.Replayer() {
+      @Override
+      public void moduleScanned(@NotNull String moduleName, boolean forTests, @NotNull String rootsFingerprint) {
+        log.add("scanned " + moduleName + " " + forTests + " " + rootsFingerprint);
+      }
+
+      @Override
+      public void fileChanged(@NotNull File file) {
+        log.add("changed " + file.getPath());
+      }
+
+      @Override
+      public void fileDeleted(@NotNull File file) {
+        log.add("deleted " + file.getPath());
+      }
+    });
+    return log;
+  }
+}
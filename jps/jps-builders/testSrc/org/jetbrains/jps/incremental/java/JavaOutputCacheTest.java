@@ -0,0 +1,171 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.asm4.AnnotationVisitor;
+import org.jetbrains.asm4.ClassWriter;
+import org.jetbrains.asm4.MethodVisitor;
+import org.jetbrains.asm4.Opcodes;
+import org.jetbrains.jps.javac.OutputFileObject;
+
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.util.*;
+
+public class JavaOutputCacheTest extends TestCase {
+  private File myDir;
+  private JavaOutputCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("output-cache", null);
+    myCache = new JavaOutputCache(new File(myDir, "cache"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testSaveAndLoad() throws Exception {
+    final File source = new File(myDir, "src/A.java");
+    final File outputRoot = new File(myDir, "out");
+    final byte[] bytes = {1, 2, 3};
+    final OutputFileObject output = new OutputFileObject(null, outputRoot, "A.class", new File(outputRoot, "A.class"),
+                                                         JavaFileObject.Kind.CLASS, "A", source.toURI(),
+                                                         new OutputFileObject.Content(bytes, 0, bytes.length));
+    assertNull(myCache.load("key"));
+    myCache.save("key", Collections.singletonList(output));
+
+    final List<OutputFileObject> loaded = myCache.load("key");
+    assertNotNull(loaded);
+    assertEquals(1, loaded.size());
+    final OutputFileObject restored = loaded.get(0);
+    assertEquals(outputRoot, restored.getOutputRoot());
+    assertEquals("A.class", restored.getRelativePath());
+    assertEquals("A", restored.getClassName());
+    assertEquals(source, restored.getSourceFile());
+    assertEquals(JavaFileObject.Kind.CLASS, restored.getKind());
+    //noinspection ConstantConditions
+    assertTrue(Arrays.equals(bytes, restored.getContent().toByteArray()));
+  }
+
+  public void testKeyDependsOnSourcesAndClasspathAbi() throws Exception {
+    final File source = new File(myDir, "src/A.java");
+    FileUtil.writeToFile(source, "class A { B b; }");
+    final File classpathDir = new File(myDir, "lib");
+    final File classFile = new File(classpathDir, "B.class");
+    writeClass(classFile, generateClass("foo", 1), 1000);
+
+    final String key = computeKey(source, classpathDir);
+    assertEquals(key, computeKey(source, classpathDir));
+
+    writeClass(classFile, generateClass("foo", 2), 2000);
+    assertEquals("method bodies are not a part of ABI", key, computeKey(source, classpathDir));
+
+    writeClass(classFile, generateClass("bar", 1), 3000);
+    assertFalse(key.equals(computeKey(source, classpathDir)));
+
+    writeClass(classFile, generateClass("foo", 1), 4000);
+    FileUtil.writeToFile(source, "class A { B b2; }");
+    assertFalse(key.equals(computeKey(source, classpathDir)));
+  }
+
+  public void testUnchangedClassFilesAreNotReadAgain() throws Exception {
+    final File source = new File(myDir, "src/A.java");
+    FileUtil.writeToFile(source, "class A { B b; }");
+    final File classpathDir = new File(myDir, "lib");
+    final File classFile = new File(classpathDir, "B.class");
+    final byte[] bytes = generateClass("foo", 1);
+    writeClass(classFile, bytes, 1000);
+    final String key = computeKey(source, classpathDir);
+
+    // a later build with a new cache instance: the file has the same timestamp and length, so its stored hash is used
+    myCache = new JavaOutputCache(new File(myDir, "cache"));
+    writeClass(classFile, generateClass("bar", 1), 1000);
+    assertEquals(bytes.length, classFile.length());
+    assertEquals(key, computeKey(source, classpathDir));
+
+    writeClass(classFile, generateClass("bar", 1), 2000);
+    assertFalse(key.equals(computeKey(source, classpathDir)));
+  }
+
+  public void testAnnotationValuesArePartOfAbi() throws Exception {
+    final File source = new File(myDir, "src/A.java");
+    FileUtil.writeToFile(source, "@B class A { }");
+    final File classpathDir = new File(myDir, "lib");
+    final File classFile = new File(classpathDir, "B.class");
+    writeClass(classFile, generateAnnotation("CLASS", 1), 1000);
+    final String key = computeKey(source, classpathDir);
+
+    writeClass(classFile, generateAnnotation("RUNTIME", 1), 2000);
+    final String runtimeKey = computeKey(source, classpathDir);
+    assertFalse("retention policy is a part of ABI", key.equals(runtimeKey));
+
+    writeClass(classFile, generateAnnotation("RUNTIME", 2), 3000);
+    assertFalse("annotation defaults are a part of ABI", runtimeKey.equals(computeKey(source, classpathDir)));
+  }
+
+  private static void writeClass(File classFile, byte[] bytes, long timestamp) throws Exception {
+    FileUtil.writeToFile(classFile, bytes);
+    // hashes of classpath files are reused while their timestamps stay the same
+    assertTrue(classFile.setLastModified(timestamp));
+  }
+
+  private String computeKey(File source, File classpathDir) throws Exception {
+    // a new holder for each call, otherwise the classpath root hash would be reused
+    return myCache.computeKey(new UserDataHolderBase(), Collections.singletonList(source), Arrays.asList("-g"),
+                              Collections.singletonList(classpathDir), Collections.<File>emptyList());
+  }
+
+  private static byte[] generateClass(String methodName, int returnValue) {
+    final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, "B", null, "java/lang/Object", null);
+    final MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, methodName, "()I", null, null);
+    method.visitCode();
+    method.visitIntInsn(Opcodes.BIPUSH, returnValue);
+    method.visitInsn(Opcodes.IRETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static byte[] generateAnnotation(String retentionPolicy, int defaultValue) {
+    final ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_ANNOTATION, "B", null,
+                 "java/lang/Object", new String[]{"java/lang/annotation/Annotation"});
+    final AnnotationVisitor retention = writer.visitAnnotation("Ljava/lang/annotation/Retention;", true);
+    retention.visitEnum("value", "Ljava/lang/annotation/RetentionPolicy;", retentionPolicy);
+    retention.visitEnd();
+    final MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "value", "()I", null, null);
+    final AnnotationVisitor defaultVisitor = method.visitAnnotationDefault();
+    defaultVisitor.visit(null, defaultValue);
+    defaultVisitor.visitEnd();
+    method.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
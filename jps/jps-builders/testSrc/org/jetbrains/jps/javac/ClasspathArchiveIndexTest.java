@@ -0,0 +1,105 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.javac;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ClasspathArchiveIndexTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("archive-index", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testListAndLookup() throws Exception {
+    final File jar = createJar("lib.jar", 1000, "a/b/C.class", "a/b/D.class", "a/E.class", "F.class");
+
+    assertTrue(ClasspathArchiveIndex.mayContainFilesIn(jar, "a/b"));
+    assertTrue(ClasspathArchiveIndex.mayContainFilesIn(jar, "a"));
+    assertTrue(ClasspathArchiveIndex.mayContainFilesIn(jar, ""));
+    assertFalse("no files directly in the package", ClasspathArchiveIndex.mayContainFilesIn(jar, "a/b/c"));
+
+    assertTrue(ClasspathArchiveIndex.mayContainFile(jar, "a/b/C.class"));
+    assertTrue(ClasspathArchiveIndex.mayContainFile(jar, "a/E.class"));
+    assertTrue(ClasspathArchiveIndex.mayContainFile(jar, "F.class"));
+    assertFalse(ClasspathArchiveIndex.mayContainFile(jar, "a/b/E.class"));
+    assertFalse(ClasspathArchiveIndex.mayContainFile(jar, "a/b/C.java"));
+  }
+
+  public void testArchiveWithoutPackage() throws Exception {
+    final File jar = createJar("other.jar", 1000, "x/y/Z.class");
+
+    assertFalse(ClasspathArchiveIndex.mayContainFilesIn(jar, "a/b"));
+    assertFalse(ClasspathArchiveIndex.mayContainFilesIn(jar, "x"));
+    assertFalse(ClasspathArchiveIndex.mayContainFile(jar, "a/b/C.class"));
+  }
+
+  public void testModifiedArchiveIsIndexedAgain() throws Exception {
+    final File jar = createJar("lib.jar", 1000, "a/C.class");
+    assertFalse(ClasspathArchiveIndex.mayContainFile(jar, "a/D.class"));
+
+    createJar("lib.jar", 2000, "a/C.class", "a/D.class");
+    assertFalse("the index is validated only on request", ClasspathArchiveIndex.mayContainFile(jar, "a/D.class"));
+    ClasspathArchiveIndex.validate(Collections.singletonList(jar));
+    assertTrue(ClasspathArchiveIndex.mayContainFile(jar, "a/D.class"));
+  }
+
+  public void testBrokenArchiveMayContainAnything() throws Exception {
+    final File jar = new File(myDir, "broken.jar");
+    FileUtil.writeToFile(jar, "not a zip");
+
+    assertTrue(ClasspathArchiveIndex.mayContainFilesIn(jar, "a/b"));
+    assertTrue(ClasspathArchiveIndex.mayContainFile(jar, "a/b/C.class"));
+  }
+
+  private File createJar(String name, long timestamp, String... entries) throws IOException {
+    final File jar = new File(myDir, name);
+    final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(1);
+        out.closeEntry();
+      }
+    }
+    finally {
+      out.close();
+    }
+    // the index is dropped only when the timestamp or the length of the archive changes
+    assertTrue(jar.setLastModified(timestamp));
+    return jar;
+  }
+}
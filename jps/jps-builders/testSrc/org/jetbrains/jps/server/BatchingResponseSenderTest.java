@@ -0,0 +1,62 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.server;
+
+import com.intellij.openapi.util.Pair;
+import junit.framework.TestCase;
+import org.jetbrains.jps.api.JpsRemoteProto;
+import org.jetbrains.jps.api.ProtoUtil;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BatchingResponseSenderTest extends TestCase {
+  public void testMergeProgress() {
+    final JpsRemoteProto.Message.Response first = ProtoUtil.createCompileProgressMessageResponse("first", 0.5f);
+    final JpsRemoteProto.Message.Response second = ProtoUtil.createCompileProgressMessageResponse("second", -1.0f);
+    final JpsRemoteProto.Message.Response merged = BatchingResponseSender.merge(first, second);
+    assertNotNull(merged);
+    assertEquals("second", merged.getCompileMessage().getText());
+    assertEquals(0.5f, merged.getCompileMessage().getDone());
+  }
+
+  public void testDoNotMergeErrors() {
+    final JpsRemoteProto.Message.Response progress = ProtoUtil.createCompileProgressMessageResponse("progress", 0.5f);
+    final JpsRemoteProto.Message.Response error = ProtoUtil.createCompileMessageResponse(
+      BuildMessage.Kind.ERROR, "error", null, -1L, -1L, -1L, -1, -1, -1.0f
+    );
+    assertNull(BatchingResponseSender.merge(progress, error));
+    assertNull(BatchingResponseSender.merge(error, progress));
+  }
+
+  public void testMergeGeneratedFiles() {
+    final JpsRemoteProto.Message.Response first = ProtoUtil.createFileGeneratedEvent(Arrays.asList(
+      Pair.create("out/a", "A.class"), Pair.create("out/a", "B.class")
+    ));
+    final JpsRemoteProto.Message.Response second = ProtoUtil.createFileGeneratedEvent(Arrays.asList(
+      Pair.create("out/a", "C.class"), Pair.create("out/b", "D.class")
+    ));
+    final JpsRemoteProto.Message.Response merged = BatchingResponseSender.merge(first, second);
+    assertNotNull(merged);
+    final JpsRemoteProto.Message.Response.BuildEvent event = merged.getBuildEvent();
+    assertEquals("", event.getGeneratedFiles(2).getOutputRoot());
+
+    final List<Pair<String, String>> files = ProtoUtil.getGeneratedFiles(event);
+    assertEquals(Arrays.asList(Pair.create("out/a", "A.class"), Pair.create("out/a", "B.class"),
+                               Pair.create("out/a", "C.class"), Pair.create("out/b", "D.class")), files);
+  }
+}
@@ -4,9 +4,7 @@ import com.intellij.util.io.DataExternalizer;
 import groovyjarjarasm.asm.Opcodes;
 import org.jetbrains.ether.RW;
 
-import java.io.DataInput;
-import java.io.DataOutput;
-import java.io.IOException;
+import java.io.*;
 import java.lang.annotation.RetentionPolicy;
 import java.util.*;
 
@@ -32,6 +30,12 @@ public class ClassRepr extends Proto {
   public final int outerClassName;
   public final boolean isLocal;
 
+  /**
+   * Hash of the class header and its non-private members, i.e. of everything other classes are compiled against.
+   * Dependents of a class don't need recompilation while its fingerprint stays the same.
+   */
+  public final long abiFingerprint;
+
   //public String getFileName() {
   //  return context.getValue(fileName);
   //}
@@ -195,6 +199,7 @@ public class ClassRepr extends Proto {
     this.policy = policy;
     this.outerClassName = outerClassName;
     this.isLocal = localClassFlag;
+    this.abiFingerprint = computeAbiFingerprint();
   }
 
   public ClassRepr(final DependencyContext context, final DataInput in) {
@@ -215,6 +220,7 @@ public class ClassRepr extends Proto {
 
       outerClassName = in.readInt();
       isLocal = in.readBoolean();
+      abiFingerprint = in.readLong();
     }
     catch (IOException e) {
       throw new RuntimeException(e);
@@ -235,12 +241,63 @@ public class ClassRepr extends Proto {
       out.writeUTF(policy == null ? "" : policy.toString());
       out.writeInt(outerClassName);
       out.writeBoolean(isLocal);
+      out.writeLong(abiFingerprint);
     }
     catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private long computeAbiFingerprint() {
+    // members are combined by addition, so that the result doesn't depend on the iteration order of the sets
+    long result = fingerprint(new RW.Savable() {
+      @Override
+      public void save(DataOutput out) {
+        try {
+          out.writeInt(access);
+          out.writeInt(signature);
+          out.writeInt(name);
+          superClass.save(out);
+          out.writeUTF(policy == null ? "" : policy.toString());
+          out.writeInt(outerClassName);
+          out.writeBoolean(isLocal);
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    for (TypeRepr.AbstractType t : interfaces) {
+      result += fingerprint(t);
+    }
+    for (ElemType target : targets) {
+      result += target.ordinal() + 1;
+    }
+    for (FieldRepr f : fields) {
+      if ((f.access & Opcodes.ACC_PRIVATE) == 0) {
+        result += fingerprint(f);
+      }
+    }
+    for (MethodRepr m : methods) {
+      if ((m.access & Opcodes.ACC_PRIVATE) == 0) {
+        result += fingerprint(m);
+      }
+    }
+    return result;
+  }
+
+  private static long fingerprint(final RW.Savable savable) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    savable.save(new DataOutputStream(bytes));
+    // 64-bit FNV-1a
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : bytes.toByteArray()) {
+      hash ^= b & 0xFF;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
   public boolean isAnnotation() {
     return (access & Opcodes.ACC_ANNOTATION) > 0;
   }
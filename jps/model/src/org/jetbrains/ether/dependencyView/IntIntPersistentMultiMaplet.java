@@ -22,11 +22,13 @@ import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.KeyDescriptor;
 import com.intellij.util.io.PersistentHashMap;
 import gnu.trove.TIntHashSet;
+import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TIntObjectProcedure;
 import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Created by IntelliJ IDEA.
@@ -37,9 +39,13 @@ import java.io.*;
  */
 class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   private static final TIntHashSet NULL_COLLECTION = new TIntHashSet();
-  private static final int CACHE_SIZE = 128;
+  private static final int CACHE_SIZE = 1024;
+  private static final int MAX_PENDING_VALUES = 64 * 1024;
   private final PersistentHashMap<Integer, TIntHashSet> myMap;
   private final SLRUCache<Integer, TIntHashSet> myCache;
+  // values put since the last flush; popular keys get many puts in a row, so the values are appended to the map in one go
+  private final TIntObjectHashMap<TIntHashSet> myPendingValues = new TIntObjectHashMap<TIntHashSet>();
+  private int myPendingValueCount;
 
   public IntIntPersistentMultiMaplet(final File file, final KeyDescriptor<Integer> keyExternalizer) throws IOException {
     myMap = new PersistentHashMap<Integer, TIntHashSet>(file, keyExternalizer, new IntSetExternalizer());
@@ -61,7 +67,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   @Override
   public boolean containsKey(final int key) {
     try {
-      return myMap.containsMapping(key);
+      return myPendingValues.containsKey(key) || myMap.containsMapping(key);
     }
     catch (IOException e) {
       throw new RuntimeException(e);
@@ -70,6 +76,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
 
   @Override
   public TIntHashSet get(final int key) {
+    flushPendingValues(key);
     final TIntHashSet collection = myCache.get(key);
     return collection == NULL_COLLECTION? null : collection;
   }
@@ -77,6 +84,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   @Override
   public void replace(int key, TIntHashSet value) {
     try {
+      dropPendingValues(key);
       myCache.remove(key);
       if (value == null) {
         myMap.remove(key);
@@ -92,12 +100,64 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
 
   @Override
   public void put(final int key, final TIntHashSet value) {
+    final TIntHashSet pending = getPendingValues(key);
+    final int sizeBefore = pending.size();
+    pending.addAll(value.toArray());
+    myPendingValueCount += pending.size() - sizeBefore;
+    afterPut(key);
+  }
+
+  @Override
+  public void put(final int key, final int value) {
+    if (getPendingValues(key).add(value)) {
+      myPendingValueCount++;
+    }
+    afterPut(key);
+  }
+
+  private TIntHashSet getPendingValues(final int key) {
+    TIntHashSet values = myPendingValues.get(key);
+    if (values == null) {
+      values = new TIntHashSet();
+      myPendingValues.put(key, values);
+    }
+    return values;
+  }
+
+  private void afterPut(final int key) {
+    myCache.remove(key);
+    if (myPendingValueCount > MAX_PENDING_VALUES) {
+      flushPendingValues();
+    }
+  }
+
+  private void dropPendingValues(final int key) {
+    final TIntHashSet values = myPendingValues.remove(key);
+    if (values != null) {
+      myPendingValueCount -= values.size();
+    }
+  }
+
+  private void flushPendingValues() {
+    final int[] keys = myPendingValues.keys();
+    Arrays.sort(keys);
+    for (int key : keys) {
+      flushPendingValues(key);
+    }
+    myPendingValueCount = 0;
+  }
+
+  private void flushPendingValues(final int key) {
+    final TIntHashSet values = myPendingValues.remove(key);
+    if (values == null) {
+      return;
+    }
+    myPendingValueCount -= values.size();
     try {
-      myCache.remove(key);
       myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
         public void append(final DataOutput out) throws IOException {
           final Ref<IOException> exRef = new Ref<IOException>();
-          value.forEach(new TIntProcedure() {
+          values.forEach(new TIntProcedure() {
             @Override
             public boolean execute(int value) {
               try {
@@ -122,23 +182,9 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
     }
   }
 
-  @Override
-  public void put(final int key, final int value) {
-    try {
-      myCache.remove(key);
-      myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
-        public void append(final DataOutput out) throws IOException {
-          out.writeInt(value);
-        }
-      });
-    }
-    catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   @Override
   public void removeAll(int key, TIntHashSet values) {
+    flushPendingValues(key);
     try {
       final TIntHashSet collection = myCache.get(key);
 
@@ -161,6 +207,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
 
   @Override
   public void removeFrom(final int key, final int value) {
+    flushPendingValues(key);
     try {
       final TIntHashSet collection = myCache.get(key);
       if (collection != NULL_COLLECTION) {
@@ -183,6 +230,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   @Override
   public void remove(final int key) {
     try {
+      dropPendingValues(key);
       myCache.remove(key);
       myMap.remove(key);
     }
@@ -215,6 +263,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
 
   @Override
   public void close() {
+    flushPendingValues();
     try {
       myCache.clear();
       myMap.close();
@@ -225,6 +274,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
   }
 
   public void flush(boolean memoryCachesOnly) {
+    flushPendingValues();
     if (memoryCachesOnly) {
       if (myMap.isDirty()) {
         myMap.dropMemoryCaches();
@@ -237,6 +287,7 @@ class IntIntPersistentMultiMaplet extends IntIntMultiMaplet {
 
   @Override
   public void forEachEntry(final TIntObjectProcedure<TIntHashSet> procedure) {
+    flushPendingValues();
     try {
       myMap.processKeysWithExistingMapping(new Processor<Integer>() {
         @Override
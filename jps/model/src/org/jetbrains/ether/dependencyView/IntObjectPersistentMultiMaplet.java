@@ -20,12 +20,12 @@ import com.intellij.util.containers.SLRUCache;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.KeyDescriptor;
 import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TIntObjectProcedure;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.*;
 
 /**
  * Created by IntelliJ IDEA.
@@ -37,9 +37,13 @@ import java.util.Collections;
 class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntObjectMultiMaplet<V> {
   private static final Collection NULL_COLLECTION = Collections.emptySet();
   private static final int CACHE_SIZE = 128;
+  private static final int MAX_PENDING_VALUES = 16 * 1024;
   private final PersistentHashMap<Integer, Collection<V>> myMap;
   private final DataExternalizer<V> myValueExternalizer;
   private final SLRUCache<Integer, Collection> myCache;
+  // values put since the last flush, appended to the map in one go per key
+  private final TIntObjectHashMap<List<V>> myPendingValues = new TIntObjectHashMap<List<V>>();
+  private int myPendingValueCount;
 
   public IntObjectPersistentMultiMaplet(final File file,
                                         final KeyDescriptor<Integer> keyExternalizer,
@@ -66,7 +70,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
   @Override
   public boolean containsKey(final int key) {
     try {
-      return myMap.containsMapping(key);
+      return myPendingValues.containsKey(key) || myMap.containsMapping(key);
     }
     catch (IOException e) {
       throw new RuntimeException(e);
@@ -75,6 +79,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
 
   @Override
   public Collection<V> get(final int key) {
+    flushPendingValues(key);
     final Collection<V> collection = myCache.get(key);
     return collection == NULL_COLLECTION? null : collection;
   }
@@ -82,6 +87,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
   @Override
   public void replace(int key, Collection<V> value) {
     try {
+      dropPendingValues(key);
       myCache.remove(key);
       if (value == null) {
         myMap.remove(key);
@@ -97,11 +103,45 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
 
   @Override
   public void put(final int key, final Collection<V> value) {
+    List<V> pending = myPendingValues.get(key);
+    if (pending == null) {
+      pending = new ArrayList<V>(value.size());
+      myPendingValues.put(key, pending);
+    }
+    pending.addAll(value);
+    myPendingValueCount += value.size();
+    myCache.remove(key);
+    if (myPendingValueCount > MAX_PENDING_VALUES) {
+      flushPendingValues();
+    }
+  }
+
+  private void dropPendingValues(final int key) {
+    final List<V> values = myPendingValues.remove(key);
+    if (values != null) {
+      myPendingValueCount -= values.size();
+    }
+  }
+
+  private void flushPendingValues() {
+    final int[] keys = myPendingValues.keys();
+    Arrays.sort(keys);
+    for (int key : keys) {
+      flushPendingValues(key);
+    }
+    myPendingValueCount = 0;
+  }
+
+  private void flushPendingValues(final int key) {
+    final List<V> values = myPendingValues.remove(key);
+    if (values == null) {
+      return;
+    }
+    myPendingValueCount -= values.size();
     try {
-      myCache.remove(key);
       myMap.appendData(key, new PersistentHashMap.ValueDataAppender() {
         public void append(DataOutput out) throws IOException {
-          for (V v : value) {
+          for (V v : values) {
             myValueExternalizer.save(out, v);
           }
         }
@@ -119,6 +159,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
 
   @Override
   public void removeAll(int key, Collection<V> values) {
+    flushPendingValues(key);
     try {
       final Collection collection = myCache.get(key);
 
@@ -141,6 +182,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
 
   @Override
   public void removeFrom(final int key, final V value) {
+    flushPendingValues(key);
     try {
       final Collection collection = myCache.get(key);
 
@@ -164,6 +206,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
   @Override
   public void remove(final int key) {
     try {
+      dropPendingValues(key);
       myCache.remove(key);
       myMap.remove(key);
     }
@@ -196,6 +239,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
 
   @Override
   public void close() {
+    flushPendingValues();
     try {
       myCache.clear();
       myMap.close();
@@ -206,6 +250,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
   }
 
   public void flush(boolean memoryCachesOnly) {
+    flushPendingValues();
     if (memoryCachesOnly) {
       if (myMap.isDirty()) {
         myMap.dropMemoryCaches();
@@ -218,6 +263,7 @@ class IntObjectPersistentMultiMaplet<V extends StringBufferizable> extends IntOb
 
   @Override
   public void forEachEntry(final TIntObjectProcedure<Collection<V>> procedure) {
+    flushPendingValues();
     try {
       myMap.processKeysWithExistingMapping(new Processor<Integer>() {
         @Override
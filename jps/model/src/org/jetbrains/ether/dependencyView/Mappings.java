@@ -7,6 +7,7 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.io.IntInlineKeyDescriptor;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIntProcedure;
+import gnu.trove.TIntLongHashMap;
 import gnu.trove.TIntObjectProcedure;
 import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
@@ -1655,6 +1656,49 @@ public class Mappings {
     myClassToSourceFile.remove(className);
   }
 
+  /**
+   * Compares {@link ClassRepr#abiFingerprint ABI fingerprints} of the classes compiled into the delta with their current state.
+   * Should be called before the delta is integrated.
+   *
+   * @return false if no class was added, removed or changed in a way visible to other classes
+   */
+  public boolean isAbiChanged(final Mappings delta, final Collection<String> removed) {
+    synchronized (myLock) {
+      if (removed != null) {
+        for (String file : removed) {
+          final Collection<ClassRepr> classes = mySourceFileToClasses.get(myContext.get(file));
+          if (classes != null && !classes.isEmpty()) {
+            return true;
+          }
+        }
+      }
+
+      final Ref<Boolean> changed = new Ref<Boolean>(Boolean.FALSE);
+      delta.mySourceFileToClasses.forEachEntry(new TIntObjectProcedure<Collection<ClassRepr>>() {
+        @Override
+        public boolean execute(int fileName, Collection<ClassRepr> classes) {
+          final Collection<ClassRepr> pastClasses = mySourceFileToClasses.get(fileName);
+          if (pastClasses == null || pastClasses.size() != classes.size()) {
+            changed.set(Boolean.TRUE);
+            return false;
+          }
+          final TIntLongHashMap pastFingerprints = new TIntLongHashMap(pastClasses.size());
+          for (ClassRepr c : pastClasses) {
+            pastFingerprints.put(c.name, c.abiFingerprint);
+          }
+          for (ClassRepr c : classes) {
+            if (!pastFingerprints.containsKey(c.name) || pastFingerprints.get(c.name) != c.abiFingerprint) {
+              changed.set(Boolean.TRUE);
+              return false;
+            }
+          }
+          return true;
+        }
+      });
+      return changed.get();
+    }
+  }
+
   public void integrate(final Mappings delta, final Collection<String> removed) {
     synchronized (myLock) {
       try {
@@ -1835,16 +1879,18 @@ public class Mappings {
       }
 
       public void associate(final String classFileName, final String sourceFileName, final ClassReader cr) {
-        synchronized (myLock) {
-          final int classFileNameS = myContext.get(classFileName);
-          final Pair<ClassRepr, Pair<UsageRepr.Cluster, Set<UsageRepr.Usage>>> result =
-            new ClassfileAnalyzer(myContext).analyze(classFileNameS, cr);
-          final ClassRepr repr = result.first;
-          final UsageRepr.Cluster localUsages = result.second.first;
-          final Set<UsageRepr.Usage> localAnnotationUsages = result.second.second;
+        // the class file is parsed outside of the lock, so that several compiled classes can be analyzed at once;
+        // only merging the results into the maps is serialized
+        final int classFileNameS = myContext.get(classFileName);
+        final Pair<ClassRepr, Pair<UsageRepr.Cluster, Set<UsageRepr.Usage>>> result =
+          new ClassfileAnalyzer(myContext).analyze(classFileNameS, cr);
+        final ClassRepr repr = result.first;
+        final UsageRepr.Cluster localUsages = result.second.first;
+        final Set<UsageRepr.Usage> localAnnotationUsages = result.second.second;
 
-          final int sourceFileNameS = myContext.get(sourceFileName);
+        final int sourceFileNameS = myContext.get(sourceFileName);
 
+        synchronized (myLock) {
           if (repr != null) {
             final int className = repr.name;
 
@@ -20,6 +20,9 @@
 package com.intellij.psi.stubs;
 
 import com.intellij.openapi.application.ApplicationManager;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -34,8 +37,20 @@ public abstract class SerializationManager {
 
   public abstract void serialize(StubElement rootStub, OutputStream stream);
 
+  /**
+   * Same as {@link #serialize(StubElement, OutputStream)}, but additionally records stream offset of every serialized stub
+   * and index of its parent stub (-1 for the root). Stubs are reported in the order of {@link StubTree#getPlainList()}.
+   */
+  public abstract void serialize(StubElement rootStub, OutputStream stream, @NotNull TIntArrayList offsets, @NotNull TIntArrayList parents);
+
   public abstract StubElement deserialize(InputStream stream);
 
+  /**
+   * Reads the single stub starting at the current position of the stream, without reading its children.
+   * The stream should be positioned at one of the offsets reported by {@link #serialize(StubElement, OutputStream, TIntArrayList, TIntArrayList)}.
+   */
+  public abstract StubElement deserializeStub(InputStream stream, @Nullable StubElement parentStub);
+
   public abstract StubSerializer getSerializer(StubElement rootStub);
 
   public abstract boolean isNameStorageCorrupted();
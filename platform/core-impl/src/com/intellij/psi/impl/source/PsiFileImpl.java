@@ -266,6 +266,34 @@ public abstract class PsiFileImpl extends ElementBase implements PsiFileEx, PsiF
     return null;
   }
 
+  /**
+   * Same as {@link #findTreeForStub(StubTree, StubElement)}, but identifies the stub by its index in {@link StubTree#getPlainList()},
+   * so that the stub tree doesn't have to be loaded.
+   */
+  @Nullable
+  public ASTNode findTreeForStubIndex(int stubIndex) {
+    final CompositeElement ast = calcTreeElement();
+    if (stubIndex == 0) return ast;
+
+    return findTreeForStubIndex(ast, new int[]{stubIndex});
+  }
+
+  @Nullable
+  private static ASTNode findTreeForStubIndex(ASTNode tree, final int[] stubsLeft) {
+    final IElementType type = tree.getElementType();
+
+    if (type instanceof IStubElementType && ((IStubElementType) type).shouldCreateStub(tree)) {
+      if (--stubsLeft[0] == 0) return tree;
+    }
+
+    for (ASTNode node : tree.getChildren(null)) {
+      final ASTNode treeForStub = findTreeForStubIndex(node, stubsLeft);
+      if (treeForStub != null) return treeForStub;
+    }
+
+    return null;
+  }
+
   private void switchFromStubToAST(final ASTNode root, final Iterator<StubElement<?>> stubs) {
     final IElementType contentElementType = getContentElementType();
     if (!(contentElementType instanceof IStubFileElementType)) {
@@ -26,9 +26,11 @@ import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IStubFileElementType;
 import com.intellij.util.io.DataInputOutputUtil;
 import com.intellij.util.io.PersistentStringEnumerator;
+import gnu.trove.TIntArrayList;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
@@ -169,13 +171,31 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
   public void serialize(StubElement rootStub, OutputStream stream) {
     if (!mySerializersLoaded) initSerializers();
     StubOutputStream stubOutputStream = new StubOutputStream(stream, myNameStorage);
-    doSerialize(rootStub, stubOutputStream);
+    doSerialize(rootStub, stubOutputStream, null, null, -1);
   }
 
-  private void doSerialize(final StubElement rootStub, final StubOutputStream stream) {
+  @Override
+  public void serialize(StubElement rootStub, OutputStream stream, @NotNull TIntArrayList offsets, @NotNull TIntArrayList parents) {
+    if (!mySerializersLoaded) initSerializers();
+    StubOutputStream stubOutputStream = new StubOutputStream(stream, myNameStorage);
+    doSerialize(rootStub, stubOutputStream, offsets, parents, -1);
+  }
+
+  private void doSerialize(final StubElement rootStub,
+                           final StubOutputStream stream,
+                           @Nullable final TIntArrayList offsets,
+                           @Nullable final TIntArrayList parents,
+                           final int parentIdx) {
     try {
       final StubSerializer serializer = getSerializer(rootStub);
 
+      int stubIdx = -1;
+      if (offsets != null && parents != null) {
+        stubIdx = offsets.size();
+        offsets.add(stream.size());
+        parents.add(parentIdx);
+      }
+
       DataInputOutputUtil.writeINT(stream, getClassId(serializer));
       serializer.serialize(rootStub, stream);
 
@@ -183,7 +203,7 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
       final int childrenSize = children.size();
       DataInputOutputUtil.writeINT(stream, childrenSize);
       for (int i = 0; i < childrenSize; ++i) {
-        doSerialize(children.get(i), stream);
+        doSerialize(children.get(i), stream, offsets, parents, stubIdx);
       }
     }
     catch (IOException e) {
@@ -214,13 +234,31 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     }
   }
 
-  private StubElement deserialize(StubInputStream stream, StubElement parentStub) throws IOException {
+  @Override
+  public StubElement deserializeStub(InputStream stream, @Nullable StubElement parentStub) {
+    StubInputStream inputStream = new StubInputStream(stream, myNameStorage);
+    if (!mySerializersLoaded) initSerializers();
+    try {
+      return deserializeStub(inputStream, parentStub);
+    }
+    catch (IOException e) {
+      myNameStorageCrashed.set(true);
+      LOG.info(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private StubElement deserializeStub(StubInputStream stream, StubElement parentStub) throws IOException {
     final int id = DataInputOutputUtil.readINT(stream);
     final StubSerializer serializer = getClassById(id);
-    
+
     assert serializer != null : "No serializer registered for stub: ID=" + id + "; parent stub class=" + (parentStub != null? parentStub.getClass().getName() : "null");
-    
-    StubElement stub = serializer.deserialize(stream, parentStub);
+
+    return serializer.deserialize(stream, parentStub);
+  }
+
+  private StubElement deserialize(StubInputStream stream, StubElement parentStub) throws IOException {
+    StubElement stub = deserializeStub(stream, parentStub);
     int childCount = DataInputOutputUtil.readINT(stream);
     for (int i = 0; i < childCount; i++) {
       deserialize(stream, stub);
@@ -77,6 +77,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class also controls the auto-reparse and auto-hints.
@@ -110,6 +111,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
   private DaemonListeners myDaemonListeners;
   private final PassExecutorService myPassExecutorService;
   private int myModificationCount = 0;
+  private final AtomicInteger myRestartCount = new AtomicInteger(); // incremented when highlighting results may change without PSI change
 
   private volatile boolean allowToInterrupt = true;
   private StatusBarUpdater myStatusBarUpdater;
@@ -443,6 +445,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
 
   @Override
   public void restart() {
+    myRestartCount.incrementAndGet();
     myFileStatusMap.markAllFilesDirty();
     stopProcess(true);
   }
@@ -451,6 +454,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
   public void restart(@NotNull PsiFile file) {
     Document document = PsiDocumentManager.getInstance(myProject).getCachedDocument(file);
     if (document == null) return;
+    myRestartCount.incrementAndGet();
     myFileStatusMap.markFileScopeDirty(document, new TextRange(0, document.getTextLength()), file.getTextLength());
     stopProcess(true);
   }
@@ -488,6 +492,10 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzer implements JDOMEx
     return myFileStatusMap;
   }
 
+  int getRestartCount() {
+    return myRestartCount.get();
+  }
+
   public synchronized int getModificationCount() {
     return myModificationCount;
   }
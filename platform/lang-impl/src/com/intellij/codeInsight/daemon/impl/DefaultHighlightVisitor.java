@@ -46,7 +46,7 @@ import java.util.List;
 /**
  * @author yole
  */
-public class DefaultHighlightVisitor implements HighlightVisitor, DumbAware {
+public class DefaultHighlightVisitor implements PerElementHighlightVisitor, DumbAware {
   private AnnotationHolderImpl myAnnotationHolder;
 
   public static final ExtensionPointName<HighlightErrorFilter> FILTER_EP_NAME = ExtensionPointName.create("com.intellij.highlightErrorFilter");
@@ -65,6 +65,7 @@ import com.intellij.psi.search.TodoItem;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
+import com.intellij.util.containers.ConcurrentHashMap;
 import com.intellij.util.containers.TransferToEDTQueue;
 import com.intellij.util.ui.UIUtil;
 import gnu.trove.THashMap;
@@ -81,6 +82,7 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.GeneralHighlightingPass");
   static final String PRESENTABLE_NAME = DaemonBundle.message("pass.syntax");
   private static final Key<Boolean> HAS_ERROR_ELEMENT = Key.create("HAS_ERROR_ELEMENT");
+  private static final Key<ElementHighlightsCache> ELEMENT_HIGHLIGHTS_CACHE = Key.create("ELEMENT_HIGHLIGHTS_CACHE");
 
   private final int myStartOffset;
   private final int myEndOffset;
@@ -186,6 +188,7 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
     DaemonCodeAnalyzer daemonCodeAnalyzer = DaemonCodeAnalyzer.getInstance(myProject);
     HighlightVisitor[] highlightVisitors = getHighlightVisitors();
     final HighlightVisitor[] filteredVisitors = filterVisitors(highlightVisitors, myFile);
+    final ElementHighlightsCache elementHighlightsCache = myEditor != null && hasPerElementVisitors(filteredVisitors) ? getElementHighlightsCache() : null;
     final List<PsiElement> inside = new ArrayList<PsiElement>();
     final List<PsiElement> outside = new ArrayList<PsiElement>();
     try {
@@ -272,7 +275,7 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
             }
           };
         }
-      }, outside, progress, filteredVisitors, gotHighlights, forceHighlightParents);
+      }, outside, progress, filteredVisitors, elementHighlightsCache, gotHighlights, forceHighlightParents);
 
       if (myUpdateAll) {
         ((DaemonCodeAnalyzerImpl)daemonCodeAnalyzer).getFileStatusMap().setErrorFoundFlag(myDocument, myErrorFound);
@@ -542,6 +545,10 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
   @Override
   protected void applyInformationWithProgress() {
     myFile.putUserData(HAS_ERROR_ELEMENT, myHasErrorElement);
+    if (myEditor != null) {
+      // the dirty range is highlighted now, there will be nothing to reuse until PSI changes
+      myFile.putUserData(ELEMENT_HIGHLIGHTS_CACHE, null);
+    }
 
     myApplyCommand.run();
 
@@ -561,6 +568,7 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
                                  @NotNull final List<PsiElement> elements2,
                                  @NotNull final ProgressIndicator progress,
                                  @NotNull final HighlightVisitor[] visitors,
+                                 @Nullable final ElementHighlightsCache elementHighlightsCache,
                                  @NotNull final Set<HighlightInfo> gotHighlights,
                                  final boolean forceHighlightParents) {
     final Set<PsiElement> skipParentsSet = new THashSet<PsiElement>();
@@ -591,7 +599,17 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
             }
             holder.clear();
 
+            final List<HighlightInfo> cachedInfos = elementHighlightsCache == null ? null : elementHighlightsCache.get(element);
+            if (cachedInfos != null) {
+              holder.addAll(cachedInfos);
+            }
+            final List<HighlightInfo> perElementInfos = elementHighlightsCache != null && cachedInfos == null ? new SmartList<HighlightInfo>() : null;
+            boolean visitFailed = false;
+
             for (final HighlightVisitor visitor : visitors) {
+              final boolean perElement = visitor instanceof PerElementHighlightVisitor;
+              if (perElement && cachedInfos != null) continue; // results of the previous run over the same PSI are still valid
+              final int sizeBefore = holder.size();
               try {
                 visitor.visit(element);
               }
@@ -609,7 +627,16 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
                   LOG.error(e);
                 }
                 failed = true;
+                visitFailed = true;
               }
+              if (perElement && perElementInfos != null) {
+                for (int j = sizeBefore; j < holder.size(); j++) {
+                  perElementInfos.add(holder.get(j));
+                }
+              }
+            }
+            if (perElementInfos != null && !visitFailed) {
+              elementHighlightsCache.put(element, perElementInfos);
             }
 
             if (i == nextLimit) {
@@ -747,6 +774,60 @@ public class GeneralHighlightingPass extends ProgressableTextEditorHighlightingP
   //  analyzeByVisitors(progress, visitors, holder, 0, action);
   //}
 
+  private static boolean hasPerElementVisitors(@NotNull HighlightVisitor[] visitors) {
+    for (HighlightVisitor visitor : visitors) {
+      if (visitor instanceof PerElementHighlightVisitor) return true;
+    }
+    return false;
+  }
+
+  @NotNull
+  private ElementHighlightsCache getElementHighlightsCache() {
+    long psiModificationCount = PsiManager.getInstance(myProject).getModificationTracker().getModificationCount();
+    int restartCount = ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(myProject)).getRestartCount();
+    boolean dumb = isDumbMode();
+
+    ElementHighlightsCache cache = myFile.getUserData(ELEMENT_HIGHLIGHTS_CACHE);
+    if (cache == null || !cache.isUpToDate(psiModificationCount, restartCount, dumb)) {
+      cache = new ElementHighlightsCache(psiModificationCount, restartCount, dumb);
+      myFile.putUserData(ELEMENT_HIGHLIGHTS_CACHE, cache);
+    }
+    return cache;
+  }
+
+  /**
+   * Results of {@link PerElementHighlightVisitor}s computed by a cancelled run of the pass over the same PSI.
+   * A caret move or a write action which doesn't change PSI cancels the running pass, and the next run would otherwise
+   * visit again the part of the dirty range the cancelled one has already visited.
+   * Results of a finished pass are kept by {@link FileStatusMap}, so the cache is dropped once the pass is applied, and it is
+   * not valid after any PSI change, daemon restart or dumb mode switch.
+   */
+  private static class ElementHighlightsCache {
+    private final long myPsiModificationCount;
+    private final int myRestartCount;
+    private final boolean myDumb;
+    private final Map<PsiElement, List<HighlightInfo>> myInfos = new ConcurrentHashMap<PsiElement, List<HighlightInfo>>();
+
+    private ElementHighlightsCache(long psiModificationCount, int restartCount, boolean dumb) {
+      myPsiModificationCount = psiModificationCount;
+      myRestartCount = restartCount;
+      myDumb = dumb;
+    }
+
+    private boolean isUpToDate(long psiModificationCount, int restartCount, boolean dumb) {
+      return myPsiModificationCount == psiModificationCount && myRestartCount == restartCount && myDumb == dumb;
+    }
+
+    @Nullable
+    private List<HighlightInfo> get(@NotNull PsiElement element) {
+      return myInfos.get(element);
+    }
+
+    private void put(@NotNull PsiElement element, @NotNull List<HighlightInfo> infos) {
+      myInfos.put(element, infos.isEmpty() ? Collections.<HighlightInfo>emptyList() : infos);
+    }
+  }
+
   private final Map<TextRange, RangeMarker> ranges2markersCache = new THashMap<TextRange, RangeMarker>();
   private final TransferToEDTQueue<Pair<HighlightInfo,ProgressIndicator>> myTransferToEDTQueue
     = new TransferToEDTQueue<Pair<HighlightInfo,ProgressIndicator>>("Apply highlighting results", new Processor<Pair<HighlightInfo,ProgressIndicator>>() {
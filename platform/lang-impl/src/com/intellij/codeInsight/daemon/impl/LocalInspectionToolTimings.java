@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeInspection.LocalInspectionTool;
+import com.intellij.codeInspection.LocalInspectionToolSession;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.util.ReflectionUtil;
+import com.intellij.util.containers.ConcurrentHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects per-tool timings of {@link LocalInspectionsPass}. The pass uses them to decide how many element chunks
+ * a slow tool should be split into; see also {@link com.intellij.internal.DumpInspectionTimingsAction}.
+ *
+ * @see LocalInspectionsPass
+ */
+public class LocalInspectionToolTimings {
+  private static final ConcurrentMap<String, ToolTiming> ourTimings = new ConcurrentHashMap<String, ToolTiming>();
+  private static final ConcurrentMap<Class, Boolean> ourSplittable = new ConcurrentHashMap<Class, Boolean>();
+
+  private LocalInspectionToolTimings() {
+  }
+
+  static void record(@NotNull LocalInspectionTool tool, int elementCount, long nanos) {
+    if (elementCount == 0) return;
+    ToolTiming timing = ourTimings.get(tool.getShortName());
+    if (timing == null) {
+      timing = new ToolTiming(tool.getShortName());
+      ToolTiming prev = ourTimings.putIfAbsent(tool.getShortName(), timing);
+      if (prev != null) timing = prev;
+    }
+    timing.record(elementCount, nanos);
+  }
+
+  /**
+   * @return average time the tool spent on an element recently, in nanoseconds, or -1 if the tool hasn't run yet
+   */
+  static long getNanosPerElement(@NotNull LocalInspectionTool tool) {
+    ToolTiming timing = ourTimings.get(tool.getShortName());
+    return timing == null ? -1 : timing.getNanosPerElement();
+  }
+
+  /**
+   * Elements may be distributed between several visitors of the same tool only if the tool doesn't need to see all of them at once,
+   * i.e. it doesn't inspect the whole file and doesn't rely on the session start/finish callbacks.
+   */
+  static boolean canSplitElements(@NotNull LocalInspectionTool tool) {
+    if (tool.runForWholeFile()) return false;
+    Class<? extends LocalInspectionTool> aClass = tool.getClass();
+    Boolean splittable = ourSplittable.get(aClass);
+    if (splittable == null) {
+      splittable = !isOverridden(aClass, "inspectionStarted", LocalInspectionToolSession.class, boolean.class) &&
+                   !isOverridden(aClass, "inspectionFinished", LocalInspectionToolSession.class, ProblemsHolder.class) &&
+                   !isOverridden(aClass, "inspectionFinished", LocalInspectionToolSession.class);
+      ourSplittable.put(aClass, splittable);
+    }
+    return splittable;
+  }
+
+  private static boolean isOverridden(@NotNull Class<? extends LocalInspectionTool> aClass, @NotNull String name, Class... parameters) {
+    Method method = ReflectionUtil.getMethod(aClass, name, parameters);
+    return method == null || method.getDeclaringClass() != LocalInspectionTool.class;
+  }
+
+  /**
+   * @return lines of "tool total(ms) elements avg(ns/element)", the most expensive tools first
+   */
+  @NotNull
+  public static List<String> dump() {
+    List<ToolTiming> timings = new ArrayList<ToolTiming>(ourTimings.values());
+    Collections.sort(timings, new Comparator<ToolTiming>() {
+      @Override
+      public int compare(ToolTiming o1, ToolTiming o2) {
+        long t1 = o1.getTotalNanos();
+        long t2 = o2.getTotalNanos();
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    List<String> result = new ArrayList<String>(timings.size());
+    for (ToolTiming timing : timings) {
+      result.add(timing.toString());
+    }
+    return result;
+  }
+
+  public static void clear() {
+    ourTimings.clear();
+  }
+
+  private static class ToolTiming {
+    private final String myShortName;
+    private long myTotalNanos;
+    private long myTotalElements;
+    private long myNanosPerElement = -1; // exponential moving average, so that the estimate follows recent runs
+
+    private ToolTiming(@NotNull String shortName) {
+      myShortName = shortName;
+    }
+
+    private synchronized void record(int elementCount, long nanos) {
+      myTotalNanos += nanos;
+      myTotalElements += elementCount;
+      long nanosPerElement = nanos / elementCount;
+      myNanosPerElement = myNanosPerElement < 0 ? nanosPerElement : (3 * myNanosPerElement + nanosPerElement) / 4;
+    }
+
+    private synchronized long getNanosPerElement() {
+      return myNanosPerElement;
+    }
+
+    private synchronized long getTotalNanos() {
+      return myTotalNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return myShortName + "\t" + myTotalNanos / 1000000 + "ms\t" + myTotalElements + " elements\t" + myNanosPerElement + "ns/element";
+    }
+  }
+}
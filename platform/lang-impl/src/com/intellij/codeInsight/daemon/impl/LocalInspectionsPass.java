@@ -25,6 +25,7 @@ import com.intellij.codeInsight.intention.EmptyIntentionAction;
 import com.intellij.codeInspection.*;
 import com.intellij.codeInspection.ex.*;
 import com.intellij.codeInspection.ui.ProblemDescriptionNode;
+import com.intellij.concurrency.JobSchedulerImpl;
 import com.intellij.concurrency.JobUtil;
 import com.intellij.injected.editor.DocumentWindow;
 import com.intellij.lang.Language;
@@ -69,6 +70,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author max
@@ -143,6 +145,15 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   }
 
   public void doInspectInBatch(@NotNull InspectionManagerEx iManager, @NotNull List<InspectionProfileEntry> toolWrappers) {
+    doInspectInBatch(iManager, toolWrappers, null);
+  }
+
+  /**
+   * @param foundProblems if not null, receives the problems reported to each of the tool wrappers
+   */
+  public void doInspectInBatch(@NotNull InspectionManagerEx iManager,
+                               @NotNull List<InspectionProfileEntry> toolWrappers,
+                               @Nullable MultiMap<LocalInspectionToolWrapper, ProblemDescriptor> foundProblems) {
     Map<LocalInspectionTool, LocalInspectionToolWrapper> tool2Wrapper = new THashMap<LocalInspectionTool, LocalInspectionToolWrapper>(toolWrappers.size());
     for (InspectionProfileEntry toolWrapper : toolWrappers) {
       tool2Wrapper.put(((LocalInspectionToolWrapper)toolWrapper).getTool(), (LocalInspectionToolWrapper)toolWrapper);
@@ -150,7 +161,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
 
     ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
     inspect(new ArrayList<LocalInspectionToolWrapper>(tool2Wrapper.values()), iManager, false, false, false, progress);
-    addDescriptorsFromInjectedResults(tool2Wrapper, iManager);
+    addDescriptorsFromInjectedResults(tool2Wrapper, iManager, foundProblems);
     List<InspectionResult> resultList = result.get(myFile);
     if (resultList == null) return;
     for (InspectionResult inspectionResult : resultList) {
@@ -159,11 +170,14 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
       if (toolWrapper == null) continue;
       for (ProblemDescriptor descriptor : inspectionResult.foundProblems) {
         toolWrapper.addProblemDescriptors(Collections.singletonList(descriptor), myIgnoreSuppressed);
+        if (foundProblems != null) foundProblems.putValue(toolWrapper, descriptor);
       }
     }
   }
 
-  private void addDescriptorsFromInjectedResults(Map<LocalInspectionTool, LocalInspectionToolWrapper> tool2Wrapper, InspectionManagerEx iManager) {
+  private void addDescriptorsFromInjectedResults(Map<LocalInspectionTool, LocalInspectionToolWrapper> tool2Wrapper,
+                                                 InspectionManagerEx iManager,
+                                                 @Nullable MultiMap<LocalInspectionToolWrapper, ProblemDescriptor> foundProblems) {
     InjectedLanguageManager ilManager = InjectedLanguageManager.getInstance(myProject);
     PsiDocumentManager documentManager = PsiDocumentManager.getInstance(myProject);
 
@@ -195,6 +209,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                                                                    descriptor.getHighlightType(), true, localFixes);
             LocalInspectionToolWrapper toolWrapper = tool2Wrapper.get(tool);
             toolWrapper.addProblemDescriptors(Collections.singletonList(patchedDescriptor), true);
+            if (foundProblems != null) foundProblems.putValue(toolWrapper, patchedDescriptor);
           }
         }
       }
@@ -358,7 +373,9 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
       : "The visitor returned from LocalInspectionTool.buildVisitor() must not be recursive. "+tool;
 
     tool.inspectionStarted(session, isOnTheFly);
+    long start = System.nanoTime();
     acceptElements(elements, visitor, languages);
+    LocalInspectionToolTimings.record(tool, elements.size(), System.nanoTime() - start);
     return visitor;
   }
 
@@ -369,30 +386,68 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                            @NotNull final LocalInspectionToolSession session,
                                            @NotNull List<InspectionContext> init,
                                            List<LocalInspectionToolWrapper> wrappers, boolean checkDumbAwareness) {
-    Processor<InspectionContext> processor =
-      new Processor<InspectionContext>() {
+    // slow tools would become the critical path, so their elements are split into chunks visited concurrently by separate visitors
+    List<ElementsChunk> chunks = new ArrayList<ElementsChunk>(init.size());
+    for (InspectionContext context : init) {
+      int chunkCount = getChunkCount(context.tool, elements.size());
+      context.chunksLeft.set(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+        chunks.add(new ElementsChunk(context, elements.size() * i / chunkCount, elements.size() * (i + 1) / chunkCount));
+      }
+    }
+
+    Processor<ElementsChunk> processor =
+      new Processor<ElementsChunk>() {
         @Override
-        public boolean process(InspectionContext context) {
+        public boolean process(ElementsChunk chunk) {
           
           indicator.checkCanceled();
           ApplicationManager.getApplication().assertReadAccessAllowed();
-          acceptElements(elements, context.visitor, context.languageIds);
-          advanceProgress(1);
-          context.tool.inspectionFinished(session, context.holder);
+          InspectionContext context = chunk.context;
+          ProblemsHolder holder = context.holder;
+          PsiElementVisitor visitor = context.visitor;
+          if (chunk.from != 0) {
+            holder = new ProblemsHolder(iManager, myFile, isOnTheFly);
+            visitor = context.tool.buildVisitor(holder, isOnTheFly, session);
+          }
+          List<PsiElement> chunkElements = elements.subList(chunk.from, chunk.to);
+          long start = System.nanoTime();
+          acceptElements(chunkElements, visitor, context.languageIds);
+          LocalInspectionToolTimings.record(context.tool, chunkElements.size(), System.nanoTime() - start);
+
+          if (holder != context.holder && holder.hasResults()) {
+            appendDescriptors(myFile, holder.getResults(), context.tool);
+          }
+          if (context.chunksLeft.decrementAndGet() == 0) {
+            advanceProgress(1);
+            context.tool.inspectionFinished(session, context.holder);
 
-          if (context.holder.hasResults()) {
-            appendDescriptors(myFile, context.holder.getResults(), context.tool);
+            if (context.holder.hasResults()) {
+              appendDescriptors(myFile, context.holder.getResults(), context.tool);
+            }
           }
           return true;
         }
       };
-    boolean result = JobUtil.invokeConcurrentlyUnderProgress(init, indicator, myFailFastOnAcquireReadAction, processor);
+    boolean result = JobUtil.invokeConcurrentlyUnderProgress(chunks, indicator, myFailFastOnAcquireReadAction, processor);
     if (!result) {
       throw new ProcessCanceledException();
     }
     inspectInjectedPsi(elements, isOnTheFly, indicator, iManager, false, checkDumbAwareness, wrappers);
   }
 
+  private static final long TARGET_CHUNK_NANOS = 50 * 1000 * 1000;
+  private static final int MIN_CHUNK_SIZE = 1000;
+
+  private static int getChunkCount(@NotNull LocalInspectionTool tool, int elementCount) {
+    if (elementCount < 2 * MIN_CHUNK_SIZE || JobSchedulerImpl.CORES_COUNT < 2) return 1;
+    long nanosPerElement = LocalInspectionToolTimings.getNanosPerElement(tool);
+    if (nanosPerElement <= 0 || !LocalInspectionToolTimings.canSplitElements(tool)) return 1;
+    long expectedNanos = nanosPerElement * elementCount;
+    long chunks = Math.min(expectedNanos / TARGET_CHUNK_NANOS, elementCount / MIN_CHUNK_SIZE);
+    return (int)Math.max(1, Math.min(chunks, JobSchedulerImpl.CORES_COUNT));
+  }
+
   private static void acceptElements(@NotNull List<PsiElement> elements,
                                      @NotNull PsiElementVisitor elementVisitor,
                                      @Nullable Set<String> languages) {
@@ -792,5 +847,18 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     final ProblemsHolder holder;
     final PsiElementVisitor visitor;
     final Set<String> languageIds;
+    final AtomicInteger chunksLeft = new AtomicInteger();
+  }
+
+  private static class ElementsChunk {
+    private ElementsChunk(InspectionContext context, int from, int to) {
+      this.context = context;
+      this.from = from;
+      this.to = to;
+    }
+
+    final InspectionContext context;
+    final int from;
+    final int to;
   }
 }
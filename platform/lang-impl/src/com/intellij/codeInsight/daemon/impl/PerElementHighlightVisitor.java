@@ -0,0 +1,24 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+/**
+ * Marks {@link HighlightVisitor}s whose results for an element depend on that element and the PSI state only
+ * (i.e. the visitor keeps no state between {@link #visit} calls). {@link GeneralHighlightingPass} may reuse results of such visitors
+ * computed for the same element in a previous run, as long as PSI hasn't changed since.
+ */
+public interface PerElementHighlightVisitor extends HighlightVisitor {
+}
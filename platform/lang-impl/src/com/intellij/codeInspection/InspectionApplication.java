@@ -71,6 +71,7 @@ public class InspectionApplication {
   public String myProfilePath = null;
   public boolean myRunWithEditorSettings = false;
   public boolean myRunGlobalToolsOnly = false;
+  public boolean myUseResultsCache = false;
   private Project myProject;
   private int myVerboseLevel = 0;
   public String myOutputFormat = null;
@@ -163,6 +164,7 @@ public class InspectionApplication {
 
       final GlobalInspectionContextImpl inspectionContext = im.createNewGlobalContext(true);
       inspectionContext.setExternalProfile((InspectionProfile)inspectionProfile);
+      inspectionContext.setUseResultsCache(myUseResultsCache);
       im.setProfile(inspectionProfile.getName());
 
       final AnalysisScope scope;
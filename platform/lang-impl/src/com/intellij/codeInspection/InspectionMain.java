@@ -103,6 +103,7 @@ public class InspectionMain implements ApplicationStarter {
     }
 
     myApplication.myRunGlobalToolsOnly = System.getProperty("idea.no.local.inspections") != null;
+    myApplication.myUseResultsCache = System.getProperty("idea.inspections.results.cache") != null;
   }
 
   public void main(String[] args) {
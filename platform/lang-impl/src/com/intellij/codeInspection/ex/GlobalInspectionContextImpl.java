@@ -60,6 +60,7 @@ import com.intellij.ui.content.*;
 import com.intellij.util.Processor;
 import com.intellij.util.TripleFunction;
 import com.intellij.util.containers.HashMap;
+import com.intellij.util.containers.MultiMap;
 import com.intellij.util.ui.UIUtil;
 import gnu.trove.THashMap;
 import gnu.trove.THashSet;
@@ -101,6 +102,8 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
 
   private final Map<Key, GlobalInspectionContextExtension> myExtensions = new HashMap<Key, GlobalInspectionContextExtension>();
   private boolean RUN_GLOBAL_TOOLS_ONLY = false;
+  private boolean myUseResultsCache = false;
+  private LocalInspectionResultsCache myResultsCache = null;
 
   private final Map<String, Tools> myTools = new THashMap<String, Tools>();
 
@@ -292,6 +295,7 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
     InspectionTool.setOutputPath(outputPath);
     final boolean oldToolsSettings = RUN_GLOBAL_TOOLS_ONLY;
     RUN_GLOBAL_TOOLS_ONLY = runGlobalToolsOnly;
+    myResultsCache = myUseResultsCache && !runGlobalToolsOnly ? LocalInspectionResultsCache.open(myProject) : null;
     try {
       ApplicationManager.getApplication().runReadAction(new Runnable() {
         public void run() {
@@ -369,9 +373,21 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
     finally {
       InspectionTool.setOutputPath(null);
       RUN_GLOBAL_TOOLS_ONLY = oldToolsSettings;
+      if (myResultsCache != null) {
+        myResultsCache.close();
+        myResultsCache = null;
+      }
     }
   }
 
+  /**
+   * Makes {@link #launchInspectionsOffline} reuse the results of local inspections from the previous offline runs
+   * for the files that haven't changed since then.
+   */
+  public void setUseResultsCache(boolean useResultsCache) {
+    myUseResultsCache = useResultsCache;
+  }
+
 
   public boolean isToCheckMember(@NotNull RefElement owner, InspectionProfileEntry tool) {
     return isToCheckFile(((RefElementImpl)owner).getContainingFile(), tool) && !((RefElementImpl)owner).isSuppressed(tool.getShortName());
@@ -582,7 +598,16 @@ public class GlobalInspectionContextImpl extends UserDataHolderBase implements G
               lTools.add(enabledTool);
             }
           }
-          pass.doInspectInBatch((InspectionManagerEx)manager, lTools);
+          if (myResultsCache == null) {
+            pass.doInspectInBatch((InspectionManagerEx)manager, lTools);
+          }
+          else {
+            byte[] contentDigest = LocalInspectionResultsCache.digest(document.getCharsSequence());
+            List<InspectionProfileEntry> toolsToRun = myResultsCache.replay(file, contentDigest, lTools);
+            MultiMap<LocalInspectionToolWrapper, ProblemDescriptor> foundProblems = new MultiMap<LocalInspectionToolWrapper, ProblemDescriptor>();
+            pass.doInspectInBatch((InspectionManagerEx)manager, toolsToRun, foundProblems);
+            myResultsCache.store(file, contentDigest, toolsToRun, foundProblems);
+          }
 
           JobUtil.invokeConcurrentlyUnderProgress(globalSimpleTools, myProgressIndicator, false, new Processor<Tools>() {
               @Override
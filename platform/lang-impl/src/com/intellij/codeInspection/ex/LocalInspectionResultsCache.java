@@ -0,0 +1,396 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection.ex;
+
+import com.intellij.codeInspection.InspectionProfileEntry;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.containers.MultiMap;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.THashMap;
+import org.jdom.Element;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persists the problems found by local inspection tools during offline inspection runs, so that files which haven't changed since
+ * the previous run are not inspected again by tools whose settings haven't changed either.
+ * <p/>
+ * Results are keyed by file path and validated by a digest of the file text and of the tool settings. Only the file itself is taken
+ * into account, so the cache is meant for tools whose results don't depend on other files. Replayed problems carry no quick fixes.
+ *
+ * @see GlobalInspectionContextImpl#setUseResultsCache(boolean)
+ */
+class LocalInspectionResultsCache {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInspection.ex.LocalInspectionResultsCache");
+  private static final int VERSION = 1;
+  @NonNls private static final String VERSION_FILE_NAME = "version";
+  @NonNls private static final String RESULTS_FILE_NAME = "results";
+
+  private final PersistentHashMap<String, FileResults> myResults;
+  private final Map<InspectionProfileEntry, byte[]> mySettingsDigests = new THashMap<InspectionProfileEntry, byte[]>();
+  private int myReplayedCount;
+  private int myInspectedCount;
+
+  private LocalInspectionResultsCache(@NotNull PersistentHashMap<String, FileResults> results) {
+    myResults = results;
+  }
+
+  @Nullable
+  static LocalInspectionResultsCache open(@NotNull Project project) {
+    File dir = new File(PathManager.getSystemPath(), "inspectionResults/" + project.getName() + "." + project.getLocationHash());
+    File versionFile = new File(dir, VERSION_FILE_NAME);
+    String expectedVersion = VERSION + ":" + ApplicationInfo.getInstance().getBuild().asString();
+    try {
+      String version = versionFile.exists() ? new String(FileUtil.loadFileText(versionFile)) : null;
+      if (!expectedVersion.equals(version)) {
+        FileUtil.delete(dir);
+        FileUtil.writeToFile(versionFile, expectedVersion);
+      }
+      return new LocalInspectionResultsCache(
+        new PersistentHashMap<String, FileResults>(new File(dir, RESULTS_FILE_NAME), new EnumeratorStringDescriptor(), new FileResultsExternalizer()));
+    }
+    catch (IOException e) {
+      LOG.info("Cannot open inspection results cache in " + dir, e);
+      FileUtil.delete(dir);
+      return null;
+    }
+  }
+
+  void close() {
+    LOG.info("Inspection results cache: replayed " + myReplayedCount + ", inspected " + myInspectedCount + " (file, tool) pairs");
+    try {
+      myResults.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  @NotNull
+  static byte[] digest(@NotNull CharSequence text) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      md5.update(text.toString().getBytes("UTF-8"));
+      return md5.digest();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reports cached problems of the tools that already have up-to-date results for the file.
+   *
+   * @return the tools which have to be run on the file
+   */
+  @NotNull
+  List<InspectionProfileEntry> replay(@NotNull PsiFile file, @NotNull byte[] contentDigest, @NotNull List<InspectionProfileEntry> tools) {
+    VirtualFile virtualFile = file.getVirtualFile();
+    FileResults results = virtualFile == null ? null : get(virtualFile.getPath());
+    if (results == null || !Arrays.equals(results.contentDigest, contentDigest)) {
+      myInspectedCount += tools.size();
+      return tools;
+    }
+
+    List<InspectionProfileEntry> toRun = new ArrayList<InspectionProfileEntry>();
+    for (InspectionProfileEntry entry : tools) {
+      LocalInspectionToolWrapper toolWrapper = (LocalInspectionToolWrapper)entry;
+      ToolResults toolResults = results.tools.get(toolWrapper.getShortName());
+      byte[] settingsDigest = getSettingsDigest(toolWrapper);
+      List<ProblemDescriptor> descriptors = toolResults == null || settingsDigest == null ||
+                                            !Arrays.equals(toolResults.settingsDigest, settingsDigest)
+                                            ? null : restore(file, toolResults.problems);
+      if (descriptors == null) {
+        toRun.add(toolWrapper);
+        myInspectedCount++;
+      }
+      else {
+        if (!descriptors.isEmpty()) {
+          toolWrapper.addProblemDescriptors(descriptors, true);
+        }
+        myReplayedCount++;
+      }
+    }
+    return toRun;
+  }
+
+  void store(@NotNull PsiFile file,
+             @NotNull byte[] contentDigest,
+             @NotNull List<InspectionProfileEntry> inspectedTools,
+             @NotNull MultiMap<LocalInspectionToolWrapper, ProblemDescriptor> foundProblems) {
+    VirtualFile virtualFile = file.getVirtualFile();
+    if (virtualFile == null || inspectedTools.isEmpty()) return;
+    String path = virtualFile.getPath();
+    FileResults results = get(path);
+    if (results == null || !Arrays.equals(results.contentDigest, contentDigest)) {
+      results = new FileResults(contentDigest);
+    }
+
+    for (InspectionProfileEntry entry : inspectedTools) {
+      LocalInspectionToolWrapper toolWrapper = (LocalInspectionToolWrapper)entry;
+      byte[] settingsDigest = getSettingsDigest(toolWrapper);
+      List<CachedProblem> problems = settingsDigest == null ? null : save(file, foundProblems.get(toolWrapper));
+      if (problems == null) {
+        results.tools.remove(toolWrapper.getShortName());
+      }
+      else {
+        results.tools.put(toolWrapper.getShortName(), new ToolResults(settingsDigest, problems));
+      }
+    }
+
+    try {
+      myResults.put(path, results);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  @Nullable
+  private FileResults get(@NotNull String path) {
+    try {
+      return myResults.get(path);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private byte[] getSettingsDigest(@NotNull LocalInspectionToolWrapper toolWrapper) {
+    if (mySettingsDigests.containsKey(toolWrapper)) return mySettingsDigests.get(toolWrapper);
+    byte[] digest;
+    try {
+      Element element = new Element("tool");
+      toolWrapper.getTool().writeSettings(element);
+      digest = digest(JDOMUtil.writeElement(element, "\n"));
+    }
+    catch (Exception e) {
+      digest = null; // the settings can't be compared, don't cache results of the tool
+    }
+    mySettingsDigests.put(toolWrapper, digest);
+    return digest;
+  }
+
+  @Nullable
+  private static List<CachedProblem> save(@NotNull PsiFile file, @NotNull Collection<ProblemDescriptor> descriptors) {
+    List<CachedProblem> problems = new ArrayList<CachedProblem>(descriptors.size());
+    for (ProblemDescriptor descriptor : descriptors) {
+      if (!(descriptor instanceof ProblemDescriptorImpl)) return null;
+      PsiElement startElement = descriptor.getStartElement();
+      PsiElement endElement = descriptor.getEndElement();
+      if (startElement == null || endElement == null ||
+          startElement.getContainingFile() != file || endElement.getContainingFile() != file) {
+        return null;
+      }
+      TextRange startRange = startElement.getTextRange();
+      TextRange endRange = endElement.getTextRange();
+      TextRange range = ((ProblemDescriptorImpl)descriptor).getTextRange();
+      if (startRange == null || endRange == null || range == null) return null;
+
+      CachedProblem problem = new CachedProblem();
+      problem.startOffset = startRange.getStartOffset();
+      problem.startEndOffset = startRange.getEndOffset();
+      problem.startClass = startElement.getClass().getName();
+      problem.endOffset = endRange.getStartOffset();
+      problem.endEndOffset = endRange.getEndOffset();
+      problem.endClass = endElement.getClass().getName();
+      problem.sameElement = startElement == endElement;
+      if (problem.sameElement && !descriptor.isAfterEndOfLine() && !range.equals(startRange)) {
+        problem.rangeInElement = range.shiftRight(-startRange.getStartOffset());
+      }
+      problem.descriptionTemplate = descriptor.getDescriptionTemplate();
+      problem.highlightType = descriptor.getHighlightType();
+      problem.afterEndOfLine = descriptor.isAfterEndOfLine();
+      problem.problemGroup = descriptor.getProblemGroup();
+      problems.add(problem);
+    }
+    return problems;
+  }
+
+  /**
+   * @return descriptors anchored to the current PSI of the file, or null if some of the cached elements can't be found
+   */
+  @Nullable
+  private static List<ProblemDescriptor> restore(@NotNull PsiFile file, @NotNull List<CachedProblem> problems) {
+    List<ProblemDescriptor> descriptors = new ArrayList<ProblemDescriptor>(problems.size());
+    for (CachedProblem problem : problems) {
+      PsiElement startElement = findElement(file, problem.startOffset, problem.startEndOffset, problem.startClass);
+      PsiElement endElement = problem.sameElement ? startElement : findElement(file, problem.endOffset, problem.endEndOffset, problem.endClass);
+      if (startElement == null || endElement == null) return null;
+      ProblemDescriptorImpl descriptor = new ProblemDescriptorImpl(startElement, endElement, problem.descriptionTemplate, null,
+                                                                   problem.highlightType, problem.afterEndOfLine, problem.rangeInElement, false);
+      descriptor.setProblemGroup(problem.problemGroup);
+      descriptors.add(descriptor);
+    }
+    return descriptors;
+  }
+
+  @Nullable
+  private static PsiElement findElement(@NotNull PsiFile file, int startOffset, int endOffset, @NotNull String className) {
+    if (startOffset == 0 && endOffset == file.getTextLength() && file.getClass().getName().equals(className)) return file;
+    PsiElement element = file.findElementAt(startOffset);
+    while (element != null && !(element instanceof PsiFile)) {
+      TextRange range = element.getTextRange();
+      if (range == null || range.getStartOffset() != startOffset || range.getEndOffset() > endOffset) return null;
+      if (range.getEndOffset() == endOffset && element.getClass().getName().equals(className)) return element;
+      element = element.getParent();
+    }
+    return null;
+  }
+
+  private static class FileResults {
+    private final byte[] contentDigest;
+    private final Map<String, ToolResults> tools = new THashMap<String, ToolResults>();
+
+    private FileResults(@NotNull byte[] contentDigest) {
+      this.contentDigest = contentDigest;
+    }
+  }
+
+  private static class ToolResults {
+    private final byte[] settingsDigest;
+    private final List<CachedProblem> problems;
+
+    private ToolResults(@NotNull byte[] settingsDigest, @NotNull List<CachedProblem> problems) {
+      this.settingsDigest = settingsDigest;
+      this.problems = problems;
+    }
+  }
+
+  private static class CachedProblem {
+    private int startOffset;
+    private int startEndOffset;
+    private String startClass;
+    private int endOffset;
+    private int endEndOffset;
+    private String endClass;
+    private boolean sameElement;
+    private TextRange rangeInElement;
+    private String descriptionTemplate;
+    private ProblemHighlightType highlightType;
+    private boolean afterEndOfLine;
+    private String problemGroup;
+  }
+
+  private static class FileResultsExternalizer implements DataExternalizer<FileResults> {
+    @Override
+    public void save(DataOutput out, FileResults value) throws IOException {
+      writeDigest(out, value.contentDigest);
+      out.writeInt(value.tools.size());
+      for (Map.Entry<String, ToolResults> entry : value.tools.entrySet()) {
+        out.writeUTF(entry.getKey());
+        ToolResults toolResults = entry.getValue();
+        writeDigest(out, toolResults.settingsDigest);
+        out.writeInt(toolResults.problems.size());
+        for (CachedProblem problem : toolResults.problems) {
+          out.writeInt(problem.startOffset);
+          out.writeInt(problem.startEndOffset);
+          out.writeUTF(problem.startClass);
+          out.writeBoolean(problem.sameElement);
+          if (!problem.sameElement) {
+            out.writeInt(problem.endOffset);
+            out.writeInt(problem.endEndOffset);
+            out.writeUTF(problem.endClass);
+          }
+          out.writeBoolean(problem.rangeInElement != null);
+          if (problem.rangeInElement != null) {
+            out.writeInt(problem.rangeInElement.getStartOffset());
+            out.writeInt(problem.rangeInElement.getEndOffset());
+          }
+          IOUtil.writeString(problem.descriptionTemplate, out);
+          out.writeUTF(problem.highlightType.name());
+          out.writeBoolean(problem.afterEndOfLine);
+          IOUtil.writeString(problem.problemGroup, out);
+        }
+      }
+    }
+
+    @Override
+    public FileResults read(DataInput in) throws IOException {
+      FileResults results = new FileResults(readDigest(in));
+      int toolCount = in.readInt();
+      for (int i = 0; i < toolCount; i++) {
+        String shortName = in.readUTF();
+        byte[] settingsDigest = readDigest(in);
+        int problemCount = in.readInt();
+        List<CachedProblem> problems = new ArrayList<CachedProblem>(problemCount);
+        for (int j = 0; j < problemCount; j++) {
+          CachedProblem problem = new CachedProblem();
+          problem.startOffset = in.readInt();
+          problem.startEndOffset = in.readInt();
+          problem.startClass = in.readUTF();
+          problem.sameElement = in.readBoolean();
+          if (!problem.sameElement) {
+            problem.endOffset = in.readInt();
+            problem.endEndOffset = in.readInt();
+            problem.endClass = in.readUTF();
+          }
+          if (in.readBoolean()) {
+            int start = in.readInt();
+            problem.rangeInElement = new TextRange(start, in.readInt());
+          }
+          problem.descriptionTemplate = IOUtil.readString(in);
+          problem.highlightType = ProblemHighlightType.valueOf(in.readUTF());
+          problem.afterEndOfLine = in.readBoolean();
+          problem.problemGroup = IOUtil.readString(in);
+          problems.add(problem);
+        }
+        results.tools.put(shortName, new ToolResults(settingsDigest, problems));
+      }
+      return results;
+    }
+
+    private static void writeDigest(DataOutput out, byte[] digest) throws IOException {
+      out.writeByte(digest.length);
+      out.write(digest);
+    }
+
+    private static byte[] readDigest(DataInput in) throws IOException {
+      byte[] digest = new byte[in.readUnsignedByte()];
+      in.readFully(digest);
+      return digest;
+    }
+  }
+}
@@ -36,6 +36,7 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.SmartPointerManager;
 import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -43,11 +44,12 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
+import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public abstract class RefElementImpl extends RefEntityImpl implements RefElement {
-  private static final ArrayList<RefElement> EMPTY_REFERNCES_LIST = new ArrayList<RefElement>(0);
   protected static final Logger LOG = Logger.getInstance("#com.intellij.codeInspection.reference.RefElement");
 
   private static final int IS_ENTRY_MASK = 0x80;
@@ -55,9 +57,12 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
 
 
   private final SmartPsiElementPointer myID;
+  // assigned by the manager when the element is added to a reference list for the first time, -1 before that
+  private volatile int myIndex = -1;
 
-  private ArrayList<RefElement> myOutReferences;
-  private ArrayList<RefElement> myInReferences;
+  // references are kept as {size, id1, id2, ...} arrays of RefManagerImpl element ids, null means no references
+  private int[] myOutReferences;
+  private int[] myInReferences;
 
   private String[] mySuppressions = null;
 
@@ -143,7 +148,7 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
   }
 
   public boolean isReferenced() {
-    return !getInReferences().isEmpty();
+    return myInReferences != null && myInReferences[0] != 0;
   }
 
   public boolean hasSuspiciousCallers() {
@@ -156,36 +161,58 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
 
   @NotNull
   public Collection<RefElement> getOutReferences() {
-    if (myOutReferences == null){
-      return EMPTY_REFERNCES_LIST;
-    }
-    return myOutReferences;
+    return new References(false);
   }
 
   @NotNull
   public Collection<RefElement> getInReferences() {
-    if (myInReferences == null){
-      return EMPTY_REFERNCES_LIST;
-    }
-    return myInReferences;
+    return new References(true);
   }
 
   public void addInReference(RefElement refElement) {
-    if (!getInReferences().contains(refElement)) {
-      if (myInReferences == null){
-        myInReferences = new ArrayList<RefElement>(1);
-      }
-      myInReferences.add(refElement);
-    }
+    myInReferences = addReference(myInReferences, ((RefElementImpl)refElement).getIndex());
   }
 
   public void addOutReference(RefElement refElement) {
-    if (!getOutReferences().contains(refElement)) {
-      if (myOutReferences == null){
-        myOutReferences = new ArrayList<RefElement>(1);
+    myOutReferences = addReference(myOutReferences, ((RefElementImpl)refElement).getIndex());
+  }
+
+  private int getIndex() {
+    int index = myIndex;
+    if (index < 0) {
+      // registered only after construction, so that the id table never exposes a partially initialized element
+      synchronized (myManager) {
+        index = myIndex;
+        if (index < 0) {
+          index = myManager.registerElement(this);
+          myIndex = index;
+        }
       }
-      myOutReferences.add(refElement);
     }
+    return index;
+  }
+
+  @NotNull
+  private static int[] addReference(@Nullable int[] references, int index) {
+    if (references == null) {
+      return new int[]{1, index};
+    }
+    int size = references[0];
+    if (indexOf(references, index) > 0) return references;
+    if (size + 1 == references.length) {
+      references = ArrayUtil.realloc(references, size + 1 + (size + 1) / 2);
+    }
+    references[++size] = index;
+    references[0] = size;
+    return references;
+  }
+
+  private static int indexOf(@Nullable int[] references, int index) {
+    if (references == null) return -1;
+    for (int i = references[0]; i > 0; i--) {
+      if (references[i] == index) return i;
+    }
+    return -1;
   }
 
   public void setEntry(boolean entry) {
@@ -248,6 +275,82 @@ public abstract class RefElementImpl extends RefEntityImpl implements RefElement
 
   protected abstract void initialize();
 
+  /**
+   * A live view of the in or out references of this element which resolves element ids on the fly,
+   * so that the graph keeps a single int per reference.
+   */
+  private class References extends AbstractCollection<RefElement> {
+    private final boolean myIncoming;
+
+    private References(boolean incoming) {
+      myIncoming = incoming;
+    }
+
+    private int[] getIds() {
+      return myIncoming ? myInReferences : myOutReferences;
+    }
+
+    @Override
+    public int size() {
+      int[] ids = getIds();
+      return ids == null ? 0 : ids[0];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o instanceof RefElementImpl && indexOf(getIds(), ((RefElementImpl)o).myIndex) > 0;
+    }
+
+    @Override
+    public boolean add(RefElement refElement) {
+      int before = size();
+      if (myIncoming) {
+        addInReference(refElement);
+      }
+      else {
+        addOutReference(refElement);
+      }
+      return size() != before;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!(o instanceof RefElementImpl)) return false;
+      int[] ids = getIds();
+      int i = indexOf(ids, ((RefElementImpl)o).myIndex);
+      if (i < 0) return false;
+      removeAt(ids, i);
+      return true;
+    }
+
+    private void removeAt(int[] ids, int i) {
+      int size = ids[0];
+      System.arraycopy(ids, i + 1, ids, i, size - i);
+      ids[0] = size - 1;
+    }
+
+    @Override
+    public Iterator<RefElement> iterator() {
+      return new Iterator<RefElement>() {
+        private int myNext = 1;
+
+        public boolean hasNext() {
+          return myNext <= size();
+        }
+
+        public RefElement next() {
+          if (!hasNext()) throw new NoSuchElementException();
+          return myManager.getElementById(getIds()[myNext++]);
+        }
+
+        public void remove() {
+          if (myNext == 1) throw new IllegalStateException();
+          removeAt(getIds(), --myNext);
+        }
+      };
+    }
+  }
+
   public void addSuppression(final String text) {
     mySuppressions = text.split("[, ]");    
   }
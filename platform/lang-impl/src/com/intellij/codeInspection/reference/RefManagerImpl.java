@@ -53,7 +53,9 @@ import com.intellij.util.concurrency.LockFactory;
 import com.intellij.util.containers.ContainerUtil;
 import gnu.trove.THashMap;
 import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import java.util.*;
 
@@ -66,6 +68,9 @@ public class RefManagerImpl extends RefManager {
   private AnalysisScope myScope;
   private RefProject myRefProject;
   private THashMap<PsiAnchor, RefElement> myRefTable;
+  // written under the lock of the manager and read without it, so the array is republished after each registration
+  private volatile RefElement[] myElementsById = new RefElement[1000];
+  private int myElementCount;
 
   private THashMap<Module, RefModule> myModules;
   private final ProjectIterator myProjectIterator;
@@ -130,6 +135,10 @@ public class RefManagerImpl extends RefManager {
     myRefTable = null;
     myModules = null;
     myContext = null;
+    synchronized (this) {
+      myElementsById = new RefElement[1000];
+      myElementCount = 0;
+    }
 
     myGraphAnnotators.clear();
     for (RefManagerExtension extension : myExtensions.values()) {
@@ -309,6 +318,30 @@ public class RefManagerImpl extends RefManager {
     return myRefTable;
   }
 
+  /**
+   * Assigns the element an id to refer to it from the compact reference lists of other elements. Called when the element is added
+   * to a reference list for the first time.
+   */
+  synchronized int registerElement(@NotNull RefElement refElement) {
+    RefElement[] elements = myElementsById;
+    if (myElementCount == elements.length) {
+      elements = new RefElement[elements.length * 3 / 2];
+      System.arraycopy(myElementsById, 0, elements, 0, myElementCount);
+    }
+    elements[myElementCount] = refElement;
+    myElementsById = elements;
+    return myElementCount++;
+  }
+
+  RefElement getElementById(int id) {
+    return myElementsById[id];
+  }
+
+  @TestOnly
+  synchronized int getRegisteredElementCount() {
+    return myElementCount;
+  }
+
   public ArrayList<RefElement> getSortedElements() {
     ArrayList<RefElement> answer = new ArrayList<RefElement>(myRefTable.values());
     ContainerUtil.quickSort(answer, new Comparator<RefElement>() {
@@ -19,34 +19,76 @@
  */
 package com.intellij.psi.stubs;
 
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.io.DataInputOutputUtil;
 import com.intellij.util.io.UnsyncByteArrayInputStream;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 
+/**
+ * Serialized form of a file stub tree. Besides the bytes of the tree itself it keeps an index with the offset and parent of every stub
+ * (in {@link StubTree#getPlainList()} order), which allows to materialize a single stub with its ancestors via {@link #getStub(int)}
+ * without deserializing the whole tree.
+ */
 public class SerializedStubTree {
   private final byte[] myBytes;
   private final int myLength;
+  private final int[] myStubOffsets;
+  private final int[] myStubParents;
   private StubElement myStubElement;
 
   public SerializedStubTree(final byte[] bytes, int length, @Nullable StubElement stubElement) {
+    this(bytes, length, stubElement, ArrayUtil.EMPTY_INT_ARRAY, ArrayUtil.EMPTY_INT_ARRAY);
+  }
+
+  public SerializedStubTree(final byte[] bytes, int length, @Nullable StubElement stubElement,
+                            @NotNull TIntArrayList stubOffsets, @NotNull TIntArrayList stubParents) {
+    this(bytes, length, stubElement, stubOffsets.toNativeArray(), stubParents.toNativeArray());
+  }
+
+  private SerializedStubTree(final byte[] bytes, int length, @Nullable StubElement stubElement, int[] stubOffsets, int[] stubParents) {
+    assert stubOffsets.length == stubParents.length;
     myBytes = bytes;
     myLength = length;
     myStubElement = stubElement;
+    myStubOffsets = stubOffsets;
+    myStubParents = stubParents;
   }
-  
+
   public SerializedStubTree(DataInput in) throws IOException {
     myLength = in.readInt();
     myBytes = new byte[myLength];
     myStubElement = null;
     in.readFully(myBytes);
+
+    final int stubCount = DataInputOutputUtil.readINT(in);
+    myStubOffsets = new int[stubCount];
+    myStubParents = new int[stubCount];
+    int offset = 0;
+    for (int i = 0; i < stubCount; i++) {
+      offset += DataInputOutputUtil.readINT(in);
+      myStubOffsets[i] = offset;
+      // parent always precedes its children, so store the (non-negative) distance to it, root has distance of i + 1
+      myStubParents[i] = i - DataInputOutputUtil.readINT(in);
+    }
   }
 
   public void write(DataOutput out) throws IOException{
     out.writeInt(myLength);
     out.write(myBytes, 0, myLength);
+
+    DataInputOutputUtil.writeINT(out, myStubOffsets.length);
+    int prevOffset = 0;
+    for (int i = 0; i < myStubOffsets.length; i++) {
+      DataInputOutputUtil.writeINT(out, myStubOffsets[i] - prevOffset);
+      prevOffset = myStubOffsets[i];
+      DataInputOutputUtil.writeINT(out, i - myStubParents[i]);
+    }
   }
 
   // willIndexStub is one time optimization hint, once can safely pass false
@@ -61,6 +103,39 @@ public class SerializedStubTree {
     return SerializationManager.getInstance().deserialize(new UnsyncByteArrayInputStream(myBytes));
   }
 
+  /**
+   * @return number of stubs in the tree or -1 if the tree was serialized without stub offsets
+   */
+  public int getStubCount() {
+    return myStubOffsets.length > 0 ? myStubOffsets.length : -1;
+  }
+
+  /**
+   * Deserializes the stub with the given index in {@link StubTree#getPlainList()} order together with its ancestors only.
+   * Children lists of the returned stub and its ancestors are not populated, so the result must not be used where the whole tree is
+   * expected; use {@link #getStub(boolean)} for that.
+   *
+   * @return partially loaded stub or null if the index is out of range or the tree has no stub offsets
+   */
+  @Nullable
+  public StubElement getStub(int stubIndex) {
+    if (stubIndex < 0 || stubIndex >= myStubOffsets.length) return null;
+
+    final TIntArrayList path = new TIntArrayList();
+    for (int idx = stubIndex; idx >= 0; idx = myStubParents[idx]) {
+      path.add(idx);
+    }
+
+    final SerializationManager serializationManager = SerializationManager.getInstance();
+    StubElement stub = null;
+    for (int i = path.size() - 1; i >= 0; i--) {
+      final UnsyncByteArrayInputStream stream = new UnsyncByteArrayInputStream(myBytes);
+      stream.skip(myStubOffsets[path.get(i)]);
+      stub = serializationManager.deserializeStub(stream, stub);
+    }
+    return stub;
+  }
+
   public boolean equals(final Object that) {
     if (this == that) {
       return true;
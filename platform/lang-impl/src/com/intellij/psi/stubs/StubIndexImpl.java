@@ -242,7 +242,34 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
               return true;
             }
             if (stubTree == null) {
-              stubTree = StubTreeLoader.getInstance().readFromVFile(project, file);
+              final StubTreeLoader stubTreeLoader = StubTreeLoader.getInstance();
+              if (psiFile instanceof PsiFileImpl && stubTreeLoader instanceof StubTreeLoaderImpl) {
+                // AST is already loaded, so materialize only the stubs we were asked for instead of the whole stub tree
+                final SerializedStubTree serializedTree = ((StubTreeLoaderImpl)stubTreeLoader).readSerializedFromVFile(project, file);
+                if (serializedTree == null) {
+                  return true;
+                }
+                if (serializedTree.getStubCount() > 0) {
+                  for (int i = 0; i < value.size(); i++) {
+                    final int stubIdx = value.get(i);
+                    final StubElement<?> stub = serializedTree.getStub(stubIdx);
+                    final ASTNode tree = ((PsiFileImpl)psiFile).findTreeForStubIndex(stubIdx);
+
+                    if (tree != null && stub != null) {
+                      if (tree.getElementType() == stubType(stub)) {
+                        Psi psi = (Psi)tree.getPsi();
+                        if (!processor.process(psi)) return false;
+                      }
+                      else {
+                        reportStubPsiMismatch(new StubTree((PsiFileStub)serializedTree.getStub(false)), psiFile, file);
+                      }
+                    }
+                  }
+                  return true;
+                }
+              }
+
+              stubTree = stubTreeLoader.readFromVFile(project, file);
               if (stubTree == null) {
                 return true;
               }
@@ -257,31 +284,7 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
                     if (!processor.process(psi)) return false;
                   }
                   else {
-                    String persistedStubTree = ((PsiFileStubImpl)stubTree.getRoot()).printTree();
-
-                    String stubTreeJustBuilt =
-                      ((PsiFileStubImpl)((IStubFileElementType)((PsiFileImpl)psiFile).getContentElementType()).getBuilder()
-                        .buildStubTree(psiFile)).printTree();
-
-                    StringBuilder builder = new StringBuilder();
-                    builder.append("Oops\n");
-
-
-                    builder.append("Recorded stub:-----------------------------------\n");
-                    builder.append(persistedStubTree);
-                    builder.append("\nAST built stub: ------------------------------------\n");
-                    builder.append(stubTreeJustBuilt);
-                    builder.append("\n");
-                    LOG.info(builder.toString());
-
-                    // requestReindex() may want to acquire write lock (for indices not requiring content loading)
-                    // thus, because here we are under read lock, need to use invoke later
-                    ApplicationManager.getApplication().invokeLater(new Runnable() {
-                      @Override
-                      public void run() {
-                        fileBasedIndex.requestReindex(file);
-                      }
-                    }, ModalityState.NON_MODAL);
+                    reportStubPsiMismatch(stubTree, psiFile, file);
                   }
                 }
               }
@@ -318,6 +321,34 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
     return true;
   }
 
+  private static void reportStubPsiMismatch(@NotNull StubTree stubTree, @NotNull PsiFileWithStubSupport psiFile, @NotNull final VirtualFile file) {
+    String persistedStubTree = ((PsiFileStubImpl)stubTree.getRoot()).printTree();
+
+    String stubTreeJustBuilt =
+      ((PsiFileStubImpl)((IStubFileElementType)((PsiFileImpl)psiFile).getContentElementType()).getBuilder()
+        .buildStubTree(psiFile)).printTree();
+
+    StringBuilder builder = new StringBuilder();
+    builder.append("Oops\n");
+
+
+    builder.append("Recorded stub:-----------------------------------\n");
+    builder.append(persistedStubTree);
+    builder.append("\nAST built stub: ------------------------------------\n");
+    builder.append(stubTreeJustBuilt);
+    builder.append("\n");
+    LOG.info(builder.toString());
+
+    // requestReindex() may want to acquire write lock (for indices not requiring content loading)
+    // thus, because here we are under read lock, need to use invoke later
+    ApplicationManager.getApplication().invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        FileBasedIndex.getInstance().requestReindex(file);
+      }
+    }, ModalityState.NON_MODAL);
+  }
+
   private static IElementType stubType(@NotNull final StubElement<?> stub) {
     if (stub instanceof PsiFileStub) {
       return ((PsiFileStub)stub).getType();
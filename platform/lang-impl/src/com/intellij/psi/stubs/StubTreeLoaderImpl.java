@@ -66,6 +66,20 @@ public class StubTreeLoaderImpl extends StubTreeLoader {
   @Override
   @Nullable
   public StubTree readFromVFile(Project project, final VirtualFile vFile) {
+    final SerializedStubTree serializedTree = readSerializedFromVFile(project, vFile);
+    if (serializedTree == null) {
+      return null;
+    }
+    StubElement stub = serializedTree.getStub(false);
+    return new StubTree((PsiFileStub)stub);
+  }
+
+  /**
+   * Returns the stub tree of the file in its serialized form, so that callers interested in a few stubs only could avoid
+   * deserializing the whole tree (see {@link SerializedStubTree#getStub(int)}).
+   */
+  @Nullable
+  public SerializedStubTree readSerializedFromVFile(Project project, final VirtualFile vFile) {
     if (DumbService.getInstance(project).isDumb()) {
       return null;
     }
@@ -77,8 +91,7 @@ public class StubTreeLoaderImpl extends StubTreeLoader {
       final int size = datas.size();
 
       if (size == 1) {
-        StubElement stub = datas.get(0).getStub(false);
-        return new StubTree((PsiFileStub)stub);
+        return datas.get(0);
       }
       else if (size != 0) {
         LOG.error("Twin stubs: " + vFile.getPresentableUrl() + " has " + size + " stub versions. Should only have one. id=" + id);
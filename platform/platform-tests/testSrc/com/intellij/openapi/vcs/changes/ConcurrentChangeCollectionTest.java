@@ -0,0 +1,266 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.AbstractVcs;
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.FileStatus;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import com.intellij.util.Processor;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that changes collected for two root scopes at the same time are merged in the order of scopes,
+ * and that the provider calls to the shared gate are serialized.
+ */
+public class ConcurrentChangeCollectionTest extends TestCase {
+  public void testOverlappingScopeUpdatesAreMergedInScopeOrder() throws Exception {
+    final SerialGate gate = new SerialGate();
+    final RootScope first = new RootScope("/first");
+    final RootScope second = new RootScope("/second");
+    final RecordingChangelistBuilder firstRecorder = new RecordingChangelistBuilder(false);
+    final RecordingChangelistBuilder secondRecorder = new RecordingChangelistBuilder(false);
+
+    // both providers are inside getChanges at the same time, and the provider of the second scope finishes first
+    final CyclicBarrier bothStarted = new CyclicBarrier(2);
+    final CountDownLatch secondDone = new CountDownLatch(1);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    final Thread firstUpdate = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final ConcurrentUpdateGate firstGate = new ConcurrentUpdateGate(gate, first);
+          bothStarted.await();
+          report(first, firstRecorder, firstGate, "a.txt", "b.txt");
+          assertTrue(secondDone.await(10, TimeUnit.SECONDS));
+          report(first, firstRecorder, firstGate, "c.txt");
+        }
+        catch (Throwable t) {
+          errors.add(t);
+        }
+      }
+    });
+    final Thread secondUpdate = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final ConcurrentUpdateGate secondGate = new ConcurrentUpdateGate(gate, second);
+          bothStarted.await();
+          report(second, secondRecorder, secondGate, "x.txt", "y.txt");
+        }
+        catch (Throwable t) {
+          errors.add(t);
+        }
+        finally {
+          secondDone.countDown();
+        }
+      }
+    });
+    firstUpdate.start();
+    secondUpdate.start();
+    firstUpdate.join(20000);
+    secondUpdate.join(20000);
+    assertEquals(Collections.<Throwable>emptyList(), errors);
+
+    final LoggingBuilder merged = new LoggingBuilder();
+    for (RecordingChangelistBuilder recorder : Arrays.asList(firstRecorder, secondRecorder)) {
+      recorder.replay(merged);
+    }
+    assertEquals(Arrays.asList("/first/a.txt", "/first/b.txt", "/first/c.txt", "/second/x.txt", "/second/y.txt"), merged.myLog);
+    assertEquals(3, firstRecorder.getCallsCount());
+    assertEquals(2, secondRecorder.getCallsCount());
+    assertEquals(5, gate.myCalls.get());
+    assertFalse("calls to the shared gate overlapped", gate.myOverlapped);
+  }
+
+  private static void report(RootScope scope, ChangelistBuilder builder, ChangeListManagerGate gate, String... names) {
+    for (String name : names) {
+      gate.findOrCreateList("Default", "");
+      builder.processLocallyDeletedFile(new FilePathImpl(new File(scope.myRoot.getIOFile(), name), false));
+    }
+  }
+
+  private static class LoggingBuilder extends RecordingChangelistBuilder {
+    private final List<String> myLog = new ArrayList<String>();
+
+    private LoggingBuilder() {
+      super(false);
+    }
+
+    @Override
+    public void processLocallyDeletedFile(FilePath file) {
+      myLog.add(file.getPath());
+    }
+  }
+
+  /**
+   * Fails if it is entered by two threads at once, which the real gate doesn't expect
+   */
+  private static class SerialGate implements ChangeListManagerGate {
+    private final AtomicInteger myCalls = new AtomicInteger();
+    private final AtomicInteger myInside = new AtomicInteger();
+    private volatile boolean myOverlapped;
+
+    @Override
+    public LocalChangeList findOrCreateList(String name, String comment) {
+      if (myInside.incrementAndGet() > 1) {
+        myOverlapped = true;
+      }
+      try {
+        Thread.sleep(5);
+      }
+      catch (InterruptedException ignored) {
+      }
+      myCalls.incrementAndGet();
+      myInside.decrementAndGet();
+      return null;
+    }
+
+    @Override
+    public List<LocalChangeList> getListsCopy() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LocalChangeList findChangeList(String name) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LocalChangeList addChangeList(String name, String comment) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void editComment(String name, String comment) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void editName(String oldName, String newName) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void moveChanges(String toList, Collection<Change> changes) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setListsToDisappear(Collection<String> names) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileStatus getStatus(VirtualFile file) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileStatus getStatus(File file) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setDefaultChangeList(@NotNull String list) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class RootScope extends VcsDirtyScope {
+    private final FilePath myRoot;
+
+    private RootScope(String root) {
+      myRoot = new FilePathImpl(new File(root), true);
+    }
+
+    @Override
+    public boolean belongsTo(FilePath path) {
+      return path.isUnder(myRoot, false);
+    }
+
+    @Override
+    public boolean belongsTo(FilePath path, Consumer<AbstractVcs> vcsConsumer) {
+      return belongsTo(path);
+    }
+
+    @Override
+    public Collection<VirtualFile> getAffectedContentRoots() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Project getProject() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AbstractVcs getVcs() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<FilePath> getDirtyFiles() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<FilePath> getDirtyFilesNoExpand() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<FilePath> getRecursivelyDirtyDirectories() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isRecursivelyDirty(VirtualFile vf) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void iterate(Processor<FilePath> iterator) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void iterateExistingInsideScope(Processor<VirtualFile> vf) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class DirtyPathTrieTest extends TestCase {
+  private DirtyPathTrie myTrie;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTrie = new DirtyPathTrie();
+  }
+
+  public void testRecursiveAncestors() {
+    myTrie.addRecursive(dir("/a"));
+    myTrie.addRecursive(dir("/a/b/c"));
+    myTrie.addFile(file("/a/b/x.txt"));
+
+    assertEquals(Arrays.asList(dir("/a"), dir("/a/b/c")), myTrie.getRecursiveAncestors(file("/a/b/c/d/y.txt")));
+    assertEquals(Arrays.asList(dir("/a")), myTrie.getRecursiveAncestors(file("/a/b/x.txt")));
+    assertEquals(Arrays.asList(dir("/a"), dir("/a/b/c")), myTrie.getRecursiveAncestors(dir("/a/b/c")));
+    assertTrue(myTrie.getRecursiveAncestors(file("/ab/x.txt")).isEmpty());
+    assertTrue(myTrie.getRecursiveAncestors(file("/z.txt")).isEmpty());
+  }
+
+  public void testCollectUnder() {
+    myTrie.addRecursive(dir("/a/b"));
+    myTrie.addFile(file("/a/b/c/x.txt"));
+    myTrie.addFile(file("/a/y.txt"));
+    myTrie.addFile(dir("/a/b"));
+
+    final List<FilePath> files = new ArrayList<FilePath>();
+    final List<FilePath> dirs = new ArrayList<FilePath>();
+    myTrie.collectUnder(dir("/a/b"), files, dirs);
+    assertEquals(new HashSet<FilePath>(Arrays.asList(dir("/a/b"), file("/a/b/c/x.txt"))), new HashSet<FilePath>(files));
+    assertEquals(Arrays.asList(dir("/a/b")), dirs);
+
+    files.clear();
+    myTrie.collectUnder(dir("/q"), files, null);
+    assertTrue(files.isEmpty());
+  }
+
+  public void testFileChildren() {
+    myTrie.addFile(file("/a/x.txt"));
+    myTrie.addFile(file("/a/y.txt"));
+    myTrie.addFile(file("/a/y.txt"));
+    myTrie.addFile(dir("/a/sub"));
+    myTrie.addFile(file("/a/sub/z.txt"));
+
+    assertEquals(2, myTrie.getFileChildrenCount(dir("/a")));
+    assertEquals(new HashSet<FilePath>(Arrays.asList(file("/a/x.txt"), file("/a/y.txt"))),
+                 new HashSet<FilePath>(myTrie.getFileChildren(dir("/a"))));
+
+    myTrie.removeFile(file("/a/x.txt"));
+    assertEquals(1, myTrie.getFileChildrenCount(dir("/a")));
+    assertEquals(0, myTrie.getFileChildrenCount(dir("/b")));
+  }
+
+  public void testRemovePrunesEmptyNodes() {
+    myTrie.addFile(file("/a/b/c/x.txt"));
+    myTrie.addRecursive(dir("/a/b"));
+    myTrie.removeFile(file("/a/b/c/x.txt"));
+
+    final List<FilePath> files = new ArrayList<FilePath>();
+    myTrie.collectUnder(dir("/a"), files, null);
+    assertTrue(files.isEmpty());
+    assertEquals(Arrays.asList(dir("/a/b")), myTrie.getRecursiveAncestors(file("/a/b/c/x.txt")));
+
+    myTrie.removeRecursive(dir("/a/b"));
+    assertTrue(myTrie.getRecursiveAncestors(file("/a/b/c/x.txt")).isEmpty());
+
+    myTrie.addFile(file("/a/x.txt"));
+    myTrie.clear();
+    assertEquals(0, myTrie.getFileChildrenCount(dir("/a")));
+  }
+
+  public void testBranchSwitchPerformance() throws Throwable {
+    // a checkout touching 100k files in 2k directories, followed by the belongsTo checks of the change list update
+    final List<FilePath> changed = new ArrayList<FilePath>(100000);
+    for (int i = 0; i < 100000; i++) {
+      changed.add(file("/project/module" + (i % 20) + "/src/pkg" + (i % 2000) + "/File" + i + ".java"));
+    }
+
+    PlatformTestUtil.startPerformanceTest("dirty path index failed to replay a branch switch", 3000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        final DirtyPathTrie trie = new DirtyPathTrie();
+        for (FilePath path : changed) {
+          trie.addFile(path);
+          final FilePath parent = path.getParentPath();
+          if (trie.getFileChildrenCount(parent) >= 50 && trie.getRecursiveAncestors(parent).isEmpty()) {
+            trie.addRecursive(parent);
+          }
+        }
+        for (FilePath path : changed) {
+          assertFalse(trie.getRecursiveAncestors(path).isEmpty());
+        }
+        assertTrue(trie.getRecursiveAncestors(file("/project/module0/other/File.java")).isEmpty());
+      }
+    }).cpuBound().assertTiming();
+  }
+
+  private static FilePath file(String path) {
+    return new FilePathImpl(new File(path), false);
+  }
+
+  private static FilePath dir(String path) {
+    return new FilePathImpl(new File(path), true);
+  }
+}
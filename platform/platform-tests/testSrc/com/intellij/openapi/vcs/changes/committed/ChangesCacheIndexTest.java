@@ -0,0 +1,125 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes.committed;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.SimpleContentRevision;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeListImpl;
+import gnu.trove.TIntHashSet;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+public class ChangesCacheIndexTest extends TestCase {
+  private File myFile;
+  private ChangesCacheIndex myIndex;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = FileUtil.createTempFile("changes", ".search");
+    myIndex = new ChangesCacheIndex(myFile);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myFile);
+    super.tearDown();
+  }
+
+  public void testFindByAuthorWordAndPath() throws Exception {
+    myIndex.append(0, Arrays.asList(list(1, "John Smith", "Fix NPE in the parser", "/src/parser/Parser.java"),
+                                    list(2, "Bob Doe", "Speed up the lexer", "/src/lexer/Lexer.java")));
+    myIndex.append(2, Arrays.asList(list(3, "john smith", "Parser cleanup", "/src/parser/Util.java")));
+
+    assertEquals(3, myIndex.getCount());
+    assertOrdinals(myIndex.findByAuthor("JOHN SMITH").toNativeArray(), 0, 2);
+    assertOrdinals(myIndex.findByAuthor("Bob Doe").toNativeArray(), 1);
+    assertEquals(0, myIndex.findByAuthor("Nobody").size());
+
+    assertOrdinals(myIndex.findByText(new String[]{"npe"}).toArray(), 0);
+    assertOrdinals(myIndex.findByText(new String[]{"parser"}).toArray(), 0, 2);
+    assertOrdinals(myIndex.findByText(new String[]{"lexer.java"}).toArray(), 1);
+    assertOrdinals(myIndex.findByText(new String[]{"bob", "cleanup"}).toArray(), 1, 2);
+    assertOrdinals(myIndex.findByText(new String[]{""}).toArray());
+  }
+
+  public void testAppendAfterQueryAndReopen() throws Exception {
+    myIndex.append(0, Collections.singletonList(list(1, "John Smith", "first", "/a.txt")));
+    assertOrdinals(myIndex.findByText(new String[]{"first"}).toArray(), 0);
+
+    // the loaded index is updated by appends
+    myIndex.append(1, Collections.singletonList(list(2, "John Smith", "second", "/b.txt")));
+    assertOrdinals(myIndex.findByAuthor("john smith").toNativeArray(), 0, 1);
+
+    final ChangesCacheIndex reopened = new ChangesCacheIndex(myFile);
+    assertEquals(2, reopened.getCount());
+    reopened.append(2, Collections.singletonList(list(3, "Bob Doe", "third", "/c.txt")));
+    assertOrdinals(reopened.findByText(new String[]{"second", "c.txt"}).toArray(), 1, 2);
+  }
+
+  public void testRecordsAfterCountAreIgnored() throws Exception {
+    myIndex.append(0, Collections.singletonList(list(1, "John Smith", "first", "/a.txt")));
+    final long length = myFile.length();
+    myIndex.append(1, Collections.singletonList(list(2, "Bob Doe", "second", "/b.txt")));
+
+    // an append interrupted before the header was updated
+    final RandomAccessFile file = new RandomAccessFile(myFile, "rw");
+    try {
+      file.seek(4);
+      file.writeInt(1);
+      file.writeLong(length);
+    }
+    finally {
+      file.close();
+    }
+
+    final ChangesCacheIndex reopened = new ChangesCacheIndex(myFile);
+    assertEquals(1, reopened.getCount());
+    assertOrdinals(reopened.findByText(new String[]{"second"}).toArray());
+    reopened.append(1, Collections.singletonList(list(3, "Bob Doe", "third", "/c.txt")));
+    assertOrdinals(reopened.findByText(new String[]{"first", "second", "third"}).toArray(), 0, 1);
+  }
+
+  public void testOutOfSyncAppendClearsIndex() throws Exception {
+    myIndex.append(0, Collections.singletonList(list(1, "John Smith", "first", "/a.txt")));
+    myIndex.append(5, Collections.singletonList(list(6, "John Smith", "sixth", "/f.txt")));
+
+    assertEquals(0, myIndex.getCount());
+    assertFalse(myFile.exists());
+    assertEquals(0, myIndex.findByAuthor("john smith").size());
+  }
+
+  private static CommittedChangeList list(long number, String committer, String comment, String path) {
+    final Change change = new Change(null, new SimpleContentRevision("", new FilePathImpl(new File(path), false), String.valueOf(number)));
+    return new CommittedChangeListImpl(comment, comment, committer, number, new Date(number * 1000), Collections.singletonList(change));
+  }
+
+  private static void assertOrdinals(int[] actual, int... expected) {
+    final TIntHashSet actualSet = new TIntHashSet(actual);
+    assertEquals(expected.length, actual.length);
+    for (int ordinal : expected) {
+      assertTrue("ordinal " + ordinal + " not found in " + Arrays.toString(actual), actualSet.contains(ordinal));
+    }
+  }
+}
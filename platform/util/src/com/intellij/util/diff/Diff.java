@@ -39,6 +39,17 @@ public class Diff {
   }
   
   public static <T> Change buildChanges(T[] objects1, T[] objects2) throws FilesTooBigForDiffException {
+    return buildChanges(objects1, objects2, false);
+  }
+
+  /**
+   * Inputs which are too big for the minimal diff are diffed in linear space, so the exception is not thrown any more;
+   * it is kept in the signature for the compatibility.
+   *
+   * @param patience if true, the elements which are unique in both arrays are matched first and only the parts between
+   *                 them are diffed; this gives more natural results for source code, though not always the minimal ones
+   */
+  public static <T> Change buildChanges(T[] objects1, T[] objects2, boolean patience) throws FilesTooBigForDiffException {
 
     // Old variant of enumerator worked incorrectly with null values.
     // This check is to ensure that the corrected version does not introduce bugs.
@@ -53,10 +64,25 @@ public class Diff {
     int[] ints2 = enumerator.enumerate(objects2, startShift, endCut);
     Reindexer reindexer = new Reindexer();
     int[][] discarded = reindexer.discardUnique(ints1, ints2);
-    IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
-    intLCS.execute();
     ChangeBuilder builder = new ChangeBuilder(startShift);
-    reindexer.reindex(intLCS.getPaths(), builder);
+    if (patience) {
+      PatienceIntLCS patienceLCS = new PatienceIntLCS(discarded[0], discarded[1]);
+      patienceLCS.execute();
+      reindexer.reindex(patienceLCS.getChanges(), builder);
+      return builder.getFirstChange();
+    }
+    try {
+      IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
+      intLCS.execute();
+      reindexer.reindex(intLCS.getPaths(), builder);
+    }
+    catch (FilesTooBigForDiffException e) {
+      LOG.info("Diffing " + discarded[0].length + " and " + discarded[1].length + " elements in linear space");
+      MyersLCS myersLCS = new MyersLCS(discarded[0], discarded[1]);
+      myersLCS.setParallel(true);
+      myersLCS.execute();
+      reindexer.reindex(myersLCS.getChanges(), builder);
+    }
     return builder.getFirstChange();
   }
 
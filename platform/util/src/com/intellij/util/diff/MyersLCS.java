@@ -0,0 +1,286 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import com.intellij.util.ConcurrencyUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Linear space variant of the Myers' O(ND) algorithm: the middle snake of the edit path is found with two
+ * diagonal sweeps from both ends, and the parts before and after it are diffed recursively.
+ * <p/>
+ * Unlike {@link IntLCS} it never stores the paths, so it does not give up on big inputs. To bound the time, a part
+ * whose edit distance exceeds the cost limit is split at the furthest point reached instead of at the middle snake,
+ * so the result may be not minimal for such parts.
+ * <p/>
+ * The parts around a middle snake are independent, so for big inputs they may be diffed in parallel.
+ */
+class MyersLCS {
+  private static final int MIN_COST_LIMIT = 1024;
+  private static final int PARALLEL_THRESHOLD = 100000;
+
+  private static ExecutorService ourExecutor;
+
+  private final int[] myFirst;
+  private final int[] mySecond;
+  private final boolean[] myChanges1;
+  private final boolean[] myChanges2;
+  private final int myCostLimit;
+  private int myParallelDepth;
+
+  public MyersLCS(int[] first, int[] second) {
+    myFirst = first;
+    mySecond = second;
+    myChanges1 = new boolean[first.length];
+    myChanges2 = new boolean[second.length];
+    myCostLimit = Math.max(MIN_COST_LIMIT, 4 * (int)Math.sqrt(first.length + second.length));
+  }
+
+  /**
+   * Allows to diff independent parts of the inputs in parallel if the inputs are big enough.
+   */
+  public void setParallel(boolean parallel) {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    myParallelDepth = 0;
+    if (parallel && processors > 1 && myFirst.length + mySecond.length >= PARALLEL_THRESHOLD) {
+      while ((1 << myParallelDepth) < processors) myParallelDepth++;
+    }
+  }
+
+  public void execute() {
+    execute(0, myFirst.length, 0, mySecond.length);
+  }
+
+  /**
+   * Diffs the given parts of the inputs; everything outside of them is considered equal.
+   */
+  public void execute(int start1, int end1, int start2, int end2) {
+    new Worker(end1 - start1 + end2 - start2).lcs(start1, end1, start2, end2, myParallelDepth);
+  }
+
+  /**
+   * @return marks of the elements of the first and the second input which are not in the found common subsequence
+   */
+  public boolean[][] getChanges() {
+    return new boolean[][]{myChanges1, myChanges2};
+  }
+
+  private class Worker {
+    private final int[] myForward;
+    private final int[] myBackward;
+    private final int myOffset;
+
+    private Worker(int size) {
+      myOffset = size + 1;
+      myForward = new int[2 * size + 3];
+      myBackward = new int[2 * size + 3];
+    }
+
+    private void lcs(int start1, int end1, int start2, int end2, int parallelDepth) {
+      while (start1 < end1 && start2 < end2 && myFirst[start1] == mySecond[start2]) {
+        start1++;
+        start2++;
+      }
+      while (start1 < end1 && start2 < end2 && myFirst[end1 - 1] == mySecond[end2 - 1]) {
+        end1--;
+        end2--;
+      }
+      if (start1 == end1 || start2 == end2) {
+        mark(myChanges1, start1, end1);
+        mark(myChanges2, start2, end2);
+        return;
+      }
+
+      final int[] split = findSplit(start1, end1, start2, end2);
+      if (split == null) {
+        mark(myChanges1, start1, end1);
+        mark(myChanges2, start2, end2);
+        return;
+      }
+      final int x = start1 + split[0];
+      final int y = start2 + split[1];
+
+      if (parallelDepth > 0 && (end1 - start1) + (end2 - start2) >= PARALLEL_THRESHOLD) {
+        final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(2);
+        tasks.add(createTask(start1, x, start2, y, parallelDepth - 1));
+        tasks.add(createTask(x, end1, y, end2, parallelDepth - 1));
+        try {
+          ConcurrencyUtil.invokeAll(tasks, getExecutor());
+        }
+        catch (RuntimeException e) {
+          throw e;
+        }
+        catch (Error e) {
+          throw e;
+        }
+        catch (Throwable e) {
+          throw new RuntimeException(e);
+        }
+      }
+      else {
+        lcs(start1, x, start2, y, 0);
+        lcs(x, end1, y, end2, 0);
+      }
+    }
+
+    /**
+     * Sweeps the diagonals from both ends until the paths meet.
+     *
+     * @return point on the middle snake relative to the starts of the parts, or null if the parts have nothing in common
+     */
+    private int[] findSplit(int start1, int end1, int start2, int end2) {
+      final int n = end1 - start1;
+      final int m = end2 - start2;
+      final int delta = n - m;
+      final boolean odd = (delta & 1) != 0;
+      final int max = (n + m + 1) / 2;
+
+      final int bound = Math.min(max, myCostLimit) + 2;
+      Arrays.fill(myForward, myOffset - bound, myOffset + bound + 1, -1);
+      Arrays.fill(myBackward, myOffset - bound, myOffset + bound + 1, -1);
+      myForward[myOffset + 1] = 0;
+      myBackward[myOffset + 1] = 0;
+      // diagonals which left the box are not swept any more
+      int forwardStart = 0;
+      int forwardEnd = 0;
+      int backwardStart = 0;
+      int backwardEnd = 0;
+      for (int d = 0; d < max; d++) {
+        if (d > myCostLimit) {
+          return findFurthestPoint(n, m, d - 1);
+        }
+
+        for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+          int x;
+          if (k == -d || (k != d && myForward[myOffset + k - 1] < myForward[myOffset + k + 1])) {
+            x = myForward[myOffset + k + 1];
+          }
+          else {
+            x = myForward[myOffset + k - 1] + 1;
+          }
+          int y = x - k;
+          while (x < n && y < m && myFirst[start1 + x] == mySecond[start2 + y]) {
+            x++;
+            y++;
+          }
+          myForward[myOffset + k] = x;
+          if (x > n) {
+            forwardEnd += 2;
+          }
+          else if (y > m) {
+            forwardStart += 2;
+          }
+          else if (odd) {
+            final int backwardK = delta - k;
+            if (backwardK >= -bound && backwardK <= bound) {
+              final int backwardX = myBackward[myOffset + backwardK];
+              if (backwardX != -1 && x >= n - backwardX) {
+                return new int[]{x, y};
+              }
+            }
+          }
+        }
+
+        for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+          int x;
+          if (k == -d || (k != d && myBackward[myOffset + k - 1] < myBackward[myOffset + k + 1])) {
+            x = myBackward[myOffset + k + 1];
+          }
+          else {
+            x = myBackward[myOffset + k - 1] + 1;
+          }
+          int y = x - k;
+          while (x < n && y < m && myFirst[end1 - 1 - x] == mySecond[end2 - 1 - y]) {
+            x++;
+            y++;
+          }
+          myBackward[myOffset + k] = x;
+          if (x > n) {
+            backwardEnd += 2;
+          }
+          else if (y > m) {
+            backwardStart += 2;
+          }
+          else if (!odd) {
+            final int forwardK = delta - k;
+            if (forwardK >= -bound && forwardK <= bound) {
+              final int forwardX = myForward[myOffset + forwardK];
+              if (forwardX != -1 && forwardX >= n - x) {
+                return new int[]{forwardX, forwardX - forwardK};
+              }
+            }
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * The edit distance is too big: split at the point reached by the forward sweep which is the furthest from the start.
+     */
+    private int[] findFurthestPoint(int n, int m, int d) {
+      int bestX = 0;
+      int bestY = 0;
+      for (int k = -d; k <= d; k += 2) {
+        final int x = myForward[myOffset + k];
+        final int y = x - k;
+        if (x < 0 || x > n || y < 0 || y > m) continue;
+        if (x + y > bestX + bestY) {
+          bestX = x;
+          bestY = y;
+        }
+      }
+      if (bestX + bestY == 0 || bestX + bestY == n + m) return null;
+      return new int[]{bestX, bestY};
+    }
+
+    private Callable<Object> createTask(final int start1, final int end1, final int start2, final int end2, final int parallelDepth) {
+      return new Callable<Object>() {
+        public Object call() {
+          new Worker(end1 - start1 + end2 - start2).lcs(start1, end1, start2, end2, parallelDepth);
+          return null;
+        }
+      };
+    }
+  }
+
+  private static void mark(boolean[] changes, int from, int to) {
+    for (int i = from; i < to; i++) {
+      changes[i] = true;
+    }
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (ourExecutor == null) {
+      final int processors = Runtime.getRuntime().availableProcessors();
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(processors, processors, 1, TimeUnit.SECONDS,
+                                                                 new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          final Thread thread = new Thread(r, "Diff worker");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.allowCoreThreadTimeOut(true);
+      ourExecutor = executor;
+    }
+    return ourExecutor;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import gnu.trove.TIntArrayList;
+
+/**
+ * Patience diff heuristic: the elements which occur exactly once in both inputs are matched first (the longest sequence
+ * of them which has the same order in both inputs), and only the parts between these anchors are diffed with {@link MyersLCS}.
+ * <p/>
+ * For source code the anchors are usually the distinctive lines (declarations, statements), so the result follows
+ * the structure of the code better than the minimal diff, which tends to match braces and blank lines.
+ */
+class PatienceIntLCS {
+  private final int[] myFirst;
+  private final int[] mySecond;
+  private final MyersLCS myLCS;
+
+  public PatienceIntLCS(int[] first, int[] second) {
+    myFirst = first;
+    mySecond = second;
+    myLCS = new MyersLCS(first, second);
+  }
+
+  public void execute() {
+    final int[][] anchors = findUniqueAnchors();
+    int start1 = 0;
+    int start2 = 0;
+    for (int i = 0; i <= anchors[0].length; i++) {
+      final int end1 = i < anchors[0].length ? anchors[0][i] : myFirst.length;
+      final int end2 = i < anchors[1].length ? anchors[1][i] : mySecond.length;
+      if (start1 < end1 || start2 < end2) {
+        myLCS.execute(start1, end1, start2, end2);
+      }
+      start1 = end1 + 1;
+      start2 = end2 + 1;
+    }
+  }
+
+  /**
+   * @see MyersLCS#getChanges()
+   */
+  public boolean[][] getChanges() {
+    return myLCS.getChanges();
+  }
+
+  /**
+   * @return indices of the matched unique elements in the first and in the second input, both increasing
+   */
+  private int[][] findUniqueAnchors() {
+    int maxValue = -1;
+    for (int value : myFirst) maxValue = Math.max(maxValue, value);
+    for (int value : mySecond) maxValue = Math.max(maxValue, value);
+
+    // value -> number of occurrences (saturated at 2) and the index of the last one
+    final byte[] count1 = new byte[maxValue + 1];
+    final byte[] count2 = new byte[maxValue + 1];
+    final int[] index2 = new int[maxValue + 1];
+    for (int value : myFirst) {
+      if (count1[value] < 2) count1[value]++;
+    }
+    for (int i = 0; i < mySecond.length; i++) {
+      final int value = mySecond[i];
+      if (count2[value] < 2) count2[value]++;
+      index2[value] = i;
+    }
+
+    final TIntArrayList indices1 = new TIntArrayList();
+    final TIntArrayList indices2 = new TIntArrayList();
+    for (int i = 0; i < myFirst.length; i++) {
+      final int value = myFirst[i];
+      if (count1[value] == 1 && count2[value] == 1) {
+        indices1.add(i);
+        indices2.add(index2[value]);
+      }
+    }
+
+    // longest increasing subsequence of the second indices (patience sorting)
+    final int count = indices2.size();
+    final int[] tails = new int[count];
+    final int[] previous = new int[count];
+    int length = 0;
+    for (int i = 0; i < count; i++) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (indices2.get(tails[mid]) < indices2.get(i)) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) length++;
+    }
+
+    final int[][] result = new int[2][length];
+    for (int i = length - 1, k = length > 0 ? tails[length - 1] : -1; i >= 0; i--, k = previous[k]) {
+      result[0][i] = indices1.get(k);
+      result[1][i] = indices2.get(k);
+    }
+    return result;
+  }
+}
@@ -100,6 +100,28 @@ class Reindexer {
         }
       }
     });
+    buildChanges(changes1, changes2, builder);
+  }
+
+  /**
+   * @param discardedChanges change marks of the arrays returned by {@link #discardUnique(int[], int[])}
+   */
+  public void reindex(boolean[][] discardedChanges, LCSBuilder builder) {
+    final boolean[] changes1 = restoreChanges(discardedChanges[0], 0);
+    final boolean[] changes2 = restoreChanges(discardedChanges[1], 1);
+    buildChanges(changes1, changes2, builder);
+  }
+
+  private boolean[] restoreChanges(boolean[] discardedChanges, int array) {
+    final boolean[] changes = new boolean[myOriginalLengths[array]];
+    Arrays.fill(changes, true);
+    for (int i = 0; i < discardedChanges.length; i++) {
+      if (!discardedChanges[i]) changes[myOldIndecies[array][i]] = false;
+    }
+    return changes;
+  }
+
+  private static void buildChanges(boolean[] changes1, boolean[] changes2, LCSBuilder builder) {
     int x = 0;
     int y = 0;
     while (x < changes1.length && y < changes2.length) {
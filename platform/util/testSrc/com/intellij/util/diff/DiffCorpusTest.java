@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.LineTokenizer;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the diff modes on real file revisions from testData/diff/corpus: each directory there holds
+ * a before.txt and an after.txt revision of one file.
+ */
+public class DiffCorpusTest extends TestCase {
+  public void testCorpus() throws Exception {
+    File[] revisions = new File(getTestDataPath() + "/diff/corpus").listFiles();
+    assertNotNull(revisions);
+    assertTrue(revisions.length > 0);
+    for (File dir : revisions) {
+      String[] before = loadLines(new File(dir, "before.txt"));
+      String[] after = loadLines(new File(dir, "after.txt"));
+
+      Diff.Change minimal = Diff.buildChanges(before, after);
+      checkChanges(dir.getName(), before, after, minimal);
+
+      Diff.Change patience = Diff.buildChanges(before, after, true);
+      checkChanges(dir.getName(), before, after, patience);
+
+      assertTrue(dir.getName() + ": the patience diff can't change fewer lines than the minimal one",
+                 countChanged(minimal) <= countChanged(patience));
+    }
+  }
+
+  public void testBigInput() throws Exception {
+    // all revisions of the corpus in a row, against the same revisions in the opposite order
+    List<String> before = new ArrayList<String>();
+    List<String> after = new ArrayList<String>();
+    File[] revisions = new File(getTestDataPath() + "/diff/corpus").listFiles();
+    assertNotNull(revisions);
+    for (int i = 0; i < 20; i++) {
+      for (int j = 0; j < revisions.length; j++) {
+        before.addAll(Arrays.asList(loadLines(new File(revisions[j], "before.txt"))));
+        after.addAll(Arrays.asList(loadLines(new File(revisions[revisions.length - j - 1], "after.txt"))));
+      }
+    }
+    String[] beforeLines = before.toArray(new String[before.size()]);
+    String[] afterLines = after.toArray(new String[after.size()]);
+    Diff.Change change = Diff.buildChanges(beforeLines, afterLines);
+    checkChanges("big", beforeLines, afterLines, change);
+    // the revisions have common lines, so the linear space diff must not degrade to replacing everything
+    assertTrue(countChanged(change) < beforeLines.length + afterLines.length);
+  }
+
+  private static void checkChanges(String name, String[] before, String[] after, Diff.Change change) {
+    List<String> result = new ArrayList<String>();
+    int index = 0;
+    while (change != null) {
+      result.addAll(Arrays.asList(before).subList(index, change.line0));
+      result.addAll(Arrays.asList(after).subList(change.line1, change.line1 + change.inserted));
+      index = change.line0 + change.deleted;
+      change = change.link;
+    }
+    result.addAll(Arrays.asList(before).subList(index, before.length));
+    assertEquals(name, Arrays.asList(after), result);
+  }
+
+  private static int countChanged(Diff.Change change) {
+    int result = 0;
+    while (change != null) {
+      result += change.inserted + change.deleted;
+      change = change.link;
+    }
+    return result;
+  }
+
+  private static String[] loadLines(File file) throws IOException {
+    return LineTokenizer.tokenize(FileUtil.loadFile(file), false);
+  }
+
+  private static String getTestDataPath() {
+    String homePath = PathManager.getHomePath().replace(File.separatorChar, '/');
+    if (new File(homePath + "/community/java/java-tests/testData").exists()) return homePath + "/community/java/java-tests/testData";
+    return homePath + "/java/java-tests/testData";
+  }
+}
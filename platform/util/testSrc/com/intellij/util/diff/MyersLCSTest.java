@@ -0,0 +1,133 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class MyersLCSTest extends TestCase {
+  public void testSingleMiddle() {
+    boolean[][] changes = execute(new int[]{1, 2, 3}, new int[]{4, 2, 5});
+    assertTrue(Arrays.equals(new boolean[]{true, false, true}, changes[0]));
+    assertTrue(Arrays.equals(new boolean[]{true, false, true}, changes[1]));
+  }
+
+  public void testAbsolutelyDifferent() {
+    boolean[][] changes = execute(new int[]{1, 2}, new int[]{3, 4, 5});
+    assertEquals(5, countChanges(changes));
+  }
+
+  public void testEmpty() {
+    assertEquals(0, countChanges(execute(new int[0], new int[0])));
+    assertEquals(2, countChanges(execute(new int[]{1, 2}, new int[0])));
+  }
+
+  public void testMinimalAsIntLCS() throws FilesTooBigForDiffException {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      int[] first = randomArray(random, random.nextInt(40), 4);
+      int[] second = randomArray(random, random.nextInt(40), 4);
+      boolean[][] changes = execute(first, second);
+      checkCommonSubsequence(first, second, changes);
+      assertEquals(Arrays.toString(first) + " " + Arrays.toString(second), new IntLCS(first, second).execute(), countChanges(changes));
+    }
+  }
+
+  public void testParallel() {
+    Random random = new Random(17);
+    int[] first = randomArray(random, 150000, 1000);
+    int[] second = first.clone();
+    for (int i = 0; i < 3000; i++) {
+      second[random.nextInt(second.length)] = random.nextInt(1000);
+    }
+    boolean[][] sequential = execute(first, second);
+    MyersLCS lcs = new MyersLCS(first, second);
+    lcs.setParallel(true);
+    lcs.execute();
+    boolean[][] parallel = lcs.getChanges();
+    checkCommonSubsequence(first, second, parallel);
+    assertTrue(Arrays.equals(sequential[0], parallel[0]));
+    assertTrue(Arrays.equals(sequential[1], parallel[1]));
+  }
+
+  public void testCostLimit() {
+    Random random = new Random(3);
+    int[] first = randomArray(random, 30000, 30);
+    int[] second = randomArray(random, 30000, 30);
+    checkCommonSubsequence(first, second, execute(first, second));
+  }
+
+  public void testPatience() {
+    // the unique 11 is matched although the minimal diff would keep more of the repeated elements around it
+    int[] first = new int[]{1, 10, 2, 10, 2, 11, 2};
+    int[] second = new int[]{1, 11, 2, 10, 2, 10, 2};
+    PatienceIntLCS lcs = new PatienceIntLCS(first, second);
+    lcs.execute();
+    checkCommonSubsequence(first, second, lcs.getChanges());
+    assertFalse(lcs.getChanges()[0][5]);
+    assertEquals(8, countChanges(lcs.getChanges()));
+
+    Random random = new Random(7);
+    for (int i = 0; i < 300; i++) {
+      int[] a = randomArray(random, random.nextInt(60), 20);
+      int[] b = randomArray(random, random.nextInt(60), 20);
+      PatienceIntLCS patience = new PatienceIntLCS(a, b);
+      patience.execute();
+      checkCommonSubsequence(a, b, patience.getChanges());
+    }
+  }
+
+  private static boolean[][] execute(int[] first, int[] second) {
+    MyersLCS lcs = new MyersLCS(first, second);
+    lcs.execute();
+    return lcs.getChanges();
+  }
+
+  private static int[] randomArray(Random random, int length, int range) {
+    int[] result = new int[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = random.nextInt(range);
+    }
+    return result;
+  }
+
+  private static int countChanges(boolean[][] changes) {
+    int result = 0;
+    for (boolean[] array : changes) {
+      for (boolean changed : array) {
+        if (changed) result++;
+      }
+    }
+    return result;
+  }
+
+  private static void checkCommonSubsequence(int[] first, int[] second, boolean[][] changes) {
+    int x = 0;
+    int y = 0;
+    while (true) {
+      while (x < first.length && changes[0][x]) x++;
+      while (y < second.length && changes[1][y]) y++;
+      if (x == first.length || y == second.length) break;
+      assertEquals("at " + x + ", " + y, first[x], second[y]);
+      x++;
+      y++;
+    }
+    while (x < first.length) assertTrue(changes[0][x++]);
+    while (y < second.length) assertTrue(changes[1][y++]);
+  }
+}
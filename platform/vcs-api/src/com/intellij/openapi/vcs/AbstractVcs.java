@@ -473,6 +473,14 @@ public abstract class AbstractVcs<ComList extends CommittedChangeList> extends S
     return false;
   }
 
+  /**
+   * @return true if the {@link #getChangeProvider() change provider} may be called concurrently for dirty scopes of different VCS roots.
+   * In this case a dirty scope is split by roots and changes under several roots are collected in parallel.
+   */
+  public boolean allowsConcurrentChangeCollection() {
+    return false;
+  }
+
   public <S> List<S> filterUniqueRoots(final List<S> in, final Convertor<S, VirtualFile> convertor) {
     new FilterDescendantVirtualFileConvertible(convertor, FilePathComparator.getInstance()).doFilter(in);
     return in;
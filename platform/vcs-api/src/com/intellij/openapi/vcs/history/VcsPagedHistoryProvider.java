@@ -0,0 +1,39 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.history;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.VcsException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * History provider which can continue loading the history of a file after a given revision.
+ * <p/>
+ * The revisions loaded before the loading was cancelled are kept in {@link VcsHistoryCache}; when the history is requested again,
+ * they are shown at once, and only the rest of the history is requested from the provider.
+ */
+public interface VcsPagedHistoryProvider {
+  /**
+   * Reports the revisions which go after the given one in the history of the file, in the same order as
+   * {@link VcsHistoryProvider#reportAppendableHistory} does. The session is not reported: it already exists.
+   * Should check the current progress indicator for cancellation. If the revision is not in the history any more
+   * (e.g. the history was rewritten), the provider reports a new empty session and then the whole history.
+   *
+   * @param lastLoaded the last revision which was loaded before
+   */
+  void reportHistoryAfter(FilePath path, @NotNull VcsFileRevision lastLoaded, VcsAppendableHistorySessionPartner partner)
+    throws VcsException;
+}
@@ -61,8 +61,11 @@ import org.jetbrains.annotations.TestOnly;
 import javax.swing.*;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -71,6 +74,7 @@ import java.util.concurrent.atomic.AtomicReference;
 public class ChangeListManagerImpl extends ChangeListManagerEx implements ProjectComponent, ChangeListOwner, JDOMExternalizable {
   public static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.changes.ChangeListManagerImpl");
   public static boolean DEBUG = false;
+  private static final int MAX_CONCURRENT_UPDATES = 4;
 
   private final Project myProject;
   private final ChangesViewI myChangesViewManager;
@@ -519,6 +523,8 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     final UpdatingChangeListBuilder builder = new UpdatingChangeListBuilder(dataHolder.getChangeListWorker(),
       dataHolder.getComposite(), myUpdater.getIsStoppedGetter(), myIgnoredIdeaLevel, gate);
 
+    final List<ScopeUpdate> updates = new ArrayList<ScopeUpdate>();
+    final List<ScopeUpdate> concurrentUpdates = new ArrayList<ScopeUpdate>();
     for (final VcsDirtyScope scope : scopes) {
       if (DEBUG) {
         System.out.println("ChangeListManagerImpl.iterateScopes: scope = " + scope);
@@ -530,13 +536,42 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       scope.setWasEverythingDirty(wasEverythingDirty);
       final VcsModifiableDirtyScope adjustedScope = vcs.adjustDirtyScope((VcsModifiableDirtyScope) scope);
 
-      myChangesViewManager.updateProgressText(VcsBundle.message("changes.update.progress.message", vcs.getDisplayName()), false);
-      dataHolder.notifyStartProcessingChanges(adjustedScope);
+      if (vcs.allowsConcurrentChangeCollection() && adjustedScope instanceof VcsDirtyScopeImpl) {
+        for (VcsDirtyScopeImpl rootScope : ((VcsDirtyScopeImpl)adjustedScope).splitByVcsRoots()) {
+          final ScopeUpdate update = new ScopeUpdate(vcs, rootScope);
+          updates.add(update);
+          concurrentUpdates.add(update);
+        }
+      }
+      else {
+        updates.add(new ScopeUpdate(vcs, adjustedScope));
+      }
+    }
+
+    if (concurrentUpdates.size() > 1) {
+      myChangesViewManager.updateProgressText(VcsBundle.message("changes.update.progress.message", concurrentUpdates.get(0).myVcs.getDisplayName()), false);
+      collectChangesConcurrently(concurrentUpdates, gate, builder.reportChangesOutsideProject());
+    }
+
+    // collected changes are applied in the order of scopes, so the result doesn't depend on which provider finished first
+    for (ScopeUpdate update : updates) {
+      myUpdateChangesProgressIndicator.checkCanceled();
 
-      actualUpdate(builder, adjustedScope, vcs, dataHolder, gate);
+      myChangesViewManager.updateProgressText(VcsBundle.message("changes.update.progress.message", update.myVcs.getDisplayName()), false);
+      dataHolder.notifyStartProcessingChanges(update.myScope);
+
+      actualUpdate(builder, update, dataHolder, gate);
 
       if (myUpdateException != null) break;
     }
+    if (LOG.isDebugEnabled()) {
+      debugLogging("changes collected: " + StringUtil.join(updates, new Function<ScopeUpdate, String>() {
+        @Override
+        public String fun(ScopeUpdate update) {
+          return update.myVcs.getDisplayName() + " " + update.myScope.getAffectedContentRoots() + ": " + update.myTime + " ms";
+        }
+      }, ", "));
+    }
     synchronized (myDataLock) {
       if (myAdditionalInfo == null) {
         myAdditionalInfo = builder.getAdditionalInfo();
@@ -544,6 +579,40 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     }
   }
 
+  /**
+   * Runs change providers for the scopes on pooled threads, at most {@link #MAX_CONCURRENT_UPDATES} at a time. The collected changes
+   * are recorded and applied later by {@link #actualUpdate}.
+   */
+  private void collectChangesConcurrently(final List<ScopeUpdate> updates, final ChangeListManagerGate gate,
+                                          final boolean reportChangesOutsideProject) {
+    final AtomicInteger nextUpdate = new AtomicInteger();
+    final Runnable collector = new Runnable() {
+      @Override
+      public void run() {
+        int index;
+        while ((index = nextUpdate.getAndIncrement()) < updates.size() && !myUpdater.isStopped()) {
+          updates.get(index).collect(gate, reportChangesOutsideProject);
+        }
+      }
+    };
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 1; i < Math.min(MAX_CONCURRENT_UPDATES, updates.size()); i++) {
+      futures.add(ApplicationManager.getApplication().executeOnPooledThread(collector));
+    }
+    collector.run();
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeInterruptedException(e);
+      }
+      catch (ExecutionException e) {
+        LOG.error(e);
+      }
+    }
+  }
+
   private void clearCurrentRevisionsCache(final VcsInvalidated invalidated) {
     final ContentRevisionCache cache = ProjectLevelVcsManager.getInstance(myProject).getContentRevisionCache();
     if (invalidated.isEverythingDirty()) {
@@ -615,15 +684,24 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
     }
   }
 
-  private void actualUpdate(final UpdatingChangeListBuilder builder, final VcsDirtyScope scope, final AbstractVcs vcs,
+  private void actualUpdate(final UpdatingChangeListBuilder builder, final ScopeUpdate update,
                             final DataHolder dataHolder, final ChangeListManagerGate gate) {
+    final long start = System.currentTimeMillis();
     try {
-      final ChangeProvider changeProvider = vcs.getChangeProvider();
+      final ChangeProvider changeProvider = update.myVcs.getChangeProvider();
       if (changeProvider != null) {
         final FoldersCutDownWorker foldersCutDownWorker = new FoldersCutDownWorker();
         try {
-          builder.setCurrent(scope, foldersCutDownWorker);
-          changeProvider.getChanges(scope, builder, myUpdateChangesProgressIndicator, gate);
+          builder.setCurrent(update.myScope, foldersCutDownWorker);
+          if (update.myRecorder != null) {
+            update.myRecorder.replay(builder);
+            if (update.myError != null) {
+              throw update.myError;
+            }
+          }
+          else {
+            changeProvider.getChanges(update.myScope, builder, myUpdateChangesProgressIndicator, gate);
+          }
         }
         catch (VcsException e) {
           LOG.info(e);
@@ -639,12 +717,45 @@ public class ChangeListManagerImpl extends ChangeListManagerEx implements Projec
       LOG.debug(t);
       Rethrow.reThrowRuntime(t);
     } finally {
+      update.myTime += System.currentTimeMillis() - start;
       if (! myUpdater.isStopped()) {
         dataHolder.notifyDoneProcessingChanges();
       }
     }
   }
 
+  private class ScopeUpdate {
+    private final AbstractVcs myVcs;
+    private final VcsModifiableDirtyScope myScope;
+    // set when changes are collected concurrently with other scopes
+    private RecordingChangelistBuilder myRecorder;
+    private Throwable myError;
+    private long myTime;
+
+    private ScopeUpdate(AbstractVcs vcs, VcsModifiableDirtyScope scope) {
+      myVcs = vcs;
+      myScope = scope;
+    }
+
+    public void collect(ChangeListManagerGate gate, boolean reportChangesOutsideProject) {
+      final long start = System.currentTimeMillis();
+      final RecordingChangelistBuilder recorder = new RecordingChangelistBuilder(reportChangesOutsideProject);
+      try {
+        final ChangeProvider changeProvider = myVcs.getChangeProvider();
+        if (changeProvider != null) {
+          changeProvider.getChanges(myScope, recorder, myUpdateChangesProgressIndicator, new ConcurrentUpdateGate(gate, myScope));
+        }
+      }
+      catch (Throwable t) {
+        myError = t;
+      }
+      finally {
+        myRecorder = recorder;
+        myTime = System.currentTimeMillis() - start;
+      }
+    }
+  }
+
   private void checkIfDisposed() {
     if (myUpdater.isStopped()) throw new DisposedException();
   }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.FileStatus;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Gate given to a change provider which collects changes of a dirty scope concurrently with other scopes. Calls to the shared gate
+ * are serialized. Since the old changes of the scope are removed only when the collected changes are applied, files under the scope
+ * are reported to have no status, as they would be if the scope had been cleaned before the provider was called.
+ */
+class ConcurrentUpdateGate implements ChangeListManagerGate {
+  private final ChangeListManagerGate myDelegate;
+  private final VcsDirtyScope myScope;
+
+  ConcurrentUpdateGate(ChangeListManagerGate delegate, VcsDirtyScope scope) {
+    myDelegate = delegate;
+    myScope = scope;
+  }
+
+  @Override
+  public List<LocalChangeList> getListsCopy() {
+    synchronized (myDelegate) {
+      return myDelegate.getListsCopy();
+    }
+  }
+
+  @Nullable
+  @Override
+  public LocalChangeList findChangeList(String name) {
+    synchronized (myDelegate) {
+      return myDelegate.findChangeList(name);
+    }
+  }
+
+  @Override
+  public LocalChangeList addChangeList(String name, String comment) {
+    synchronized (myDelegate) {
+      return myDelegate.addChangeList(name, comment);
+    }
+  }
+
+  @Override
+  public LocalChangeList findOrCreateList(String name, String comment) {
+    synchronized (myDelegate) {
+      return myDelegate.findOrCreateList(name, comment);
+    }
+  }
+
+  @Override
+  public void editComment(String name, String comment) {
+    synchronized (myDelegate) {
+      myDelegate.editComment(name, comment);
+    }
+  }
+
+  @Override
+  public void editName(String oldName, String newName) {
+    synchronized (myDelegate) {
+      myDelegate.editName(oldName, newName);
+    }
+  }
+
+  @Override
+  public void moveChanges(String toList, Collection<Change> changes) {
+    synchronized (myDelegate) {
+      myDelegate.moveChanges(toList, changes);
+    }
+  }
+
+  @Override
+  public void setListsToDisappear(Collection<String> names) {
+    synchronized (myDelegate) {
+      myDelegate.setListsToDisappear(names);
+    }
+  }
+
+  @Override
+  public FileStatus getStatus(VirtualFile file) {
+    if (myScope.belongsTo(new FilePathImpl(file))) {
+      return null;
+    }
+    synchronized (myDelegate) {
+      return myDelegate.getStatus(file);
+    }
+  }
+
+  @Override
+  public FileStatus getStatus(File file) {
+    final FilePathImpl path = FilePathImpl.create(file);
+    if (path != null && myScope.belongsTo(path)) {
+      return null;
+    }
+    synchronized (myDelegate) {
+      return myDelegate.getStatus(file);
+    }
+  }
+
+  @Override
+  public void setDefaultChangeList(@NotNull String list) {
+    synchronized (myDelegate) {
+      myDelegate.setDefaultChangeList(list);
+    }
+  }
+}
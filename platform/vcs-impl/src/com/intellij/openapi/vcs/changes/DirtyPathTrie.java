@@ -0,0 +1,199 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes;
+
+import com.intellij.openapi.vcs.FilePath;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the paths of a {@link VcsDirtyScopeImpl}: the dirty files and the recursively dirty directories are stored
+ * in a tree by path components, so that ancestors, descendants and children of a path are found in time proportional
+ * to the depth of the path and the size of the result, not to the number of dirty paths.
+ */
+class DirtyPathTrie {
+  private final Node myRoot = new Node(null, "");
+
+  public void addFile(@NotNull FilePath path) {
+    final Node node = find(path, true);
+    if (node.myFile != null) return;
+    node.myFile = path;
+    node.myFileIsDirectory = path.isDirectory();
+    if (!node.myFileIsDirectory && node.myParent != null) {
+      node.myParent.myFileChildren++;
+    }
+  }
+
+  public void removeFile(@NotNull FilePath path) {
+    final Node node = find(path, false);
+    if (node == null || node.myFile == null) return;
+    if (!node.myFileIsDirectory && node.myParent != null) {
+      node.myParent.myFileChildren--;
+    }
+    node.myFile = null;
+    prune(node);
+  }
+
+  public void addRecursive(@NotNull FilePath dir) {
+    find(dir, true).myRecursive = dir;
+  }
+
+  public void removeRecursive(@NotNull FilePath dir) {
+    final Node node = find(dir, false);
+    if (node == null || node.myRecursive == null) return;
+    node.myRecursive = null;
+    prune(node);
+  }
+
+  /**
+   * @return recursively dirty directories which are ancestors of the path or the path itself, the outermost first
+   */
+  @NotNull
+  public List<FilePath> getRecursiveAncestors(@NotNull FilePath path) {
+    final List<FilePath> result = new ArrayList<FilePath>(1);
+    Node node = myRoot;
+    for (String name : split(path)) {
+      if (node.myRecursive != null) {
+        result.add(node.myRecursive);
+      }
+      node = node.getChild(name);
+      if (node == null) return result;
+    }
+    if (node.myRecursive != null) {
+      result.add(node.myRecursive);
+    }
+    return result;
+  }
+
+  /**
+   * Collects the dirty files and the recursively dirty directories which are under the given directory or are the directory itself.
+   */
+  public void collectUnder(@NotNull FilePath dir, @Nullable List<FilePath> files, @Nullable List<FilePath> dirs) {
+    final Node node = find(dir, false);
+    if (node != null) {
+      collect(node, files, dirs);
+    }
+  }
+
+  private static void collect(Node node, @Nullable List<FilePath> files, @Nullable List<FilePath> dirs) {
+    if (files != null && node.myFile != null) {
+      files.add(node.myFile);
+    }
+    if (dirs != null && node.myRecursive != null) {
+      dirs.add(node.myRecursive);
+    }
+    if (node.myChildren != null) {
+      for (Node child : node.myChildren.values()) {
+        collect(child, files, dirs);
+      }
+    }
+  }
+
+  /**
+   * @return dirty files which are immediate children of the directory and are not directories
+   */
+  @NotNull
+  public List<FilePath> getFileChildren(@NotNull FilePath dir) {
+    final List<FilePath> result = new ArrayList<FilePath>();
+    final Node node = find(dir, false);
+    if (node != null && node.myFileChildren > 0) {
+      for (Node child : node.myChildren.values()) {
+        if (child.myFile != null && !child.myFileIsDirectory) {
+          result.add(child.myFile);
+        }
+      }
+    }
+    return result;
+  }
+
+  public int getFileChildrenCount(@NotNull FilePath dir) {
+    final Node node = find(dir, false);
+    return node == null ? 0 : node.myFileChildren;
+  }
+
+  public void clear() {
+    myRoot.myChildren = null;
+    myRoot.myFile = null;
+    myRoot.myRecursive = null;
+    myRoot.myFileChildren = 0;
+  }
+
+  @Nullable
+  private Node find(FilePath path, boolean create) {
+    Node node = myRoot;
+    for (String name : split(path)) {
+      Node child = node.getChild(name);
+      if (child == null) {
+        if (!create) return null;
+        child = new Node(node, name);
+        if (node.myChildren == null) {
+          node.myChildren = new THashMap<String, Node>(2);
+        }
+        node.myChildren.put(name, child);
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  private static void prune(Node node) {
+    while (node.myParent != null && node.myFile == null && node.myRecursive == null &&
+           (node.myChildren == null || node.myChildren.isEmpty())) {
+      node.myParent.myChildren.remove(node.myName);
+      node = node.myParent;
+    }
+  }
+
+  private static List<String> split(FilePath path) {
+    final String converted = FilePathsHelper.convertPath(path);
+    final List<String> result = new ArrayList<String>();
+    int start = 0;
+    for (int i = 0; i <= converted.length(); i++) {
+      if (i == converted.length() || converted.charAt(i) == '/') {
+        if (i > start) {
+          result.add(converted.substring(start, i));
+        }
+        start = i + 1;
+      }
+    }
+    return result;
+  }
+
+  private static class Node {
+    private final Node myParent;
+    private final String myName;
+    private THashMap<String, Node> myChildren;
+    private FilePath myFile;
+    private boolean myFileIsDirectory;
+    private FilePath myRecursive;
+    // number of children which are dirty files, not directories
+    private int myFileChildren;
+
+    private Node(@Nullable Node parent, @NotNull String name) {
+      myParent = parent;
+      myName = name;
+    }
+
+    @Nullable
+    private Node getChild(String name) {
+      return myChildren == null ? null : myChildren.get(name);
+    }
+  }
+}
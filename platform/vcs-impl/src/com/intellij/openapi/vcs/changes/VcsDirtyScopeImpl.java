@@ -36,9 +36,16 @@ import java.util.*;
  * @author yole
  */
 public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
+  /**
+   * When so many files of one directory are dirty, the directory itself is made dirty instead of them
+   */
+  private static final int COLLAPSE_THRESHOLD = 50;
+
   private final Set<FilePath> myDirtyFiles = new THashSet<FilePath>();
   private final Map<VirtualFile, THashSet<FilePath>> myDirtyDirectoriesRecursively = new HashMap<VirtualFile, THashSet<FilePath>>();
   private final Set<VirtualFile> myAffectedContentRoots = new THashSet<VirtualFile>();
+  // index of myDirtyFiles and myDirtyDirectoriesRecursively, must be updated together with them
+  private final DirtyPathTrie myIndex = new DirtyPathTrie();
   private final Project myProject;
   private final ProjectLevelVcsManager myVcsManager;
   private final AbstractVcs myVcs;
@@ -58,7 +65,7 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
 
       @Override
       public Iterator<FilePath> getDirtyFilesIterator() {
-        return myDirtyFiles.iterator();
+        return new IndexedIterator(myDirtyFiles.iterator(), false);
       }
 
       @Nullable
@@ -66,7 +73,7 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
       public Iterator<FilePath> getDirtyDirectoriesIterator(final VirtualFile root) {
         final THashSet<FilePath> filePaths = myDirtyDirectoriesRecursively.get(root);
         if (filePaths != null) {
-          return filePaths.iterator();
+          return new IndexedIterator(filePaths.iterator(), true);
         }
         return null;
       }
@@ -140,14 +147,9 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
 
   @Override
   public boolean isRecursivelyDirty(final VirtualFile vf) {
-    for(THashSet<FilePath> dirsByRoot: myDirtyDirectoriesRecursively.values()) {
-      for (FilePath dir : dirsByRoot) {
-        final VirtualFile dirVf = dir.getVirtualFile();
-        if (dirVf != null) {
-          if (VfsUtil.isAncestor(dirVf, vf, false)) {
-            return true;
-          }
-        }
+    for (FilePath dir : myIndex.getRecursiveAncestors(new FilePathImpl(vf))) {
+      if (dir.getVirtualFile() != null) {
+        return true;
       }
     }
     return false;
@@ -167,11 +169,11 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
         if (vcsRoot == null) return;
         myAffectedContentRoots.add(vcsRoot);
 
-        for (Iterator<FilePath> it = myDirtyFiles.iterator(); it.hasNext();) {
-          FilePath oldBoy = it.next();
-          if (oldBoy.isUnder(newcomer, false)) {
-            it.remove();
-          }
+        final List<FilePath> filesUnder = new ArrayList<FilePath>();
+        final List<FilePath> dirsUnder = new ArrayList<FilePath>();
+        myIndex.collectUnder(newcomer, filesUnder, dirsUnder);
+        for (FilePath oldBoy : filesUnder) {
+          removeDirtyFile(oldBoy);
         }
 
         THashSet<FilePath> dirsByRoot = myDirtyDirectoriesRecursively.get(vcsRoot);
@@ -180,19 +182,16 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
           myDirtyDirectoriesRecursively.put(vcsRoot, dirsByRoot);
         }
         else {
-          for (Iterator<FilePath> it = dirsByRoot.iterator(); it.hasNext();) {
-            FilePath oldBoy = it.next();
-            if (newcomer.isUnder(oldBoy, false)) {
-              return;
-            }
-
-            if (oldBoy.isUnder(newcomer, false)) {
-              it.remove();
+          if (isUnderDirtyDir(newcomer, dirsByRoot)) return;
+          for (FilePath oldBoy : dirsUnder) {
+            if (dirsByRoot.remove(oldBoy)) {
+              myIndex.removeRecursive(oldBoy);
             }
           }
         }
 
         dirsByRoot.add(newcomer);
+        myIndex.addRecursive(newcomer);
       }
     });
   }
@@ -212,20 +211,13 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
         myAffectedContentRoots.add(vcsRoot);
 
         THashSet<FilePath> dirsByRoot = myDirtyDirectoriesRecursively.get(vcsRoot);
-        if (dirsByRoot != null) {
-          for (FilePath oldBoy : dirsByRoot) {
-            if (newcomer.isUnder(oldBoy, false)) {
-              return;
-            }
-          }
+        if (dirsByRoot != null && isUnderDirtyDir(newcomer, dirsByRoot)) {
+          return;
         }
 
         if (newcomer.isDirectory()) {
-          final List<FilePath> files = new ArrayList<FilePath>(myDirtyFiles);
-          for (FilePath oldBoy : files) {
-            if (!oldBoy.isDirectory() && oldBoy.getVirtualFileParent() == newcomer.getVirtualFile()) {
-              myDirtyFiles.remove(oldBoy);
-            }
+          for (FilePath oldBoy : myIndex.getFileChildren(newcomer)) {
+            removeDirtyFile(oldBoy);
           }
         }
         else if (myDirtyFiles.size() > 0) {
@@ -235,11 +227,70 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
           }
         }
 
-        myDirtyFiles.add(newcomer);
+        if (myDirtyFiles.add(newcomer)) {
+          myIndex.addFile(newcomer);
+        }
+
+        if (!newcomer.isDirectory()) {
+          // many dirty files of the same directory (e.g. after a branch switch): the directory is dirty as a whole
+          final VirtualFile parent = newcomer.getVirtualFileParent();
+          if (parent != null && parent.isValid() && myIndex.getFileChildrenCount(newcomer.getParentPath()) >= COLLAPSE_THRESHOLD &&
+              myVcsManager.getVcsRootFor(parent) != null) {
+            addDirtyFile(new FilePathImpl(parent));
+          }
+        }
       }
     });
   }
 
+  private boolean isUnderDirtyDir(final FilePath path, final Set<FilePath> dirsByRoot) {
+    for (FilePath dir : myIndex.getRecursiveAncestors(path)) {
+      if (dirsByRoot.contains(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void removeDirtyFile(final FilePath file) {
+    if (myDirtyFiles.remove(file)) {
+      myIndex.removeFile(file);
+    }
+  }
+
+  /**
+   * Keeps {@link #myIndex} in sync when the dirty paths are removed by the change providers through the scope modifier.
+   */
+  private class IndexedIterator implements Iterator<FilePath> {
+    private final Iterator<FilePath> myDelegate;
+    private final boolean myRecursive;
+    private FilePath myCurrent;
+
+    private IndexedIterator(Iterator<FilePath> delegate, boolean recursive) {
+      myDelegate = delegate;
+      myRecursive = recursive;
+    }
+
+    public boolean hasNext() {
+      return myDelegate.hasNext();
+    }
+
+    public FilePath next() {
+      myCurrent = myDelegate.next();
+      return myCurrent;
+    }
+
+    public void remove() {
+      myDelegate.remove();
+      if (myRecursive) {
+        myIndex.removeRecursive(myCurrent);
+      }
+      else {
+        myIndex.removeFile(myCurrent);
+      }
+    }
+  }
+
   public void iterate(final Processor<FilePath> iterator) {
     if (myProject.isDisposed()) return;
 
@@ -313,19 +364,8 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
           return Boolean.FALSE;
         }
 
-        final VirtualFile vcsRoot = rootObject.path;
-        if (vcsRoot != null) {
-          for (VirtualFile contentRoot : myAffectedContentRoots) {
-            if (VfsUtil.isAncestor(contentRoot, vcsRoot, false)) {
-              THashSet<FilePath> dirsByRoot = myDirtyDirectoriesRecursively.get(contentRoot);
-              if (dirsByRoot != null) {
-                for (FilePath filePath : dirsByRoot) {
-                  if (path.isUnder(filePath, false)) return Boolean.TRUE;
-                }
-              }
-            }
-          }
-        }
+        // the root of the path is the innermost one, so the root of any dirty ancestor directory contains it
+        if (rootObject.path != null && !myIndex.getRecursiveAncestors(path).isEmpty()) return Boolean.TRUE;
 
         if (myDirtyFiles.size() > 0) {
           FilePath parent;
@@ -391,4 +431,65 @@ public class VcsDirtyScopeImpl extends VcsModifiableDirtyScope {
   public void setWasEverythingDirty(boolean wasEverythingDirty) {
     myWasEverythingDirty = wasEverythingDirty;
   }
+
+  /**
+   * Splits the scope into scopes containing the dirty files and directories of one VCS root each, nested roots are kept
+   * in the scope of the outermost root. The scopes are ordered by root paths.
+   *
+   * @return list containing only this scope if it can't be split
+   */
+  public List<VcsDirtyScopeImpl> splitByVcsRoots() {
+    return ApplicationManager.getApplication().runReadAction(new Computable<List<VcsDirtyScopeImpl>>() {
+      @Override
+      public List<VcsDirtyScopeImpl> compute() {
+        if (myAffectedContentRoots.size() < 2 || myAffectedContentRoots.contains(null)) {
+          return Collections.singletonList(VcsDirtyScopeImpl.this);
+        }
+        final List<VirtualFile> roots = new ArrayList<VirtualFile>(myAffectedContentRoots);
+        Collections.sort(roots, new Comparator<VirtualFile>() {
+          @Override
+          public int compare(VirtualFile o1, VirtualFile o2) {
+            return o1.getPath().compareTo(o2.getPath());
+          }
+        });
+        // an ancestor path is always sorted before its descendants
+        final Map<VirtualFile, VcsDirtyScopeImpl> scopes = new LinkedHashMap<VirtualFile, VcsDirtyScopeImpl>();
+        final Map<VirtualFile, VcsDirtyScopeImpl> scopeByRoot = new HashMap<VirtualFile, VcsDirtyScopeImpl>();
+        for (VirtualFile root : roots) {
+          VcsDirtyScopeImpl scope = null;
+          for (Map.Entry<VirtualFile, VcsDirtyScopeImpl> entry : scopes.entrySet()) {
+            if (VfsUtil.isAncestor(entry.getKey(), root, true)) {
+              scope = entry.getValue();
+              break;
+            }
+          }
+          if (scope == null) {
+            scope = new VcsDirtyScopeImpl(myVcs, myProject);
+            scope.myWasEverythingDirty = myWasEverythingDirty;
+            scopes.put(root, scope);
+          }
+          scope.myAffectedContentRoots.add(root);
+          final THashSet<FilePath> dirs = myDirtyDirectoriesRecursively.get(root);
+          if (dirs != null) {
+            final THashSet<FilePath> scopeDirs = new THashSet<FilePath>();
+            for (FilePath dir : dirs) {
+              scopeDirs.add(dir);
+              scope.myIndex.addRecursive(dir);
+            }
+            scope.myDirtyDirectoriesRecursively.put(root, scopeDirs);
+          }
+          scopeByRoot.put(root, scope);
+        }
+        for (FilePath file : myDirtyFiles) {
+          final VcsDirtyScopeImpl scope = scopeByRoot.get(myVcsManager.getVcsRootFor(file));
+          if (scope == null) {
+            return Collections.singletonList(VcsDirtyScopeImpl.this);
+          }
+          scope.myDirtyFiles.add(file);
+          scope.myIndex.addFile(file);
+        }
+        return new ArrayList<VcsDirtyScopeImpl>(scopes.values());
+      }
+    });
+  }
 }
@@ -91,6 +91,13 @@ public class CachesHolder {
     return result;
   }
 
+  /**
+   * @return caches which were already requested in this session, without calculating the roots
+   */
+  public List<ChangesCacheFile> getCreatedCaches() {
+    return new ArrayList<ChangesCacheFile>(myCacheFiles.values());
+  }
+
   public ChangesCacheFile getCacheFile(AbstractVcs vcs, VirtualFile root, RepositoryLocation location) {
     final String key = location.getKey();
     ChangesCacheFile cacheFile = myCacheFiles.get(key);
@@ -30,6 +30,8 @@ import com.intellij.openapi.vcs.versionBrowser.ChangeBrowserSettings;
 import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.containers.FactoryMap;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.Nullable;
 
@@ -45,6 +47,7 @@ public class ChangesCacheFile {
 
   private final File myPath;
   private final File myIndexPath;
+  private final ChangesCacheIndex mySearchIndex;
   private RandomAccessFile myStream;
   private RandomAccessFile myIndexStream;
   private boolean myStreamsOpen;
@@ -62,8 +65,10 @@ public class ChangesCacheFile {
   private boolean myHaveCompleteHistory = false;
   private boolean myHeaderLoaded = false;
   @NonNls private static final String INDEX_EXTENSION = ".index";
+  @NonNls private static final String SEARCH_INDEX_EXTENSION = ".search";
   private static final int INDEX_ENTRY_SIZE = 3*8+2;
   private static final int HEADER_SIZE = 46;
+  private static final int SEARCH_INDEX_BATCH_SIZE = 100;
 
   public ChangesCacheFile(Project project, File path, AbstractVcs vcs, VirtualFile root, RepositoryLocation location) {
     final Calendar date = Calendar.getInstance();
@@ -74,6 +79,7 @@ public class ChangesCacheFile {
     myProject = project;
     myPath = path;
     myIndexPath = new File(myPath.toString() + INDEX_EXTENSION);
+    mySearchIndex = new ChangesCacheIndex(new File(myPath.toString() + SEARCH_INDEX_EXTENSION));
     myVcs = vcs;
     myChangesProvider = (CachingCommittedChangesProvider) vcs.getCommittedChangesProvider();
     myVcsManager = ProjectLevelVcsManager.getInstance(project);
@@ -99,11 +105,13 @@ public class ChangesCacheFile {
     catch(VersionMismatchException ex) {
       myPath.delete();
       myIndexPath.delete();
+      mySearchIndex.clear();
       return true;
     }
     catch(EOFException ex) {
       myPath.delete();
       myIndexPath.delete();
+      mySearchIndex.clear();
       return true;
     }
 
@@ -113,6 +121,7 @@ public class ChangesCacheFile {
   public void delete() {
     FileUtil.delete(myPath);
     FileUtil.delete(myIndexPath);
+    mySearchIndex.clear();
   }
 
   public List<CommittedChangeList> writeChanges(final List<CommittedChangeList> changes) throws IOException {
@@ -125,6 +134,7 @@ public class ChangesCacheFile {
         writeHeader();
       }
       myStream.seek(myStream.length());
+      final int firstOrdinal = (int)(myIndexStream.length() / INDEX_ENTRY_SIZE);
       IndexEntry[] entries = readLastIndexEntries(0, changes.size());
       // the list and index are sorted in direct chronological order
       Collections.sort(changes, new Comparator<CommittedChangeList>() {
@@ -153,6 +163,14 @@ public class ChangesCacheFile {
         writeIndexEntry(list.getNumber(), list.getCommitDate().getTime(), position, false);
         myIncomingCount++;
       }
+      try {
+        mySearchIndex.append(firstOrdinal, result);
+      }
+      catch (IOException e) {
+        // the search index is only a hint and is rebuilt when it is needed again
+        LOG.info(e);
+        mySearchIndex.clear();
+      }
       writeHeader();
       myHeaderLoaded = true;
     }
@@ -390,7 +408,7 @@ public class ChangesCacheFile {
     final ChangeBrowserSettings.Filter filter = settings.createFilter();
     openStreams();
     try {
-      if (maxCount == 0) {
+      if (maxCount == 0 && !settings.isNonDateFilterSpecified()) {
         myStream.seek(HEADER_SIZE);  // skip header
         while(myStream.getFilePointer() < myStream.length()) {
           CommittedChangeList changeList = myChangesProvider.readChangeList(myLocation, myStream);
@@ -407,17 +425,19 @@ public class ChangesCacheFile {
         }
       }
       else {
-        int offset = 0;
-        while(result.size() < maxCount) {
-          IndexEntry[] entries = readLastIndexEntries(offset, 1);
-          if (entries.length == 0) {
-            break;
+        final long entryCount = myIndexStream.length() / INDEX_ENTRY_SIZE;
+        final TIntArrayList candidates = findCandidates(settings, entryCount);
+        final IndexEntryFilter entryFilter = new IndexEntryFilter(settings);
+        int i = candidates == null ? (int)entryCount : candidates.size();
+        while((maxCount <= 0 || result.size() < maxCount) && --i >= 0) {
+          IndexEntry[] entries = readIndexEntriesByOffset(candidates == null ? i : candidates.get(i), 1);
+          if (entries.length == 0 || !entryFilter.accepts(entries [0])) {
+            continue;
           }
           CommittedChangeList changeList = loadChangeListAt(entries [0].offset);
           if (filter.accepts(changeList)) {
             result.add(0, changeList);
           }
-          offset++;
         }
       }
       return result;
@@ -427,6 +447,76 @@ public class ChangesCacheFile {
     }
   }
 
+  /**
+   * @return ordinals of the index entries which may pass the filters of the settings, or null if all entries have to be checked
+   */
+  @Nullable
+  private TIntArrayList findCandidates(final ChangeBrowserSettings settings, final long entryCount) throws IOException {
+    final String user = settings.getUserFilter();
+    if (user == null || !isSearchIndexUpToDate(entryCount)) {
+      return null;
+    }
+    return mySearchIndex.findByAuthor(user);
+  }
+
+  private boolean isSearchIndexUpToDate(final long entryCount) throws IOException {
+    if (mySearchIndex.getCount() == entryCount) {
+      return true;
+    }
+    debug("Rebuilding search index for " + myLocation);
+    mySearchIndex.clear();
+    final List<CommittedChangeList> lists = new ArrayList<CommittedChangeList>();
+    int ordinal = 0;
+    myStream.seek(HEADER_SIZE);
+    while (myStream.getFilePointer() < myStream.length() && ordinal + lists.size() < entryCount) {
+      lists.add(myChangesProvider.readChangeList(myLocation, myStream));
+      if (lists.size() == SEARCH_INDEX_BATCH_SIZE) {
+        mySearchIndex.append(ordinal, lists);
+        ordinal += lists.size();
+        lists.clear();
+      }
+    }
+    mySearchIndex.append(ordinal, lists);
+    if (mySearchIndex.getCount() != entryCount) {
+      LOG.info("Cache " + myPath + " has " + entryCount + " index entries but " + mySearchIndex.getCount() + " change lists");
+      mySearchIndex.clear();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Looks up the change lists matching the text filter of the committed changes panel in the search index,
+   * without reading the change lists themselves.
+   *
+   * @param words lower-cased words of the filter; a change list matches if any of them is found in its committer name,
+   *              comment or affected paths
+   * @return pairs of number and commit date of the matching change lists
+   */
+  public Set<Pair<Long, Long>> findChangeLists(final String[] words) throws IOException {
+    final Set<Pair<Long, Long>> result = new HashSet<Pair<Long, Long>>();
+    final TIntHashSet ordinals = mySearchIndex.findByText(words);
+    if (ordinals.isEmpty() || !myIndexPath.exists()) {
+      return result;
+    }
+    // the streams may be in use by a cache refresh
+    final RandomAccessFile indexStream = new RandomAccessFile(myIndexPath, "r");
+    try {
+      final long entryCount = indexStream.length() / INDEX_ENTRY_SIZE;
+      for (int ordinal : ordinals.toArray()) {
+        if (ordinal >= entryCount) continue;
+        indexStream.seek((long)ordinal * INDEX_ENTRY_SIZE);
+        final long number = indexStream.readLong();
+        final long date = indexStream.readLong();
+        result.add(Pair.create(number, date));
+      }
+    }
+    finally {
+      indexStream.close();
+    }
+    return result;
+  }
+
   public boolean hasCompleteHistory() {
     return myHaveCompleteHistory;
   }
@@ -1009,6 +1099,37 @@ public class ChangesCacheFile {
     }
   }
 
+  /**
+   * Checks the date and number ranges of the settings against an index entry, so that change lists outside of them
+   * are not deserialized.
+   */
+  private static class IndexEntryFilter {
+    private final long myDateBefore;
+    private final long myDateAfter;
+    private final long myNumberBefore;
+    private final long myNumberAfter;
+
+    private IndexEntryFilter(final ChangeBrowserSettings settings) {
+      myDateBefore = settings.USE_DATE_BEFORE_FILTER && settings.getDateBefore() != null ? settings.getDateBefore().getTime() : Long.MAX_VALUE;
+      myDateAfter = settings.USE_DATE_AFTER_FILTER && settings.getDateAfter() != null ? settings.getDateAfter().getTime() : Long.MIN_VALUE;
+      myNumberBefore = settings.USE_CHANGE_BEFORE_FILTER ? parseNumber(settings.CHANGE_BEFORE, Long.MAX_VALUE) : Long.MAX_VALUE;
+      myNumberAfter = settings.USE_CHANGE_AFTER_FILTER ? parseNumber(settings.CHANGE_AFTER, Long.MIN_VALUE) : Long.MIN_VALUE;
+    }
+
+    private static long parseNumber(final String number, final long defaultValue) {
+      try {
+        return Long.parseLong(number);
+      }
+      catch (NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+
+    public boolean accepts(final IndexEntry entry) {
+      return entry.date < myDateBefore && entry.date > myDateAfter && entry.number <= myNumberBefore && entry.number >= myNumberAfter;
+    }
+  }
+
   private static class IndexEntry {
     long number;
     long date;
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.changes.committed;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.changes.Change;
+import com.intellij.openapi.vcs.changes.ContentRevision;
+import com.intellij.openapi.vcs.versionBrowser.CommittedChangeList;
+import com.intellij.reference.SoftReference;
+import gnu.trove.THashMap;
+import gnu.trove.THashSet;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary index of a {@link ChangesCacheFile}: maps committer names, comment words and affected paths
+ * to the ordinals of the change lists in the cache index file, so that filtering does not have to deserialize every list.
+ * <p/>
+ * The index is append-only. Appending does not read it: the header keeps the number of indexed lists and the end of
+ * the written records. The records are loaded only when a query runs and are then kept softly reachable.
+ * The index is only a hint: callers must still check the change lists they load against the real filter.
+ */
+class ChangesCacheIndex {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.changes.committed.ChangesCacheIndex");
+  private static final int VERSION = 2;
+  // version, count of lists, end of the records
+  private static final int HEADER_SIZE = 4 + 4 + 8;
+
+  private final File myPath;
+  private SoftReference<Data> myData;
+
+  ChangesCacheIndex(@NotNull File path) {
+    myPath = path;
+  }
+
+  /**
+   * @return number of change lists in the index; valid entries have ordinals from 0 to count - 1
+   */
+  public synchronized int getCount() {
+    if (!myPath.exists()) return 0;
+    try {
+      final RandomAccessFile file = new RandomAccessFile(myPath, "r");
+      try {
+        return file.length() >= HEADER_SIZE && file.readInt() == VERSION ? file.readInt() : 0;
+      }
+      finally {
+        file.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return 0;
+    }
+  }
+
+  public synchronized void append(int firstOrdinal, @NotNull List<CommittedChangeList> lists) throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(myPath, "rw");
+    try {
+      int count = 0;
+      long end = HEADER_SIZE;
+      if (file.length() >= HEADER_SIZE && file.readInt() == VERSION) {
+        count = file.readInt();
+        end = file.readLong();
+      }
+      if (firstOrdinal != count) {
+        LOG.info("Search index of " + myPath + " is out of sync: " + count + " lists indexed, appending from " + firstOrdinal);
+        file.close();
+        clear();
+        return;
+      }
+      final Data data = myData == null ? null : myData.get();
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream stream = new DataOutputStream(bytes);
+      for (CommittedChangeList list : lists) {
+        final Record record = new Record(count++, list);
+        record.write(stream);
+        if (data != null) {
+          data.addRecord(record);
+        }
+      }
+      file.seek(end);
+      file.write(bytes.toByteArray());
+      // the header is updated last, so records written by an interrupted append are ignored
+      file.seek(0);
+      file.writeInt(VERSION);
+      file.writeInt(count);
+      file.writeLong(end + bytes.size());
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  public synchronized void clear() {
+    FileUtil.delete(myPath);
+    myData = null;
+  }
+
+  /**
+   * @return ordinals of the change lists committed by the given user (compared ignoring case)
+   */
+  @NotNull
+  public synchronized TIntArrayList findByAuthor(@NotNull String author) {
+    final TIntArrayList result = getData().myAuthors.get(author.toLowerCase());
+    return result == null ? new TIntArrayList() : (TIntArrayList)result.clone();
+  }
+
+  /**
+   * Same matching as the text filter of the committed changes panel: a change list matches if any of the words
+   * is a substring of its committer name, of a word of its comment or of one of its paths.
+   *
+   * @param words lower-cased words
+   */
+  @NotNull
+  public synchronized TIntHashSet findByText(@NotNull String[] words) {
+    final Data data = getData();
+    final TIntHashSet result = new TIntHashSet();
+    for (String word : words) {
+      if (word.length() == 0) continue;
+      collectContaining(data.myAuthors, word, result);
+      collectContaining(data.myWords, word, result);
+      collectContaining(data.myPaths, word, result);
+    }
+    return result;
+  }
+
+  private static void collectContaining(Map<String, TIntArrayList> map, String word, TIntHashSet result) {
+    for (Map.Entry<String, TIntArrayList> entry : map.entrySet()) {
+      if (entry.getKey().indexOf(word) >= 0) {
+        result.addAll(entry.getValue().toNativeArray());
+      }
+    }
+  }
+
+  @NotNull
+  private Data getData() {
+    Data data = myData == null ? null : myData.get();
+    if (data == null) {
+      data = load();
+      myData = new SoftReference<Data>(data);
+    }
+    return data;
+  }
+
+  @NotNull
+  private Data load() {
+    final Data data = new Data();
+    if (!myPath.exists()) return data;
+    boolean valid = false;
+    try {
+      final DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(myPath)));
+      try {
+        if (stream.readInt() == VERSION) {
+          final int count = stream.readInt();
+          stream.readLong();
+          for (int i = 0; i < count; i++) {
+            final Record record = Record.read(stream);
+            if (record.myOrdinal != i) {
+              throw new IOException("Unexpected change list ordinal " + record.myOrdinal + ", expected " + i);
+            }
+            data.addRecord(record);
+          }
+          valid = true;
+        }
+      }
+      finally {
+        stream.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    if (!valid) {
+      LOG.info("Dropping search index " + myPath);
+      FileUtil.delete(myPath);
+      return new Data();
+    }
+    return data;
+  }
+
+  private static class Data {
+    private final Map<String, TIntArrayList> myAuthors = new THashMap<String, TIntArrayList>();
+    private final Map<String, TIntArrayList> myWords = new THashMap<String, TIntArrayList>();
+    private final Map<String, TIntArrayList> myPaths = new THashMap<String, TIntArrayList>();
+
+    private void addRecord(Record record) {
+      if (record.myAuthor.length() > 0) {
+        addOrdinal(myAuthors, record.myAuthor, record.myOrdinal);
+      }
+      for (String word : record.myWords) {
+        addOrdinal(myWords, word, record.myOrdinal);
+      }
+      for (String path : record.myPaths) {
+        addOrdinal(myPaths, path, record.myOrdinal);
+      }
+    }
+
+    private static void addOrdinal(Map<String, TIntArrayList> map, String key, int ordinal) {
+      TIntArrayList ordinals = map.get(key);
+      if (ordinals == null) {
+        ordinals = new TIntArrayList(1);
+        map.put(key, ordinals);
+      }
+      ordinals.add(ordinal);
+    }
+  }
+
+  private static class Record {
+    private final int myOrdinal;
+    private final String myAuthor;
+    private final Set<String> myWords;
+    private final Set<String> myPaths;
+
+    private Record(int ordinal, String author, Set<String> words, Set<String> paths) {
+      myOrdinal = ordinal;
+      myAuthor = author;
+      myWords = words;
+      myPaths = paths;
+    }
+
+    private Record(int ordinal, CommittedChangeList list) {
+      myOrdinal = ordinal;
+      final String committer = list.getCommitterName();
+      myAuthor = committer == null ? "" : committer.toLowerCase();
+      myWords = splitWords(list.getComment());
+      myPaths = new THashSet<String>();
+      for (Change change : list.getChanges()) {
+        addPath(change.getBeforeRevision());
+        addPath(change.getAfterRevision());
+      }
+    }
+
+    private void addPath(@Nullable ContentRevision revision) {
+      if (revision != null) {
+        myPaths.add(FileUtil.toSystemIndependentName(revision.getFile().getPath()).toLowerCase());
+      }
+    }
+
+    private static Set<String> splitWords(@Nullable String comment) {
+      final Set<String> result = new THashSet<String>();
+      if (comment == null) return result;
+      final String text = comment.toLowerCase();
+      int start = -1;
+      for (int i = 0; i <= text.length(); i++) {
+        if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+          if (start < 0) start = i;
+        }
+        else if (start >= 0) {
+          result.add(text.substring(start, i));
+          start = -1;
+        }
+      }
+      return result;
+    }
+
+    private void write(DataOutput out) throws IOException {
+      out.writeInt(myOrdinal);
+      out.writeUTF(myAuthor);
+      writeStrings(out, myWords);
+      writeStrings(out, myPaths);
+    }
+
+    private static Record read(DataInput in) throws IOException {
+      final int ordinal = in.readInt();
+      final String author = in.readUTF();
+      final Set<String> words = readStrings(in);
+      final Set<String> paths = readStrings(in);
+      return new Record(ordinal, author, words, paths);
+    }
+
+    private static void writeStrings(DataOutput out, Set<String> strings) throws IOException {
+      out.writeInt(strings.size());
+      for (String s : strings) {
+        out.writeUTF(s);
+      }
+    }
+
+    private static Set<String> readStrings(DataInput in) throws IOException {
+      final int size = in.readInt();
+      final Set<String> result = new THashSet<String>(size);
+      for (int i = 0; i < size; i++) {
+        result.add(in.readUTF());
+      }
+      return result;
+    }
+  }
+}
@@ -316,6 +316,26 @@ public class CommittedChangesCache implements PersistentStateComponent<Committed
     return provider.getCommittedChanges(settings, location, maxCount);
   }
 
+  /**
+   * Looks up the cached change lists matching the text filter words in the search indexes of the caches,
+   * without reading the cached change lists.
+   *
+   * @param words lower-cased filter words
+   * @return pairs of number and commit date of the matching change lists
+   */
+  public Set<Pair<Long, Long>> findCachedChangeLists(final String[] words) {
+    final Set<Pair<Long, Long>> result = new HashSet<Pair<Long, Long>>();
+    for (ChangesCacheFile cacheFile : myCachesHolder.getCreatedCaches()) {
+      try {
+        result.addAll(cacheFile.findChangeLists(words));
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+    }
+    return result;
+  }
+
   private boolean canGetFromCache(final AbstractVcs vcs, final ChangeBrowserSettings settings,
                                   final VirtualFile root, final RepositoryLocation location, final int maxCount) throws IOException {
     ChangesCacheFile cacheFile = myCachesHolder.getCacheFile(vcs, root, location);
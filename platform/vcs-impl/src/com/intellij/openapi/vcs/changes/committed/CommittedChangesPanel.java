@@ -33,6 +33,7 @@ import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.*;
 import com.intellij.openapi.vcs.changes.BackgroundFromStartOption;
@@ -55,6 +56,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 public class CommittedChangesPanel extends JPanel implements TypeSafeDataProvider, Disposable {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.vcs.changes.committed.CommittedChangesPanel");
@@ -228,16 +230,24 @@ public class CommittedChangesPanel extends JPanel implements TypeSafeDataProvide
 
   private static class FilterHelper {
     private final String[] myParts;
+    private final Set<Pair<Long, Long>> myIndexed;
 
-    FilterHelper(final String filterString) {
-      myParts = filterString.split(" ");
-      for(int i = 0; i < myParts.length; ++ i) {
-        myParts [i] = myParts [i].toLowerCase();
+    FilterHelper(final String filterString, final Set<Pair<Long, Long>> indexed) {
+      myParts = splitWords(filterString);
+      myIndexed = indexed;
+    }
+
+    private static String[] splitWords(final String filterString) {
+      final String[] parts = filterString.split(" ");
+      for(int i = 0; i < parts.length; ++ i) {
+        parts [i] = parts [i].toLowerCase();
       }
+      return parts;
     }
 
     public boolean filter(@NotNull final CommittedChangeList cl) {
-      return changeListMatches(cl, myParts);
+      return changeListMatches(cl, myParts) ||
+             (cl.getCommitDate() != null && myIndexed.contains(Pair.create(cl.getNumber(), cl.getCommitDate().getTime())));
     }
 
     private static boolean changeListMatches(@NotNull final CommittedChangeList changeList, final String[] filterWords) {
@@ -286,6 +296,8 @@ public class CommittedChangesPanel extends JPanel implements TypeSafeDataProvide
 
   private class MyFilterComponent extends FilterComponent implements ChangeListFilteringStrategy {
     private final List<ChangeListener> myList;
+    // change lists found for the filter text by the search index of the cache, which also knows the affected paths
+    private volatile Pair<String, Set<Pair<Long, Long>>> myIndexedMatches;
 
     public MyFilterComponent() {
       super("COMMITTED_CHANGES_FILTER_HISTORY", 20);
@@ -298,6 +310,27 @@ public class CommittedChangesPanel extends JPanel implements TypeSafeDataProvide
     }
 
     public void filter() {
+      fireFilterChanged();
+      final String filter = getFilter();
+      if (filter.trim().length() == 0) return;
+      // the index is read from disk, so the lists it finds are added to the filtered ones when the lookup is done
+      ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        public void run() {
+          if (myDisposed) return;
+          final Set<Pair<Long, Long>> indexed = CommittedChangesCache.getInstance(myProject).findCachedChangeLists(FilterHelper.splitWords(filter));
+          if (indexed.isEmpty()) return;
+          ApplicationManager.getApplication().invokeLater(new Runnable() {
+            public void run() {
+              if (myDisposed || !filter.equals(getFilter())) return;
+              myIndexedMatches = Pair.create(filter, indexed);
+              fireFilterChanged();
+            }
+          }, ModalityState.stateForComponent(myBrowser), myProject.getDisposed());
+        }
+      });
+    }
+
+    private void fireFilterChanged() {
       for (ChangeListener changeListener : myList) {
         changeListener.stateChanged(new ChangeEvent(this));
       }
@@ -319,7 +352,10 @@ public class CommittedChangesPanel extends JPanel implements TypeSafeDataProvide
     }
     @NotNull
     public List<CommittedChangeList> filterChangeLists(List<CommittedChangeList> changeLists) {
-      final FilterHelper filterHelper = new FilterHelper(myFilterComponent.getFilter());
+      final String filter = getFilter();
+      final Pair<String, Set<Pair<Long, Long>>> indexed = myIndexedMatches;
+      final FilterHelper filterHelper = new FilterHelper(filter, indexed != null && indexed.first.equals(filter)
+                                                                 ? indexed.second : Collections.<Pair<Long, Long>>emptySet());
       final List<CommittedChangeList> result = new ArrayList<CommittedChangeList>();
       for (CommittedChangeList list : changeLists) {
         if (filterHelper.filter(list)) {
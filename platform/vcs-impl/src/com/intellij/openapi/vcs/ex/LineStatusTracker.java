@@ -44,7 +44,6 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 
@@ -359,37 +358,29 @@ public class LineStatusTracker {
           int linesAfterChange = line - myDocument.getLineNumber(e.getOffset());
           int linesShift = linesAfterChange - myLinesBeforeChange;
 
-          List<Range> rangesAfterChange = getRangesAfter(myRanges, myLastChangedLine);
-          List<Range> rangesBeforeChange = getRangesBefore(myRanges, myFirstChangedLine);
-
-          List<Range> changedRanges = getChangedRanges(myFirstChangedLine, myLastChangedLine);
-
-          int newSize = rangesBeforeChange.size() + changedRanges.size() + rangesAfterChange.size();
-          if (myRanges.size() != newSize) {
-            LOG.info("Ranges: " + myRanges + "; first changed line: " + myFirstChangedLine + "; last changed line: " + myLastChangedLine);
-            LOG.assertTrue(false);
-          }
-
+          // the ranges are sorted and do not intersect, so the changed ones are found by binary search and replaced in place
+          final int changedFrom = countRangesBefore(myFirstChangedLine);
+          final int changedTo = findFirstRangeAfter(myLastChangedLine);
+          List<Range> changedRanges = new ArrayList<Range>(myRanges.subList(changedFrom, changedTo));
 
           myLastChangedLine += linesShift;
 
 
           List<Range> newChangedRanges = getNewChangedRanges();
 
-          shiftRanges(rangesAfterChange, linesShift);
+          shiftRanges(myRanges.subList(changedTo, myRanges.size()), linesShift);
 
           if (!changedRanges.equals(newChangedRanges)) {
             replaceRanges(changedRanges, newChangedRanges);
 
-            myRanges = new ArrayList<Range>();
-
-            myRanges.addAll(rangesBeforeChange);
-            myRanges.addAll(newChangedRanges);
-            myRanges.addAll(rangesAfterChange);
+            final List<Range> changed = myRanges.subList(changedFrom, changedTo);
+            changed.clear();
+            changed.addAll(newChangedRanges);
 
-            myRanges = mergeRanges(myRanges);
+            final int mergedTo = mergeRanges(changedFrom, changedFrom + newChangedRanges.size());
 
-            for (Range range : myRanges) {
+            for (int i = Math.max(changedFrom - 1, 0); i < Math.min(mergedTo + 1, myRanges.size()); i++) {
+              final Range range = myRanges.get(i);
               if (!range.hasHighlighter()) range.setHighlighter(createHighlighter(range));
             }
 
@@ -425,13 +416,15 @@ public class LineStatusTracker {
       return new RangesBuilder(lines, uLines, myFirstChangedLine, myUpToDateFirstLine).getRanges();
     }
 
-    private List<Range> mergeRanges(List<Range> ranges) {
-      ArrayList<Range> result = new ArrayList<Range>();
-      Iterator<Range> iterator = ranges.iterator();
-      if (!iterator.hasNext()) return result;
-      Range prev = iterator.next();
-      while (iterator.hasNext()) {
-        Range range = iterator.next();
+    /**
+     * Merges the ranges from <code>from</code> to <code>to</code> (exclusive) with their neighbours when they are adjacent.
+     * @return the new end of the merged part
+     */
+    private int mergeRanges(int from, int to) {
+      int i = Math.max(from, 1);
+      while (i <= to && i < myRanges.size()) {
+        final Range prev = myRanges.get(i - 1);
+        final Range range = myRanges.get(i);
         if (prev.canBeMergedWith(range)) {
           if (range.getHighlighter() != null) {
             range.getHighlighter().dispose();
@@ -439,15 +432,15 @@ public class LineStatusTracker {
           if (prev.getHighlighter() != null) {
             prev.getHighlighter().dispose();
           }
-          prev = prev.mergeWith(range, LineStatusTracker.this);
+          myRanges.set(i - 1, prev.mergeWith(range, LineStatusTracker.this));
+          myRanges.remove(i);
+          to--;
         }
         else {
-          result.add(prev);
-          prev = range;
+          i++;
         }
       }
-      result.add(prev);
-      return result;
+      return to;
     }
 
     private void replaceRanges(List<Range> rangesInChange, List<Range> newRangesInChange) {
@@ -468,8 +461,40 @@ public class LineStatusTracker {
 
   }
 
-  private List<Range> getChangedRanges(int from, int to) {
-    return getChangedRanges(myRanges, from, to);
+  /**
+   * @return number of the ranges which end before the given line
+   */
+  private int countRangesBefore(int line) {
+    int low = 0;
+    int high = myRanges.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (myRanges.get(mid).getOffset2() < line) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return index of the first range which starts after the given line
+   */
+  private int findFirstRangeAfter(int line) {
+    int low = 0;
+    int high = myRanges.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (myRanges.get(mid).getOffset1() <= line) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
   public static List<Range> getChangedRanges(List<Range> ranges, int from, int to) {
@@ -20,7 +20,7 @@ import com.intellij.util.ArrayUtil;
 import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -35,9 +35,10 @@ public class RangesBuilder {
   }
 
   public RangesBuilder(List<String> current, List<String> upToDate, int shift, int uShift) throws FilesTooBigForDiffException {
-    myRanges = new LinkedList<Range>();
+    myRanges = new ArrayList<Range>();
 
-    Diff.Change ch = Diff.buildChanges(ArrayUtil.toStringArray(upToDate), ArrayUtil.toStringArray(current));
+    // patience diff follows the structure of the source code; big texts are diffed in linear space
+    Diff.Change ch = Diff.buildChanges(ArrayUtil.toStringArray(upToDate), ArrayUtil.toStringArray(current), true);
 
 
     while (ch != null) {
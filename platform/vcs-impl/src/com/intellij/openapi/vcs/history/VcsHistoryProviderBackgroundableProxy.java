@@ -17,6 +17,7 @@ package com.intellij.openapi.vcs.history;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -32,6 +33,7 @@ import com.intellij.openapi.vcs.impl.VcsBackgroundableActions;
 import com.intellij.openapi.vcs.impl.VcsBackgroundableComputable;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Consumer;
+import com.intellij.util.PairConsumer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -114,14 +116,16 @@ public class VcsHistoryProviderBackgroundableProxy {
 
     final VcsAppendableHistorySessionPartner cachedPartner;
     if (myCachesHistory) {
-      cachedPartner = new HistoryPartnerProxy(partner, new Consumer<VcsAbstractHistorySession>() {
+      cachedPartner = new HistoryPartnerProxy(partner, new PairConsumer<VcsAbstractHistorySession, Boolean>() {
         @Override
-        public void consume(VcsAbstractHistorySession session) {
+        public void consume(VcsAbstractHistorySession session, Boolean isFull) {
           if (session == null) return;
+          // the revisions loaded before cancellation are kept only if the provider is able to continue loading after them
+          if (! isFull && ! (myDelegate instanceof VcsPagedHistoryProvider && ! session.getRevisionList().isEmpty())) return;
           final FilePath correctedPath =
             ((VcsCacheableHistorySessionFactory<Serializable, VcsAbstractHistorySession>)myDelegate).getUsedFilePath(session);
           myVcsHistoryCache.put(filePath, correctedPath, vcsKey, (VcsAbstractHistorySession)session.copy(),
-                                (VcsCacheableHistorySessionFactory<Serializable,VcsAbstractHistorySession>) myDelegate, true);
+                                (VcsCacheableHistorySessionFactory<Serializable,VcsAbstractHistorySession>) myDelegate, isFull);
         }
       });
     } else {
@@ -139,12 +143,23 @@ public class VcsHistoryProviderBackgroundableProxy {
       public void run(@NotNull ProgressIndicator indicator) {
         try {
           final VcsHistorySession cachedSession = myCachesHistory ? getSessionFromCacheWithLastRevisionCheck(filePath, vcsKey) : null;
+          final VcsHistorySession partialSession =
+            cachedSession == null && myCachesHistory && myDelegate instanceof VcsPagedHistoryProvider ?
+            getSessionFromCache(filePath, vcsKey, false) : null;
           if (cachedSession != null) {
             cachedPartner.reportCreatedEmptySession((VcsAbstractHistorySession)cachedSession);
+          } else if (partialSession != null) {
+            // show what was loaded before and continue after it
+            cachedPartner.reportCreatedEmptySession((VcsAbstractHistorySession)partialSession);
+            final List<VcsFileRevision> revisions = partialSession.getRevisionList();
+            ((VcsPagedHistoryProvider)myDelegate).reportHistoryAfter(filePath, revisions.get(revisions.size() - 1), cachedPartner);
           } else {
             myDelegate.reportAppendableHistory(filePath, cachedPartner);
           }
         }
+        catch (ProcessCanceledException e) {
+          // the revisions loaded so far are reported as a partial history
+        }
         catch (VcsException e) {
           cachedPartner.reportException(e);
         }
@@ -162,10 +177,10 @@ public class VcsHistoryProviderBackgroundableProxy {
 
   private static class HistoryPartnerProxy implements VcsAppendableHistorySessionPartner {
     private final VcsAppendableHistorySessionPartner myPartner;
-    private final Consumer<VcsAbstractHistorySession> myFinish;
+    private final PairConsumer<VcsAbstractHistorySession, Boolean> myFinish;
     private VcsAbstractHistorySession myCopy;
 
-    private HistoryPartnerProxy(VcsAppendableHistorySessionPartner partner, final Consumer<VcsAbstractHistorySession> finish) {
+    private HistoryPartnerProxy(VcsAppendableHistorySessionPartner partner, final PairConsumer<VcsAbstractHistorySession, Boolean> finish) {
       myPartner = partner;
       myFinish = finish;
     }
@@ -190,7 +205,8 @@ public class VcsHistoryProviderBackgroundableProxy {
     @Override
     public void finished() {
       myPartner.finished();
-      myFinish.consume(myCopy);
+      final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+      myFinish.consume(myCopy, indicator == null || ! indicator.isCanceled());
     }
 
     @Override
@@ -255,13 +271,23 @@ public class VcsHistoryProviderBackgroundableProxy {
 
   @Nullable
   private VcsHistorySession getSessionFromCacheWithLastRevisionCheck(final FilePath filePath, final VcsKey vcsKey) {
+    return getSessionFromCache(filePath, vcsKey, true);
+  }
+
+  /**
+   * @param full whether only the complete history should be taken, or the history which was partially loaded before
+   */
+  @Nullable
+  private VcsHistorySession getSessionFromCache(final FilePath filePath, final VcsKey vcsKey, final boolean full) {
     final ProgressIndicator pi = ProgressManager.getInstance().getProgressIndicator();
     if (pi != null) {
       pi.setText2("Checking last revision");
     }
-    final VcsAbstractHistorySession cached = myVcsHistoryCache
-      .getFull(filePath, vcsKey, (VcsCacheableHistorySessionFactory<Serializable, VcsAbstractHistorySession>)myDelegate);
-    if (cached == null) return null;
+    final VcsCacheableHistorySessionFactory<Serializable, VcsAbstractHistorySession> factory =
+      (VcsCacheableHistorySessionFactory<Serializable, VcsAbstractHistorySession>)myDelegate;
+    final VcsAbstractHistorySession cached = full ? myVcsHistoryCache.getFull(filePath, vcsKey, factory) :
+                                             myVcsHistoryCache.getMaybePartial(filePath, vcsKey, factory);
+    if (cached == null || cached.getRevisionList().isEmpty()) return null;
     final FilePath correctedFilePath =
       ((VcsCacheableHistorySessionFactory<Serializable, VcsAbstractHistorySession>)myDelegate).getUsedFilePath(cached);
 
@@ -464,6 +464,11 @@ public class GitVcs extends AbstractVcs<CommittedChangeList> {
     return true;
   }
 
+  @Override
+  public boolean allowsConcurrentChangeCollection() {
+    return true;
+  }
+
   @Override
   public <S> List<S> filterUniqueRoots(final List<S> in, final Convertor<S, VirtualFile> convertor) {
     Collections.sort(in, new ComparatorDelegate<S, VirtualFile>(convertor, FilePathComparator.getInstance()));
@@ -29,22 +29,22 @@ import com.intellij.openapi.vcs.history.VcsAbstractHistorySession;
 import com.intellij.openapi.vcs.history.VcsFileRevision;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsFileUtil;
 import com.intellij.vcsUtil.VcsUtil;
 import git4idea.GitFileRevision;
 import git4idea.GitRevisionNumber;
 import git4idea.GitUtil;
 import git4idea.commands.GitCommand;
 import git4idea.commands.GitSimpleHandler;
+import git4idea.util.GitFileUtils;
 import git4idea.util.StringScanner;
 import git4idea.history.GitHistoryUtils;
 import git4idea.i18n.GitBundle;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Git annotation provider implementation.
@@ -145,26 +145,106 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
                                      final VcsFileRevision revision,
                                      final List<VcsFileRevision> revisions,
                                      final VirtualFile file) throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(myProject, GitUtil.getGitRoot(repositoryFilePath), GitCommand.ANNOTATE);
+    final VirtualFile root = GitUtil.getGitRoot(repositoryFilePath);
+    // the last revision which changed the file: the blame is the same for it and for any later revision
+    final int lastRevisionIndex = revision == null ? 0 : indexOf(revisions, revision.getRevisionNumber());
+    final List<GitBlameCache.Line> lines;
+    if (lastRevisionIndex >= 0 && lastRevisionIndex < revisions.size()) {
+      final String path = repositoryFilePath.getPath();
+      final String lastRevision = ((GitRevisionNumber)revisions.get(lastRevisionIndex).getRevisionNumber()).getRev();
+      final GitBlameCache cache = GitBlameCache.getInstance();
+      GitBlameCache.Blame blame = cache.get(path, lastRevision);
+      if (blame == null) {
+        final List<String> olderRevisions = new ArrayList<String>();
+        for (VcsFileRevision older : revisions.subList(lastRevisionIndex + 1, revisions.size())) {
+          olderRevisions.add(((GitRevisionNumber)older.getRevisionNumber()).getRev());
+        }
+        final GitBlameCache.Blame base = cache.findAny(path, olderRevisions);
+        List<GitBlameCache.Line> blamed = base == null ? null : blameChangedLines(root, repositoryFilePath, lastRevision, base, file);
+        if (blamed == null) {
+          blamed = blame(root, repositoryFilePath, lastRevision, file);
+        }
+        blame = new GitBlameCache.Blame(lastRevision, blamed);
+        cache.put(path, blame);
+      }
+      lines = blame.getLines();
+    }
+    else {
+      lines = blame(root, repositoryFilePath, revision == null ? "HEAD" : revision.getRevisionNumber().asString(), file);
+    }
+
+    GitFileAnnotation annotation = new GitFileAnnotation(myProject, file, revision == null, revision == null ? null : revision.getRevisionNumber());
+    for (int i = 0; i < lines.size(); i++) {
+      final GitBlameCache.Line line = lines.get(i);
+      final GitRevisionNumber lineRevision = line.getHash().length() == 0 ? null : new GitRevisionNumber(line.getHash(), line.getDate());
+      annotation.appendLineInfo(lineRevision == null ? null : line.getDate(), lineRevision,
+                                lineRevision == null ? null : line.getAuthor(), line.getText(), i + 1);
+    }
+    annotation.addLogEntries(revisions);
+    return annotation;
+  }
+
+  private static int indexOf(List<VcsFileRevision> revisions, VcsRevisionNumber number) {
+    for (int i = 0; i < revisions.size(); i++) {
+      if (revisions.get(i).getRevisionNumber().equals(number)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Computes the blame of the file at the given revision from the cached blame of an older revision: the lines which were not
+   * changed since that revision keep their commits, and only the changed lines are blamed.
+   *
+   * @return the blame or null if the file changed too much, so that the whole file should be blamed
+   */
+  @Nullable
+  private List<GitBlameCache.Line> blameChangedLines(final VirtualFile root,
+                                                    final FilePath repositoryFilePath,
+                                                    final String revision,
+                                                    final GitBlameCache.Blame base,
+                                                    final VirtualFile file) throws VcsException {
+    final byte[] content = GitFileUtils.getFileContent(myProject, root, revision, VcsFileUtil.relativePath(root, repositoryFilePath));
+    if (content == null) return null;
+    final List<String> newLines = GitBlameCache.splitLines(new String(content, file.getCharset()));
+    return GitBlameCache.mergeChangedLines(base.getLines(), newLines, new GitBlameCache.RangeBlamer() {
+      @NotNull
+      @Override
+      public List<GitBlameCache.Line> blame(int startLine, int endLine) throws VcsException {
+        return blameRange(root, repositoryFilePath, revision, file, startLine, endLine);
+      }
+    });
+  }
+
+  private List<GitBlameCache.Line> blame(VirtualFile root, FilePath repositoryFilePath, String revision, VirtualFile file)
+    throws VcsException {
+    return blameRange(root, repositoryFilePath, revision, file, -1, -1);
+  }
+
+  /**
+   * Runs 'git blame' for the given lines of the file, or for the whole file if the line numbers are negative.
+   *
+   * @param startLine the first line, 1-based
+   * @param endLine   the last line, inclusive
+   */
+  private List<GitBlameCache.Line> blameRange(VirtualFile root, FilePath repositoryFilePath, String revision, VirtualFile file,
+                                              int startLine, int endLine) throws VcsException {
+    GitSimpleHandler h = new GitSimpleHandler(myProject, root, GitCommand.ANNOTATE);
     h.setNoSSH(true);
     h.setStdoutSuppressed(true);
     h.setCharset(file.getCharset());
     h.addParameters("-p", "-l", "-t");
-    if (revision == null) {
-      h.addParameters("HEAD");
-    }
-    else {
-      h.addParameters(revision.getRevisionNumber().asString());
+    if (startLine > 0) {
+      h.addParameters("-L", startLine + "," + endLine);
     }
+    h.addParameters(revision);
     h.endOptions();
     h.addRelativePaths(repositoryFilePath);
     String output = h.run();
-    GitFileAnnotation annotation = new GitFileAnnotation(myProject, file, revision == null, revision == null ? null : revision.getRevisionNumber());
     class CommitInfo {
       Date date;
       String author;
-      GitRevisionNumber revision;
     }
+    final List<GitBlameCache.Line> result = new ArrayList<GitBlameCache.Line>();
     HashMap<String, CommitInfo> commits = new HashMap<String, CommitInfo>();
     for (StringScanner s = new StringScanner(output); s.hasMoreData();) {
       // parse header line
@@ -192,7 +272,6 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
           }
           if (commitHash != null && COMMITTER_TIME_KEY.equals(key)) {
             commit.date = GitUtil.parseTimestampWithNFEReport(value, h, output);
-            commit.revision = new GitRevisionNumber(commitHash, commit.date);
           }
         }
         commits.put(commitHash, commit);
@@ -205,10 +284,10 @@ public class GitAnnotationProvider implements AnnotationProvider, VcsCacheableAn
       }
       s.skipChars(1);
       String line = s.line(true);
-      annotation.appendLineInfo(commit.date, commit.revision, commit.author, line, lineNum);
+      result.add(new GitBlameCache.Line(commitHash == null ? "" : commitHash, commit.date == null ? new Date(0) : commit.date,
+                                        commit.author == null ? "" : commit.author, line, lineNum));
     }
-    annotation.addLogEntries(revisions);
-    return annotation;
+    return result;
   }
 
   @Override
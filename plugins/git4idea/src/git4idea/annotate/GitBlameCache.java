@@ -0,0 +1,394 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.util.diff.Diff;
+import com.intellij.util.diff.FilesTooBigForDiffException;
+import com.intellij.util.io.IOUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Persistent cache of 'git blame' results: for a file path and the last revision which changed the file, keeps the commit
+ * of every line. A few recent revisions are kept for each file, so that the blame of a newer revision
+ * can be computed from a cached one by re-blaming only the changed lines. At most {@link #MAX_FILES} files are kept.
+ */
+class GitBlameCache {
+  private static final Logger LOG = Logger.getInstance("#git4idea.annotate.GitBlameCache");
+  private static final int VERSION = 1;
+  private static final int MAX_REVISIONS_PER_FILE = 3;
+  // least recently used files are removed from the cache above this count
+  private static final int MAX_FILES = 1000;
+  /**
+   * If more ranges of lines were changed since the cached blame, the whole file is blamed
+   */
+  private static final int MAX_REBLAMED_RANGES = 20;
+
+  private static GitBlameCache ourInstance;
+
+  private final File myDir;
+  private final Object myLock = new Object();
+
+  private final int myMaxFiles;
+
+  GitBlameCache(@NotNull File dir) {
+    this(dir, MAX_FILES);
+  }
+
+  GitBlameCache(@NotNull File dir, int maxFiles) {
+    myDir = dir;
+    myMaxFiles = maxFiles;
+  }
+
+  @NotNull
+  static synchronized GitBlameCache getInstance() {
+    if (ourInstance == null) {
+      ourInstance = new GitBlameCache(new File(new File(PathManager.getSystemPath(), "vcs"), "git_blame"));
+    }
+    return ourInstance;
+  }
+
+  /**
+   * @return the cached blame of the file at the given revision or null if it is not cached
+   */
+  @Nullable
+  public Blame get(@NotNull String path, @NotNull String revision) {
+    synchronized (myLock) {
+      final File file = new File(getFileDir(path), revision);
+      if (!file.exists()) return null;
+      try {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+          if (in.readInt() != VERSION) return null;
+          final Blame blame = Blame.read(in, revision);
+          // the time of the last use of the file, for removing the least recently used ones
+          file.getParentFile().setLastModified(System.currentTimeMillis());
+          return blame;
+        }
+        finally {
+          in.close();
+        }
+      }
+      catch (IOException e) {
+        LOG.info("Cannot read cached blame of " + path + " at " + revision, e);
+        FileUtil.delete(file);
+        return null;
+      }
+    }
+  }
+
+  /**
+   * @param revisions revisions of the file in the order of preference
+   * @return the blame for the first of the revisions which is cached
+   */
+  @Nullable
+  public Blame findAny(@NotNull String path, @NotNull List<String> revisions) {
+    synchronized (myLock) {
+      final String[] cached = getFileDir(path).list();
+      if (cached == null || cached.length == 0) return null;
+      final Set<String> cachedSet = new HashSet<String>(Arrays.asList(cached));
+      for (String revision : revisions) {
+        if (cachedSet.contains(revision)) {
+          final Blame blame = get(path, revision);
+          if (blame != null) return blame;
+        }
+      }
+      return null;
+    }
+  }
+
+  public void put(@NotNull String path, @NotNull Blame blame) {
+    synchronized (myLock) {
+      final File dir = getFileDir(path);
+      final boolean newDir = !dir.exists();
+      if (newDir && !dir.mkdirs()) return;
+      final File file = new File(dir, blame.getRevision());
+      try {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+          out.writeInt(VERSION);
+          blame.write(out);
+        }
+        finally {
+          out.close();
+        }
+      }
+      catch (IOException e) {
+        LOG.info("Cannot cache blame of " + path + " at " + blame.getRevision(), e);
+        FileUtil.delete(file);
+        return;
+      }
+      removeOldRevisions(dir);
+      dir.setLastModified(System.currentTimeMillis());
+      if (newDir) {
+        removeLeastRecentlyUsed(myDir, myMaxFiles);
+      }
+    }
+  }
+
+  private static void removeOldRevisions(File dir) {
+    removeLeastRecentlyUsed(dir, MAX_REVISIONS_PER_FILE);
+  }
+
+  private static void removeLeastRecentlyUsed(File dir, int maxCount) {
+    final File[] files = dir.listFiles();
+    if (files == null || files.length <= maxCount) return;
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File o1, File o2) {
+        final long diff = o2.lastModified() - o1.lastModified();
+        return diff == 0 ? 0 : (diff < 0 ? -1 : 1);
+      }
+    });
+    for (int i = maxCount; i < files.length; i++) {
+      FileUtil.delete(files[i]);
+    }
+  }
+
+  /**
+   * Computes the blame of a newer version of a file from the blame of an older one: the lines which were not changed keep
+   * their commits, and the changed ranges are blamed by the blamer.
+   *
+   * @param newLines lines of the newer version with line separators, as returned by {@link #splitLines}
+   * @return the blame or null if the file changed too much, so that the whole file should be blamed
+   */
+  @Nullable
+  static List<Line> mergeChangedLines(@NotNull List<Line> oldLines, @NotNull List<String> newLines, @NotNull RangeBlamer blamer)
+    throws VcsException {
+    final String[] before = new String[oldLines.size()];
+    for (int i = 0; i < before.length; i++) {
+      before[i] = trimLineSeparator(oldLines.get(i).getText());
+    }
+    final String[] after = new String[newLines.size()];
+    for (int i = 0; i < after.length; i++) {
+      after[i] = trimLineSeparator(newLines.get(i));
+    }
+    Diff.Change change;
+    try {
+      change = Diff.buildChanges(before, after);
+    }
+    catch (FilesTooBigForDiffException e) {
+      return null;
+    }
+
+    final Line[] result = new Line[after.length];
+    final List<int[]> changedRanges = new ArrayList<int[]>();
+    int changedLines = 0;
+    int oldLine = 0;
+    int newLine = 0;
+    for (; change != null; change = change.link) {
+      while (newLine < change.line1) {
+        result[newLine] = oldLines.get(oldLine++).withText(newLines.get(newLine));
+        newLine++;
+      }
+      if (change.inserted > 0) {
+        changedRanges.add(new int[]{change.line1, change.line1 + change.inserted});
+        changedLines += change.inserted;
+      }
+      oldLine = change.line0 + change.deleted;
+      newLine = change.line1 + change.inserted;
+    }
+    while (newLine < after.length) {
+      result[newLine] = oldLines.get(oldLine++).withText(newLines.get(newLine));
+      newLine++;
+    }
+
+    if (changedRanges.size() > MAX_REBLAMED_RANGES || changedLines * 2 > after.length) {
+      return null;
+    }
+    for (int[] range : changedRanges) {
+      for (Line line : blamer.blame(range[0] + 1, range[1])) {
+        final int index = line.getLineNumber() - 1;
+        if (index < range[0] || index >= range[1]) continue;
+        result[index] = line.withText(newLines.get(index));
+      }
+    }
+    for (Line line : result) {
+      if (line == null) return null;
+    }
+    return Arrays.asList(result);
+  }
+
+  /**
+   * Splits the text into lines keeping the line separators; the last line gets a separator too, as in the output of 'git blame'
+   */
+  @NotNull
+  static List<String> splitLines(@NotNull String text) {
+    final List<String> result = new ArrayList<String>();
+    int start = 0;
+    while (start < text.length()) {
+      int end = text.indexOf('\n', start);
+      if (end < 0) {
+        result.add(text.substring(start) + "\n");
+        break;
+      }
+      result.add(text.substring(start, end + 1));
+      start = end + 1;
+    }
+    return result;
+  }
+
+  private static String trimLineSeparator(String line) {
+    int end = line.length();
+    while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+      end--;
+    }
+    return line.substring(0, end);
+  }
+
+  private File getFileDir(String path) {
+    final String name = new File(path).getName();
+    return new File(myDir, FileUtil.sanitizeFileName(name) + "." + Integer.toHexString(path.hashCode()));
+  }
+
+  interface RangeBlamer {
+    /**
+     * Blames the lines of the newer version of the file
+     *
+     * @param startLine the first line, 1-based
+     * @param endLine   the last line, inclusive
+     * @return blamed lines with their {@link Line#getLineNumber() line numbers}
+     */
+    @NotNull
+    List<Line> blame(int startLine, int endLine) throws VcsException;
+  }
+
+  /**
+   * Blame of a file at a revision: the commit and the text of every line.
+   */
+  static class Blame {
+    private final String myRevision;
+    private final List<Line> myLines;
+
+    Blame(@NotNull String revision, @NotNull List<Line> lines) {
+      myRevision = revision;
+      myLines = lines;
+    }
+
+    @NotNull
+    public String getRevision() {
+      return myRevision;
+    }
+
+    @NotNull
+    public List<Line> getLines() {
+      return myLines;
+    }
+
+    private void write(DataOutput out) throws IOException {
+      // commits are written once and referenced by index
+      final Map<String, Integer> commitIndices = new HashMap<String, Integer>();
+      final List<Line> commits = new ArrayList<Line>();
+      for (Line line : myLines) {
+        if (!commitIndices.containsKey(line.getHash())) {
+          commitIndices.put(line.getHash(), commits.size());
+          commits.add(line);
+        }
+      }
+      out.writeInt(commits.size());
+      for (Line commit : commits) {
+        IOUtil.writeString(commit.getHash(), out);
+        out.writeLong(commit.getDate().getTime());
+        IOUtil.writeString(commit.getAuthor(), out);
+      }
+      out.writeInt(myLines.size());
+      for (Line line : myLines) {
+        out.writeInt(commitIndices.get(line.getHash()));
+        IOUtil.writeString(line.getText(), out);
+      }
+    }
+
+    private static Blame read(DataInput in, String revision) throws IOException {
+      final int commitsCount = in.readInt();
+      final Line[] commits = new Line[commitsCount];
+      for (int i = 0; i < commitsCount; i++) {
+        final String hash = IOUtil.readString(in);
+        final Date date = new Date(in.readLong());
+        final String author = IOUtil.readString(in);
+        commits[i] = new Line(hash, date, author, "");
+      }
+      final int linesCount = in.readInt();
+      final List<Line> lines = new ArrayList<Line>(linesCount);
+      for (int i = 0; i < linesCount; i++) {
+        final Line commit = commits[in.readInt()];
+        lines.add(new Line(commit.getHash(), commit.getDate(), commit.getAuthor(), IOUtil.readString(in)));
+      }
+      return new Blame(revision, lines);
+    }
+  }
+
+  static class Line {
+    private final String myHash;
+    private final Date myDate;
+    private final String myAuthor;
+    private final String myText;
+    // not stored
+    private final int myLineNumber;
+
+    Line(@NotNull String hash, @NotNull Date date, @NotNull String author, @NotNull String text) {
+      this(hash, date, author, text, 0);
+    }
+
+    Line(@NotNull String hash, @NotNull Date date, @NotNull String author, @NotNull String text, int lineNumber) {
+      myHash = hash;
+      myDate = date;
+      myAuthor = author;
+      myText = text;
+      myLineNumber = lineNumber;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+
+    @NotNull
+    public Date getDate() {
+      return myDate;
+    }
+
+    @NotNull
+    public String getAuthor() {
+      return myAuthor;
+    }
+
+    /**
+     * @return text of the line with the line separator
+     */
+    @NotNull
+    public String getText() {
+      return myText;
+    }
+
+    /**
+     * @return 1-based number of the line in the output of 'git blame'
+     */
+    public int getLineNumber() {
+      return myLineNumber;
+    }
+
+    @NotNull
+    public Line withText(@NotNull String text) {
+      return new Line(myHash, myDate, myAuthor, text);
+    }
+  }
+}
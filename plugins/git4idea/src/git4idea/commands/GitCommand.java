@@ -58,6 +58,7 @@ public class GitCommand {
   public static final GitCommand REV_LIST = read("rev-list");
   public static final GitCommand RM = write("rm");
   public static final GitCommand SHOW = read("show");
+  public static final GitCommand SHOW_REF = read("show-ref");
   public static final GitCommand STASH = write("stash");
   public static final GitCommand STATUS = read("status");
   public static final GitCommand TAG = read("tag");
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.commands;
+
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.EventDispatcher;
+import com.intellij.util.ThrowableConsumer;
+import git4idea.i18n.GitBundle;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The handler that splits stdout into records separated by the given character (e.g. NUL for 'git status -z') and passes
+ * each record to the listeners as soon as it is read. Unlike {@link GitSimpleHandler}, the output is never kept in memory as a whole:
+ * only the current incomplete record is buffered. Stderr is accumulated.
+ */
+public class GitRecordHandler extends GitTextHandler {
+  private final char mySeparator;
+  /**
+   * the partial record from stdout stream
+   */
+  private final StringBuilder myRecord = new StringBuilder();
+  private final StringBuilder myStderr = new StringBuilder();
+  private final EventDispatcher<GitRecordHandlerListener> myRecordListeners = EventDispatcher.create(GitRecordHandlerListener.class);
+
+  /**
+   * A constructor
+   *
+   * @param project   a project
+   * @param vcsRoot   a process directory
+   * @param command   a command to execute
+   * @param separator a character separating records in stdout
+   */
+  public GitRecordHandler(@NotNull Project project, @NotNull VirtualFile vcsRoot, @NotNull GitCommand command, char separator) {
+    super(project, vcsRoot, command);
+    mySeparator = separator;
+  }
+
+  /**
+   * Add listener
+   *
+   * @param listener a listener to add
+   */
+  public void addRecordListener(GitRecordHandlerListener listener) {
+    super.addListener(listener);
+    myRecordListeners.addListener(listener);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void onTextAvailable(final String text, final Key outputType) {
+    if (ProcessOutputTypes.STDOUT == outputType) {
+      int start = 0;
+      for (int end = text.indexOf(mySeparator); end >= 0; end = text.indexOf(mySeparator, start)) {
+        myRecord.append(text, start, end);
+        notifyRecord();
+        start = end + 1;
+      }
+      myRecord.append(text, start, text.length());
+    }
+    else if (ProcessOutputTypes.STDERR == outputType) {
+      myStderr.append(text);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void processTerminated(final int exitCode) {
+    // the last record is not followed by a separator
+    if (myRecord.length() != 0) {
+      notifyRecord();
+    }
+    if (myVcs != null && !isStderrSuppressed() && myStderr.length() != 0) {
+      myVcs.showErrorMessages(myStderr.toString());
+    }
+  }
+
+  private void notifyRecord() {
+    final String record = myRecord.toString();
+    myRecord.setLength(0);
+    myRecordListeners.getMulticaster().onRecordAvailable(record);
+  }
+
+  /**
+   * @return stderr contents
+   */
+  public String getStderr() {
+    return myStderr.toString();
+  }
+
+  /**
+   * Execute without UI, passing records to the consumer in the order they are read. If the consumer throws an exception,
+   * the process is destroyed and the exception is rethrown from this method.
+   *
+   * @param recordConsumer the consumer of records
+   * @throws VcsException if the process failed to start, exited with an error or the consumer has thrown it
+   */
+  public void run(@NotNull final ThrowableConsumer<String, VcsException> recordConsumer) throws VcsException {
+    if (!isNoSSH()) {
+      throw new IllegalStateException("Commands that require SSH could not be run using this method");
+    }
+    final Throwable[] error = new Throwable[1];
+    addRecordListener(new GitRecordHandlerListener() {
+      public void onRecordAvailable(String record) {
+        if (error[0] != null) {
+          return;
+        }
+        try {
+          recordConsumer.consume(record);
+        }
+        catch (Throwable t) {
+          error[0] = t;
+          destroyProcess();
+        }
+      }
+
+      public void processTerminated(final int exitCode) {
+        if (error[0] == null && exitCode != 0 && !isIgnoredErrorCode(exitCode)) {
+          String msg = getStderr();
+          if (msg.length() == 0) {
+            msg = GitBundle.message("git.error.exit", exitCode);
+          }
+          error[0] = new VcsException(msg);
+        }
+      }
+
+      public void startFailed(final Throwable exception) {
+        error[0] = new VcsException("Process failed to start (" + myCommandLine.getCommandLineString() + "): " + exception.toString(), exception);
+      }
+    });
+    runInCurrentThread(null);
+    if (error[0] instanceof VcsException) {
+      throw (VcsException)error[0];
+    }
+    if (error[0] instanceof RuntimeException) {
+      throw (RuntimeException)error[0];
+    }
+    if (error[0] instanceof Error) {
+      throw (Error)error[0];
+    }
+  }
+}
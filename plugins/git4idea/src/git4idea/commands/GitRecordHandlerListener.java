@@ -0,0 +1,30 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.commands;
+
+import com.intellij.openapi.vcs.ProcessEventListener;
+
+/**
+ * Listener for record events of {@link GitRecordHandler}
+ */
+public interface GitRecordHandlerListener extends ProcessEventListener {
+  /**
+   * This method is invoked when a complete record of stdout becomes available.
+   *
+   * @param record the text of the record without the separator
+   */
+  void onRecordAvailable(String record);
+}
@@ -46,7 +46,7 @@ import java.util.List;
  * Git history provider implementation
  */
 public class GitHistoryProvider implements VcsHistoryProvider, VcsCacheableHistorySessionFactory<Boolean, VcsAbstractHistorySession>,
-                                           VcsBaseRevisionAdviser {
+                                           VcsBaseRevisionAdviser, VcsPagedHistoryProvider {
   /**
    * logger instance
    */
@@ -182,9 +182,27 @@ public class GitHistoryProvider implements VcsHistoryProvider, VcsCacheableHisto
   public void reportAppendableHistory(final FilePath path, final VcsAppendableHistorySessionPartner partner) throws VcsException {
     final VcsAbstractHistorySession emptySession = createSession(path, Collections.<VcsFileRevision>emptyList(), null);
     partner.reportCreatedEmptySession(emptySession);
+    reportHistory(path, null, partner);
+  }
+
+  @Override
+  public void reportHistoryAfter(FilePath path, @NotNull VcsFileRevision lastLoaded, VcsAppendableHistorySessionPartner partner)
+    throws VcsException {
+    if (!reportHistory(path, (GitFileRevision)lastLoaded, partner)) {
+      // the revision is not in the history any more: load it from the beginning instead of the outdated part
+      log.info("Revision " + lastLoaded.getRevisionNumber().asString() + " not found in the history of " + path + ", reloading it");
+      reportAppendableHistory(path, partner);
+    }
+  }
+
+  /**
+   * @return false if startAfter was not found in the history, nothing is reported then
+   */
+  private boolean reportHistory(final FilePath path, @Nullable GitFileRevision startAfter, final VcsAppendableHistorySessionPartner partner)
+    throws VcsException {
     final GitExecutableValidator validator = GitVcs.getInstance(myProject).getExecutableValidator();
     try {
-      GitHistoryUtils.history(myProject, path, null, new Consumer<GitFileRevision>() {
+      return GitHistoryUtils.history(myProject, path, null, startAfter, new Consumer<GitFileRevision>() {
         public void consume(GitFileRevision gitFileRevision) {
           partner.acceptRevision(gitFileRevision);
         }
@@ -197,6 +215,7 @@ public class GitHistoryProvider implements VcsHistoryProvider, VcsCacheableHisto
       });
     } catch (VcsException e) {
       validator.showNotificationOrThrow(e);
+      return true;
     }
   }
 
@@ -18,9 +18,11 @@ package git4idea.history;
 import com.intellij.execution.process.ProcessOutputTypes;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.*;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FilePathImpl;
 import com.intellij.openapi.vcs.FileStatus;
@@ -35,6 +37,7 @@ import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.AsynchConsumer;
 import com.intellij.util.Consumer;
+import com.intellij.util.ThrowableConsumer;
 import com.intellij.util.concurrency.Semaphore;
 import git4idea.GitBranch;
 import git4idea.GitFileRevision;
@@ -48,6 +51,7 @@ import git4idea.history.browser.SymbolicRefs;
 import git4idea.history.browser.SymbolicRefsI;
 import git4idea.history.wholeTree.AbstractHash;
 import git4idea.history.wholeTree.CommitHashPlusParents;
+import git4idea.history.wholeTree.GitCommitGraph;
 import git4idea.history.wholeTree.GitCommitsSequentialIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -318,16 +322,40 @@ public class GitHistoryUtils {
    */
   public static void history(final Project project, FilePath path, @Nullable VirtualFile root, final Consumer<GitFileRevision> consumer,
                              final Consumer<VcsException> exceptionConsumer, String... parameters) throws VcsException {
+    history(project, path, root, null, consumer, exceptionConsumer, parameters);
+  }
+
+  /**
+   * Same as {@link #history(Project, FilePath, VirtualFile, Consumer, Consumer, String...)}, but reports only the revisions
+   * which go after the given one. The loading stops with {@link ProcessCanceledException} if the current progress is cancelled.
+   *
+   * @param startAfter the last revision which was already loaded; null to load the whole history
+   * @return false if startAfter was not met in the history (e.g. the history was rewritten since it was loaded), nothing is reported then
+   */
+  public static boolean history(final Project project, FilePath path, @Nullable VirtualFile root, @Nullable GitFileRevision startAfter,
+                             final Consumer<GitFileRevision> consumer,
+                             final Consumer<VcsException> exceptionConsumer, String... parameters) throws VcsException {
     // adjust path using change manager
     path = getLastCommitName(project, path);
     final VirtualFile finalRoot = (root == null ? GitUtil.getGitRoot(path) : root);
+    final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
     final GitLogParser logParser = new GitLogParser(project, GitLogParser.NameStatus.NAME, HASH, COMMIT_TIME, AUTHOR_NAME, AUTHOR_EMAIL, COMMITTER_NAME, COMMITTER_EMAIL, PARENTS,
                                                     SUBJECT, BODY, RAW_BODY, AUTHOR_TIME);
 
     final AtomicReference<String> firstCommit = new AtomicReference<String>("HEAD");
     final AtomicReference<String> firstCommitParent = new AtomicReference<String>("HEAD");
     final AtomicReference<FilePath> currentPath = new AtomicReference<FilePath>(path);
-    final AtomicReference<GitLineHandler> logHandler = new AtomicReference<GitLineHandler>();
+    final AtomicReference<GitRecordHandler> logHandler = new AtomicReference<GitRecordHandler>();
+    // the records are skipped until this one is met
+    final AtomicReference<String> skipUntil = new AtomicReference<String>();
+    if (startAfter != null) {
+      skipUntil.set(((GitRevisionNumber)startAfter.getRevisionNumber()).getRev());
+      if (!path.equals(startAfter.getPath())) {
+        // the revision is from before a rename: continue from it, since the log of the current path doesn't contain it
+        currentPath.set(startAfter.getPath());
+        firstCommitParent.set(skipUntil.get());
+      }
+    }
 
     final Consumer<GitLogRecord> resultAdapter = new Consumer<GitLogRecord>() {
       public void consume(GitLogRecord record) {
@@ -344,6 +372,12 @@ public class GitHistoryUtils {
         } else {
           firstCommitParent.set(parentHashes[0]);
         }
+        if (skipUntil.get() != null) {
+          if (skipUntil.get().equals(record.getHash())) {
+            skipUntil.set(null);
+          }
+          return;
+        }
         final String message = record.getFullMessage();
 
         FilePath revisionPath;
@@ -368,15 +402,18 @@ public class GitHistoryUtils {
 
     while (currentPath.get() != null && firstCommitParent.get() != null) {
       logHandler.set(getLogHandler(project, finalRoot, logParser, currentPath.get(), firstCommitParent.get(), parameters));
-      final MyTokenAccumulator accumulator = new MyTokenAccumulator(logParser);
       final Semaphore semaphore = new Semaphore();
 
-      logHandler.get().addLineListener(new GitLineHandlerAdapter() {
+      logHandler.get().addRecordListener(new GitRecordHandlerListener() {
         @Override
-        public void onLineAvailable(String line, Key outputType) {
-          final GitLogRecord record = accumulator.acceptLine(line);
-          if (record != null) {
-            resultAdapter.consume(record);
+        public void onRecordAvailable(String record) {
+          // records are passed as soon as they are read, so the first revisions are shown before the whole log is loaded
+          if (indicator != null && indicator.isCanceled()) {
+            logHandler.get().cancel();
+            return;
+          }
+          if (!StringUtil.isEmptyOrSpaces(record)) {
+            resultAdapter.consume(logParser.parseOneRecord(record));
           }
         }
 
@@ -392,28 +429,23 @@ public class GitHistoryUtils {
 
         @Override
         public void processTerminated(int exitCode) {
-          try {
-            super.processTerminated(exitCode);
-            final GitLogRecord record = accumulator.processLast();
-            if (record != null) {
-              resultAdapter.consume(record);
-            }
-          } finally {
-            semaphore.up();
-          }
+          semaphore.up();
         }
       });
       semaphore.down();
       logHandler.get().start();
       semaphore.waitFor();
+      if (indicator != null) {
+        indicator.checkCanceled();
+      }
 
       currentPath.set(getFirstCommitRenamePath(project, finalRoot, firstCommit.get(), currentPath.get()));
     }
-
+    return skipUntil.get() == null;
   }
 
-  private static GitLineHandler getLogHandler(Project project, VirtualFile root, GitLogParser parser, FilePath path, String lastCommit, String... parameters) {
-    final GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
+  private static GitRecordHandler getLogHandler(Project project, VirtualFile root, GitLogParser parser, FilePath path, String lastCommit, String... parameters) {
+    final GitRecordHandler h = new GitRecordHandler(project, root, GitCommand.LOG, GitLogParser.RECORD_START.charAt(0));
     h.setNoSSH(true);
     h.setStdoutSuppressed(true);
     h.addParameters("--name-only", parser.getPretty(), "--encoding=UTF-8", lastCommit);
@@ -454,45 +486,6 @@ public class GitHistoryUtils {
     return null;
   }
 
-  private static class MyTokenAccumulator {
-    private final StringBuilder myBuffer = new StringBuilder();
-
-    private boolean myNotStarted = true;
-    private GitLogParser myParser;
-
-    public MyTokenAccumulator(GitLogParser parser) {
-      myParser = parser;
-    }
-
-    @Nullable
-    public GitLogRecord acceptLine(String s) {
-      final boolean lineEnd = s.startsWith(GitLogParser.RECORD_START);
-      if (lineEnd && (!myNotStarted)) {
-        final String line = myBuffer.toString();
-        myBuffer.setLength(0);
-        myBuffer.append(s.substring(GitLogParser.RECORD_START.length()));
-
-        return processResult(line);
-      }
-      else {
-        myBuffer.append(lineEnd ? s.substring(GitLogParser.RECORD_START.length()) : s);
-        myBuffer.append("\n");
-      }
-      myNotStarted = false;
-
-      return null;
-    }
-
-    public GitLogRecord processLast() {
-      return processResult(myBuffer.toString());
-    }
-
-    private GitLogRecord processResult(final String line) {
-      return myParser.parseOneRecord(line);
-    }
-
-  }
-
   /**
    * Get history for the file
    *
@@ -589,7 +582,7 @@ public class GitHistoryUtils {
     // adjust path using change manager
     path = getLastCommitName(project, path);
     final VirtualFile root = GitUtil.getGitRoot(path);
-    final GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
+    final GitRecordHandler h = new GitRecordHandler(project, root, GitCommand.LOG, GitLogParser.RECORD_START.charAt(0));
     final GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.STATUS, SHORT_HASH, HASH, COMMIT_TIME, AUTHOR_NAME, AUTHOR_TIME, AUTHOR_EMAIL,
                                                  COMMITTER_NAME, COMMITTER_EMAIL, SHORT_PARENTS, REF_NAMES, SUBJECT, BODY, RAW_BODY);
     h.setNoSSH(true);
@@ -607,29 +600,27 @@ public class GitHistoryUtils {
 
     final VcsException[] exc = new VcsException[1];
     final Semaphore semaphore = new Semaphore();
-    final StringBuilder sb = new StringBuilder();
-    final Ref<Boolean> skipFirst = new Ref<Boolean>(true);
-    h.addLineListener(new GitLineHandlerAdapter() {
+    h.addRecordListener(new GitRecordHandlerListener() {
       @Override
-      public void onLineAvailable(final String line, final Key outputType) {
+      public void onRecordAvailable(final String record) {
         try {
-          if (ProcessOutputTypes.STDOUT.equals(outputType)) {
-            if (isCanceled != null && isCanceled.get()) {
-              h.cancel();
-              return;
-            }
-            //if (line.charAt(line.length() - 1) != '\u0003') {
-            if ((! line.startsWith("\u0001")) || skipFirst.get()) {
-              if (sb.length() > 0) {
-                sb.append("\n");
-              }
-              sb.append(line);
-              skipFirst.set(false);
-              return;
-            }
-            takeLine(project, line, sb, parser, refs, root, exc, h, gitCommitConsumer);
+          if (exc[0] != null) {
+            return;
           }
-        } catch (ProcessCanceledException e) {
+          if (isCanceled != null && isCanceled.get()) {
+            h.cancel();
+            return;
+          }
+          if (StringUtil.isEmptyOrSpaces(record)) {
+            return;
+          }
+          gitCommitConsumer.consume(createCommit(project, refs, root, parser.parseOneRecord(record)));
+        }
+        catch (VcsException e) {
+          exc[0] = e;
+          h.cancel();
+        }
+        catch (ProcessCanceledException e) {
           h.cancel();
           semaphore.up();
         }
@@ -646,37 +637,12 @@ public class GitHistoryUtils {
     semaphore.down();
     h.start();
     semaphore.waitFor();
-    takeLine(project, "", sb, parser, refs, root, exc, h, gitCommitConsumer);
     gitCommitConsumer.finished();
     if (exc[0] != null) {
       throw exc[0];
     }
   }
 
-  private static void takeLine(final Project project, String line,
-                               StringBuilder sb,
-                               GitLogParser parser,
-                               SymbolicRefsI refs,
-                               VirtualFile root,
-                               VcsException[] exc, GitLineHandler h, AsynchConsumer<GitCommit> gitCommitConsumer) {
-    final String text = sb.toString();
-    sb.setLength(0);
-    sb.append(line);
-    if (text.length() == 0) return;
-    GitLogRecord record = parser.parseOneRecord(text);
-
-    final GitCommit gitCommit;
-    try {
-      gitCommit = createCommit(project, refs, root, record);
-    }
-    catch (VcsException e) {
-      exc[0] = e;
-      h.cancel();
-      return;
-    }
-    gitCommitConsumer.consume(gitCommit);
-  }
-
   private static GitCommit createCommit(Project project, SymbolicRefsI refs, VirtualFile root, GitLogRecord record) throws VcsException {
     GitCommit gitCommit;
     final Collection<String> currentRefs = record.getRefs();
@@ -911,6 +877,68 @@ public class GitHistoryUtils {
     consumer.finished();
   }
 
+  /**
+   * @return hashes of HEAD and of all refs of the repository (tags are given both as tag objects and as commits they point to)
+   */
+  public static Set<String> getRefTips(Project project, VirtualFile root) throws VcsException {
+    final GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.SHOW_REF);
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.setStdoutSuppressed(true);
+    // a fresh repository has no refs
+    h.ignoreErrorCode(1);
+    h.addParameters("--head", "--dereference", "--hash");
+    final Set<String> tips = new HashSet<String>();
+    for (String line : StringUtil.splitByLines(h.run())) {
+      final String hash = line.trim();
+      if (hash.length() > 0) {
+        tips.add(hash);
+      }
+    }
+    return tips;
+  }
+
+  /**
+   * Reads hashes, parents, commit times and authors of the commits reachable from the given start points, but not from the excluded
+   * points. Commits are passed to the consumer as soon as they are read.
+   */
+  public static void readCommitGraph(Project project, VirtualFile root, Collection<String> startPoints, Collection<String> excluded,
+                                     final ThrowableConsumer<GitCommitGraph.Entry, VcsException> consumer) throws VcsException {
+    final GitLogParser parser = new GitLogParser(project, HASH, SHORT_HASH, PARENTS, COMMIT_TIME, AUTHOR_NAME);
+    GitRecordHandler h = createCommitGraphHandler(project, root, parser);
+    h.addParameters(new ArrayList<String>(startPoints));
+    if (!excluded.isEmpty()) {
+      h.addParameters("--not");
+      h.addParameters(new ArrayList<String>(excluded));
+    }
+    if (h.isLargeCommandLine()) {
+      // too many refs, commits which are already known will be skipped by the consumer
+      h = createCommitGraphHandler(project, root, parser);
+      h.addParameters("--all");
+    }
+    h.endOptions();
+    h.run(new ThrowableConsumer<String, VcsException>() {
+      @Override
+      public void consume(String record) throws VcsException {
+        if (StringUtil.isEmptyOrSpaces(record)) {
+          return;
+        }
+        final GitLogRecord logRecord = parser.parseOneRecord(record);
+        consumer.consume(new GitCommitGraph.Entry(logRecord.getHash(), logRecord.getShortHash(), logRecord.getParentsHashes(),
+                                                  logRecord.getLongTimeStamp() * 1000, logRecord.getAuthorName()));
+      }
+    });
+  }
+
+  private static GitRecordHandler createCommitGraphHandler(Project project, VirtualFile root, GitLogParser parser) {
+    final GitRecordHandler h = new GitRecordHandler(project, root, GitCommand.LOG, GitLogParser.RECORD_START.charAt(0));
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.setStdoutSuppressed(true);
+    h.addParameters(parser.getPretty(), "--encoding=UTF-8", "--full-history");
+    return h;
+  }
+
   /**
    * Get name of the file in the last commit. If file was renamed, returns the previous name.
    *
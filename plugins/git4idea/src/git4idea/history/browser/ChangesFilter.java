@@ -161,11 +161,15 @@ public class ChangesFilter {
       };
       myMemoryFilter = new MemoryFilter() {
         public boolean applyInMemory(GitCommit commit) {
-          return myPattern.matcher(commit.getAuthor()).matches();
+          return matches(commit.getAuthor());
         }
       };
     }
 
+    public boolean matches(final String authorName) {
+      return myPattern.matcher(authorName).matches();
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
@@ -268,6 +272,13 @@ public class ChangesFilter {
       };
     }
 
+    /**
+     * @return commits before this date are accepted
+     */
+    public Date getDate() {
+      return myDate;
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
@@ -318,6 +329,13 @@ public class ChangesFilter {
       };
     }
 
+    /**
+     * @return commits after this date are accepted
+     */
+    public Date getDate() {
+      return myDate;
+    }
+
     public CommandParametersFilter getCommandParametersFilter() {
       return myCommandParametersFilter;
     }
@@ -0,0 +1,590 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.Getter;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import com.intellij.util.ThrowableConsumer;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.PagedFileStorage;
+import com.intellij.util.io.PersistentHashMap;
+import com.intellij.util.io.PersistentStringEnumerator;
+import com.intellij.util.io.ResizeableMappedFile;
+import gnu.trove.TIntObjectHashMap;
+import git4idea.history.GitHistoryUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Persistent commit graph of one repository root. Commit hashes are mapped to int ids; the commit time, the author and the ids of
+ * the parents of every commit are kept in memory-mapped files, so the skeleton of the log is available without running 'git log'
+ * over the whole history.
+ * <p/>
+ * The graph is updated incrementally: only commits reachable from ref tips which were not seen at the previous update are read.
+ * Commits of deleted refs stay in the storage, but they are not walked, because walks start from the current tips only.
+ */
+public class GitCommitGraph {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.GitCommitGraph");
+  private static final PagedFileStorage.StorageLock ourLock = new PagedFileStorage.StorageLock();
+  private static final int VERSION = 1;
+
+  // record: sha-1 (20 bytes), length of the abbreviated hash (1, 0 if the commit is not read yet), commit time (8), author (4),
+  // offset in the parents file (4), number of parents (4)
+  private static final int HASH_SIZE = 20;
+  private static final int ABBREV_OFFSET = 20;
+  private static final int TIME_OFFSET = 21;
+  private static final int AUTHOR_OFFSET = 29;
+  private static final int PARENTS_OFFSET = 33;
+  private static final int PARENTS_COUNT_OFFSET = 37;
+  private static final int RECORD_SIZE = 41;
+
+  private final File myDir;
+  private PersistentHashMap<String, Integer> myIds;
+  private PersistentStringEnumerator myAuthors;
+  private ResizeableMappedFile myCommits;
+  private ResizeableMappedFile myParents;
+  private Set<String> myTips;
+  private int myCount;
+  private int myParentsCount;
+  // in-memory copy used for walking; dropped when the graph changes
+  private Snapshot mySnapshot;
+
+  public GitCommitGraph(@NotNull File dir) throws IOException {
+    myDir = dir;
+    if (!isValid()) {
+      FileUtil.delete(myDir);
+    }
+    try {
+      open();
+    }
+    catch (IOException e) {
+      LOG.info("Commit graph at " + myDir.getPath() + " is corrupted, rebuilding", e);
+      closeStorages();
+      FileUtil.delete(myDir);
+      open();
+    }
+  }
+
+  private boolean isValid() {
+    if (getUpdateMarker().exists()) {
+      // the previous update was interrupted
+      return false;
+    }
+    final File versionFile = getVersionFile();
+    if (!versionFile.exists()) {
+      return false;
+    }
+    try {
+      final DataInputStream in = new DataInputStream(new FileInputStream(versionFile));
+      try {
+        return in.readInt() == VERSION;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  private void open() throws IOException {
+    myDir.mkdirs();
+    final File versionFile = getVersionFile();
+    if (!versionFile.exists()) {
+      final DataOutputStream out = new DataOutputStream(new FileOutputStream(versionFile));
+      try {
+        out.writeInt(VERSION);
+      }
+      finally {
+        out.close();
+      }
+    }
+    myIds = new PersistentHashMap<String, Integer>(new File(myDir, "ids"), new EnumeratorStringDescriptor(), new EnumeratorIntegerDescriptor());
+    myAuthors = new PersistentStringEnumerator(new File(myDir, "authors"));
+    synchronized (ourLock) {
+      myCommits = new ResizeableMappedFile(new File(myDir, "commits"), RECORD_SIZE * 1024, ourLock);
+      myParents = new ResizeableMappedFile(new File(myDir, "parents"), 4 * 1024, ourLock);
+      myCount = (int)(myCommits.length() / RECORD_SIZE);
+      myParentsCount = (int)(myParents.length() / 4);
+    }
+    myTips = loadTips();
+  }
+
+  private File getVersionFile() {
+    return new File(myDir, "version");
+  }
+
+  private File getUpdateMarker() {
+    return new File(myDir, "updating");
+  }
+
+  private File getTipsFile() {
+    return new File(myDir, "tips");
+  }
+
+  /**
+   * Reads commits of new ref tips from git and stores them in the graph
+   */
+  public synchronized void update(@NotNull Project project, @NotNull VirtualFile root) throws VcsException {
+    if (myIds == null) {
+      throw new VcsException("Commit graph of " + root.getPath() + " is closed");
+    }
+    final Set<String> current = GitHistoryUtils.getRefTips(project, root);
+    final Set<String> newTips = new HashSet<String>(current);
+    newTips.removeAll(myTips);
+    try {
+      if (!newTips.isEmpty()) {
+        // old tips which still exist are excluded: their history is already in the graph
+        final Set<String> known = new HashSet<String>(myTips);
+        known.retainAll(current);
+        if (!getUpdateMarker().createNewFile()) {
+          LOG.info("Update marker already exists in " + myDir.getPath());
+        }
+        final long start = System.currentTimeMillis();
+        final int countBefore = myCount;
+        GitHistoryUtils.readCommitGraph(project, root, newTips, known, new ThrowableConsumer<Entry, VcsException>() {
+          @Override
+          public void consume(Entry entry) throws VcsException {
+            try {
+              add(entry);
+            }
+            catch (IOException e) {
+              throw new VcsException(e);
+            }
+          }
+        });
+        LOG.debug("Commit graph of " + root.getPath() + ": " + (myCount - countBefore) + " commits added in " +
+                  (System.currentTimeMillis() - start) + " ms");
+      }
+      if (!current.equals(myTips)) {
+        setTips(current);
+      }
+      force();
+      FileUtil.delete(getUpdateMarker());
+    }
+    catch (IOException e) {
+      throw new VcsException(e);
+    }
+  }
+
+  /**
+   * Adds a commit to the graph. Commits which are already in the graph are skipped.
+   */
+  public synchronized void add(@NotNull Entry entry) throws IOException {
+    final int id = getOrCreateId(entry.getHash());
+    final int[] parents = new int[entry.getParents().length];
+    for (int i = 0; i < parents.length; i++) {
+      parents[i] = getOrCreateId(entry.getParents()[i]);
+    }
+    final int author = myAuthors.enumerate(entry.getAuthor());
+    synchronized (ourLock) {
+      final int offset = id * RECORD_SIZE;
+      if (myCommits.get(offset + ABBREV_OFFSET) != 0) {
+        return;
+      }
+      for (int i = 0; i < parents.length; i++) {
+        myParents.putInt((myParentsCount + i) * 4, parents[i]);
+      }
+      myCommits.putLong(offset + TIME_OFFSET, entry.getTime());
+      myCommits.putInt(offset + AUTHOR_OFFSET, author);
+      myCommits.putInt(offset + PARENTS_OFFSET, myParentsCount);
+      myCommits.putInt(offset + PARENTS_COUNT_OFFSET, parents.length);
+      myCommits.put(offset + ABBREV_OFFSET, (byte)Math.max(1, Math.min(entry.getShortHash().length(), 2 * HASH_SIZE)));
+      myParentsCount += parents.length;
+    }
+    mySnapshot = null;
+  }
+
+  private int getOrCreateId(String hash) throws IOException {
+    final Integer existing = myIds.get(hash);
+    if (existing != null) {
+      return existing;
+    }
+    final int id = myCount++;
+    final byte[] record = new byte[RECORD_SIZE];
+    final byte[] bytes = parseHash(hash);
+    System.arraycopy(bytes, 0, record, 0, Math.min(bytes.length, HASH_SIZE));
+    synchronized (ourLock) {
+      myCommits.put(id * RECORD_SIZE, record, 0, RECORD_SIZE);
+    }
+    myIds.put(hash, id);
+    return id;
+  }
+
+  public synchronized Set<String> getTips() {
+    return Collections.unmodifiableSet(myTips);
+  }
+
+  /**
+   * Sets the ref tips the walks start from
+   */
+  public synchronized void setTips(@NotNull Set<String> tips) throws IOException {
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getTipsFile())));
+    try {
+      out.writeInt(tips.size());
+      for (String tip : tips) {
+        out.writeUTF(tip);
+      }
+    }
+    finally {
+      out.close();
+    }
+    myTips = new HashSet<String>(tips);
+    mySnapshot = null;
+  }
+
+  private Set<String> loadTips() throws IOException {
+    final File file = getTipsFile();
+    final Set<String> tips = new HashSet<String>();
+    if (file.exists()) {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+          tips.add(in.readUTF());
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    return tips;
+  }
+
+  public synchronized int getCommitCount() {
+    return myCount;
+  }
+
+  public synchronized void force() {
+    myIds.force();
+    myAuthors.force();
+    synchronized (ourLock) {
+      myCommits.force();
+      myParents.force();
+    }
+  }
+
+  public synchronized void close() {
+    try {
+      force();
+    }
+    finally {
+      closeStorages();
+    }
+  }
+
+  private void closeStorages() {
+    try {
+      if (myIds != null) myIds.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    try {
+      if (myAuthors != null) myAuthors.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    synchronized (ourLock) {
+      if (myCommits != null) myCommits.close();
+      if (myParents != null) myParents.close();
+    }
+    myIds = null;
+    myAuthors = null;
+    myCommits = null;
+    myParents = null;
+  }
+
+  /**
+   * Creates a walk over the commits reachable from the current tips. The walk is not affected by later updates of the graph.
+   */
+  @NotNull
+  public synchronized Walk createWalk() throws IOException {
+    if (myIds == null) {
+      throw new IOException("Commit graph at " + myDir.getPath() + " is closed");
+    }
+    if (mySnapshot == null) {
+      mySnapshot = new Snapshot();
+    }
+    return new Walk(mySnapshot);
+  }
+
+  /**
+   * Immutable in-memory copy of the graph restricted to the commits reachable from the tips, in the order of 'git log --date-order':
+   * no parent is shown before all of its children, and among the commits which can be shown next the newest goes first.
+   */
+  private class Snapshot {
+    private final byte[] myHashes;
+    private final byte[] myAbbreviations;
+    private final long[] myTimes;
+    private final int[] myAuthorIds;
+    private final int[] myParentOffsets;
+    private final int[] myParentCounts;
+    private final int[] myParentIds;
+    private final TIntObjectHashMap<String> myAuthorNames = new TIntObjectHashMap<String>();
+    private final int[] myOrder;
+
+    private Snapshot() throws IOException {
+      final int count = myCount;
+      myHashes = new byte[count * HASH_SIZE];
+      myAbbreviations = new byte[count];
+      myTimes = new long[count];
+      myAuthorIds = new int[count];
+      myParentOffsets = new int[count];
+      myParentCounts = new int[count];
+      myParentIds = new int[myParentsCount];
+      synchronized (ourLock) {
+        for (int id = 0; id < count; id++) {
+          final int offset = id * RECORD_SIZE;
+          myCommits.get(offset, myHashes, id * HASH_SIZE, HASH_SIZE);
+          myAbbreviations[id] = myCommits.get(offset + ABBREV_OFFSET);
+          myTimes[id] = myCommits.getLong(offset + TIME_OFFSET);
+          myAuthorIds[id] = myCommits.getInt(offset + AUTHOR_OFFSET);
+          myParentOffsets[id] = myCommits.getInt(offset + PARENTS_OFFSET);
+          myParentCounts[id] = myCommits.getInt(offset + PARENTS_COUNT_OFFSET);
+        }
+        for (int i = 0; i < myParentIds.length; i++) {
+          myParentIds[i] = myParents.getInt(i * 4);
+        }
+      }
+      final int[] tips = new int[myTips.size()];
+      int tipsCount = 0;
+      for (String tip : myTips) {
+        final Integer id = myIds.get(tip);
+        if (id != null && myAbbreviations[id] != 0) {
+          tips[tipsCount++] = id;
+        }
+      }
+      myOrder = sort(Arrays.copyOf(tips, tipsCount));
+      for (int id : myOrder) {
+        final int author = myAuthorIds[id];
+        if (!myAuthorNames.containsKey(author)) {
+          myAuthorNames.put(author, myAuthors.valueOf(author));
+        }
+      }
+    }
+
+    private int[] sort(int[] tips) {
+      // number of children of a commit which are not shown yet
+      final int[] childrenCount = new int[myTimes.length];
+      final BitSet reachable = new BitSet(myTimes.length);
+      final int[] stack = new int[myTimes.length];
+      int stackSize = 0;
+      for (int tip : tips) {
+        if (!reachable.get(tip)) {
+          reachable.set(tip);
+          stack[stackSize++] = tip;
+        }
+      }
+      int reachableCount = 0;
+      while (stackSize > 0) {
+        final int id = stack[--stackSize];
+        ++reachableCount;
+        for (int i = 0; i < myParentCounts[id]; i++) {
+          final int parent = myParentIds[myParentOffsets[id] + i];
+          if (myAbbreviations[parent] == 0) {
+            // the parent is out of the graph, e.g. in a shallow clone
+            continue;
+          }
+          ++childrenCount[parent];
+          if (!reachable.get(parent)) {
+            reachable.set(parent);
+            stack[stackSize++] = parent;
+          }
+        }
+      }
+
+      final PriorityQueue<Integer> queue = new PriorityQueue<Integer>(Math.max(1, tips.length), new Comparator<Integer>() {
+        @Override
+        public int compare(Integer id1, Integer id2) {
+          final long t1 = myTimes[id1];
+          final long t2 = myTimes[id2];
+          return t1 > t2 ? -1 : t1 < t2 ? 1 : id2.compareTo(id1);
+        }
+      });
+      for (int tip : tips) {
+        if (childrenCount[tip] == 0) {
+          queue.add(tip);
+        }
+      }
+      final int[] order = new int[reachableCount];
+      int size = 0;
+      while (!queue.isEmpty()) {
+        final int id = queue.poll();
+        order[size++] = id;
+        for (int i = 0; i < myParentCounts[id]; i++) {
+          final int parent = myParentIds[myParentOffsets[id] + i];
+          if (myAbbreviations[parent] != 0 && --childrenCount[parent] == 0) {
+            queue.add(parent);
+          }
+        }
+      }
+      // cycles are impossible in a commit graph, but a corrupted storage should not make commits disappear silently
+      if (size != order.length) {
+        LOG.info("Commit graph at " + myDir.getPath() + " is inconsistent: " + size + " of " + order.length + " commits are ordered");
+        return Arrays.copyOf(order, size);
+      }
+      return order;
+    }
+
+    private String getHash(int id, boolean abbreviated) {
+      // commits out of the graph have no known abbreviation
+      final int length = abbreviated && myAbbreviations[id] != 0 ? myAbbreviations[id] : 2 * HASH_SIZE;
+      final char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        final int b = myHashes[id * HASH_SIZE + i / 2];
+        chars[i] = Character.forDigit((i % 2 == 0 ? b >> 4 : b) & 0xF, 16);
+      }
+      return new String(chars);
+    }
+
+    private CommitHashPlusParents createCommit(int id) {
+      final String[] parents = new String[myParentCounts[id]];
+      for (int i = 0; i < parents.length; i++) {
+        parents[i] = getHash(myParentIds[myParentOffsets[id] + i], true);
+      }
+      return new CommitHashPlusParents(getHash(id, true), parents, myTimes[id], myAuthorNames.get(myAuthorIds[id]));
+    }
+  }
+
+  /**
+   * Reads commits from a snapshot of the graph page by page, remembering the position of the last read commit so that the next page
+   * does not have to skip the beginning of the log again.
+   */
+  public static class Walk {
+    private final Snapshot mySnapshot;
+    private int myLastPosition = -1;
+    private long myLastTime = -1;
+
+    private Walk(Snapshot snapshot) {
+      mySnapshot = snapshot;
+    }
+
+    public int size() {
+      return mySnapshot.myOrder.length;
+    }
+
+    /**
+     * Passes commits to the consumer in the order of 'git log --date-order'
+     *
+     * @param continuation  only commits not newer than this time are passed (the time of the last commit of the previous page,
+     *                      which is passed again), -1 to start from the beginning
+     * @param before        only commits older than this time are passed
+     * @param after         only commits newer than this time are passed
+     * @param authorFilter  author name condition, null to pass commits of all authors
+     * @param maxCount      the maximum number of passed commits, -1 for no limit
+     */
+    public void load(long continuation, long before, long after, @Nullable Condition<String> authorFilter, int maxCount,
+                     @NotNull Consumer<CommitHashPlusParents> consumer, @Nullable Getter<Boolean> isCanceled) {
+      final int[] order = mySnapshot.myOrder;
+      final long[] times = mySnapshot.myTimes;
+      int position = 0;
+      if (continuation >= 0 && myLastPosition >= 0 && myLastTime == continuation) {
+        position = myLastPosition;
+      }
+      int count = 0;
+      try {
+        for (; position < order.length && (maxCount < 0 || count < maxCount); position++) {
+          final int id = order[position];
+          final long time = times[id];
+          if (continuation >= 0 && time > continuation || time >= before || time <= after) {
+            continue;
+          }
+          if (authorFilter != null && !authorFilter.value(mySnapshot.myAuthorNames.get(mySnapshot.myAuthorIds[id]))) {
+            continue;
+          }
+          if ((count & 0xFF) == 0 && isCanceled != null && isCanceled.get()) {
+            return;
+          }
+          consumer.consume(mySnapshot.createCommit(id));
+          myLastPosition = position;
+          myLastTime = time;
+          ++count;
+        }
+      }
+      catch (ProcessCanceledException e) {
+        // the log is closed
+      }
+    }
+  }
+
+  /**
+   * Commit data read from git
+   */
+  public static class Entry {
+    private final String myHash;
+    private final String myShortHash;
+    private final String[] myParents;
+    private final long myTime;
+    private final String myAuthor;
+
+    /**
+     * @param hash      full hash
+     * @param shortHash abbreviated hash as shown by git
+     * @param parents   full hashes of parents
+     * @param time      commit time in ms
+     * @param author    author name
+     */
+    public Entry(@NotNull String hash, @NotNull String shortHash, @NotNull String[] parents, long time, @NotNull String author) {
+      myHash = hash;
+      myShortHash = shortHash;
+      myParents = parents;
+      myTime = time;
+      myAuthor = author;
+    }
+
+    public String getHash() {
+      return myHash;
+    }
+
+    public String getShortHash() {
+      return myShortHash;
+    }
+
+    public String[] getParents() {
+      return myParents;
+    }
+
+    public long getTime() {
+      return myTime;
+    }
+
+    public String getAuthor() {
+      return myAuthor;
+    }
+  }
+
+  private static byte[] parseHash(String hash) {
+    final byte[] bytes = new byte[hash.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte)((Character.digit(hash.charAt(2 * i), 16) << 4) | Character.digit(hash.charAt(2 * i + 1), 16));
+    }
+    return bytes;
+  }
+}
@@ -20,6 +20,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.FilePathImpl;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.FilePathsHelper;
@@ -39,6 +40,7 @@ import com.intellij.util.io.EnumeratorStringDescriptor;
 import git4idea.GitRevisionNumber;
 import git4idea.history.GitHistoryUtils;
 import git4idea.history.browser.SHAHash;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.util.*;
@@ -66,6 +68,9 @@ public class GitCommitsSequentialIndex implements GitCommitsSequentially {
   private final File myDir;
   // loaded roots to files mapping
   private SmallMapSerializer<String, String> myState;
+  private final File myGraphsDir;
+  // root path -> opened commit graph
+  private final Map<String, GitCommitGraph> myGraphs;
   private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.GitCommitsSequentialIndex");
 
   public GitCommitsSequentialIndex() {
@@ -77,6 +82,8 @@ public class GitCommitsSequentialIndex implements GitCommitsSequentially {
     myListFile = new File(myDir, "repository_index");
     myCache = new SLRUMap<Pair<Long, VirtualFile>, List<Pair<AbstractHash, Long>>>(10,10);
     myPacks = new SLRUMap<VirtualFile, List<Long>>(10,10);
+    myGraphsDir = new File(vcsFile, "git_graph");
+    myGraphs = new HashMap<String, GitCommitGraph>();
   }
 
   public void activate() {
@@ -95,6 +102,31 @@ public class GitCommitsSequentialIndex implements GitCommitsSequentially {
       }
       myState.force();
       myState = null;
+      for (GitCommitGraph graph : myGraphs.values()) {
+        graph.close();
+      }
+      myGraphs.clear();
+    }
+  }
+
+  @Nullable
+  @Override
+  public GitCommitGraph getCommitGraph(VirtualFile root) {
+    final String key = FilePathsHelper.convertPath(root);
+    synchronized (myLock) {
+      GitCommitGraph graph = myGraphs.get(key);
+      if (graph == null) {
+        final File dir = new File(myGraphsDir, FileUtil.sanitizeFileName(root.getName()) + "." + Integer.toHexString(key.hashCode()));
+        try {
+          graph = new GitCommitGraph(dir);
+        }
+        catch (IOException e) {
+          LOG.info("Cannot open commit graph for " + root.getPath(), e);
+          return null;
+        }
+        myGraphs.put(key, graph);
+      }
+      return graph;
     }
   }
   
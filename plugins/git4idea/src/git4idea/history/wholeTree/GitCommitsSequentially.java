@@ -39,4 +39,10 @@ public interface GitCommitsSequentially {
   // this method also can be used to check whether history starts from start
   void iterateDescending(VirtualFile file, final long commitTime, final Processor<Pair<AbstractHash, Long>> consumer) throws VcsException;
   void pushUpdate(final Project project, final VirtualFile file, ContinuationContext context);
+
+  /**
+   * @return persistent commit graph of the root, null if it could not be opened
+   */
+  @Nullable
+  GitCommitGraph getCommitGraph(final VirtualFile root);
 }
@@ -91,7 +91,7 @@ public class LoadController implements Loader {
         public void consume(final List<ChangesFilter.Filter> filters) {
           final LoaderAndRefresherImpl loaderAndRefresher =
           new LoaderAndRefresherImpl(ticket, filters, myMediator, startingPoints, myDetailsCache, myProject, rootHolder, myUsersIndex,
-                                     loadGrowthController.getId(), haveStructureFilter, topoOrder);
+                                     loadGrowthController.getId(), haveStructureFilter, topoOrder, myGitCommitsSequentially);
           list.add(loaderAndRefresher);
         }
       }, true, root);
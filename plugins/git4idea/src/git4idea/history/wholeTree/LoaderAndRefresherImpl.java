@@ -12,8 +12,10 @@
  */
 package git4idea.history.wholeTree;
 
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Getter;
 import com.intellij.openapi.vcs.ObjectsConvertor;
 import com.intellij.openapi.vcs.VcsException;
@@ -26,12 +28,14 @@ import com.intellij.util.containers.Convertor;
 import git4idea.history.browser.*;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * @author irengrig
  */
 public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlusParents> {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.LoaderAndRefresherImpl");
   private final static int ourFirstLoadCount = 15;
   private final static int ourPreload = (! parameterCheck(Integer.getInteger("git.log.preload.size"))) ? 100 : Integer.getInteger("git.log.preload.size");
 
@@ -57,6 +61,10 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
   @NotNull
   private volatile StepType myStepType;
   private final boolean myTopoOrder;
+  private final GitCommitsSequentially myCommitsSequentially;
+  // short loads are answered from the persistent commit graph while it is available
+  private GitCommitGraph.Walk myGraphWalk;
+  private boolean myGraphUnavailable;
 
   private static boolean parameterCheck(final Integer i) {
     return i != null && i > 0;
@@ -70,8 +78,10 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
                                 Project project,
                                 MyRootHolder rootHolder,
                                 final UsersIndex usersIndex,
-                                final LoadGrowthController.ID id, boolean haveStructureFilter, boolean topoOrder) {
+                                final LoadGrowthController.ID id, boolean haveStructureFilter, boolean topoOrder,
+                                final GitCommitsSequentially commitsSequentially) {
     myRootHolder = rootHolder;
+    myCommitsSequentially = commitsSequentially;
     myUsersIndex = usersIndex;
     myId = id;
     myHaveStructureFilter = haveStructureFilter;
@@ -280,6 +290,9 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
   }
 
   private void loadShort(final long continuation, int maxCount) {
+    if (loadShortFromGraph(continuation, maxCount)) {
+      return;
+    }
     final Collection<ChangesFilter.Filter> filters = addContinuation(continuation);
     try {
       myLowLevelAccess.loadHashesWithParents(myStartingPoints, filters, myRepeatingLoadConsumer, myProgressAnalog, maxCount, myTopoOrder);
@@ -289,6 +302,70 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
     }
   }
 
+  /**
+   * The commit graph knows hashes, parents, times and authors of the commits of all refs, so it can replace 'git log --all --date-order'
+   * with author and date filters only.
+   *
+   * @return false if the graph cannot be used
+   */
+  private boolean loadShortFromGraph(final long continuation, final int maxCount) {
+    if (myGraphUnavailable || ! myStartingPoints.isEmpty() || myTopoOrder || myHaveStructureFilter) return false;
+    long before = Long.MAX_VALUE;
+    long after = Long.MIN_VALUE;
+    final List<ChangesFilter.Author> authors = new ArrayList<ChangesFilter.Author>();
+    for (ChangesFilter.Filter filter : myFilters) {
+      if (filter instanceof ChangesFilter.Author) {
+        authors.add((ChangesFilter.Author)filter);
+      } else if (filter instanceof ChangesFilter.BeforeDate) {
+        before = Math.min(before, ((ChangesFilter.BeforeDate)filter).getDate().getTime());
+      } else if (filter instanceof ChangesFilter.AfterDate) {
+        after = Math.max(after, ((ChangesFilter.AfterDate)filter).getDate().getTime());
+      } else {
+        myGraphUnavailable = true;
+        return false;
+      }
+    }
+
+    if (myGraphWalk == null) {
+      final GitCommitGraph graph = myCommitsSequentially.getCommitGraph(myRootHolder.getRoot());
+      if (graph == null) {
+        myGraphUnavailable = true;
+        return false;
+      }
+      try {
+        final long start = System.currentTimeMillis();
+        graph.update(myProject, myRootHolder.getRoot());
+        myGraphWalk = graph.createWalk();
+        LOG.debug("Commit graph of " + myRootHolder.getRoot().getPath() + " with " + myGraphWalk.size() + " commits is ready in " +
+                  (System.currentTimeMillis() - start) + " ms");
+      }
+      catch (VcsException e) {
+        LOG.info(e);
+        myGraphUnavailable = true;
+        return false;
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        myGraphUnavailable = true;
+        return false;
+      }
+    }
+
+    // several authors are joined with 'or', as several --author parameters of 'git log'
+    final Condition<String> authorFilter = authors.isEmpty() ? null : new Condition<String>() {
+      @Override
+      public boolean value(String name) {
+        for (ChangesFilter.Author author : authors) {
+          if (author.matches(name)) return true;
+        }
+        return false;
+      }
+    };
+    myGraphWalk.load(continuation > 0 ? continuation : -1, before, after, authorFilter, maxCount, myRepeatingLoadConsumer,
+                     myProgressAnalog);
+    return true;
+  }
+
   interface MyRootHolder {
     VirtualFile getRoot();
     CommitI decorateByRoot(final CommitI commitI);
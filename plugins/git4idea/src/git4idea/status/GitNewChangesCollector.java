@@ -17,6 +17,7 @@ package git4idea.status;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FileStatus;
@@ -27,6 +28,7 @@ import com.intellij.openapi.vcs.changes.ContentRevision;
 import com.intellij.openapi.vcs.changes.VcsDirtyScope;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ThrowableConsumer;
 import git4idea.GitContentRevision;
 import git4idea.GitFormatException;
 import git4idea.GitRevisionNumber;
@@ -35,10 +37,11 @@ import git4idea.changes.GitChangeUtils;
 import git4idea.commands.Git;
 import git4idea.commands.GitCommand;
 import git4idea.commands.GitHandler;
-import git4idea.commands.GitSimpleHandler;
+import git4idea.commands.GitRecordHandler;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitUntrackedFilesHolder;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.HashSet;
@@ -102,9 +105,32 @@ class GitNewChangesCollector extends GitChangesCollector {
 
   // calls 'git status' and parses the output, feeding myChanges.
   private void collectChanges(Collection<FilePath> dirtyPaths) throws VcsException {
-    GitSimpleHandler handler = statusHandler(dirtyPaths);
-    String output = handler.run();
-    parseOutput(output, handler);
+    final VcsRevisionNumber head = getHead();
+    final GitRecordHandler handler = statusHandler(dirtyPaths);
+    // renames and copies are followed by one more record containing the old path
+    final Ref<String> pendingRecord = new Ref<String>();
+    handler.run(new ThrowableConsumer<String, VcsException>() {
+      @Override
+      public void consume(String record) throws VcsException {
+        final String pending = pendingRecord.get();
+        if (pending != null) {
+          pendingRecord.set(null);
+          parseRecord(pending, record, head, handler);
+        }
+        else if (StringUtil.isEmptyOrSpaces(record)) {
+          // skip empty records if any
+        }
+        else if (record.charAt(0) == 'R' || record.charAt(0) == 'C') {
+          pendingRecord.set(record);
+        }
+        else {
+          parseRecord(record, null, head, handler);
+        }
+      }
+    });
+    if (pendingRecord.get() != null) {
+      throwGFE("Missing the original path of a renamed or copied file.", handler, pendingRecord.get(), '0', '0');
+    }
   }
 
   private void collectUnversionedFiles() throws VcsException {
@@ -117,8 +143,8 @@ class GitNewChangesCollector extends GitChangesCollector {
     }
   }
 
-  private GitSimpleHandler statusHandler(Collection<FilePath> dirtyPaths) {
-    GitSimpleHandler handler = new GitSimpleHandler(myProject, myVcsRoot, GitCommand.STATUS);
+  private GitRecordHandler statusHandler(Collection<FilePath> dirtyPaths) {
+    GitRecordHandler handler = new GitRecordHandler(myProject, myVcsRoot, GitCommand.STATUS, '\u0000');
     final String[] params = {"--porcelain", "-z", "--untracked-files=no"};   // untracked files are stored separately
     handler.addParameters(params);
     handler.setNoSSH(true);
@@ -128,7 +154,7 @@ class GitNewChangesCollector extends GitChangesCollector {
     handler.addRelativePaths(dirtyPaths);
     if (handler.isLargeCommandLine()) {
       // if there are too much files, just get all changes for the project
-      handler = new GitSimpleHandler(myProject, myVcsRoot, GitCommand.STATUS);
+      handler = new GitRecordHandler(myProject, myVcsRoot, GitCommand.STATUS, '\u0000');
       handler.addParameters(params);
       handler.setNoSSH(true);
       handler.setSilent(true);
@@ -139,130 +165,116 @@ class GitNewChangesCollector extends GitChangesCollector {
   }
 
   /**
-   * Parses the output of the 'git status --porcelain -z' command filling myChanges and myUnversionedFiles.
+   * Parses a record of the 'git status --porcelain -z' output filling myChanges.
    * See <a href=http://www.kernel.org/pub/software/scm/git/docs/git-status.html#_output">Git man</a> for details.
+   *
+   * @param oldFilename the record following the record of a renamed or copied file, null for other statuses
    */
   // handler is here for debugging purposes in the case of parse error
-  private void parseOutput(@NotNull String output, @NotNull GitHandler handler) throws VcsException {
-    VcsRevisionNumber head = getHead();
-
-    final String[] split = output.split("\u0000");
-
-    for (int pos = 0; pos < split.length; pos++) {
-      String line = split[pos];
-      if (StringUtil.isEmptyOrSpaces(line)) { // skip empty lines if any (e.g. the whole output may be empty on a clean working tree).
-        continue;
-      }
-
-      // format: XY_filename where _ stands for space.
-      if (line.length() < 4) { // X, Y, space and at least one symbol for the file
-        throwGFE("Line is too short.", handler, output, line, '0', '0');
-      }
-      final String xyStatus = line.substring(0, 2);
-      final String filepath = line.substring(3); // skipping the space
-      final char xStatus = xyStatus.charAt(0);
-      final char yStatus = xyStatus.charAt(1);
-
-      switch (xStatus) {
-        case ' ':
-          if (yStatus == 'M') {
-            reportModified(filepath, head);
-          } else if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else if (yStatus == 'T') {
-            reportTypeChanged(filepath, head);
-          } else if (yStatus == 'U') {
-            reportConflict(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'M':
-          if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
-            reportModified(filepath, head);
-          } else if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'C':
-          //noinspection AssignmentToForLoopParameter
-          pos += 1;  // read the "from" filepath which is separated also by NUL character.
-          // NB: no "break" here!
-          // we treat "Copy" as "Added", but we still have to read the old path not to break the format parsing.
-        case 'A':
-          if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
-            reportAdded(filepath);
-          } else if (yStatus == 'D') {
-            // added + deleted => no change (from IDEA point of view).
-          } else if (yStatus == 'U' || yStatus == 'A') { // AU - unmerged, added by us; AA - unmerged, both added
-            reportConflict(filepath, head);
-          }  else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'D':
-          if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
-            reportDeleted(filepath, head);
-          } else if (yStatus == 'U') { // DU - unmerged, deleted by us
-            reportConflict(filepath, head);
-          } else if (yStatus == 'D') { // DD - unmerged, both deleted
-            // TODO
-            // currently not displaying, because "both deleted" conflicts can't be handled by our conflict resolver.
-            // see IDEA-63156
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'U':
-          if (yStatus == 'U' || yStatus == 'A' || yStatus == 'D' || yStatus == 'T') {
-            // UU - unmerged, both modified; UD - unmerged, deleted by them; UA - umerged, added by them
-            reportConflict(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'R':
-          //noinspection AssignmentToForLoopParameter
-          pos += 1;  // read the "from" filepath which is separated also by NUL character.
-          String oldFilename = split[pos];
-
-          if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
-            reportRename(filepath, oldFilename, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case 'T'://TODO
-          if (yStatus == ' ' || yStatus == 'M') {
-            reportTypeChanged(filepath, head);
-          } else if (yStatus == 'D') {
-            reportDeleted(filepath, head);
-          } else {
-            throwYStatus(output, handler, line, xStatus, yStatus);
-          }
-          break;
-
-        case '?':
-          throwGFE("Unexpected unversioned file flag.", handler, output, line, xStatus, yStatus);
-          break;
-
-        case '!':
-          throwGFE("Unexpected ignored file flag.", handler, output, line, xStatus, yStatus);
-
-        default:
-          throwGFE("Unexpected symbol as xStatus.", handler, output, line, xStatus, yStatus);
+  private void parseRecord(@NotNull String line, @Nullable String oldFilename, @NotNull VcsRevisionNumber head,
+                           @NotNull GitHandler handler) throws VcsException {
+    // format: XY_filename where _ stands for space.
+    if (line.length() < 4) { // X, Y, space and at least one symbol for the file
+      throwGFE("Line is too short.", handler, line, '0', '0');
+    }
+    final String xyStatus = line.substring(0, 2);
+    final String filepath = line.substring(3); // skipping the space
+    final char xStatus = xyStatus.charAt(0);
+    final char yStatus = xyStatus.charAt(1);
+
+    switch (xStatus) {
+      case ' ':
+        if (yStatus == 'M') {
+          reportModified(filepath, head);
+        } else if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else if (yStatus == 'T') {
+          reportTypeChanged(filepath, head);
+        } else if (yStatus == 'U') {
+          reportConflict(filepath, head);
+        } else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case 'M':
+        if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
+          reportModified(filepath, head);
+        } else if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case 'C':
+        // NB: no "break" here!
+        // we treat "Copy" as "Added", the old path is ignored.
+      case 'A':
+        if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
+          reportAdded(filepath);
+        } else if (yStatus == 'D') {
+          // added + deleted => no change (from IDEA point of view).
+        } else if (yStatus == 'U' || yStatus == 'A') { // AU - unmerged, added by us; AA - unmerged, both added
+          reportConflict(filepath, head);
+        }  else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case 'D':
+        if (yStatus == 'M' || yStatus == ' ' || yStatus == 'T') {
+          reportDeleted(filepath, head);
+        } else if (yStatus == 'U') { // DU - unmerged, deleted by us
+          reportConflict(filepath, head);
+        } else if (yStatus == 'D') { // DD - unmerged, both deleted
+          // TODO
+          // currently not displaying, because "both deleted" conflicts can't be handled by our conflict resolver.
+          // see IDEA-63156
+        } else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case 'U':
+        if (yStatus == 'U' || yStatus == 'A' || yStatus == 'D' || yStatus == 'T') {
+          // UU - unmerged, both modified; UD - unmerged, deleted by them; UA - umerged, added by them
+          reportConflict(filepath, head);
+        } else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case 'R':
+        if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else if (yStatus == ' ' || yStatus == 'M' || yStatus == 'T') {
+          reportRename(filepath, oldFilename, head);
+        } else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case 'T'://TODO
+        if (yStatus == ' ' || yStatus == 'M') {
+          reportTypeChanged(filepath, head);
+        } else if (yStatus == 'D') {
+          reportDeleted(filepath, head);
+        } else {
+          throwYStatus(handler, line, xStatus, yStatus);
+        }
+        break;
+
+      case '?':
+        throwGFE("Unexpected unversioned file flag.", handler, line, xStatus, yStatus);
+        break;
+
+      case '!':
+        throwGFE("Unexpected ignored file flag.", handler, line, xStatus, yStatus);
+
+      default:
+        throwGFE("Unexpected symbol as xStatus.", handler, line, xStatus, yStatus);
 
-      }
     }
   }
 
@@ -295,14 +307,14 @@ class GitNewChangesCollector extends GitChangesCollector {
     return nativeHead;
   }
 
-  private static void throwYStatus(String output, GitHandler handler, String line, char xStatus, char yStatus) {
-    throwGFE("Unexpected symbol as yStatus.", handler, output, line, xStatus, yStatus);
+  private static void throwYStatus(GitHandler handler, String line, char xStatus, char yStatus) {
+    throwGFE("Unexpected symbol as yStatus.", handler, line, xStatus, yStatus);
   }
 
-  private static void throwGFE(String message, GitHandler handler, String output, String line, char xStatus, char yStatus) {
+  private static void throwGFE(String message, GitHandler handler, String line, char xStatus, char yStatus) {
     throw new GitFormatException(String.format("%s\n xStatus=[%s], yStatus=[%s], line=[%s], \n" +
-                                               "handler:\n%s\n output: \n%s",
-                                               message, xStatus, yStatus, line.replace('\u0000', '!'), handler, output));
+                                               "handler:\n%s",
+                                               message, xStatus, yStatus, line.replace('\u0000', '!'), handler));
   }
 
   private void reportModified(String filepath, VcsRevisionNumber head) throws VcsException {
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class GitBlameCacheTest extends TestCase {
+  private File myDir;
+  private GitBlameCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("git_blame", null);
+    myCache = new GitBlameCache(myDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testRoundTrip() throws Exception {
+    myCache.put("/repo/a.txt", blame("r1", "c1:alice:first\n", "c2:bob:second\n", "c1:alice:third\n"));
+
+    final GitBlameCache.Blame restored = myCache.get("/repo/a.txt", "r1");
+    assertNotNull(restored);
+    assertEquals(Arrays.asList("c1:alice:first\n", "c2:bob:second\n", "c1:alice:third\n"), describe(restored));
+    assertEquals(new Date(2000), restored.getLines().get(1).getDate());
+    assertNull(myCache.get("/repo/a.txt", "r2"));
+    assertNull(myCache.get("/repo/b.txt", "r1"));
+  }
+
+  public void testFindAnyPrefersFirstRevision() throws Exception {
+    myCache.put("/repo/a.txt", blame("r1", "c1:alice:old\n"));
+    myCache.put("/repo/a.txt", blame("r2", "c2:bob:new\n"));
+
+    assertEquals("r2", myCache.findAny("/repo/a.txt", Arrays.asList("r3", "r2", "r1")).getRevision());
+    assertEquals("r1", myCache.findAny("/repo/a.txt", Arrays.asList("r1", "r2")).getRevision());
+    assertNull(myCache.findAny("/repo/a.txt", Arrays.asList("r3")));
+  }
+
+  public void testOldRevisionsAreRemoved() throws Exception {
+    for (int i = 1; i <= 5; i++) {
+      myCache.put("/repo/a.txt", blame("r" + i, "c" + i + ":alice:line\n"));
+      // the cache removes the least recently written revisions
+      new File(myDir.listFiles()[0], "r" + i).setLastModified(i * 100000L);
+    }
+    myCache.put("/repo/a.txt", blame("r6", "c6:alice:line\n"));
+
+    assertNotNull(myCache.get("/repo/a.txt", "r6"));
+    assertNotNull(myCache.get("/repo/a.txt", "r5"));
+    assertNotNull(myCache.get("/repo/a.txt", "r4"));
+    assertNull(myCache.get("/repo/a.txt", "r3"));
+    assertNull(myCache.get("/repo/a.txt", "r1"));
+  }
+
+  public void testLeastRecentlyUsedFilesAreRemoved() throws Exception {
+    myCache = new GitBlameCache(myDir, 3);
+    for (int i = 1; i <= 3; i++) {
+      myCache.put("/repo/f" + i + ".txt", blame("r1", "c1:alice:line\n"));
+      findFileDir("f" + i + ".txt").setLastModified(i * 100000L);
+    }
+    // reading marks f1 as used, so f2 is the least recently used one
+    assertNotNull(myCache.get("/repo/f1.txt", "r1"));
+    myCache.put("/repo/f4.txt", blame("r1", "c1:alice:line\n"));
+
+    assertEquals(3, myDir.listFiles().length);
+    assertNotNull(myCache.get("/repo/f1.txt", "r1"));
+    assertNull(myCache.get("/repo/f2.txt", "r1"));
+    assertNotNull(myCache.get("/repo/f3.txt", "r1"));
+    assertNotNull(myCache.get("/repo/f4.txt", "r1"));
+  }
+
+  private File findFileDir(String name) {
+    for (File dir : myDir.listFiles()) {
+      if (dir.getName().startsWith(FileUtil.sanitizeFileName(name) + ".")) return dir;
+    }
+    throw new AssertionError("no cache directory for " + name);
+  }
+
+  private static GitBlameCache.Blame blame(String revision, String... lines) {
+    final List<GitBlameCache.Line> result = new ArrayList<GitBlameCache.Line>();
+    for (String line : lines) {
+      final String[] parts = line.split(":", 3);
+      final long time = Long.parseLong(parts[0].substring(1)) * 1000;
+      result.add(new GitBlameCache.Line(parts[0], new Date(time), parts[1], parts[2]));
+    }
+    return new GitBlameCache.Blame(revision, result);
+  }
+
+  private static List<String> describe(GitBlameCache.Blame blame) {
+    final List<String> result = new ArrayList<String>();
+    for (GitBlameCache.Line line : blame.getLines()) {
+      result.add(line.getHash() + ":" + line.getAuthor() + ":" + line.getText());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.annotate;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.VcsException;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Checks that the blame computed from a cached older blame by re-blaming the changed lines is the same as the full 'git blame'.
+ */
+public class GitBlameMergeTest extends TestCase {
+  private static final String FILE_NAME = "a.txt";
+  private File myRepo;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRepo = FileUtil.createTempDirectory("git_blame_merge", null);
+    git("init", "-q");
+    // the first commit of a repository is blamed as a boundary commit
+    git("commit", "-q", "--allow-empty", "-m", "root");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myRepo);
+    super.tearDown();
+  }
+
+  public void testMergedBlameMatchesFullBlame() throws Exception {
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 1; i <= 40; i++) {
+      lines.add("line " + i);
+    }
+    commit(lines, "initial");
+    lines.set(4, "line 5 changed");
+    lines.set(5, "line 6 changed");
+    final String base = commit(lines, "change lines 5 and 6");
+
+    lines.add(10, "inserted 1");
+    lines.add(11, "inserted 2");
+    lines.add(12, "inserted 3");
+    lines.remove(22);
+    lines.remove(22);
+    lines.remove(22);
+    lines.set(30, "line 34 changed");
+    lines.remove(0);
+    final String revision = commit(lines, "insert and delete lines");
+
+    final List<int[]> blamedRanges = new ArrayList<int[]>();
+    final List<GitBlameCache.Line> merged = GitBlameCache.mergeChangedLines(
+      blame(base, -1, -1), GitBlameCache.splitLines(git("show", revision + ":" + FILE_NAME)), new GitBlameCache.RangeBlamer() {
+        @NotNull
+        @Override
+        public List<GitBlameCache.Line> blame(int startLine, int endLine) throws VcsException {
+          blamedRanges.add(new int[]{startLine, endLine});
+          try {
+            return GitBlameMergeTest.this.blame(revision, startLine, endLine);
+          }
+          catch (IOException e) {
+            throw new VcsException(e);
+          }
+        }
+      });
+
+    assertNotNull(merged);
+    assertEquals(describe(blame(revision, -1, -1)), describe(merged));
+    // the inserted lines and the changed line; deletions need no blame
+    assertEquals(2, blamedRanges.size());
+    assertTrue(Arrays.equals(new int[]{10, 12}, blamedRanges.get(0)));
+    assertTrue(Arrays.equals(new int[]{30, 30}, blamedRanges.get(1)));
+  }
+
+  public void testWholeFileIsBlamedWhenMoreThanHalfChanged() throws Exception {
+    final List<String> newLines = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      newLines.add((i < 6 ? "changed " : "line ") + i + "\n");
+    }
+    assertNull(GitBlameCache.mergeChangedLines(oldLines(10), newLines, new FailingBlamer()));
+  }
+
+  public void testWholeFileIsBlamedWhenTooManyRangesChanged() throws Exception {
+    final List<String> newLines = new ArrayList<String>();
+    for (int i = 0; i < 100; i++) {
+      // 21 separate changed lines
+      newLines.add((i % 4 == 0 && i < 84 ? "changed " : "line ") + i + "\n");
+    }
+    assertNull(GitBlameCache.mergeChangedLines(oldLines(100), newLines, new FailingBlamer()));
+  }
+
+  private static List<GitBlameCache.Line> oldLines(int count) {
+    final List<GitBlameCache.Line> result = new ArrayList<GitBlameCache.Line>();
+    for (int i = 0; i < count; i++) {
+      result.add(new GitBlameCache.Line("c1", new Date(1000), "alice", "line " + i + "\n", i + 1));
+    }
+    return result;
+  }
+
+  private String commit(List<String> lines, String message) throws IOException {
+    final StringBuilder text = new StringBuilder();
+    for (String line : lines) {
+      text.append(line).append('\n');
+    }
+    FileUtil.writeToFile(new File(myRepo, FILE_NAME), text.toString());
+    git("add", FILE_NAME);
+    git("commit", "-q", "-m", message);
+    return git("rev-parse", "HEAD").trim();
+  }
+
+  /**
+   * Runs 'git blame' for the given lines, or for the whole file if the line numbers are negative
+   */
+  private List<GitBlameCache.Line> blame(String revision, int startLine, int endLine) throws IOException {
+    final List<String> command = new ArrayList<String>(Arrays.asList("blame", "-l", "-s"));
+    if (startLine > 0) {
+      command.addAll(Arrays.asList("-L", startLine + "," + endLine));
+    }
+    command.addAll(Arrays.asList(revision, "--", FILE_NAME));
+    final List<GitBlameCache.Line> result = new ArrayList<GitBlameCache.Line>();
+    for (String line : GitBlameCache.splitLines(git(command.toArray(new String[command.size()])))) {
+      // <hash> <line number>) <text>
+      final int hashEnd = line.indexOf(' ');
+      final int numberEnd = line.indexOf(") ", hashEnd);
+      final String hash = line.startsWith("^") ? line.substring(1, hashEnd) : line.substring(0, hashEnd);
+      final int lineNumber = Integer.parseInt(line.substring(hashEnd + 1, numberEnd).trim());
+      result.add(new GitBlameCache.Line(hash, new Date(0), "", line.substring(numberEnd + 2), lineNumber));
+    }
+    return result;
+  }
+
+  private String git(String... parameters) throws IOException {
+    final List<String> command = new ArrayList<String>();
+    command.addAll(Arrays.asList("git", "-c", "user.name=Test", "-c", "user.email=test@example.com"));
+    command.addAll(Arrays.asList(parameters));
+    final Process process = new ProcessBuilder(command).directory(myRepo).redirectErrorStream(true).start();
+    final String output = FileUtil.loadTextAndClose(process.getInputStream());
+    try {
+      if (process.waitFor() != 0) {
+        throw new IOException(command + " failed: " + output);
+      }
+    }
+    catch (InterruptedException e) {
+      throw new IOException(e.getMessage());
+    }
+    return output;
+  }
+
+  private static List<String> describe(List<GitBlameCache.Line> lines) {
+    final List<String> result = new ArrayList<String>();
+    for (GitBlameCache.Line line : lines) {
+      result.add(line.getHash() + " " + line.getText());
+    }
+    return result;
+  }
+
+  private static class FailingBlamer implements GitBlameCache.RangeBlamer {
+    @NotNull
+    @Override
+    public List<GitBlameCache.Line> blame(int startLine, int endLine) {
+      throw new AssertionError("the whole file should be blamed instead of lines " + startLine + "-" + endLine);
+    }
+  }
+}
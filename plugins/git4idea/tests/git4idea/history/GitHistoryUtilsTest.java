@@ -15,6 +15,10 @@
  */
 package git4idea.history;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.VcsException;
@@ -221,6 +225,82 @@ public class GitHistoryUtilsTest extends GitTest {
     }
   }
 
+  @Test
+  public void testHistoryResumedAfterCancel() throws Exception {
+    checkHistoryResumedAfter(2);
+  }
+
+  @Test
+  public void testHistoryResumedBeforeRename() throws Exception {
+    // the last loaded revision is the first one before the rename: the history is continued on the old path
+    checkHistoryResumedAfter(myRevisionsAfterRename.size() + 1);
+  }
+
+  @Test
+  public void testHistoryAfterRewrittenRevision() throws Exception {
+    final List<VcsFileRevision> revisions = GitHistoryUtils.history(myProject, bfilePath);
+    myRepo.run("commit", "--amend", "-m", "amended commit");
+
+    final List<GitFileRevision> resumed = new ArrayList<GitFileRevision>();
+    assertFalse(GitHistoryUtils.history(myProject, bfilePath, null, (GitFileRevision)revisions.get(0), createCollector(resumed), createExceptionConsumer()));
+    assertTrue(resumed.isEmpty());
+  }
+
+  private void checkHistoryResumedAfter(final int loadedBeforeCancel) throws Exception {
+    final List<GitFileRevision> revisions = new ArrayList<GitFileRevision>();
+    final ProgressIndicator indicator = new ProgressIndicatorBase();
+    try {
+      ProgressManager.getInstance().runProcess(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            GitHistoryUtils.history(myProject, bfilePath, null, new Consumer<GitFileRevision>() {
+              @Override
+              public void consume(GitFileRevision revision) {
+                revisions.add(revision);
+                if (revisions.size() == loadedBeforeCancel) {
+                  indicator.cancel();
+                }
+              }
+            }, createExceptionConsumer());
+          }
+          catch (VcsException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, indicator);
+      fail("The history loading should be cancelled");
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+    assertEquals(revisions.size(), loadedBeforeCancel);
+
+    final GitFileRevision lastLoaded = revisions.get(revisions.size() - 1);
+    assertTrue(GitHistoryUtils.history(myProject, bfilePath, null, lastLoaded, createCollector(revisions), createExceptionConsumer()));
+    assertEquals(revisions.size(), myRevisions.size());
+    for (int i = 0; i < revisions.size(); i++) {
+      assertEqualRevisions(revisions.get(i), myRevisions.get(i));
+    }
+  }
+
+  private static Consumer<GitFileRevision> createCollector(final List<GitFileRevision> revisions) {
+    return new Consumer<GitFileRevision>() {
+      @Override
+      public void consume(GitFileRevision revision) {
+        revisions.add(revision);
+      }
+    };
+  }
+
+  private static Consumer<VcsException> createExceptionConsumer() {
+    return new Consumer<VcsException>() {
+      @Override
+      public void consume(VcsException exception) {
+        fail("No exception expected", exception);
+      }
+    };
+  }
+
   @Test
   public void testOnlyHashesHistory() throws Exception {
     final List<Pair<SHAHash,Date>> history = GitHistoryUtils.onlyHashesHistory(myProject, bfilePath, myRepo.getVFRootDir());
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2000-2012 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.tests;
+
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.Consumer;
+import git4idea.history.wholeTree.CommitHashPlusParents;
+import git4idea.history.wholeTree.GitCommitGraph;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.*;
+
+public class GitCommitGraphTest extends TestCase {
+  private File myDir;
+  private GitCommitGraph myGraph;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("git_graph", null);
+    myGraph = new GitCommitGraph(myDir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myGraph.close();
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testParentsAfterChildren() throws Exception {
+    // c1 <- c2 <- c4 (merge of c2 and c3), c1 <- c3; c3 is newer than c4 because of a clock skew
+    add("c1", 1000, "alice");
+    add("c2", 2000, "bob", "c1");
+    add("c3", 5000, "alice", "c1");
+    add("c4", 4000, "bob", "c2", "c3");
+    myGraph.setTips(Collections.singleton(hash("c4")));
+
+    assertEquals(Arrays.asList("c4", "c3", "c2", "c1"), walk(myGraph.createWalk(), -1, null, -1));
+  }
+
+  public void testDeletedRefsAreNotWalked() throws Exception {
+    add("c1", 1000, "alice");
+    add("c2", 2000, "alice", "c1");
+    add("c3", 3000, "bob", "c1");
+    myGraph.setTips(new HashSet<String>(Arrays.asList(hash("c2"), hash("c3"))));
+    assertEquals(Arrays.asList("c3", "c2", "c1"), walk(myGraph.createWalk(), -1, null, -1));
+
+    myGraph.setTips(Collections.singleton(hash("c2")));
+    assertEquals(Arrays.asList("c2", "c1"), walk(myGraph.createWalk(), -1, null, -1));
+  }
+
+  public void testPagesAndAuthors() throws Exception {
+    add("c1", 1000, "alice");
+    add("c2", 2000, "bob", "c1");
+    add("c3", 3000, "alice", "c2");
+    add("c4", 4000, "bob", "c3");
+    myGraph.setTips(Collections.singleton(hash("c4")));
+
+    final GitCommitGraph.Walk walk = myGraph.createWalk();
+    assertEquals(Arrays.asList("c4", "c3"), walk(walk, -1, null, 2));
+    // the last commit of the previous page is passed again
+    assertEquals(Arrays.asList("c3", "c2"), walk(walk, 3000, null, 2));
+
+    final Condition<String> alice = new Condition<String>() {
+      @Override
+      public boolean value(String name) {
+        return "alice".equals(name);
+      }
+    };
+    assertEquals(Arrays.asList("c3", "c1"), walk(myGraph.createWalk(), -1, alice, -1));
+  }
+
+  public void testReopen() throws Exception {
+    add("c1", 1000, "alice");
+    add("c2", 2000, "bob", "c1");
+    myGraph.setTips(Collections.singleton(hash("c2")));
+    myGraph.close();
+
+    myGraph = new GitCommitGraph(myDir);
+    assertEquals(2, myGraph.getCommitCount());
+    assertEquals(Collections.singleton(hash("c2")), myGraph.getTips());
+    // commits which are already known are skipped
+    add("c2", 2000, "bob", "c1");
+    assertEquals(2, myGraph.getCommitCount());
+    assertEquals(Arrays.asList("c2", "c1"), walk(myGraph.createWalk(), -1, null, -1));
+  }
+
+  private void add(String name, long time, String author, String... parents) throws Exception {
+    final String[] parentHashes = new String[parents.length];
+    for (int i = 0; i < parents.length; i++) {
+      parentHashes[i] = hash(parents[i]);
+    }
+    final String hash = hash(name);
+    myGraph.add(new GitCommitGraph.Entry(hash, hash.substring(0, 7), parentHashes, time, author));
+  }
+
+  private static String hash(String name) {
+    final StringBuilder sb = new StringBuilder(name);
+    while (sb.length() < 40) {
+      sb.append('0');
+    }
+    return sb.toString();
+  }
+
+  private static List<String> walk(GitCommitGraph.Walk walk, long continuation, Condition<String> authorFilter, int maxCount) {
+    final List<String> result = new ArrayList<String>();
+    walk.load(continuation, Long.MAX_VALUE, Long.MIN_VALUE, authorFilter, maxCount, new Consumer<CommitHashPlusParents>() {
+      @Override
+      public void consume(CommitHashPlusParents commit) {
+        result.add(commit.getHash().substring(0, 2));
+      }
+    }, null);
+    return result;
+  }
+}
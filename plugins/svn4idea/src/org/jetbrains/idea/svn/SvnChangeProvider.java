@@ -15,12 +15,14 @@
  */
 package org.jetbrains.idea.svn;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressWrapper;
 import com.intellij.openapi.util.Comparing;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.*;
@@ -44,6 +46,10 @@ import org.tmatesoft.svn.core.wc.SVNStatusType;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author max
@@ -53,6 +59,7 @@ public class SvnChangeProvider implements ChangeProvider {
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.idea.svn.SvnChangeProvider");
   public static final String ourDefaultListName = VcsBundle.message("changes.default.changlist.name");
   public static final String PROPERTY_LAYER = "Property";
+  private static final int MAX_PARALLEL_WALKERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
 
   private final SvnVcs myVcs;
   private final VcsContextFactory myFactory;
@@ -82,12 +89,9 @@ public class SvnChangeProvider implements ChangeProvider {
       statusReceiver.addListener(context);
       statusReceiver.addListener(nestedCopiesBuilder);
 
-      final SvnRecursiveStatusWalker walker = new SvnRecursiveStatusWalker(myVcs.getProject(), statusReceiver.getMulticaster(), partner);
-
-      for (FilePath path : zipper.getRecursiveDirs()) {
-        walker.go(path, SVNDepth.INFINITY);
-      }
+      walkRecursiveDirs(zipper.getRecursiveDirs(), statusReceiver.getMulticaster(), partner, progress);
 
+      final SvnRecursiveStatusWalker walker = new SvnRecursiveStatusWalker(myVcs.getProject(), statusReceiver.getMulticaster(), partner);
       partner.setFileProvider(fileProvider);
       for (SvnScopeZipper.MyDirNonRecursive item : nonRecursiveMap.values()) {
         walker.go(item.getDir(), SVNDepth.FILES);
@@ -114,6 +118,102 @@ public class SvnChangeProvider implements ChangeProvider {
     }
   }
 
+  /**
+   * Working copies are independent, so their status is collected in parallel, by a bounded number of walkers.
+   * Directories of the same working copy are walked one after another by the same walker.
+   * The statuses are passed to the receiver as soon as they are found.
+   */
+  private void walkRecursiveDirs(final List<FilePath> dirs, final StatusReceiver receiver, final StatusWalkerPartner partner,
+                                 @Nullable final ProgressIndicator progress) throws SVNException {
+    final Queue<List<FilePath>> groups = new ConcurrentLinkedQueue<List<FilePath>>(groupByWorkingCopies(dirs));
+    final int walkersCount = Math.min(groups.size(), MAX_PARALLEL_WALKERS);
+    final StatusReceiver synchronizedReceiver = new SynchronizedStatusReceiver(receiver);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    final Runnable walk = new Runnable() {
+      public void run() {
+        List<FilePath> group;
+        while (error.get() == null && (group = groups.poll()) != null) {
+          final SvnRecursiveStatusWalker walker = new SvnRecursiveStatusWalker(myVcs.getProject(), synchronizedReceiver, partner);
+          try {
+            for (FilePath path : group) {
+              walker.go(path, SVNDepth.INFINITY);
+            }
+          }
+          catch (Throwable e) {
+            error.compareAndSet(null, e);
+          }
+        }
+      }
+    };
+
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 1; i < walkersCount; i++) {
+      futures.add(ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+        public void run() {
+          ProgressManager.getInstance().runProcess(walk, ProgressWrapper.wrap(progress));
+        }
+      }));
+    }
+    walk.run();
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        error.compareAndSet(null, e.getCause());
+      }
+    }
+
+    final Throwable e = error.get();
+    if (e instanceof SVNException) throw (SVNException)e;
+    if (e instanceof RuntimeException) throw (RuntimeException)e;
+    if (e instanceof Error) throw (Error)e;
+    if (e != null) throw new RuntimeException(e);
+  }
+
+  private Collection<List<FilePath>> groupByWorkingCopies(final List<FilePath> dirs) {
+    final Map<String, List<FilePath>> groups = new LinkedHashMap<String, List<FilePath>>();
+    for (FilePath dir : dirs) {
+      final RootUrlInfo root = mySvnFileUrlMapping.getWcRootForFilePath(dir.getIOFile());
+      final String key = root == null ? dir.getPath() : root.getIoFile().getAbsolutePath();
+      List<FilePath> group = groups.get(key);
+      if (group == null) {
+        group = new ArrayList<FilePath>();
+        groups.put(key, group);
+      }
+      group.add(dir);
+    }
+    return groups.values();
+  }
+
+  private static class SynchronizedStatusReceiver implements StatusReceiver {
+    private final StatusReceiver myDelegate;
+
+    private SynchronizedStatusReceiver(final StatusReceiver delegate) {
+      myDelegate = delegate;
+    }
+
+    public synchronized void process(FilePath path, SVNStatus status) throws SVNException {
+      myDelegate.process(path, status);
+    }
+
+    public synchronized void processIgnored(VirtualFile vFile) {
+      myDelegate.processIgnored(vFile);
+    }
+
+    public synchronized void processUnversioned(VirtualFile vFile) {
+      myDelegate.processUnversioned(vFile);
+    }
+
+    public synchronized void processCopyRoot(VirtualFile file, SVNURL url, WorkingCopyFormat format) {
+      myDelegate.processCopyRoot(file, url, format);
+    }
+  }
+
   private void processUnsaved(VcsDirtyScope dirtyScope, ChangeListManagerGate addGate, SvnChangeProviderContext context)
     throws SVNException {
     final FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();